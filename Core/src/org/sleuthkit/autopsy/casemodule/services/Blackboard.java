@@ -18,10 +18,26 @@
  */
 package org.sleuthkit.autopsy.casemodule.services;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
 import org.openide.util.Lookup;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.keywordsearchservice.KeywordSearchService;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
@@ -37,8 +53,29 @@
  */
 public final class Blackboard implements Closeable {
 
-    private SleuthkitCase caseDb;
-    
+    private static final Logger logger = Logger.getLogger(Blackboard.class.getName());
+
+    /**
+     * The largest number of artifacts sent to the keyword search service in
+     * one request by the indexing threads.
+     */
+    private static final int INDEXING_BATCH_SIZE = 100;
+    private static final int INDEXING_THREADS = 2;
+
+    private volatile SleuthkitCase caseDb;
+
+    /**
+     * Artifacts waiting to be indexed by the indexing threads.
+     */
+    private final BlockingQueue<PendingArtifact> indexingQueue = new LinkedBlockingQueue<>();
+    private final ExecutorService indexingExecutor = Executors.newFixedThreadPool(INDEXING_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("blackboard-indexing-%d").setDaemon(true).build()); //NON-NLS
+    /**
+     * Held for reading while a batch is indexed, so that
+     * indexQueuedArtifactsNow can wait for the batches in flight.
+     */
+    private final ReadWriteLock indexingLock = new ReentrantReadWriteLock();
+
     /**
      * Constructs a representation of the blackboard, a place where artifacts
      * and their attributes are posted.
@@ -56,7 +93,102 @@ public final class Blackboard implements Closeable {
      *
      * @throws BlackboardException If there is a problem indexing the artifact.
      */
-    public synchronized void indexArtifact(BlackboardArtifact artifact) throws BlackboardException {
+    public void indexArtifact(BlackboardArtifact artifact) throws BlackboardException {
+        KeywordSearchService searchService = getKeywordSearchService();
+        try {
+            searchService.index(artifact);
+        } catch (TskCoreException ex) {
+            throw new BlackboardException("Error indexing artifact", ex);
+        }
+    }
+
+    /**
+     * Queues the text associated with the given artifacts for indexing, and
+     * returns without waiting for it. Background threads send the queued
+     * artifacts to the keyword search service in batches. Indexing errors are
+     * logged.
+     *
+     * @param artifacts The artifacts to be indexed.
+     *
+     * @throws BlackboardException If the blackboard is closed or there is no
+     *                             keyword search service.
+     */
+    public void indexArtifacts(Collection<BlackboardArtifact> artifacts) throws BlackboardException {
+        indexArtifacts(artifacts, (artifact, ex)
+                -> logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex)); //NON-NLS
+    }
+
+    /**
+     * Queues the text associated with the given artifacts for indexing, and
+     * returns without waiting for it. Background threads send the queued
+     * artifacts to the keyword search service in batches.
+     *
+     * @param artifacts    The artifacts to be indexed.
+     * @param errorHandler Called, on an indexing thread, for each artifact
+     *                     that could not be indexed.
+     *
+     * @throws BlackboardException If the blackboard is closed or there is no
+     *                             keyword search service.
+     */
+    public void indexArtifacts(Collection<BlackboardArtifact> artifacts, IndexingErrorHandler errorHandler) throws BlackboardException {
+        getKeywordSearchService();
+        for (BlackboardArtifact artifact : artifacts) {
+            indexingQueue.add(new PendingArtifact(artifact, errorHandler));
+        }
+        try {
+            indexingExecutor.submit(this::indexQueuedArtifacts);
+        } catch (RejectedExecutionException ex) {
+            throw new BlackboardException("Blackboard has been closed", ex);
+        }
+    }
+
+    /**
+     * Index the queued artifacts, a batch at a time, until the queue is empty.
+     */
+    private void indexQueuedArtifacts() {
+        List<PendingArtifact> batch = new ArrayList<>(INDEXING_BATCH_SIZE);
+        while (true) {
+            indexingLock.readLock().lock();
+            try {
+                if (indexingQueue.drainTo(batch, INDEXING_BATCH_SIZE) == 0) {
+                    return;
+                }
+                indexBatch(batch);
+            } finally {
+                indexingLock.readLock().unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    private void indexBatch(List<PendingArtifact> batch) {
+        try {
+            Map<BlackboardArtifact, TskCoreException> failures = getKeywordSearchService().indexArtifacts(
+                    batch.stream().map(pending -> pending.artifact).collect(Collectors.toList()));
+            for (PendingArtifact pending : batch) {
+                TskCoreException failure = failures.get(pending.artifact);
+                if (failure != null) {
+                    pending.errorHandler.indexingFailed(pending.artifact, new BlackboardException("Error indexing artifact", failure));
+                }
+            }
+        } catch (BlackboardException ex) {
+            batch.forEach(pending -> pending.errorHandler.indexingFailed(pending.artifact, ex));
+        }
+    }
+
+    /**
+     * Indexes the artifacts still queued for indexing on the calling thread,
+     * and waits for the indexing threads to finish the batches they are
+     * indexing. Called by the keyword search service before it closes the
+     * index of the case.
+     */
+    public void indexQueuedArtifactsNow() {
+        indexQueuedArtifacts();
+        indexingLock.writeLock().lock();
+        indexingLock.writeLock().unlock();
+    }
+
+    private KeywordSearchService getKeywordSearchService() throws BlackboardException {
         if (null == caseDb) {
             throw new BlackboardException("Blackboard has been closed");
         }
@@ -64,11 +196,7 @@ public synchronized void indexArtifact(BlackboardArtifact artifact) throws Black
         if (null == searchService) {
             throw new BlackboardException("Keyword search service not found");
         }
-        try {
-            searchService.index(artifact);
-        } catch (TskCoreException ex) {
-            throw new BlackboardException("Error indexing artifact", ex);
-        }
+        return searchService;
     }
 
     /**
@@ -137,9 +265,49 @@ public synchronized BlackboardAttribute.Type getOrAddAttributeType(String typeNa
      */
     @Override
     public synchronized void close() throws IOException {
+        //let the indexing threads finish the queued artifacts
+        indexingExecutor.shutdown();
+        try {
+            if (indexingExecutor.awaitTermination(30, TimeUnit.SECONDS) == false) {
+                logger.log(Level.WARNING, "Timed out waiting for queued artifacts to be indexed."); //NON-NLS
+                indexingExecutor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            indexingExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
         caseDb = null;
     }
 
+    /**
+     * Handles the failure to index an artifact queued with indexArtifacts.
+     */
+    @FunctionalInterface
+    public interface IndexingErrorHandler {
+
+        /**
+         * Called when the given artifact could not be indexed.
+         *
+         * @param artifact The artifact.
+         * @param ex       The reason it could not be indexed.
+         */
+        void indexingFailed(BlackboardArtifact artifact, BlackboardException ex);
+    }
+
+    /**
+     * An artifact waiting to be indexed, with the handler for its errors.
+     */
+    private static final class PendingArtifact {
+
+        private final BlackboardArtifact artifact;
+        private final IndexingErrorHandler errorHandler;
+
+        private PendingArtifact(BlackboardArtifact artifact, IndexingErrorHandler errorHandler) {
+            this.artifact = artifact;
+            this.errorHandler = errorHandler;
+        }
+    }
+
 
     /**
      * A blackboard exception.
@@ -495,6 +495,10 @@ protected Object doInBackground() throws Exception {
                 progress.switchToIndeterminate();
                 ExplorerManager explorerManager = DataResultViewerThumbnail.this.getExplorerManager();
                 Node root = explorerManager.getRootContext();
+                if (rootNodeChildren != null) {
+                    //drop the queued thumbnails of the pages that are no longer shown
+                    rootNodeChildren.cancelLoadingThumbnailsNotOnPage(currentPage - 1);
+                }
                 Node pageNode = root.getChildren().getNodeAt(currentPage - 1);
                 explorerManager.setExploredContext(pageNode);
                 currentPageImages = pageNode.getChildren().getNodesCount();
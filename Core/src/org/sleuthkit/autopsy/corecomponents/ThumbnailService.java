@@ -0,0 +1,234 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.corecomponents;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.ImageUtils;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * Generates thumbnails for the thumbnail result viewer on a pool shared by all
+ * viewer instances and sized to the number of cores.
+ *
+ * Requests are served most recently requested or touched first, so that the
+ * cells that were painted last, i.e. the visible ones, get their thumbnails
+ * before cells that have been scrolled away from. Concurrent requests for the
+ * same content and size share one generation job, and a job is dropped once
+ * all of its requests are cancelled. A job that is already running is not
+ * interrupted, since an interrupt closes the thumbnail store's file channels
+ * if it lands in a read or write; it finishes, and the thumbnail is stored
+ * for later requests.
+ */
+final class ThumbnailService {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailService.class.getName());
+
+    private static final ThumbnailService instance = new ThumbnailService();
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    // jobs that are queued or running, guarded by this
+    private final Map<JobKey, Job> jobs = new HashMap<>();
+
+    static ThumbnailService getInstance() {
+        return instance;
+    }
+
+    private ThumbnailService() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("Thumbnail-Loader-%d").setDaemon(true).build()); //NON-NLS
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Requests a thumbnail.
+     *
+     * @param content  The content to make a thumbnail of.
+     * @param size     The size of the thumbnail.
+     * @param listener Called with the thumbnail, on a pool thread, unless the
+     *                 request is cancelled first.
+     *
+     * @return The request, which can be used to raise its priority or cancel
+     *         it.
+     */
+    synchronized Request request(Content content, int size, Consumer<Image> listener) {
+        JobKey key = new JobKey(content.getId(), size);
+        Job job = jobs.get(key);
+        if (job == null) {
+            job = new Job(key, content);
+            jobs.put(key, job);
+            job.priority = sequence.incrementAndGet();
+            executor.execute(job);
+        } else {
+            reprioritize(job);
+        }
+        Request request = new Request(job, listener);
+        job.requests.add(request);
+        return request;
+    }
+
+    /**
+     * Moves a queued job to the front of the queue.
+     */
+    private synchronized void reprioritize(Job job) {
+        if (executor.getQueue().remove(job)) {
+            job.priority = sequence.incrementAndGet();
+            executor.execute(job);
+        }
+    }
+
+    private synchronized void cancel(Request request) {
+        Job job = request.job;
+        job.requests.remove(request);
+        if (job.requests.isEmpty() && jobs.get(job.key) == job) {
+            jobs.remove(job.key);
+            job.cancelled = true;
+            executor.remove(job);
+        }
+    }
+
+    /**
+     * A request for a thumbnail.
+     */
+    final class Request {
+
+        private final Job job;
+        private final Consumer<Image> listener;
+        private volatile boolean cancelled = false;
+
+        private Request(Job job, Consumer<Image> listener) {
+            this.job = job;
+            this.listener = listener;
+        }
+
+        /**
+         * Raises the priority of the request, for example because its cell was
+         * painted again and so is still visible.
+         */
+        void touch() {
+            reprioritize(job);
+        }
+
+        /**
+         * Cancels the request. The listener will not be called.
+         */
+        void cancel() {
+            cancelled = true;
+            ThumbnailService.this.cancel(this);
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * The generation of one thumbnail, shared by all the requests for it.
+     */
+    private final class Job implements Runnable, Comparable<Job> {
+
+        private final JobKey key;
+        private final Content content;
+        private final List<Request> requests = new ArrayList<>();
+        private volatile long priority;
+        private volatile boolean cancelled = false;
+
+        Job(JobKey key, Content content) {
+            this.key = key;
+            this.content = content;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            Image thumbnail;
+            try {
+                thumbnail = ImageUtils.getThumbnail(content, key.size);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Error generating thumbnail for " + content.getName(), ex); //NON-NLS
+                thumbnail = ImageUtils.getDefaultThumbnail();
+            }
+
+            List<Request> toNotify;
+            synchronized (ThumbnailService.this) {
+                if (jobs.get(key) == this) {
+                    jobs.remove(key);
+                }
+                toNotify = new ArrayList<>(requests);
+            }
+            for (Request request : toNotify) {
+                if (request.isCancelled() == false) {
+                    request.listener.accept(thumbnail);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            // most recent first
+            return Long.compare(other.priority, priority);
+        }
+    }
+
+    private static final class JobKey {
+
+        private final long objId;
+        private final int size;
+
+        JobKey(long objId, int size) {
+            this.objId = objId;
+            this.size = size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(objId, size);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final JobKey other = (JobKey) obj;
+            return this.objId == other.objId && this.size == other.size;
+        }
+    }
+}
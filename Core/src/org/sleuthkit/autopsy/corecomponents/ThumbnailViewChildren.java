@@ -19,7 +19,6 @@
 package org.sleuthkit.autopsy.corecomponents;
 
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.lang.ref.SoftReference;
@@ -27,14 +26,9 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
-import java.util.logging.Level;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -74,9 +68,14 @@ class ThumbnailViewChildren extends Children.Keys<Integer> {
     private static final String CANCELLING_POSTIX = Bundle.ThumbnailViewChildren_progress_cancelling();
     static final int IMAGES_PER_PAGE = 200;
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(3,
-            new ThreadFactoryBuilder().setNameFormat("Thumbnail-Loader-%d").build());
-    private final List<ThumbnailViewNode.ThumbnailLoadTask> tasks = new ArrayList<>();
+    /**
+     * Minimum time between two priority bumps of the same thumbnail request.
+     * The wait spinner repaints visible cells continuously.
+     */
+    private static final long TOUCH_INTERVAL_MS = 250;
+
+    private final Map<Integer, List<ThumbnailViewNode>> loadingNodesByPage = new HashMap<>();
+    private boolean loadingCancelled = false;
 
     private final Node parent;
     private final List<List<Node>> pages = new ArrayList<>();
@@ -236,23 +235,55 @@ public void setThumbsSize(int thumbSize) {
         }
     }
 
-    synchronized void cancelLoadingThumbnails() {
-        tasks.forEach(task -> task.cancel(Boolean.TRUE));
-        executor.shutdownNow();
-        tasks.clear();
+    void cancelLoadingThumbnails() {
+        List<ThumbnailViewNode> nodesToCancel = new ArrayList<>();
+        synchronized (this) {
+            loadingCancelled = true;
+            loadingNodesByPage.values().forEach(nodesToCancel::addAll);
+            loadingNodesByPage.clear();
+        }
+        //cancel outside of the lock, the nodes lock themselves first when they request thumbnails
+        nodesToCancel.forEach(ThumbnailViewNode::cancelThumbnailLoading);
+    }
+
+    /**
+     * Cancel the loading of thumbnails that are no longer visible because a
+     * different page is shown. They are requested again if their page is
+     * shown again.
+     *
+     * @param pageNum The (zero-based) page that is being shown.
+     */
+    void cancelLoadingThumbnailsNotOnPage(int pageNum) {
+        List<ThumbnailViewNode> nodesToCancel = new ArrayList<>();
+        synchronized (this) {
+            loadingNodesByPage.entrySet().removeIf(entry -> {
+                if (entry.getKey() != pageNum) {
+                    nodesToCancel.addAll(entry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+        nodesToCancel.forEach(ThumbnailViewNode::cancelThumbnailLoading);
     }
 
     private synchronized ThumbnailViewNode.ThumbnailLoadTask loadThumbnail(ThumbnailViewNode node) {
-        if (executor.isShutdown() == false) {
+        if (loadingCancelled == false) {
             ThumbnailViewNode.ThumbnailLoadTask task = node.new ThumbnailLoadTask();
-            tasks.add(task);
-            executor.submit(task);
+            loadingNodesByPage.computeIfAbsent(node.pageNum, page -> new ArrayList<>()).add(node);
             return task;
         } else {
             return null;
         }
     }
 
+    private synchronized void thumbnailLoaded(ThumbnailViewNode node) {
+        List<ThumbnailViewNode> nodes = loadingNodesByPage.get(node.pageNum);
+        if (nodes != null) {
+            nodes.remove(node);
+        }
+    }
+
     /**
      * Node that wraps around original node and adds the thumbnail representing
      * the image/video.
@@ -266,6 +297,7 @@ private class ThumbnailViewNode extends FilterNode {
         private SoftReference<Image> thumbCache = null;
         private int thumbSize;
         private final Content content;
+        private final int pageNum;
 
         private ThumbnailLoadTask thumbTask;
         private Timer waitSpinnerTimer;
@@ -275,10 +307,12 @@ private class ThumbnailViewNode extends FilterNode {
          *
          * @param wrappedNode The original node that this Node wraps.
          * @param thumbSize The hight and/or width of the thumbnail in pixels.
+         * @param pageNum The page the node is on.
          */
-        private ThumbnailViewNode(Node wrappedNode, int thumbSize) {
+        private ThumbnailViewNode(Node wrappedNode, int thumbSize, int pageNum) {
             super(wrappedNode, FilterNode.Children.LEAF);
             this.thumbSize = thumbSize;
+            this.pageNum = pageNum;
             this.content = this.getLookup().lookup(AbstractFile.class);
         }
 
@@ -304,7 +338,9 @@ synchronized public Image getIcon(int type) {
 
             if (thumbTask == null) {
                 thumbTask = loadThumbnail(ThumbnailViewNode.this);
-
+            } else {
+                //the cell is being painted, so it is visible: load it sooner
+                thumbTask.touch();
             }
             if (waitSpinnerTimer == null) {
                 waitSpinnerTimer = new Timer(1, actionEvent -> fireIconChange());
@@ -316,67 +352,77 @@ synchronized public Image getIcon(int type) {
         synchronized void setThumbSize(int iconSize) {
             this.thumbSize = iconSize;
             thumbCache = null;
+            cancelThumbnailLoading();
+        }
+
+        /**
+         * Cancel the loading of the thumbnail, if it is in progress. It will
+         * be requested again the next time the icon is painted.
+         */
+        synchronized void cancelThumbnailLoading() {
             if (thumbTask != null) {
-                thumbTask.cancel(true);
+                thumbTask.cancel();
                 thumbTask = null;
             }
-
+            SwingUtilities.invokeLater(() -> {
+                synchronized (ThumbnailViewNode.this) {
+                    if (waitSpinnerTimer != null && thumbTask == null) {
+                        waitSpinnerTimer.stop();
+                        waitSpinnerTimer = null;
+                    }
+                }
+            });
         }
 
-        private class ThumbnailLoadTask extends FutureTask<Image> {
+        /**
+         * A request for this node's thumbnail to the shared ThumbnailService.
+         */
+        private class ThumbnailLoadTask {
 
             private final ProgressHandle progressHandle;
             private final String progressText;
-            private boolean cancelled = false;
+            private final ThumbnailService.Request request;
+            private long lastTouched = System.currentTimeMillis();
 
             ThumbnailLoadTask() {
-                super(new Callable<Image>() {  //Does not work as lambda expression in dependent projects in IDE
-                    public Image call() {
-                        return ImageUtils.getThumbnail(content, thumbSize);
-                    }
-                });
-                //super(() -> ImageUtils.getThumbnail(content, thumbSize));
                 progressText = Bundle.ThumbnailViewNode_progressHandle_text(content.getName());
 
                 progressHandle = ProgressHandleFactory.createSystemHandle(progressText);
                 progressHandle.setInitialDelay(500);
                 progressHandle.start();
+                request = ThumbnailService.getInstance().request(content, thumbSize, this::done);
             }
 
-            @Override
-            synchronized public boolean cancel(boolean mayInterrupt) {
-                cancelled = true;
-                progressHandle.suspend(progressText + " " + CANCELLING_POSTIX);
-                return super.cancel(mayInterrupt);
+            void touch() {
+                long now = System.currentTimeMillis();
+                if (now - lastTouched > TOUCH_INTERVAL_MS) {
+                    lastTouched = now;
+                    request.touch();
+                }
             }
 
-            @Override
-            synchronized public boolean isCancelled() {
-                return cancelled || super.isCancelled(); //To change body of generated methods, choose Tools | Templates.
+            void cancel() {
+                progressHandle.suspend(progressText + " " + CANCELLING_POSTIX);
+                request.cancel();
+                progressHandle.finish();
             }
 
-            @Override
-            synchronized protected void done() {
+            private void done(Image thumbnail) {
                 progressHandle.finish();
+                thumbnailLoaded(ThumbnailViewNode.this);
                 SwingUtilities.invokeLater(() -> {
-
-                    if (waitSpinnerTimer != null) {
-                        waitSpinnerTimer.stop();
-                        waitSpinnerTimer = null;
-                    }
-
-                    try {
-                        if (isCancelled() == false) {
-                            thumbCache = new SoftReference<>(get());
-                            fireIconChange();
+                    synchronized (ThumbnailViewNode.this) {
+                        if (waitSpinnerTimer != null) {
+                            waitSpinnerTimer.stop();
+                            waitSpinnerTimer = null;
                         }
-                    } catch (CancellationException ex) {
-                        //Task was cancelled, do nothing
-                    } catch (InterruptedException | ExecutionException ex) {
-                        if (false == (ex.getCause() instanceof CancellationException)) {
-                            logger.log(Level.SEVERE, "Error getting thumbnail icon for " + content.getName(), ex); //NON-NLS
+                        if (request.isCancelled() == false && thumbTask == ThumbnailLoadTask.this) {
+                            thumbCache = new SoftReference<>(thumbnail);
+                            //request it again if the cached thumbnail gets collected
+                            thumbTask = null;
                         }
                     }
+                    fireIconChange();
                 });
             }
         }
@@ -390,7 +436,7 @@ private class ThumbnailPageNode extends AbstractNode {
 
         private ThumbnailPageNode(Integer pageNum, List<Node> childNodes) {
 
-            super(new ThumbnailPageNodeChildren(childNodes), Lookups.singleton(pageNum));
+            super(new ThumbnailPageNodeChildren(childNodes, pageNum), Lookups.singleton(pageNum));
             setName(Integer.toString(pageNum + 1));
             int from = 1 + (pageNum * IMAGES_PER_PAGE);
             int to = from + ((ThumbnailPageNodeChildren) getChildren()).getChildCount() - 1;
@@ -411,10 +457,12 @@ private class ThumbnailPageNodeChildren extends Children.Keys<Node> {
          * wrapped original nodes
          */
         private List<Node> keyNodes = null;
+        private final int pageNum;
 
-        ThumbnailPageNodeChildren(List<Node> keyNodes) {
+        ThumbnailPageNodeChildren(List<Node> keyNodes, int pageNum) {
             super(true);
             this.keyNodes = keyNodes;
+            this.pageNum = pageNum;
         }
 
         @Override
@@ -436,7 +484,7 @@ int getChildCount() {
         @Override
         protected Node[] createNodes(Node wrapped) {
             if (wrapped != null) {
-                final ThumbnailViewNode thumb = new ThumbnailViewNode(wrapped, thumbSize);
+                final ThumbnailViewNode thumb = new ThumbnailViewNode(wrapped, thumbSize, pageNum);
                 return new Node[]{thumb};
             } else {
                 return new Node[]{};
@@ -41,10 +41,7 @@
 import static java.util.Objects.nonNull;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
@@ -58,7 +55,6 @@
 import javax.imageio.stream.ImageInputStream;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.opencv.core.Core;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -99,13 +95,12 @@ public class ImageUtils {
     private static final boolean OPEN_CV_LOADED;
 
     /**
-     * Map from tsk object id to Java File object. Used to get the same File for
-     * different tasks related to the same object so we can then synchronize on
-     * the File.
+     * Packed store of the thumbnails generated for the current case, opened
+     * lazily.
      *
-     * NOTE: Must be cleared when the case is changed.
+     * NOTE: Must be closed when the case is changed.
      */
-    private static final ConcurrentHashMap<Long, File> cacheFileMap = new ConcurrentHashMap<>();
+    private static ThumbnailStore thumbnailStore;
 
     static {
         ImageIO.scanForPlugins();
@@ -153,8 +148,8 @@ public class ImageUtils {
                 "application/x-123")); //TODO: is this correct? -jm //NON-NLS
         SUPPORTED_IMAGE_MIME_TYPES.removeIf("application/octet-stream"::equals); //NON-NLS
 
-        //Clear the file map when the case changes, so we don't accidentaly get images from the old case.
-        Case.addEventTypeSubscriber(EnumSet.of(Case.Events.CURRENT_CASE), evt -> cacheFileMap.clear());
+        //Close the thumbnail store when the case changes, so we don't accidentaly get images from the old case.
+        Case.addEventTypeSubscriber(EnumSet.of(Case.Events.CURRENT_CASE), evt -> closeThumbnailStore());
     }
 
     /**
@@ -163,11 +158,32 @@ public class ImageUtils {
     private static FileTypeDetector fileTypeDetector;
 
     /**
-     * Thread/Executor that saves generated thumbnails to disk in the background
+     * Get the thumbnail store of the current case, opening it if needed.
+     *
+     * @return The thumbnail store, or null if there is no open case or the
+     *         store could not be opened.
      */
-    private static final Executor imageSaver =
-            Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
-                    .namingPattern("thumbnail-saver-%d").build()); //NON-NLS
+    @Nullable
+    synchronized private static ThumbnailStore getThumbnailStore() {
+        if (thumbnailStore == null) {
+            try {
+                String cacheDirectory = Case.getCurrentCaseThrows().getCacheDirectory();
+                thumbnailStore = new ThumbnailStore(Paths.get(cacheDirectory, "thumbnails")); //NON-NLS
+            } catch (NoCurrentCaseException ex) {
+                LOGGER.log(Level.WARNING, "Could not open thumbnail store.  No case is open."); //NON-NLS
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not open thumbnail store.", ex); //NON-NLS
+            }
+        }
+        return thumbnailStore;
+    }
+
+    synchronized private static void closeThumbnailStore() {
+        if (thumbnailStore != null) {
+            thumbnailStore.close();
+            thumbnailStore = null;
+        }
+    }
 
     public static List<String> getSupportedImageExtensions() {
         return Collections.unmodifiableList(SUPPORTED_IMAGE_EXTENSIONS);
@@ -356,8 +372,12 @@ private static BufferedInputStream getBufferedReadContentStream(AbstractFile fil
     }
 
     /**
-     * Get a thumbnail of a specified size for the given image. Generates the
-     * thumbnail if it is not already cached.
+     * Get a thumbnail of a specified size for the given image, as a PNG file.
+     * Generates the thumbnail if it is not already cached.
+     *
+     * Thumbnails are kept in a packed store rather than as individual files,
+     * so this writes the thumbnail out to its own file. Use getThumbnail
+     * instead unless a file is really needed.
      *
      * @param content  the content to generate a thumbnail for
      * @param iconSize the size (one side of a square) in pixels to generate
@@ -367,30 +387,43 @@ private static BufferedInputStream getBufferedReadContentStream(AbstractFile fil
      */
     @Nullable
     public static File getCachedThumbnailFile(Content content, int iconSize) {
-        getThumbnail(content, iconSize);
-        return getCachedThumbnailLocation(content.getId());
+        BufferedImage thumbnail = getThumbnail(content, iconSize);
+        File cacheFile = getCachedThumbnailLocation(content.getId(), iconSize);
+        if (cacheFile != null && thumbnail != DEFAULT_THUMBNAIL) {
+            synchronized (ImageUtils.class) {
+                try {
+                    if (cacheFile.exists() == false) {
+                        Files.createParentDirs(cacheFile);
+                        ImageIO.write(thumbnail, FORMAT, cacheFile);
+                    }
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Could not write thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(content)); //NON-NLS
+                }
+            }
+        }
+        return cacheFile;
     }
 
     /**
-     * Get the location,as a java File, of the cached thumbnail for an file with
-     * the given fileID . The returned File may not exist on disk yet.
+     * Get the location,as a java File, of the thumbnail file written by
+     * getCachedThumbnailFile for an file with the given fileID and thumbnail
+     * size. The returned File may not exist on disk yet.
      *
-     * @param fileID the fileID to get the cached thumbnail location for
+     * @param fileID   the fileID to get the cached thumbnail location for
+     * @param iconSize the size of the thumbnail
      *
      * @return A File object representing the location of the cached thumbnail.
      *         This file may not actually exist(yet). Returns null if there was
      *         any problem getting the file, such as no case was open.
      */
-    private static File getCachedThumbnailLocation(long fileID) {
-        return cacheFileMap.computeIfAbsent(fileID, id -> {
-            try {
-                String cacheDirectory = Case.getCurrentCaseThrows().getCacheDirectory();
-                return Paths.get(cacheDirectory, "thumbnails", fileID + ".png").toFile(); //NON-NLS
-            } catch (NoCurrentCaseException e) {
-                LOGGER.log(Level.WARNING, "Could not get cached thumbnail location.  No case is open."); //NON-NLS
-                return null;
-            }
-        });
+    private static File getCachedThumbnailLocation(long fileID, int iconSize) {
+        try {
+            String cacheDirectory = Case.getCurrentCaseThrows().getCacheDirectory();
+            return Paths.get(cacheDirectory, "thumbnails", "files", fileID + "_" + iconSize + ".png").toFile(); //NON-NLS
+        } catch (NoCurrentCaseException e) {
+            LOGGER.log(Level.WARNING, "Could not get cached thumbnail location.  No case is open."); //NON-NLS
+            return null;
+        }
     }
 
     /**
@@ -637,7 +670,7 @@ static private class GetThumbnailTask extends ReadImageTaskBase {
         private static final String FAILED_TO_READ_IMAGE_FOR_THUMBNAIL_GENERATION = "Failed to read {0} for thumbnail generation."; //NON-NLS
 
         private final int iconSize;
-        private final File cacheFile;
+        private final ThumbnailStore store;
         private final boolean defaultOnFailure;
 
         @NbBundle.Messages({"# {0} - file name",
@@ -649,7 +682,12 @@ private GetThumbnailTask(AbstractFile file, int iconSize, boolean defaultOnFailu
             updateMessage(Bundle.GetOrGenerateThumbnailTask_loadingThumbnailFor(file.getName()));
             this.iconSize = iconSize;
             this.defaultOnFailure = defaultOnFailure;
-            this.cacheFile = getCachedThumbnailLocation(file.getId());
+            this.store = getThumbnailStore();
+        }
+
+        @Override
+        protected int getSubsamplingTargetSize() {
+            return iconSize;
         }
 
         @Override
@@ -661,26 +699,14 @@ protected javafx.scene.image.Image call() throws Exception {
                 return readImage();
             }
 
-            // If a thumbnail file is already saved locally, just read that.
-            if (cacheFile != null) {
-                synchronized (cacheFile) {
-                    if (cacheFile.exists()) {
-                        try {
-                            if (isCancelled()) {
-                                return null;
-                            }
-                            BufferedImage cachedThumbnail = ImageIO.read(cacheFile);
-                            if (isCancelled()) {
-                                return null;
-                            }
-                            if (nonNull(cachedThumbnail) && cachedThumbnail.getWidth() == iconSize) {
-                                return SwingFXUtils.toFXImage(cachedThumbnail, null);
-                            }
-                        } catch (Exception ex) {
-                            LOGGER.log(Level.WARNING, "ImageIO had a problem reading the cached thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(file)); //NON-NLS
-                            cacheFile.delete();  //since we can't read the file we might as well delete it.
-                        }
-                    }
+            // If a thumbnail of this size is already stored, just read that.
+            if (store != null) {
+                BufferedImage cachedThumbnail = store.get(file.getId(), iconSize);
+                if (isCancelled()) {
+                    return null;
+                }
+                if (nonNull(cachedThumbnail)) {
+                    return SwingFXUtils.toFXImage(cachedThumbnail, null);
                 }
             }
 
@@ -753,9 +779,9 @@ protected javafx.scene.image.Image call() throws Exception {
 
             updateProgress(-1, 1);
 
-            //if we got a valid thumbnail save it
-            if ((cacheFile != null) && thumbnail != null && DEFAULT_THUMBNAIL != thumbnail) {
-                saveThumbnail(thumbnail);
+            //if we got a valid thumbnail save it, the store writes it in the background
+            if ((store != null) && thumbnail != null && DEFAULT_THUMBNAIL != thumbnail) {
+                store.put(file.getId(), iconSize, thumbnail);
             }
             if (isCancelled()) {
                 return null;
@@ -763,26 +789,6 @@ protected javafx.scene.image.Image call() throws Exception {
             return SwingFXUtils.toFXImage(thumbnail, null);
         }
 
-        /**
-         * submit the thumbnail saving to another background thread.
-         *
-         * @param thumbnail
-         */
-        private void saveThumbnail(BufferedImage thumbnail) {
-            imageSaver.execute(() -> {
-                try {
-                    synchronized (cacheFile) {
-                        Files.createParentDirs(cacheFile);
-                        if (cacheFile.exists()) {
-                            cacheFile.delete();
-                        }
-                        ImageIO.write(thumbnail, FORMAT, cacheFile);
-                    }
-                } catch (Exception ex) {
-                    LOGGER.log(Level.WARNING, "Could not write thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(file)); //NON-NLS
-                }
-            });
-        }
     }
 
     /**
@@ -834,6 +840,16 @@ static private abstract class ReadImageTaskBase extends Task<javafx.scene.image.
             this.file = file;
         }
 
+        /**
+         * Gets the size that the image will be scaled down to after it is
+         * read, so that it can be subsampled while it is decoded.
+         *
+         * @return The target size in pixels, or 0 to read the full image.
+         */
+        protected int getSubsamplingTargetSize() {
+            return 0;
+        }
+
         protected javafx.scene.image.Image readImage() throws IOException {
             if (isCancelled()) {
                 return null;
@@ -865,7 +881,25 @@ protected javafx.scene.image.Image readImage() throws IOException {
                          * param.
                          */
                         ImageReadParam param = imageReader.getDefaultReadParam();
-                        BufferedImage bufferedImage = imageReader.getImageTypes(0).next().createBufferedImage(imageReader.getWidth(0), imageReader.getHeight(0));
+                        int width = imageReader.getWidth(0);
+                        int height = imageReader.getHeight(0);
+                        /*
+                         * If only a small version of the image is needed, let
+                         * the reader skip pixels while decoding instead of
+                         * decoding the full image and scaling it down. Keep at
+                         * least twice the target size so the final high
+                         * quality resize still has detail to work with.
+                         */
+                        int targetSize = getSubsamplingTargetSize();
+                        if (targetSize > 0) {
+                            int subsampling = Math.max(1, Math.max(width, height) / (2 * targetSize));
+                            if (subsampling > 1) {
+                                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                                width = (width + subsampling - 1) / subsampling;
+                                height = (height + subsampling - 1) / subsampling;
+                            }
+                        }
+                        BufferedImage bufferedImage = imageReader.getImageTypes(0).next().createBufferedImage(width, height);
                         param.setDestination(bufferedImage);
                         try {
                             if (isCancelled()) {
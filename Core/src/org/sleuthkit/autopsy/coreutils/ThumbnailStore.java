@@ -0,0 +1,452 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.coreutils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Packed, per-case store for generated thumbnails.
+ *
+ * Instead of one PNG file per object, the encoded thumbnails are appended to
+ * a small number of segment files, and an append-only index file records the
+ * segment, offset and length of each thumbnail, keyed by object id and icon
+ * size. The index is loaded into memory when the store is opened. Writes are
+ * queued and appended in batches by a single background thread, and reads are
+ * positional reads of the segment files, which are not memory-mapped so that
+ * they are not kept locked after the store is closed. Decoded thumbnails are kept in an
+ * in-memory LRU cache bounded by their size in bytes.
+ *
+ * The store is written by a single process; in multi-user cases each host has
+ * its own cache directory.
+ */
+final class ThumbnailStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ThumbnailStore.class.getName());
+
+    private static final String FORMAT = "png"; //NON-NLS
+    private static final String INDEX_FILE_NAME = "thumbnails.idx"; //NON-NLS
+    private static final String SEGMENT_FILE_NAME_FORMAT = "thumbnails-%05d.seg"; //NON-NLS
+
+    /**
+     * Size of an index record: object id (8), icon size (4), segment number
+     * (4), offset (8), length (4).
+     */
+    private static final int INDEX_RECORD_SIZE = 28;
+
+    /**
+     * A new segment is started when the current one reaches this size.
+     */
+    private static final long MAX_SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Maximum number of queued thumbnails appended in one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * Upper bound, in bytes, on the decoded thumbnails kept in memory.
+     */
+    private static final long MAX_DECODED_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final Path directory;
+    private final FileChannel indexChannel;
+    private final Map<Key, Location> index = new ConcurrentHashMap<>();
+    private final Map<Key, byte[]> pendingWrites = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> segmentChannels = new ConcurrentHashMap<>();
+    private final Cache<Key, BufferedImage> decodedCache = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_DECODED_CACHE_BYTES)
+            .<Key, BufferedImage>weigher((key, image) -> image.getWidth() * image.getHeight() * 4)
+            .build();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+            .namingPattern("thumbnail-store-writer-%d").build()); //NON-NLS
+    private final Object writeLock = new Object();
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+    private boolean channelsClosed = false;
+    private int currentSegment;
+    private long currentSegmentSize;
+
+    /**
+     * Opens the store in the given directory, creating it if needed, and loads
+     * its index.
+     *
+     * @param directory The directory to keep the segment and index files in.
+     *
+     * @throws IOException If the directory or index could not be opened.
+     */
+    ThumbnailStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadIndex();
+    }
+
+    /**
+     * Reads the index file into memory. Later records for the same key
+     * replace earlier ones. A partially written record at the end of the
+     * file, or a record that points past the end of its segment, is the
+     * result of an interrupted write and is dropped.
+     */
+    private void loadIndex() throws IOException {
+        long indexSize = indexChannel.size();
+        long validSize = indexSize - (indexSize % INDEX_RECORD_SIZE);
+        Map<Integer, Long> segmentSizes = new ConcurrentHashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_RECORD_SIZE * 4096);
+        long position = 0;
+        while (position < validSize) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), validSize - position));
+            while (buffer.hasRemaining()) {
+                if (indexChannel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            while (buffer.remaining() >= INDEX_RECORD_SIZE) {
+                Key key = new Key(buffer.getLong(), buffer.getInt());
+                Location location = new Location(buffer.getInt(), buffer.getLong(), buffer.getInt());
+                long segmentSize = segmentSizes.computeIfAbsent(location.segment, this::getSegmentSize);
+                if (location.offset + location.length <= segmentSize) {
+                    index.put(key, location);
+                }
+            }
+            position += buffer.limit();
+        }
+        // drop any partial record so that new records stay aligned
+        indexChannel.truncate(validSize);
+        indexChannel.position(validSize);
+
+        currentSegment = 0;
+        while (Files.exists(getSegmentPath(currentSegment + 1))) {
+            currentSegment++;
+        }
+        currentSegmentSize = getSegmentSize(currentSegment);
+    }
+
+    private long getSegmentSize(int segment) {
+        try {
+            Path path = getSegmentPath(segment);
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not get size of thumbnail segment " + segment, ex); //NON-NLS
+            return 0;
+        }
+    }
+
+    private Path getSegmentPath(int segment) {
+        return directory.resolve(String.format(SEGMENT_FILE_NAME_FORMAT, segment));
+    }
+
+    /**
+     * Checks whether a thumbnail is stored or queued for storing.
+     *
+     * @param objId    The object id of the content.
+     * @param iconSize The size of the thumbnail.
+     *
+     * @return True if the thumbnail is available.
+     */
+    boolean contains(long objId, int iconSize) {
+        Key key = new Key(objId, iconSize);
+        return index.containsKey(key) || pendingWrites.containsKey(key);
+    }
+
+    /**
+     * Gets a stored thumbnail.
+     *
+     * @param objId    The object id of the content.
+     * @param iconSize The size of the thumbnail.
+     *
+     * @return The thumbnail, or null if it is not stored or could not be
+     *         read.
+     */
+    @Nullable
+    BufferedImage get(long objId, int iconSize) {
+        Key key = new Key(objId, iconSize);
+        BufferedImage image = decodedCache.getIfPresent(key);
+        if (image != null) {
+            return image;
+        }
+
+        byte[] encoded = pendingWrites.get(key);
+        if (encoded == null) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            try {
+                encoded = read(location);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not read stored thumbnail for object " + objId, ex); //NON-NLS
+                index.remove(key);
+                return null;
+            }
+        }
+
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(encoded));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not decode stored thumbnail for object " + objId, ex); //NON-NLS
+        }
+        if (image == null) {
+            // the thumbnail can't be used, so forget it and let it be regenerated
+            index.remove(key);
+            return null;
+        }
+        decodedCache.put(key, image);
+        return image;
+    }
+
+    /**
+     * Stores a thumbnail. The thumbnail is encoded on the calling thread and
+     * written to disk in the background, together with other queued
+     * thumbnails. Until it is written it is served from memory.
+     *
+     * @param objId     The object id of the content.
+     * @param iconSize  The size of the thumbnail.
+     * @param thumbnail The thumbnail.
+     */
+    void put(long objId, int iconSize, BufferedImage thumbnail) {
+        Key key = new Key(objId, iconSize);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            if (ImageIO.write(thumbnail, FORMAT, encoded) == false) {
+                return;
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not encode thumbnail for object " + objId, ex); //NON-NLS
+            return;
+        }
+        synchronized (writeLock) {
+            if (writer.isShutdown()) {
+                return;
+            }
+            decodedCache.put(key, thumbnail);
+            pendingWrites.put(key, encoded.toByteArray());
+            if (flushScheduled == false) {
+                flushScheduled = true;
+                writer.execute(this::flush);
+            }
+        }
+    }
+
+    /**
+     * Appends the queued thumbnails to the current segment, and then their
+     * index records to the index, in batches.
+     */
+    private void flush() {
+        synchronized (writeLock) {
+            flushScheduled = false;
+        }
+        List<Key> keys = new ArrayList<>(pendingWrites.keySet());
+        for (int start = 0; start < keys.size(); start += MAX_BATCH_SIZE) {
+            try {
+                writeBatch(keys.subList(start, Math.min(start + MAX_BATCH_SIZE, keys.size())));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not write thumbnails to the thumbnail store", ex); //NON-NLS
+            }
+        }
+    }
+
+    private void writeBatch(List<Key> keys) throws IOException {
+        if (currentSegmentSize >= MAX_SEGMENT_SIZE) {
+            currentSegment++;
+            currentSegmentSize = 0;
+        }
+        FileChannel segmentChannel = getSegmentChannel(currentSegment);
+
+        List<ByteBuffer> data = new ArrayList<>();
+        List<Key> writtenKeys = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        long offset = currentSegmentSize;
+        for (Key key : keys) {
+            byte[] encoded = pendingWrites.get(key);
+            if (encoded != null) {
+                data.add(ByteBuffer.wrap(encoded));
+                writtenKeys.add(key);
+                locations.add(new Location(currentSegment, offset, encoded.length));
+                offset += encoded.length;
+            }
+        }
+        if (data.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer[] buffers = data.toArray(new ByteBuffer[data.size()]);
+        segmentChannel.position(currentSegmentSize);
+        long remaining = offset - currentSegmentSize;
+        while (remaining > 0) {
+            remaining -= segmentChannel.write(buffers);
+        }
+        currentSegmentSize = offset;
+
+        ByteBuffer records = ByteBuffer.allocate(INDEX_RECORD_SIZE * writtenKeys.size());
+        for (int i = 0; i < writtenKeys.size(); i++) {
+            Key key = writtenKeys.get(i);
+            Location location = locations.get(i);
+            records.putLong(key.objId).putInt(key.iconSize)
+                    .putInt(location.segment).putLong(location.offset).putInt(location.length);
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+            indexChannel.write(records);
+        }
+
+        for (int i = 0; i < writtenKeys.size(); i++) {
+            Key key = writtenKeys.get(i);
+            index.put(key, locations.get(i));
+            pendingWrites.remove(key, data.get(i).array());
+        }
+    }
+
+    private synchronized FileChannel getSegmentChannel(int segment) throws IOException {
+        FileChannel channel = segmentChannels.get(segment);
+        // a read or write by a thread that is interrupted closes the channel
+        if (channel == null || channel.isOpen() == false) {
+            if (channelsClosed) {
+                throw new IOException("The thumbnail store is closed"); //NON-NLS
+            }
+            channel = FileChannel.open(getSegmentPath(segment),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segmentChannels.put(segment, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Reads an encoded thumbnail with positional reads of its segment, which
+     * do not move the position the writer appends at.
+     */
+    private byte[] read(Location location) throws IOException {
+        FileChannel channel = getSegmentChannel(location.segment);
+        ByteBuffer encoded = ByteBuffer.allocate(location.length);
+        while (encoded.hasRemaining()) {
+            if (channel.read(encoded, location.offset + encoded.position()) < 0) {
+                throw new IOException("Thumbnail location is past the end of segment " + location.segment); //NON-NLS
+            }
+        }
+        return encoded.array();
+    }
+
+    /**
+     * Writes any queued thumbnails and closes the files of the store.
+     */
+    void close() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writer.execute(this::flush);
+            writer.shutdown();
+        }
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "Interrupted while waiting for thumbnails to be written", ex); //NON-NLS
+            Thread.currentThread().interrupt();
+        }
+        decodedCache.invalidateAll();
+        synchronized (this) {
+            channelsClosed = true;
+            for (FileChannel channel : segmentChannels.values()) {
+                closeQuietly(channel);
+            }
+        }
+        closeQuietly(indexChannel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error closing thumbnail store file", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Identifies a thumbnail: the object it was made for and its size.
+     */
+    private static final class Key {
+
+        private final long objId;
+        private final int iconSize;
+
+        Key(long objId, int iconSize) {
+            this.objId = objId;
+            this.iconSize = iconSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(objId, iconSize);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.objId == other.objId && this.iconSize == other.iconSize;
+        }
+    }
+
+    /**
+     * Where an encoded thumbnail is stored.
+     */
+    private static final class Location {
+
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
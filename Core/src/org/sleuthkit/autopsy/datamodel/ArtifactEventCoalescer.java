@@ -0,0 +1,154 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.datamodel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+
+/**
+ * Collects the artifacts carried by DATA_ADDED events over a short window and
+ * hands them to a tree model as a single batch, so that a burst of events
+ * results in one incremental update instead of one full re-query per event.
+ * If an event arrives without artifacts, the pending batch is discarded and a
+ * full refresh is requested instead.
+ */
+final class ArtifactEventCoalescer {
+
+    private static final Logger logger = Logger.getLogger(ArtifactEventCoalescer.class.getName());
+    private static final long DEFAULT_WINDOW_MS = 500;
+
+    /*
+     * All coalescers share a single daemon thread. The updates they run are
+     * short compared to the window, and sharing the thread keeps the tree
+     * models from issuing their case database queries concurrently.
+     */
+    private static final ScheduledThreadPoolExecutor executor;
+
+    static {
+        executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("tree-model-updater-%d").setDaemon(true).build()); //NON-NLS
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Consumer<List<BlackboardArtifact>> incrementalUpdater;
+    private final Runnable fullUpdater;
+    private final long windowMs;
+
+    private final Object lock = new Object();
+    // keyed by artifact id to drop artifacts that are reported more than once
+    private Map<Long, BlackboardArtifact> pendingArtifacts = new LinkedHashMap<>();
+    private boolean fullUpdatePending = false;
+    private boolean flushScheduled = false;
+
+    /**
+     * Constructs a coalescer that uses the default window.
+     *
+     * @param incrementalUpdater Applies a batch of new artifacts to the model.
+     * @param fullUpdater        Rebuilds the model from the case database.
+     */
+    ArtifactEventCoalescer(Consumer<List<BlackboardArtifact>> incrementalUpdater, Runnable fullUpdater) {
+        this(incrementalUpdater, fullUpdater, DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * Constructs a coalescer.
+     *
+     * @param incrementalUpdater Applies a batch of new artifacts to the model.
+     * @param fullUpdater        Rebuilds the model from the case database.
+     * @param windowMs           How long, in milliseconds, to collect events
+     *                           before applying them.
+     */
+    ArtifactEventCoalescer(Consumer<List<BlackboardArtifact>> incrementalUpdater, Runnable fullUpdater, long windowMs) {
+        this.incrementalUpdater = incrementalUpdater;
+        this.fullUpdater = fullUpdater;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Queues the artifacts from a DATA_ADDED event.
+     *
+     * @param artifacts The artifacts from the event, may be null if the module
+     *                  that posted them does not report them.
+     */
+    void addArtifacts(Collection<BlackboardArtifact> artifacts) {
+        if (artifacts == null) {
+            requestFullUpdate();
+            return;
+        }
+        synchronized (lock) {
+            if (fullUpdatePending == false) {
+                for (BlackboardArtifact artifact : artifacts) {
+                    pendingArtifacts.put(artifact.getArtifactID(), artifact);
+                }
+            }
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Queues a full rebuild of the model. Any artifacts that are already
+     * queued are dropped since the rebuild will pick them up.
+     */
+    void requestFullUpdate() {
+        synchronized (lock) {
+            fullUpdatePending = true;
+            pendingArtifacts.clear();
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled == false) {
+            flushScheduled = true;
+            executor.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        boolean doFullUpdate;
+        List<BlackboardArtifact> artifacts;
+        synchronized (lock) {
+            doFullUpdate = fullUpdatePending;
+            artifacts = new ArrayList<>(pendingArtifacts.values());
+            pendingArtifacts = new LinkedHashMap<>();
+            fullUpdatePending = false;
+            flushScheduled = false;
+        }
+
+        try {
+            if (doFullUpdate) {
+                fullUpdater.run();
+            } else if (artifacts.isEmpty() == false) {
+                incrementalUpdater.accept(artifacts);
+            }
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Unexpected error updating tree model", ex); //NON-NLS
+        }
+    }
+}
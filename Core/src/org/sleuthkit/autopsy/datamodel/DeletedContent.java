@@ -169,7 +169,7 @@ public static class DeletedContentsChildren extends ChildFactory<DeletedContent.
 
         public DeletedContentsChildren(SleuthkitCase skCase) {
             this.skCase = skCase;
-            this.notifier = new DeletedContentsChildrenObservable();
+            this.notifier = new DeletedContentsChildrenObservable(skCase);
         }
 
         /**
@@ -182,7 +182,12 @@ private static final class DeletedContentsChildrenObservable extends Observable
                 Case.Events.CURRENT_CASE
             );
 
-            DeletedContentsChildrenObservable() {
+            private final ViewsTreeStatistics statistics;
+            private final Observer statisticsObserver = (Observable o, Object arg) -> update();
+
+            DeletedContentsChildrenObservable(SleuthkitCase skCase) {
+                statistics = ViewsTreeStatistics.getInstance(skCase);
+                statistics.addObserver(statisticsObserver);
                 IngestManager.getInstance().addIngestJobEventListener(pcl);
                 IngestManager.getInstance().addIngestModuleEventListener(pcl);
                 Case.addEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
@@ -190,6 +195,7 @@ private static final class DeletedContentsChildrenObservable extends Observable
 
             private void removeListeners() {
                 deleteObservers();
+                statistics.deleteObserver(statisticsObserver);
                 IngestManager.getInstance().removeIngestJobEventListener(pcl);
                 IngestManager.getInstance().removeIngestModuleEventListener(pcl);
                 Case.removeEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
@@ -210,7 +216,8 @@ private void removeListeners() {
                         Case.getCurrentCaseThrows();
                         // new file was added
                         // @@@ COULD CHECK If the new file is deleted before notifying...
-                        update();
+                        // observers are updated once the counts are recomputed
+                        statistics.refresh();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -227,7 +234,7 @@ private void removeListeners() {
                      */
                     try {
                         Case.getCurrentCaseThrows();
-                        update();
+                        statistics.refresh();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -301,7 +308,8 @@ private void updateDisplayName() {
                 //get count of children without preloading all children nodes
                 final long count = DeletedContentChildren.calculateItems(skCase, filter);
                 //final long count = getChildren().getNodesCount(true);
-                super.setDisplayName(filter.getDisplayName() + " (" + count + ")");
+                super.setDisplayName(filter.getDisplayName() + ((count < 0) ? Bundle.FileTypes_bgCounting_placeholder()
+                        : (" (" + count + ")")));
             }
 
             @Override
@@ -443,14 +451,14 @@ static private String makeQuery(DeletedContent.DeletedContentFilter filter) {
                             + " OR known IS NULL)"; //NON-NLS
                 }
 
-                query += " LIMIT " + MAX_OBJECTS; //NON-NLS
                 return query;
             }
 
             private List<AbstractFile> runFsQuery() {
                 List<AbstractFile> ret = new ArrayList<>();
 
-                String query = makeQuery(filter);
+                // the limit is only for loading the nodes, not for counting them
+                String query = makeQuery(filter) + " LIMIT " + MAX_OBJECTS; //NON-NLS
                 try {
                     ret = skCase.findAllFilesWhere(query);
                 } catch (TskCoreException e) {
@@ -467,15 +475,11 @@ private List<AbstractFile> runFsQuery() {
              * @param sleuthkitCase
              * @param filter
              *
-             * @return
+             * @return The count cached by the views tree statistics, or -1 if
+             *         it has not been computed yet.
              */
             static long calculateItems(SleuthkitCase sleuthkitCase, DeletedContent.DeletedContentFilter filter) {
-                try {
-                    return sleuthkitCase.countFilesWhere(makeQuery(filter));
-                } catch (TskCoreException ex) {
-                    logger.log(Level.SEVERE, "Error getting deleted files search view count", ex); //NON-NLS
-                    return 0;
-                }
+                return ViewsTreeStatistics.getInstance(sleuthkitCase).getCount(makeQuery(filter));
             }
 
             @Override
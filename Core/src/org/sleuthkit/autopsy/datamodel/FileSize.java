@@ -165,7 +165,7 @@ public static class FileSizeRootChildren extends ChildFactory<org.sleuthkit.auto
 
         public FileSizeRootChildren(SleuthkitCase skCase) {
             this.skCase = skCase;
-            notifier = new FileSizeRootChildrenObservable();
+            notifier = new FileSizeRootChildrenObservable(skCase);
         }
 
         /**
@@ -176,7 +176,12 @@ private static final class FileSizeRootChildrenObservable extends Observable {
 
             private static final Set<Case.Events> CASE_EVENTS_OF_INTEREST = EnumSet.of(Case.Events.DATA_SOURCE_ADDED, Case.Events.CURRENT_CASE);
 
-            FileSizeRootChildrenObservable() {
+            private final ViewsTreeStatistics statistics;
+            private final Observer statisticsObserver = (Observable o, Object arg) -> update();
+
+            FileSizeRootChildrenObservable(SleuthkitCase skCase) {
+                statistics = ViewsTreeStatistics.getInstance(skCase);
+                statistics.addObserver(statisticsObserver);
                 IngestManager.getInstance().addIngestJobEventListener(pcl);
                 IngestManager.getInstance().addIngestModuleEventListener(pcl);
                 Case.addEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
@@ -184,6 +189,7 @@ private static final class FileSizeRootChildrenObservable extends Observable {
 
             private void removeListeners() {
                 deleteObservers();
+                statistics.deleteObserver(statisticsObserver);
                 IngestManager.getInstance().removeIngestJobEventListener(pcl);
                 IngestManager.getInstance().removeIngestModuleEventListener(pcl);
                 Case.removeEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
@@ -203,7 +209,8 @@ private void removeListeners() {
                         // new file was added
                         // @@@ could check the size here and only fire off updates if we know the file meets the min size criteria
                         Case.getCurrentCaseThrows();
-                        update();
+                        // observers are updated once the counts are recomputed
+                        statistics.refresh();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -220,7 +227,7 @@ private void removeListeners() {
                      */
                     try {
                         Case.getCurrentCaseThrows();
-                        update();
+                        statistics.refresh();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -310,7 +317,8 @@ public void update(Observable o, Object arg) {
 
             private void updateDisplayName() {
                 final long numVisibleChildren = FileSizeChildren.calculateItems(skCase, filter);
-                super.setDisplayName(filter.getDisplayName() + " (" + numVisibleChildren + ")");
+                super.setDisplayName(filter.getDisplayName() + ((numVisibleChildren < 0) ? Bundle.FileTypes_bgCounting_placeholder()
+                        : (" (" + numVisibleChildren + ")")));
             }
 
             @Override
@@ -447,15 +455,11 @@ private List<AbstractFile> runFsQuery() {
             /**
              * Get children count without actually loading all nodes
              *
-             * @return
+             * @return The count cached by the views tree statistics, or -1 if
+             *         it has not been computed yet.
              */
             static long calculateItems(SleuthkitCase sleuthkitCase, FileSizeFilter filter) {
-                try {
-                    return sleuthkitCase.countFilesWhere(makeQuery(filter));
-                } catch (TskCoreException ex) {
-                    logger.log(Level.SEVERE, "Error getting files by size search view count", ex); //NON-NLS
-                    return 0;
-                }
+                return ViewsTreeStatistics.getInstance(sleuthkitCase).getCount(makeQuery(filter));
             }
 
             @Override
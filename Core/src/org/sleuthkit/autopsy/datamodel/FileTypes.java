@@ -95,17 +95,26 @@ void updateShowCounts() {
          * number of rows in tsk_files
          */
         if (showCounts) {
-            try {
-                if (skCase.countFilesWhere("1=1") > NODE_COUNT_FILE_TABLE_THRESHOLD) { //NON-NLS
-                    showCounts = false;
-                }
-            } catch (TskCoreException tskCoreException) {
+            // the count is -1 until the views tree statistics have computed it
+            if (ViewsTreeStatistics.getInstance(skCase).getCount("1=1") > NODE_COUNT_FILE_TABLE_THRESHOLD) { //NON-NLS
                 showCounts = false;
-                logger.log(Level.SEVERE, "Error counting files.", tskCoreException); //NON-NLS
             }
         }
     }
 
+    /**
+     * Check whether the nodes should show child counts. The threshold is
+     * re-checked on every call, since the total number of files is not known
+     * until the views tree statistics have been computed, which is usually
+     * after the nodes are first displayed.
+     *
+     * @return True if the nodes should show child counts.
+     */
+    boolean shouldShowCounts() {
+        updateShowCounts();
+        return showCounts;
+    }
+
     /**
      * Node which will contain By Mime Type and By Extension nodes.
      */
@@ -225,8 +234,11 @@ public void update(Observable o, Object arg) {
          * Calculate the number of children of this node, possibly by querying
          * the DB.
          *
-         * @return @throws TskCoreException if there was an error querying the
-         *         DB to calculate the number of children.
+         * @return The number of children, or a negative number if it is not
+         *         known yet.
+         *
+         * @throws TskCoreException if there was an error querying the DB to
+         *                          calculate the number of children.
          */
         abstract long calculateChildCount() throws TskCoreException;
 
@@ -236,7 +248,7 @@ public void update(Observable o, Object arg) {
          */
         @NbBundle.Messages("FileTypes.bgCounting.placeholder= (counting...)")
         void updateDisplayName() {
-            if (typesRoot.showCounts) {
+            if (typesRoot.shouldShowCounts()) {
                 //only show "(counting...)" the first time, otherwise it is distracting.
                 setDisplayName(getDisplayNameBase() + ((childCount < 0) ? Bundle.FileTypes_bgCounting_placeholder()
                         : ("(" + childCount + ")"))); //NON-NLS
@@ -250,7 +262,8 @@ protected Long doInBackground() throws Exception {
                     protected void done() {
                         try {
                             childCount = get();
-                            setDisplayName(getDisplayNameBase() + " (" + childCount + ")"); //NON-NLS
+                            setDisplayName(getDisplayNameBase() + ((childCount < 0) ? Bundle.FileTypes_bgCounting_placeholder()
+                                    : (" (" + childCount + ")"))); //NON-NLS
                         } catch (InterruptedException | ExecutionException ex) {
                             setDisplayName(getDisplayNameBase());
                             logger.log(Level.WARNING, "Failed to get count of files for " + getDisplayNameBase(), ex); //NON-NLS
@@ -77,6 +77,7 @@ private class FileTypesByExtObservable extends Observable {
 
         private final PropertyChangeListener pcl;
         private final Set<Case.Events> CASE_EVENTS_OF_INTEREST;
+        private final Observer statisticsObserver = (Observable o, Object arg) -> update();
 
         private FileTypesByExtObservable() {
             super();
@@ -96,7 +97,8 @@ private FileTypesByExtObservable() {
                     try {
                         Case.getCurrentCaseThrows();
                         typesRoot.updateShowCounts();
-                        update();
+                        // observers are updated once the counts are recomputed
+                        ViewsTreeStatistics.getInstance(skCase).refresh();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -113,10 +115,12 @@ private FileTypesByExtObservable() {
             IngestManager.getInstance().addIngestJobEventListener(pcl);
             IngestManager.getInstance().addIngestModuleEventListener(pcl);
             Case.addEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
+            ViewsTreeStatistics.getInstance(skCase).addObserver(statisticsObserver);
         }
 
         private void removeListeners() {
             deleteObservers();
+            ViewsTreeStatistics.getInstance(skCase).deleteObserver(statisticsObserver);
             IngestManager.getInstance().removeIngestJobEventListener(pcl);
             IngestManager.getInstance().removeIngestModuleEventListener(pcl);
             Case.removeEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
@@ -343,7 +347,7 @@ String getDisplayNameBase() {
 
         @Override
         long calculateChildCount() throws TskCoreException {
-            return skCase.countFilesWhere(createQuery(filter));
+            return ViewsTreeStatistics.getInstance(skCase).getCount(createQuery(filter));
         }
     }
 
@@ -20,8 +20,6 @@
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -81,6 +79,11 @@ public final class FileTypesByMimeType extends Observable implements AutopsyVisi
      */
     private final PropertyChangeListener pcl;
 
+    /**
+     * Repopulates the map whenever the views tree statistics are recomputed.
+     */
+    private final Observer statisticsObserver = (Observable o, Object arg) -> populateHashMap();
+
     private static final Set<Case.Events> CASE_EVENTS_OF_INTEREST = EnumSet.of(Case.Events.DATA_SOURCE_ADDED, Case.Events.CURRENT_CASE);
 
     /**
@@ -105,6 +108,7 @@ static private String createBaseWhereExpr() {
 
     private void removeListeners() {
         deleteObservers();
+        ViewsTreeStatistics.getInstance(skCase).deleteObserver(statisticsObserver);
         IngestManager.getInstance().removeIngestJobEventListener(pcl);
         Case.removeEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
     }
@@ -114,33 +118,25 @@ private void removeListeners() {
      * files in it, and populate the hashmap with those results.
      */
     private void populateHashMap() {
-        String query = "SELECT mime_type, count(*) AS count FROM tsk_files "
-                + " WHERE mime_type IS NOT null "
-                + " AND " + createBaseWhereExpr()
-                + " GROUP BY mime_type";
         synchronized (existingMimeTypeCounts) {
             existingMimeTypeCounts.clear();
 
             if (skCase == null) {
                 return;
             }
-            try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
-                ResultSet resultSet = dbQuery.getResultSet();
-                while (resultSet.next()) {
-                    final String mime_type = resultSet.getString("mime_type"); //NON-NLS
-                    if (!mime_type.isEmpty()) {
-                        //if the mime_type contained multiple slashes then everything after the first slash will become the subtype
-                        final String mediaType = StringUtils.substringBefore(mime_type, "/");
-                        final String subType = StringUtils.removeStart(mime_type, mediaType + "/");
-                        if (!mediaType.isEmpty() && !subType.isEmpty()) {
-                            final long count = resultSet.getLong("count");
-                            existingMimeTypeCounts.computeIfAbsent(mediaType, t -> new HashMap<>())
-                                    .put(subType, count);
-                        }
+            // the counts are computed and cached by the views tree statistics
+            Map<String, Long> countsByMimeType = ViewsTreeStatistics.getInstance(skCase).getMimeTypeCounts(createBaseWhereExpr());
+            for (Map.Entry<String, Long> entry : countsByMimeType.entrySet()) {
+                final String mime_type = entry.getKey();
+                if (!mime_type.isEmpty()) {
+                    //if the mime_type contained multiple slashes then everything after the first slash will become the subtype
+                    final String mediaType = StringUtils.substringBefore(mime_type, "/");
+                    final String subType = StringUtils.removeStart(mime_type, mediaType + "/");
+                    if (!mediaType.isEmpty() && !subType.isEmpty()) {
+                        existingMimeTypeCounts.computeIfAbsent(mediaType, t -> new HashMap<>())
+                                .put(subType, entry.getValue());
                     }
                 }
-            } catch (TskCoreException | SQLException ex) {
-                logger.log(Level.SEVERE, "Unable to populate File Types by MIME Type tree view from DB: ", ex); //NON-NLS
             }
         }
 
@@ -166,7 +162,8 @@ private void populateHashMap() {
                 try {
                     Case.getCurrentCaseThrows();
                     typesRoot.updateShowCounts();
-                    populateHashMap();
+                    // the map is repopulated once the counts are recomputed
+                    ViewsTreeStatistics.getInstance(skCase).refresh();
                 } catch (NoCurrentCaseException notUsed) {
                     /**
                      * Case is closed, do nothing.
@@ -180,6 +177,7 @@ private void populateHashMap() {
         };
         IngestManager.getInstance().addIngestJobEventListener(pcl);
         Case.addEventTypeSubscriber(CASE_EVENTS_OF_INTEREST, pcl);
+        ViewsTreeStatistics.getInstance(skCase).addObserver(statisticsObserver);
         populateHashMap();
     }
 
@@ -34,6 +34,7 @@
 import java.util.Observer;
 import java.util.Set;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 import org.openide.nodes.ChildFactory;
 import org.openide.nodes.Children;
 import org.openide.nodes.Node;
@@ -61,12 +62,15 @@ public class HashsetHits implements AutopsyVisitableItem {
     private static final String HASHSET_HITS = BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getLabel();
     private static final String DISPLAY_NAME = BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getDisplayName();
     private static final Logger logger = Logger.getLogger(HashsetHits.class.getName());
+    private static final int MAX_IDS_PER_QUERY = 500;
     private SleuthkitCase skCase;
     private final HashsetResults hashsetResults;
+    private final ArtifactEventCoalescer updateCoalescer;
 
     public HashsetHits(SleuthkitCase skCase) {
         this.skCase = skCase;
         hashsetResults = new HashsetResults();
+        updateCoalescer = new ArtifactEventCoalescer(hashsetResults::addArtifacts, hashsetResults::update);
     }
 
     @Override
@@ -98,12 +102,16 @@ List<String> getSetNames() {
         }
 
         Set<Long> getArtifactIds(String hashSetName) {
-            synchronized (hashSetHitsMap) {            
-                return hashSetHitsMap.get(hashSetName);
+            synchronized (hashSetHitsMap) {
+                /*
+                 * Return a copy, the sets are added to in place by
+                 * addArtifacts.
+                 */
+                Set<Long> ids = hashSetHitsMap.get(hashSetName);
+                return (ids == null) ? Collections.emptySet() : new HashSet<>(ids);
             }
         }
 
-        @SuppressWarnings("deprecation")
         final void update() {
             synchronized (hashSetHitsMap) {
                 hashSetHitsMap.clear();
@@ -113,13 +121,58 @@ final void update() {
                 return;
             }
 
+            loadSetNames(null);
+
+            setChanged();
+            notifyObservers();
+        }
+
+        /**
+         * Adds newly posted hash set hit artifacts to the map without
+         * re-reading the existing ones. Observers are passed the names of the
+         * hash sets that were affected.
+         *
+         * @param artifacts The new hash set hit artifacts.
+         */
+        void addArtifacts(List<BlackboardArtifact> artifacts) {
+            if (skCase == null) {
+                return;
+            }
+
+            Set<String> affectedSetNames = new HashSet<>();
+            for (int start = 0; start < artifacts.size(); start += MAX_IDS_PER_QUERY) {
+                String artifactIds = artifacts.subList(start, Math.min(start + MAX_IDS_PER_QUERY, artifacts.size())).stream()
+                        .map(artifact -> String.valueOf(artifact.getArtifactID()))
+                        .collect(Collectors.joining(",")); //NON-NLS
+                affectedSetNames.addAll(loadSetNames(" AND blackboard_artifacts.artifact_id IN (" + artifactIds + ")")); //NON-NLS
+            }
+
+            if (affectedSetNames.isEmpty() == false) {
+                setChanged();
+                notifyObservers(affectedSetNames);
+            }
+        }
+
+        /**
+         * Reads the set names of hash set hit artifacts and adds them to the
+         * map.
+         *
+         * @param additionalWhereClause Restricts the artifacts that are read,
+         *                              may be null to read all of them.
+         *
+         * @return The names of the hash sets that were read.
+         */
+        @SuppressWarnings("deprecation")
+        private Set<String> loadSetNames(String additionalWhereClause) {
+            Set<String> setNames = new HashSet<>();
             int setNameId = ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID();
             int artId = ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID();
             String query = "SELECT value_text,blackboard_attributes.artifact_id,attribute_type_id " //NON-NLS
                     + "FROM blackboard_attributes,blackboard_artifacts WHERE " //NON-NLS
                     + "attribute_type_id=" + setNameId //NON-NLS
                     + " AND blackboard_attributes.artifact_id=blackboard_artifacts.artifact_id" //NON-NLS
-                    + " AND blackboard_artifacts.artifact_type_id=" + artId; //NON-NLS
+                    + " AND blackboard_artifacts.artifact_type_id=" + artId //NON-NLS
+                    + (additionalWhereClause == null ? "" : additionalWhereClause);
 
             try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
                 ResultSet resultSet = dbQuery.getResultSet();
@@ -127,21 +180,30 @@ final void update() {
                     while (resultSet.next()) {
                         String setName = resultSet.getString("value_text"); //NON-NLS
                         long artifactId = resultSet.getLong("artifact_id"); //NON-NLS
-                        if (!hashSetHitsMap.containsKey(setName)) {
-                            hashSetHitsMap.put(setName, new HashSet<Long>());
-                        }
-                        hashSetHitsMap.get(setName).add(artifactId);
+                        hashSetHitsMap.computeIfAbsent(setName, name -> new HashSet<>()).add(artifactId);
+                        setNames.add(setName);
                     }
                 }
             } catch (TskCoreException | SQLException ex) {
                 logger.log(Level.WARNING, "SQL Exception occurred: ", ex); //NON-NLS
             }
-
-            setChanged();
-            notifyObservers();
+            return setNames;
         }
     }
 
+    /**
+     * Checks whether an update from HashsetResults affects a hash set.
+     *
+     * @param arg     The argument passed to the observers.
+     * @param setName The hash set name.
+     *
+     * @return True if the hash set was affected or if the update was a full
+     *         update.
+     */
+    private static boolean isAffected(Object arg, String setName) {
+        return (arg instanceof Set) == false || ((Set<?>) arg).contains(setName);
+    }
+
     /**
      * Top-level node for all hash sets
      */
@@ -192,6 +254,9 @@ public String getItemType() {
      */
     private class HashsetNameFactory extends ChildFactory.Detachable<String> implements Observer {
 
+        // the hash set names that nodes were last created for
+        private volatile Set<String> setNames = Collections.emptySet();
+
         /*
          * This should probably be in the HashsetHits class, but the factory has
          * nice methods for its startup and shutdown, so it seemed like a
@@ -217,7 +282,7 @@ public void propertyChange(PropertyChangeEvent evt) {
                          */
                         ModuleDataEvent eventData = (ModuleDataEvent) evt.getOldValue();
                         if (null != eventData && eventData.getBlackboardArtifactType().getTypeID() == ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID()) {
-                            hashsetResults.update();
+                            updateCoalescer.addArtifacts(eventData.getArtifacts());
                         }
                     } catch (NoCurrentCaseException notUsed) {
                         /**
@@ -234,7 +299,7 @@ public void propertyChange(PropertyChangeEvent evt) {
                      */
                     try {
                         Case.getCurrentCaseThrows();
-                        hashsetResults.update();
+                        updateCoalescer.requestFullUpdate();
                     } catch (NoCurrentCaseException notUsed) {
                         /**
                          * Case is closed, do nothing.
@@ -269,7 +334,9 @@ protected void removeNotify() {
 
         @Override
         protected boolean createKeys(List<String> list) {
-            list.addAll(hashsetResults.getSetNames());
+            List<String> names = hashsetResults.getSetNames();
+            setNames = new HashSet<>(names);
+            list.addAll(names);
             return true;
         }
 
@@ -280,7 +347,13 @@ protected Node createNodeForKey(String key) {
 
         @Override
         public void update(Observable o, Object arg) {
-            refresh(true);
+            /*
+             * Incremental updates only need a refresh here if they added a
+             * hash set that does not have a node yet.
+             */
+            if ((arg instanceof Set) == false || setNames.containsAll((Set<?>) arg) == false) {
+                refresh(true);
+            }
         }
     }
 
@@ -336,7 +409,9 @@ public <T> T accept(DisplayableItemNodeVisitor<T> visitor) {
 
         @Override
         public void update(Observable o, Object arg) {
-            updateDisplayName();
+            if (isAffected(arg, hashSetName)) {
+                updateDisplayName();
+            }
         }
 
         @Override
@@ -401,7 +476,9 @@ protected Node createNodeForKey(Long id) {
 
         @Override
         public void update(Observable o, Object arg) {
-            refresh(true);
+            if (isAffected(arg, hashsetName)) {
+                refresh(true);
+            }
         }
     }
 }
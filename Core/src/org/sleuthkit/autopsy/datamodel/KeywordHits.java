@@ -23,6 +23,7 @@
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -71,8 +72,11 @@ public class KeywordHits implements AutopsyVisitableItem {
 
     public static final String NAME = BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT.getLabel();
 
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     private SleuthkitCase skCase;
     private final KeywordResults keywordResults;
+    private final ArtifactEventCoalescer updateCoalescer;
 
     /**
      * String used in the instance MAP so that exact matches and substring can
@@ -104,6 +108,7 @@ static private boolean isOnlyDefaultInstance(List<String> instances) {
     public KeywordHits(SleuthkitCase skCase) {
         this.skCase = skCase;
         keywordResults = new KeywordResults();
+        updateCoalescer = new ArtifactEventCoalescer(keywordResults::addArtifacts, keywordResults::update);
     }
 
     /*
@@ -186,7 +191,8 @@ List<String> getKeywordInstances(String listName, String keyword) {
          */
         Set<Long> getArtifactIds(String listName, String keyword, String keywordInstance) {
             synchronized (topLevelMap) {
-                return topLevelMap.get(listName).get(keyword).get(keywordInstance);
+                // return a copy, the sets are added to in place by addArtifacts
+                return new HashSet<>(topLevelMap.get(listName).get(keyword).get(keywordInstance));
             }
         }
 
@@ -231,65 +237,123 @@ void populateTreeMaps(Map<Long, Map<Long, String>> artifactIds) {
             synchronized (topLevelMap) {
                 topLevelMap.clear();
 
+                // top-level nodes
+                topLevelMap.put(SIMPLE_LITERAL_SEARCH, new LinkedHashMap<>());
+                topLevelMap.put(SIMPLE_REGEX_SEARCH, new LinkedHashMap<>());
+
                 // map of list name to keword to artifact IDs
                 Map<String, Map<String, Map<String, Set<Long>>>> listsMap = new LinkedHashMap<>();
+                addToTreeMaps(artifactIds, listsMap, new HashSet<>());
+                topLevelMap.putAll(listsMap);
+            }
 
-                // Map from from literal keyword to instances (which will be empty) to artifact IDs
-                Map<String, Map<String, Set<Long>>> literalMap = new LinkedHashMap<>();
+            setChanged();
+            notifyObservers();
+        }
 
-                // Map from regex keyword artifact to instances to artifact IDs
-                Map<String, Map<String, Set<Long>>> regexMap = new LinkedHashMap<>();
+        /**
+         * Add keyword hit artifacts to the data structure for the tree. Hits
+         * for the single literal and regular expression searches go directly
+         * into the top-level map, hits that are part of a list go into the
+         * given lists map.
+         *
+         * @param artifactIds   Maps Artifact ID to map of attribute types to
+         *                      attribute values
+         * @param listsMap      Map of list name to keyword to artifact IDs
+         * @param affectedPaths Collects the list, keyword and instance paths
+         *                      that the artifacts were added under
+         */
+        private void addToTreeMaps(Map<Long, Map<Long, String>> artifactIds, Map<String, Map<String, Map<String, Set<Long>>>> listsMap, Set<List<String>> affectedPaths) {
+            // Map from from literal keyword to instances (which will be empty) to artifact IDs
+            Map<String, Map<String, Set<Long>>> literalMap = topLevelMap.get(SIMPLE_LITERAL_SEARCH);
+
+            // Map from regex keyword artifact to instances to artifact IDs
+            Map<String, Map<String, Set<Long>>> regexMap = topLevelMap.get(SIMPLE_REGEX_SEARCH);
+
+            for (Map.Entry<Long, Map<Long, String>> art : artifactIds.entrySet()) {
+                long id = art.getKey();
+                Map<Long, String> attributes = art.getValue();
+
+                // I think we can use attributes.remove(...) here? - why should bwe use remove?
+                String listName = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID()));
+                String word = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID()));
+                String reg = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID()));
+                String kwType = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_SEARCH_TYPE.getTypeID()));
+
+                String topLevelName;
+                Map<String, Map<String, Set<Long>>> listMap;
+                if (listName != null) {     // part of a list
+                    // get or create list entry
+                    topLevelName = listName;
+                    listMap = listsMap.computeIfAbsent(listName, ln -> new LinkedHashMap<>());
+                } else if ("1".equals(kwType) || reg == null) { //single literal term
+                    topLevelName = SIMPLE_LITERAL_SEARCH;
+                    listMap = literalMap;
+                } else { //single regexp term
+                    topLevelName = SIMPLE_REGEX_SEARCH;
+                    listMap = regexMap;
+                }
 
-                // top-level nodes
-                topLevelMap.put(SIMPLE_LITERAL_SEARCH, literalMap);
-                topLevelMap.put(SIMPLE_REGEX_SEARCH, regexMap);
-
-                for (Map.Entry<Long, Map<Long, String>> art : artifactIds.entrySet()) {
-                    long id = art.getKey();
-                    Map<Long, String> attributes = art.getValue();
-
-                    // I think we can use attributes.remove(...) here? - why should bwe use remove?
-                    String listName = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID()));
-                    String word = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD.getTypeID()));
-                    String reg = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_REGEXP.getTypeID()));
-                    String kwType = attributes.get(Long.valueOf(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD_SEARCH_TYPE.getTypeID()));
-
-                    if (listName != null) {     // part of a list
-                        // get or create list entry
-                        Map<String, Map<String, Set<Long>>> listMap = listsMap.computeIfAbsent(listName, ln -> new LinkedHashMap<>());
-
-                        if ("1".equals(kwType) || reg == null) {  //literal, substring or exact
-                            /*
-                             * Substring, treated same as exact match. "1" is
-                             * the ordinal value for substring as defined in
-                             * KeywordSearch.java. The original term should be
-                             * stored in reg
-                             */
-                            word = (reg != null) ? reg : word; //use original term if it there.
-                            addNonRegExpMatchToList(listMap, word, id);
-                        } else {
-                            addRegExpToList(listMap, reg, word, id);
-                        }
-                    } else {//single term
-                        if ("1".equals(kwType) || reg == null) {  //literal, substring or exact
-                            /*
-                             * Substring, treated same as exact match. "1" is
-                             * the ordinal value for substring as defined in
-                             * KeywordSearch.java. The original term should be
-                             * stored in reg
-                             */
-                            word = (reg != null) ? reg : word; //use original term if it there.
-                            addNonRegExpMatchToList(literalMap, word, id);
-                        } else {
-                            addRegExpToList(regexMap, reg, word, id);
-                        }
-                    }
+                if ("1".equals(kwType) || reg == null) {  //literal, substring or exact
+                    /*
+                     * Substring, treated same as exact match. "1" is the
+                     * ordinal value for substring as defined in
+                     * KeywordSearch.java. The original term should be stored
+                     * in reg
+                     */
+                    word = (reg != null) ? reg : word; //use original term if it there.
+                    addNonRegExpMatchToList(listMap, word, id);
+                    affectedPaths.add(Arrays.asList(topLevelName, word, DEFAULT_INSTANCE_NAME));
+                } else {
+                    addRegExpToList(listMap, reg, word, id);
+                    affectedPaths.add(Arrays.asList(topLevelName, reg, word));
                 }
-                topLevelMap.putAll(listsMap);
             }
 
-            setChanged();
-            notifyObservers();
+            // record the ancestors of each affected instance as affected too
+            for (List<String> path : new ArrayList<>(affectedPaths)) {
+                affectedPaths.add(path.subList(0, 2));
+                affectedPaths.add(path.subList(0, 1));
+            }
+        }
+
+        /**
+         * Add newly posted keyword hit artifacts to the data structure for the
+         * tree without re-reading the existing hits. Observers are passed the
+         * set of list, keyword and instance paths that were affected.
+         *
+         * @param artifacts The new keyword hit artifacts.
+         */
+        void addArtifacts(List<BlackboardArtifact> artifacts) {
+            if (skCase == null) {
+                return;
+            }
+
+            Map<Long, Map<Long, String>> artifactIds = new LinkedHashMap<>();
+            for (int start = 0; start < artifacts.size(); start += MAX_IDS_PER_QUERY) {
+                String idList = artifacts.subList(start, Math.min(start + MAX_IDS_PER_QUERY, artifacts.size())).stream()
+                        .map(artifact -> String.valueOf(artifact.getArtifactID()))
+                        .collect(Collectors.joining(",")); //NON-NLS
+                loadAttributes(KEYWORD_HIT_ATTRIBUTES_QUERY + " AND blackboard_artifacts.artifact_id IN (" + idList + ")", artifactIds); //NON-NLS
+            }
+
+            Set<List<String>> affectedPaths = new HashSet<>();
+            synchronized (topLevelMap) {
+                if (topLevelMap.isEmpty()) {
+                    topLevelMap.put(SIMPLE_LITERAL_SEARCH, new LinkedHashMap<>());
+                    topLevelMap.put(SIMPLE_REGEX_SEARCH, new LinkedHashMap<>());
+                }
+                /*
+                 * The lists are added to the top-level map directly, so that
+                 * new lists end up after the existing ones.
+                 */
+                addToTreeMaps(artifactIds, topLevelMap, affectedPaths);
+            }
+
+            if (affectedPaths.isEmpty() == false) {
+                setChanged();
+                notifyObservers(affectedPaths);
+            }
         }
 
         public void update() {
@@ -300,7 +364,20 @@ public void update() {
                 return;
             }
 
-            try (CaseDbQuery dbQuery = skCase.executeQuery(KEYWORD_HIT_ATTRIBUTES_QUERY)) {
+            loadAttributes(KEYWORD_HIT_ATTRIBUTES_QUERY, artifactIds);
+            populateTreeMaps(artifactIds);
+        }
+
+        /**
+         * Run a keyword hit attributes query and collect the attribute values
+         * by artifact.
+         *
+         * @param query       The query to run.
+         * @param artifactIds Maps Artifact ID to map of attribute types to
+         *                    attribute values, the results are added to it.
+         */
+        private void loadAttributes(String query, Map<Long, Map<Long, String>> artifactIds) {
+            try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
                 ResultSet resultSet = dbQuery.getResultSet();
                 while (resultSet.next()) {
                     long artifactId = resultSet.getLong("artifact_id"); //NON-NLS
@@ -320,11 +397,24 @@ public void update() {
             } catch (TskCoreException | SQLException ex) {
                 logger.log(Level.WARNING, "SQL Exception occurred: ", ex); //NON-NLS
             }
-
-            populateTreeMaps(artifactIds);
         }
     }
 
+    /**
+     * Checks whether an update from KeywordResults affects a node in the
+     * tree.
+     *
+     * @param arg  The argument passed to the observers.
+     * @param path The list name, keyword and instance that identify the node,
+     *             as far down the tree as the node is.
+     *
+     * @return True if anything was added at or below the node, or if the
+     *         update was a full update.
+     */
+    private static boolean isAffected(Object arg, String... path) {
+        return (arg instanceof Set) == false || ((Set<?>) arg).contains(Arrays.asList(path));
+    }
+
     @Override
     public <T> T accept(AutopsyItemVisitor<T> visitor) {
         return visitor.visit(this);
@@ -379,6 +469,13 @@ public String getItemType() {
 
     private abstract class DetachableObserverChildFactory<X> extends ChildFactory.Detachable<X> implements Observer {
 
+        // list name, keyword and instance of the parent node, as far as known
+        private final String[] path;
+
+        DetachableObserverChildFactory(String... path) {
+            this.path = path;
+        }
+
         @Override
         protected void addNotify() {
             keywordResults.addObserver(this);
@@ -391,7 +488,9 @@ protected void removeNotify() {
 
         @Override
         public void update(Observable o, Object arg) {
-            refresh(true);
+            if (isAffected(arg, path)) {
+                refresh(true);
+            }
         }
     }
 
@@ -421,7 +520,7 @@ public void propertyChange(PropertyChangeEvent evt) {
                          */
                         ModuleDataEvent eventData = (ModuleDataEvent) evt.getOldValue();
                         if (null != eventData && eventData.getBlackboardArtifactType().getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT.getTypeID()) {
-                            keywordResults.update();
+                            updateCoalescer.addArtifacts(eventData.getArtifacts());
                         }
                     } catch (NoCurrentCaseException notUsed) {
                         // Case is closed, do nothing.
@@ -436,7 +535,7 @@ public void propertyChange(PropertyChangeEvent evt) {
                      */
                     try {
                         Case.getCurrentCaseThrows();
-                        keywordResults.update();
+                        updateCoalescer.requestFullUpdate();
                     } catch (NoCurrentCaseException notUsed) {
                         // Case is closed, do nothing.
                     }
@@ -470,9 +569,14 @@ protected void removeNotify() {
             super.removeNotify();
         }
 
+        // the list names that nodes were last created for
+        private volatile Set<String> listNames = Collections.emptySet();
+
         @Override
         protected boolean createKeys(List<String> list) {
-            list.addAll(keywordResults.getListNames());
+            List<String> names = keywordResults.getListNames();
+            listNames = new HashSet<>(names);
+            list.addAll(names);
             return true;
         }
 
@@ -480,16 +584,35 @@ protected boolean createKeys(List<String> list) {
         protected Node createNodeForKey(String key) {
             return new ListNode(key);
         }
+
+        @Override
+        public void update(Observable o, Object arg) {
+            /*
+             * Incremental updates only need a refresh here if they added a
+             * list that does not have a node yet.
+             */
+            if ((arg instanceof Set) == false
+                    || ((Set<?>) arg).stream()
+                            .map(path -> ((List<?>) path).get(0))
+                            .anyMatch(listName -> listNames.contains(listName) == false)) {
+                refresh(true);
+            }
+        }
     }
 
     private abstract class KWHitsNodeBase extends DisplayableItemNode implements Observer {
 
-        private KWHitsNodeBase(Children children, Lookup lookup) {
+        // list name, keyword and instance of this node, as far as known
+        private final String[] path;
+
+        private KWHitsNodeBase(Children children, Lookup lookup, String... path) {
             super(children, lookup);
+            this.path = path;
         }
 
-        private KWHitsNodeBase(Children children) {
+        private KWHitsNodeBase(Children children, String... path) {
             super(children);
+            this.path = path;
         }
 
         @Override
@@ -499,7 +622,9 @@ public String getItemType() {
 
         @Override
         public void update(Observable o, Object arg) {
-            updateDisplayName();
+            if (isAffected(arg, path)) {
+                updateDisplayName();
+            }
         }
 
         final void updateDisplayName() {
@@ -518,7 +643,7 @@ class ListNode extends KWHitsNodeBase {
         private final String listName;
 
         private ListNode(String listName) {
-            super(Children.create(new TermFactory(listName), true), Lookups.singleton(listName));
+            super(Children.create(new TermFactory(listName), true), Lookups.singleton(listName), listName);
             super.setName(listName);
             this.setIconBaseWithExtension("org/sleuthkit/autopsy/images/keyword_hits.png"); //NON-NLS
             this.listName = listName;
@@ -588,7 +713,7 @@ private class TermFactory extends DetachableObserverChildFactory<String> {
         private final String setName;
 
         private TermFactory(String setName) {
-            super();
+            super(setName);
             this.setName = setName;
         }
 
@@ -613,7 +738,7 @@ class TermNode extends KWHitsNodeBase {
         private final String keyword;
 
         private TermNode(String setName, String keyword) {
-            super(Children.create(new RegExpInstancesFactory(setName, keyword), true), Lookups.singleton(keyword));
+            super(Children.create(new RegExpInstancesFactory(setName, keyword), true), Lookups.singleton(keyword), setName, keyword);
             super.setName(keyword);
             this.setName = setName;
             this.keyword = keyword;
@@ -711,7 +836,7 @@ private class RegExpInstancesFactory extends DetachableObserverChildFactory<RegE
         private final String setName;
 
         private RegExpInstancesFactory(String setName, String keyword) {
-            super();
+            super(setName, keyword);
             this.setName = setName;
             this.keyword = keyword;
         }
@@ -756,7 +881,7 @@ class RegExpInstanceNode extends KWHitsNodeBase {
         private final String instance;
 
         private RegExpInstanceNode(String setName, String keyword, String instance) {
-            super(Children.create(new HitsFactory(setName, keyword, instance), true), Lookups.singleton(instance));
+            super(Children.create(new HitsFactory(setName, keyword, instance), true), Lookups.singleton(instance), setName, keyword, instance);
             super.setName(instance);  //the instance represents the name of the keyword hit at this point as the keyword is the regex
             this.setName = setName;
             this.keyword = keyword;
@@ -880,7 +1005,7 @@ private class HitsFactory extends DetachableObserverChildFactory<Long> {
         private final String instance;
 
         private HitsFactory(String setName, String keyword, String instance) {
-            super();
+            super(setName, keyword, instance);
             this.setName = setName;
             this.keyword = keyword;
             this.instance = instance;
@@ -0,0 +1,256 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.datamodel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.SleuthkitCase.CaseDbQuery;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Computes and caches the file counts shown in the Views tree (file types by
+ * extension and MIME type, file sizes, deleted files).
+ *
+ * Instead of each node issuing its own COUNT query on every ingest event, the
+ * nodes register the where clause they count and read the cached value. All
+ * of the registered counts are computed together with one conditional-sum
+ * query, and the MIME type counts with one GROUP BY query. Refresh requests
+ * are throttled, so a burst of ingest events results in at most one
+ * recomputation per interval. Observers are notified after each
+ * recomputation.
+ *
+ * The counts are recomputed rather than adjusted per file because the MIME
+ * type and known status of a file are set by ingest modules after the file is
+ * added, so per-file deltas could not be kept exact.
+ */
+final class ViewsTreeStatistics extends Observable {
+
+    private static final Logger logger = Logger.getLogger(ViewsTreeStatistics.class.getName());
+
+    /**
+     * Minimum time between two recomputations of the counts.
+     */
+    private static final long MIN_REFRESH_INTERVAL_MS = 5000;
+
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("views-tree-statistics-%d").setDaemon(true).build()); //NON-NLS
+
+    private static ViewsTreeStatistics instance;
+
+    private final SleuthkitCase skCase;
+
+    private final Object lock = new Object();
+    // where clause to count, or -1 if not computed yet
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    // base where clause to map of MIME type to count, or null if not computed yet
+    private final Map<String, Map<String, Long>> mimeTypeCounts = new HashMap<>();
+    private boolean refreshScheduled = false;
+    private long lastRefreshTime = 0;
+
+    /**
+     * Gets the statistics for the given case, creating them if this is the
+     * first request for the case.
+     *
+     * @param skCase The case database.
+     *
+     * @return The statistics for the case.
+     */
+    static synchronized ViewsTreeStatistics getInstance(SleuthkitCase skCase) {
+        if (instance == null || instance.skCase != skCase) {
+            instance = new ViewsTreeStatistics(skCase);
+        }
+        return instance;
+    }
+
+    private ViewsTreeStatistics(SleuthkitCase skCase) {
+        this.skCase = skCase;
+    }
+
+    /**
+     * Gets the cached number of files that match a where clause. If the clause
+     * has not been counted yet, it is registered and a refresh is scheduled.
+     *
+     * @param whereClause A where clause over tsk_files.
+     *
+     * @return The number of matching files, or -1 if it has not been computed
+     *         yet.
+     */
+    long getCount(String whereClause) {
+        synchronized (lock) {
+            Long count = counts.get(whereClause);
+            if (count != null) {
+                return count;
+            }
+            counts.put(whereClause, -1L);
+            scheduleRefresh(0);
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the number of files per MIME type, among the files that match a
+     * base where clause. Unlike getCount, the first request for a clause
+     * computes the counts on the calling thread, since callers build their
+     * node structure from the result.
+     *
+     * @param baseWhereClause A where clause over tsk_files.
+     *
+     * @return Map of MIME type to number of files.
+     */
+    Map<String, Long> getMimeTypeCounts(String baseWhereClause) {
+        synchronized (lock) {
+            Map<String, Long> cached = mimeTypeCounts.get(baseWhereClause);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Map<String, Long> computed = queryMimeTypeCounts(baseWhereClause);
+        synchronized (lock) {
+            mimeTypeCounts.put(baseWhereClause, computed);
+        }
+        return computed;
+    }
+
+    /**
+     * Requests that the counts be recomputed, for example because files were
+     * added to the case. Requests are coalesced and throttled.
+     */
+    void refresh() {
+        synchronized (lock) {
+            scheduleRefresh(Math.max(0, lastRefreshTime + MIN_REFRESH_INTERVAL_MS - System.currentTimeMillis()));
+        }
+    }
+
+    private void scheduleRefresh(long delayMs) {
+        if (refreshScheduled == false) {
+            refreshScheduled = true;
+            executor.schedule(this::recompute, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recompute() {
+        List<String> whereClauses;
+        List<String> baseWhereClauses;
+        synchronized (lock) {
+            refreshScheduled = false;
+            lastRefreshTime = System.currentTimeMillis();
+            whereClauses = new ArrayList<>(counts.keySet());
+            baseWhereClauses = new ArrayList<>(mimeTypeCounts.keySet());
+        }
+
+        Map<String, Long> newCounts = queryCounts(whereClauses);
+        Map<String, Map<String, Long>> newMimeTypeCounts = new HashMap<>();
+        for (String baseWhereClause : baseWhereClauses) {
+            newMimeTypeCounts.put(baseWhereClause, queryMimeTypeCounts(baseWhereClause));
+        }
+
+        synchronized (lock) {
+            counts.putAll(newCounts);
+            mimeTypeCounts.putAll(newMimeTypeCounts);
+        }
+
+        setChanged();
+        notifyObservers();
+    }
+
+    /**
+     * Counts the files matching each of the where clauses with a single query
+     * of the form SELECT SUM(CASE WHEN clause THEN 1 ELSE 0 END), ...
+     *
+     * @param whereClauses The where clauses to count.
+     *
+     * @return Map of where clause to count. Clauses that could not be counted
+     *         are left out. If the combined query fails, the clauses are
+     *         counted one at a time, so that one bad clause does not leave
+     *         all of the others uncounted.
+     */
+    private Map<String, Long> queryCounts(List<String> whereClauses) {
+        if (whereClauses.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        StringBuilder query = new StringBuilder("SELECT "); //NON-NLS
+        for (int i = 0; i < whereClauses.size(); i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append("SUM(CASE WHEN (").append(whereClauses.get(i)).append(") THEN 1 ELSE 0 END) AS count").append(i); //NON-NLS
+        }
+        query.append(" FROM tsk_files"); //NON-NLS
+
+        Map<String, Long> result = new HashMap<>();
+        try (CaseDbQuery dbQuery = skCase.executeQuery(query.toString())) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            if (resultSet.next()) {
+                for (int i = 0; i < whereClauses.size(); i++) {
+                    // SUM over no rows is NULL, which getLong returns as 0
+                    result.put(whereClauses.get(i), resultSet.getLong("count" + i)); //NON-NLS
+                }
+            }
+        } catch (TskCoreException | SQLException ex) {
+            logger.log(Level.SEVERE, "Error counting files for the views tree, counting them one at a time", ex); //NON-NLS
+            result.clear();
+            for (String whereClause : whereClauses) {
+                try {
+                    result.put(whereClause, skCase.countFilesWhere(whereClause));
+                } catch (TskCoreException countEx) {
+                    logger.log(Level.SEVERE, "Error counting files for the views tree using: " + whereClause, countEx); //NON-NLS
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the files per MIME type with a single GROUP BY query.
+     *
+     * @param baseWhereClause A where clause over tsk_files.
+     *
+     * @return Map of MIME type to count.
+     */
+    private Map<String, Long> queryMimeTypeCounts(String baseWhereClause) {
+        String query = "SELECT mime_type, count(*) AS count FROM tsk_files " //NON-NLS
+                + " WHERE mime_type IS NOT null " //NON-NLS
+                + " AND " + baseWhereClause
+                + " GROUP BY mime_type"; //NON-NLS
+        Map<String, Long> result = new HashMap<>();
+        try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                result.put(resultSet.getString("mime_type"), resultSet.getLong("count")); //NON-NLS
+            }
+        } catch (TskCoreException | SQLException ex) {
+            logger.log(Level.SEVERE, "Error counting files by MIME type for the views tree", ex); //NON-NLS
+        }
+        return result;
+    }
+}
@@ -19,6 +19,11 @@
 package org.sleuthkit.autopsy.keywordsearchservice;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import org.sleuthkit.autopsy.casemodule.CaseMetadata;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.Content;
@@ -53,6 +58,28 @@ public interface KeywordSearchService extends Closeable {
      */
     public void indexArtifact(BlackboardArtifact artifact) throws TskCoreException;
 
+    /**
+     * Adds several artifacts to the keyword search text index. Implementations
+     * may send all of them to the index in one request; this default indexes
+     * them one at a time with index(Content).
+     *
+     * @param artifacts The artifacts to index.
+     *
+     * @return The artifacts that could not be indexed, each mapped to the
+     *         reason. Empty if all the artifacts were indexed.
+     */
+    default Map<BlackboardArtifact, TskCoreException> indexArtifacts(Collection<BlackboardArtifact> artifacts) {
+        Map<BlackboardArtifact, TskCoreException> failures = new HashMap<>();
+        for (BlackboardArtifact artifact : artifacts) {
+            try {
+                index(artifact);
+            } catch (TskCoreException ex) {
+                failures.put(artifact, ex);
+            }
+        }
+        return failures;
+    }
+
     /**
      * Add the given Content object to the text index.
      *
@@ -62,6 +89,22 @@ public interface KeywordSearchService extends Closeable {
      */
     public void index(Content content) throws TskCoreException;
 
+    /**
+     * Add the given Content object to the text index, and get a future for
+     * when it is visible to searches. Implementations may group the commits
+     * of several calls, so callers that do not need to wait should not.
+     *
+     * @param content The content to index.
+     *
+     * @return A future that is completed once the content can be searched.
+     *
+     * @throws TskCoreException
+     */
+    default Future<Void> indexAndCommit(Content content) throws TskCoreException {
+        index(content);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Deletes the keyword search text index for a case.
      *
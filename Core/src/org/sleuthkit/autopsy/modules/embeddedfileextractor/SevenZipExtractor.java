@@ -23,15 +23,24 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import net.sf.sevenzipjbinding.ArchiveFormat;
 import static net.sf.sevenzipjbinding.ArchiveFormat.RAR;
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
+import net.sf.sevenzipjbinding.ICryptoGetTextPassword;
 import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.ISevenZipInArchive;
 import net.sf.sevenzipjbinding.SevenZip;
@@ -50,6 +59,7 @@
 import org.sleuthkit.autopsy.coreutils.FileUtil;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.ingest.IngestJobContext;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
 import org.sleuthkit.autopsy.ingest.IngestMonitor;
@@ -84,6 +94,15 @@ class SevenZipExtractor {
     private static final int MAX_COMPRESSION_RATIO = 600;
     private static final long MIN_COMPRESSION_RATIO_SIZE = 500 * 1000000L;
     private static final long MIN_FREE_DISK_SPACE = 1 * 1000 * 1000000L; //1GB
+    //reuse of the files extracted from identical archives: saves extracting,
+    //hashing and typing the files again, they are still ingested for their
+    //own results
+    private static final String CONFIG_NAME = "EmbeddedFileExtractor"; //NON-NLS
+    private static final String REUSE_EXTRACTED_ARCHIVES_SETTING = "reuseExtractedArchives"; //NON-NLS
+    //written to the local root folder of an archive once all of its items are
+    //in the case, the items themselves are all in numbered sub folders
+    private static final String EXTRACTION_COMPLETE_MARKER = ".extraction_complete"; //NON-NLS
+    private final boolean reuseExtractedArchives;
     //counts archive depth
     private ArchiveDepthCountTree archiveDepthCountTree;
 
@@ -96,6 +115,24 @@ private String getLocalRootAbsPath(String uniqueArchiveFileName) {
         return moduleDirAbsolute + File.separator + uniqueArchiveFileName;
     }
 
+    private File getExtractionCompleteMarker(String uniqueArchiveFileName) {
+        return new File(getLocalRootAbsPath(uniqueArchiveFileName), EXTRACTION_COMPLETE_MARKER);
+    }
+
+    /**
+     * Record that all of the items of an archive were added to the case, so
+     * that the archive can be reused for identical copies of it.
+     *
+     * @param uniqueArchiveFileName the escaped unique name of the archive
+     */
+    private void markExtractionComplete(String uniqueArchiveFileName) {
+        try {
+            getExtractionCompleteMarker(uniqueArchiveFileName).createNewFile();
+        } catch (IOException | SecurityException ex) {
+            logger.log(Level.WARNING, "Error marking the extraction of " + uniqueArchiveFileName + " as complete", ex); //NON-NLS
+        }
+    }
+
     /**
      * Enum of mimetypes which support archive extraction
      */
@@ -132,6 +169,7 @@ public String toString() {
         this.moduleDirRelative = moduleDirRelative;
         this.moduleDirAbsolute = moduleDirAbsolute;
         this.archiveDepthCountTree = new ArchiveDepthCountTree();
+        this.reuseExtractedArchives = Boolean.parseBoolean(ModuleSettings.getConfigSetting(CONFIG_NAME, REUSE_EXTRACTED_ARCHIVES_SETTING));
     }
 
     /**
@@ -289,6 +327,78 @@ private List<AbstractFile> getAlreadyExtractedFiles(AbstractFile archiveFile, St
         return new ArrayList<>();
     }
 
+    /**
+     * Add the files already extracted from an identical archive in the case
+     * (same MD5 and size) as the children of the given archive, instead of
+     * extracting it again. The new derived files point at the local files
+     * extracted from the first copy, and get the MD5 hash and MIME type of the
+     * files they copy, so ingest does not compute them again. Only copies
+     * whose extraction completed are used. Only the folders of the tree are descended into; archives
+     * within the archive are unpacked, or reused, when they are ingested
+     * themselves.
+     *
+     * @param archiveFile the archive, which must not have children yet
+     *
+     * @return the derived files added, or an empty list if there is no
+     *         extracted copy of the archive in the case
+     *
+     * @throws TskCoreException
+     * @throws NoCurrentCaseException
+     */
+    private List<AbstractFile> reuseExtractedArchive(AbstractFile archiveFile) throws TskCoreException, NoCurrentCaseException {
+        final String md5 = archiveFile.getMd5Hash();
+        if (md5 == null || md5.isEmpty() || archiveFile.hasChildren()) {
+            return new ArrayList<>();
+        }
+        final Case currentCase = Case.getCurrentCaseThrows();
+        List<AbstractFile> copies = currentCase.getSleuthkitCase().findAllFilesWhere(
+                "md5 = '" + md5 + "' AND size = " + archiveFile.getSize() + " AND obj_id != " + archiveFile.getId()); //NON-NLS
+        for (AbstractFile copy : copies) {
+            final String uniqueCopyName = FileUtil.escapeFileName(EmbeddedFileExtractorIngestModule.getUniqueName(copy));
+            if (copy.hasChildren() && getExtractionCompleteMarker(uniqueCopyName).exists()) {
+                //so that the children are found if the archive is unpacked again
+                final String uniqueArchiveFileName = FileUtil.escapeFileName(EmbeddedFileExtractorIngestModule.getUniqueName(archiveFile));
+                makeLocalDirectories(uniqueArchiveFileName);
+                List<AbstractFile> reusedFiles = new ArrayList<>();
+                addCopiesOfChildren(copy, archiveFile, currentCase.getServices().getFileManager(),
+                        Paths.get(currentCase.getCaseDirectory()), reusedFiles);
+                if (!reusedFiles.isEmpty()) {
+                    markExtractionComplete(uniqueArchiveFileName);
+                    return reusedFiles;
+                }
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private void addCopiesOfChildren(AbstractFile source, AbstractFile parent, FileManager fileManager, Path caseDirectory, List<AbstractFile> reusedFiles) throws TskCoreException {
+        for (Content child : source.getChildren()) {
+            if (!(child instanceof DerivedFile)) {
+                continue;
+            }
+            DerivedFile sourceFile = (DerivedFile) child;
+            String localAbsPath = sourceFile.getLocalAbsPath();
+            String localRelPath = localAbsPath == null ? "" : caseDirectory.relativize(Paths.get(localAbsPath)).toString();
+            DerivedFile df = fileManager.addDerivedFile(sourceFile.getName(), localRelPath, sourceFile.getSize(),
+                    sourceFile.getCtime(), sourceFile.getCrtime(), sourceFile.getAtime(), sourceFile.getMtime(),
+                    sourceFile.isFile(), parent, "", EmbeddedFileExtractorModuleFactory.getModuleName(),
+                    "", "", TskData.EncodingType.XOR1);
+            // the copy has the same content as the source, so its hash and
+            // type are copied rather than computed again by ingest
+            if (sourceFile.getMd5Hash() != null && !sourceFile.getMd5Hash().isEmpty()) {
+                df.setMd5Hash(sourceFile.getMd5Hash());
+            }
+            if (sourceFile.getMIMEType() != null) {
+                df.setMIMEType(sourceFile.getMIMEType());
+            }
+            df.save();
+            reusedFiles.add(df);
+            if (!sourceFile.isFile()) {
+                addCopiesOfChildren(sourceFile, df, fileManager, caseDirectory, reusedFiles);
+            }
+        }
+    }
+
     /**
      * Get the archiveFilePath
      *
@@ -500,21 +610,6 @@ boolean unpack(AbstractFile archiveFile, String password) {
             unpackSuccessful = false;
             return unpackSuccessful;
         }
-        try {
-
-            List<AbstractFile> existingFiles = getAlreadyExtractedFiles(archiveFile, archiveFilePath);
-            for (AbstractFile file : existingFiles) {
-                statusMap.put(getKeyAbstractFile(file), new ZipFileStatusWrapper(file, ZipFileStatus.EXISTS));
-            }
-        } catch (TskCoreException e) {
-            logger.log(Level.INFO, "Error checking if file already has been processed, skipping: {0}", escapedArchiveFilePath); //NON-NLS
-            unpackSuccessful = false;
-            return unpackSuccessful;
-        } catch (NoCurrentCaseException ex) {
-            logger.log(Level.INFO, "No open case was found while trying to unpack the archive file {0}", escapedArchiveFilePath); //NON-NLS
-            unpackSuccessful = false;
-            return unpackSuccessful;
-        }
         parentAr = archiveDepthCountTree.findArchive(archiveId);
         if (parentAr == null) {
             parentAr = archiveDepthCountTree.addArchive(null, archiveId);
@@ -530,6 +625,51 @@ boolean unpack(AbstractFile archiveFile, String password) {
             unpackSuccessful = false;
             return unpackSuccessful;
         }
+        boolean reuseFailed = false;
+        if (reuseExtractedArchives && password == null) {
+            try {
+                List<AbstractFile> reusedFiles = reuseExtractedArchive(archiveFile);
+                if (!reusedFiles.isEmpty()) {
+                    logger.log(Level.INFO, "Reused {0} files extracted from a copy of {1}", new Object[]{reusedFiles.size(), escapedArchiveFilePath}); //NON-NLS
+                    // The reused files are new files in the case, so they are
+                    // queued like unpacked files, to get their own results
+                    // such as hash set hits; the extraction, hashing and
+                    // file typing are saved.
+                    for (AbstractFile reusedFile : reusedFiles) {
+                        if (reusedFile.isFile() && isSevenZipExtractionSupported(reusedFile)) {
+                            archiveDepthCountTree.addArchive(parentAr, reusedFile.getId());
+                        }
+                    }
+                    services.fireModuleContentEvent(new ModuleContentEvent(archiveFile));
+                    if (context != null) {
+                        context.addFilesToJob(reusedFiles);
+                    }
+                    return unpackSuccessful;
+                }
+            } catch (TskCoreException | NoCurrentCaseException ex) {
+                logger.log(Level.WARNING, "Error reusing the files extracted from a copy of " + escapedArchiveFilePath + ", unpacking it", ex); //NON-NLS
+                reuseFailed = true;
+            }
+        }
+        // looked up after any reuse, so that the files added by a failed
+        // reuse are updated by the unpack instead of added again
+        try {
+
+            List<AbstractFile> existingFiles = reuseFailed
+                    ? Case.getCurrentCaseThrows().getServices().getFileManager().findFilesByParentPath(getRootArchiveId(archiveFile), archiveFilePath)
+                    : getAlreadyExtractedFiles(archiveFile, archiveFilePath);
+            for (AbstractFile file : existingFiles) {
+                statusMap.put(getKeyAbstractFile(file), new ZipFileStatusWrapper(file, ZipFileStatus.EXISTS));
+            }
+        } catch (TskCoreException e) {
+            logger.log(Level.INFO, "Error checking if file already has been processed, skipping: {0}", escapedArchiveFilePath); //NON-NLS
+            unpackSuccessful = false;
+            return unpackSuccessful;
+        } catch (NoCurrentCaseException ex) {
+            logger.log(Level.INFO, "No open case was found while trying to unpack the archive file {0}", escapedArchiveFilePath); //NON-NLS
+            unpackSuccessful = false;
+            return unpackSuccessful;
+        }
         try {
             stream = new SevenZipContentReadStream(new ReadContentInputStream(archiveFile));
             // for RAR files we need to open them explicitly as RAR. Otherwise, if there is a ZIP archive inside RAR archive
@@ -571,6 +711,8 @@ boolean unpack(AbstractFile archiveFile, String password) {
             }
             //unpack and process every item in archive
             int itemNumber = 0;
+            Set<File> localDirectories = new LinkedHashSet<>();
+            Map<Integer, ItemToExtract> itemsToExtract = new LinkedHashMap<>();
 
             for (ISimpleInArchiveItem item : simpleInArchive.getArchiveItems()) {
                 String pathInArchive = getPathInArchive(item, itemNumber, archiveFile);
@@ -583,8 +725,6 @@ boolean unpack(AbstractFile archiveFile, String password) {
                     continue; //skip the item
                 }
                 SevenZipExtractor.UnpackedTree.UnpackedNode unpackedNode = unpackedTree.addNode(pathInArchive);
-                //update progress bar
-                progress.progress(archiveFile.getName() + ": " + item.getPath(), processedItems);
 
                 final boolean isEncrypted = item.isEncrypted();
 
@@ -621,45 +761,58 @@ boolean unpack(AbstractFile archiveFile, String password) {
                 }
                 final String uniqueExtractedName = FileUtil.escapeFileName(uniqueArchiveFileName + File.separator + (item.getItemIndex() / 1000) + File.separator + item.getItemIndex() + "_" + new File(pathInArchive).getName());
 
-                //create local dirs and empty files before extracted
+                //cannot rely on files in top-bottom order, so the local dirs
+                //are made once all the items are known
                 File localFile = new java.io.File(moduleDirAbsolute + File.separator + uniqueExtractedName);
-                //cannot rely on files in top-bottom order
-                if (!localFile.exists()) {
-                    try {
-                        if (item.isFolder()) {
-                            localFile.mkdirs();
-                        } else {
-                            localFile.getParentFile().mkdirs();
-                            try {
-                                localFile.createNewFile();
-                            } catch (IOException e) {
-                                logger.log(Level.SEVERE, "Error creating extracted file: " + localFile.getAbsolutePath(), e); //NON-NLS
-                            }
-                        }
-                    } catch (SecurityException e) {
-                        logger.log(Level.SEVERE, "Error setting up output path for unpacked file: {0}", pathInArchive); //NON-NLS
-                        //TODO consider bail out / msg to the user
+                if (item.isFolder()) {
+                    localDirectories.add(localFile);
+                    unpackNode(item, unpackedNode, password, freeDiskSpace, uniqueExtractedName);
+                    ++processedItems;
+                } else {
+                    localDirectories.add(localFile.getParentFile());
+                    itemsToExtract.put(item.getItemIndex(), new ItemToExtract(item, unpackedNode, uniqueExtractedName));
+                }
+            }
+
+            try {
+                for (File localDirectory : localDirectories) {
+                    if (!localDirectory.exists() && !localDirectory.mkdirs()) {
+                        logger.log(Level.SEVERE, "Error setting up output path for unpacked files: {0}", localDirectory); //NON-NLS
                     }
                 }
-                // skip the rest of this loop if we couldn't create the file
-                if (localFile.exists() == false) {
-                    continue;
+            } catch (SecurityException e) {
+                logger.log(Level.SEVERE, "Error setting up output paths for unpacked files of: {0}", escapedArchiveFilePath); //NON-NLS
+            }
+
+            //extract all the files in a single pass over the archive, so that
+            //solid archives are only decompressed once
+            if (!itemsToExtract.isEmpty()) {
+                BulkExtractCallback callback = new BulkExtractCallback(archiveFile, itemsToExtract, password, freeDiskSpace, progress, processedItems);
+                int[] indices = itemsToExtract.keySet().stream().mapToInt(Integer::intValue).toArray();
+                try {
+                    inArchive.extract(indices, false, callback);
+                } catch (SevenZipException ex) {
+                    logger.log(Level.WARNING, "Error extracting items from archive " + escapedArchiveFilePath + ", extracting the remaining items one at a time", ex); //NON-NLS
+                    callback.abortCurrentItem();
+                    for (ItemToExtract remaining : callback.getItemsNotStarted()) {
+                        progress.progress(archiveFile.getName() + ": " + remaining.item.getPath(), callback.getProcessedItems());
+                        if (unpackNode(remaining.item, remaining.unpackedNode, password, freeDiskSpace, remaining.uniqueExtractedName) == null) {
+                            unpackSuccessful = false;
+                        }
+                    }
                 }
-                //find this node in the hierarchy, create if neede;
-                unpackedNode = unpackNode(item, unpackedNode, password,
-                        freeDiskSpace, uniqueExtractedName);
-                if (unpackedNode == null) {
+                if (!callback.isAllExtracted()) {
                     unpackSuccessful = false;
                 }
-
-                //update units for progress bar
-                ++processedItems;
             }
             // add them to the DB. We wait until the end so that we have the metadata on all of the
             // intermediate nodes since the order is not guaranteed
             try {
                 unpackedTree.updateOrAddFileToCaseRec(statusMap, archiveFilePath);
                 unpackedFiles = unpackedTree.getAllFileObjects();
+                if (unpackSuccessful) {
+                    markExtractionComplete(uniqueArchiveFileName);
+                }
                 //check if children are archives, update archive depth tracking
                 for (AbstractFile unpackedFile : unpackedFiles) {
                     if (unpackedFile == null) {
@@ -752,6 +905,182 @@ boolean unpack(AbstractFile archiveFile, String password) {
         return unpackSuccessful;
     }
 
+    /**
+     * An archive item to extract, and the node of the unpacked tree that gets
+     * its derived file info.
+     */
+    private final class ItemToExtract {
+
+        private final ISimpleInArchiveItem item;
+        private final UnpackedTree.UnpackedNode unpackedNode;
+        private final String uniqueExtractedName;
+
+        private ItemToExtract(ISimpleInArchiveItem item, UnpackedTree.UnpackedNode unpackedNode, String uniqueExtractedName) {
+            this.item = item;
+            this.unpackedNode = unpackedNode;
+            this.uniqueExtractedName = uniqueExtractedName;
+        }
+    }
+
+    /**
+     * Callback used to extract many items of an archive in a single call, so
+     * that the items of a solid archive are decompressed in one pass, instead
+     * of from the start of the solid block for each item. 7-Zip asks for a
+     * stream for each item in archive order, then reports the result of
+     * extracting it.
+     */
+    private final class BulkExtractCallback implements IArchiveExtractCallback, ICryptoGetTextPassword {
+
+        private final AbstractFile archiveFile;
+        private final Map<Integer, ItemToExtract> items;
+        private final Set<Integer> itemsStarted = new HashSet<>();
+        private final String password;
+        private final ProgressHandle progress;
+        private long freeDiskSpace;
+        private int processedItems;
+        private boolean allExtracted = true;
+        private ItemToExtract currentItem;
+        private UnpackStream currentStream;
+
+        /**
+         * @param archiveFile    the archive file
+         * @param items          map from item index to the items to extract
+         * @param password       the password for the archive, null if not
+         *                       used
+         * @param freeDiskSpace  the amount of free disk space
+         * @param progress       the progress bar, already started
+         * @param processedItems the number of items already processed
+         */
+        private BulkExtractCallback(AbstractFile archiveFile, Map<Integer, ItemToExtract> items, String password, long freeDiskSpace, ProgressHandle progress, int processedItems) {
+            this.archiveFile = archiveFile;
+            this.items = items;
+            this.password = password;
+            this.freeDiskSpace = freeDiskSpace;
+            this.progress = progress;
+            this.processedItems = processedItems;
+        }
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            currentItem = items.get(index);
+            currentStream = null;
+            if (currentItem == null || extractAskMode != ExtractAskMode.EXTRACT) {
+                currentItem = null;
+                return null;
+            }
+            itemsStarted.add(index);
+            progress.progress(archiveFile.getName() + ": " + currentItem.item.getPath(), processedItems);
+
+            final String localAbsPath = moduleDirAbsolute + File.separator + currentItem.uniqueExtractedName;
+            // NOTE: item.getSize() may return null in case of certain
+            // archiving formats. Eg: BZ2
+            Long size = currentItem.item.getSize();
+            if (size != null) {
+                currentStream = new KnownSizeUnpackStream(localAbsPath, size);
+            } else {
+                currentStream = new UnknownSizeUnpackStream(localAbsPath, freeDiskSpace);
+            }
+            if (currentStream.getOutput() == null) {
+                //the local file could not be created, skip the item
+                currentStream = null;
+                currentItem = null;
+                allExtracted = false;
+                ++processedItems;
+            }
+            return currentStream;
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) throws SevenZipException {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult result) throws SevenZipException {
+            if (currentItem == null) {
+                return;
+            }
+            if (result != ExtractOperationResult.OK) {
+                logger.log(Level.WARNING, "Extraction of : {0} encountered error {1}", new Object[]{currentItem.uniqueExtractedName, result}); //NON-NLS
+                allExtracted = false;
+            }
+            finishCurrentItem();
+        }
+
+        /**
+         * Close the stream of the item being extracted when the extraction
+         * failed, keeping what was extracted of it.
+         */
+        void abortCurrentItem() {
+            if (currentItem != null) {
+                allExtracted = false;
+                finishCurrentItem();
+            }
+        }
+
+        private void finishCurrentItem() {
+            //record derived data in unode, to be traversed later after unpacking the archive
+            final ISimpleInArchiveItem item = currentItem.item;
+            final String localRelPath = moduleDirRelative + File.separator + currentItem.uniqueExtractedName;
+            try {
+                final Date createTime = item.getCreationTime();
+                final Date accessTime = item.getLastAccessTime();
+                final Date writeTime = item.getLastWriteTime();
+                final long createtime = createTime == null ? 0L : createTime.getTime() / 1000;
+                final long modtime = writeTime == null ? 0L : writeTime.getTime() / 1000;
+                final long accesstime = accessTime == null ? 0L : accessTime.getTime() / 1000;
+                currentItem.unpackedNode.addDerivedInfo(currentStream.getSize(), true,
+                        0L, createtime, accesstime, modtime, localRelPath);
+            } catch (SevenZipException ex) {
+                logger.log(Level.WARNING, "Error getting the times of archive item: " + localRelPath, ex); //NON-NLS
+                currentItem.unpackedNode.addDerivedInfo(currentStream.getSize(), true, 0L, 0L, 0L, 0L, localRelPath);
+            }
+            if (currentStream instanceof UnknownSizeUnpackStream && freeDiskSpace != IngestMonitor.DISK_FREE_SPACE_UNKNOWN) {
+                freeDiskSpace -= currentStream.getSize();
+            }
+            currentStream.close();
+            currentStream = null;
+            currentItem = null;
+            ++processedItems;
+        }
+
+        @Override
+        public String cryptoGetTextPassword() throws SevenZipException {
+            return password;
+        }
+
+        @Override
+        public void setTotal(long total) throws SevenZipException {
+        }
+
+        @Override
+        public void setCompleted(long complete) throws SevenZipException {
+        }
+
+        /**
+         * @return the items that 7-Zip has not asked for yet, in archive order
+         */
+        List<ItemToExtract> getItemsNotStarted() {
+            List<ItemToExtract> notStarted = new ArrayList<>();
+            items.forEach((index, item) -> {
+                if (!itemsStarted.contains(index)) {
+                    notStarted.add(item);
+                }
+            });
+            return notStarted;
+        }
+
+        int getProcessedItems() {
+            return processedItems;
+        }
+
+        /**
+         * @return false if any item failed to extract
+         */
+        boolean isAllExtracted() {
+            return allExtracted;
+        }
+    }
+
     /**
      * Stream used to unpack the archive to local file
      */
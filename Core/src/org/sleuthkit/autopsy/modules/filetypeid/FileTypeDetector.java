@@ -18,11 +18,14 @@
  */
 package org.sleuthkit.autopsy.modules.filetypeid;
 
+import java.io.ByteArrayInputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 import org.apache.tika.Tika;
 import org.apache.tika.io.TikaInputStream;
@@ -47,6 +50,18 @@ public class FileTypeDetector {
     private static final int SLACK_FILE_THRESHOLD = 4096;
     private final List<FileType> userDefinedFileTypes;
     private final List<FileType> autopsyDefinedFileTypes;
+    private final SignatureMatcher userDefinedMatcher;
+    private final SignatureMatcher autopsyDefinedMatcher;
+
+    /**
+     * The head and tail of each file are read once into these buffers, and
+     * used by both the custom file type signatures and Tika. The buffers are
+     * per thread, since a detector may be shared.
+     */
+    private final int headWindowSize;
+    private final int tailWindowSize;
+    private final ThreadLocal<byte[]> headBuffer;
+    private final ThreadLocal<byte[]> tailBuffer;
     private static SortedSet<String> tikaDetectedTypes;
 
     /**
@@ -119,6 +134,13 @@ public FileTypeDetector() throws FileTypeDetectorInitException {
         } catch (CustomFileTypesManager.CustomFileTypesException ex) {
             throw new FileTypeDetectorInitException("Error loading custom file types", ex); //NON-NLS
         }
+        userDefinedMatcher = new SignatureMatcher(userDefinedFileTypes);
+        autopsyDefinedMatcher = new SignatureMatcher(autopsyDefinedFileTypes);
+        headWindowSize = Math.max(MimeTypes.getDefaultMimeTypes().getMinLength(),
+                Math.max(userDefinedMatcher.getHeadWindowSize(), autopsyDefinedMatcher.getHeadWindowSize()));
+        tailWindowSize = Math.max(userDefinedMatcher.getTailWindowSize(), autopsyDefinedMatcher.getTailWindowSize());
+        headBuffer = ThreadLocal.withInitial(() -> new byte[headWindowSize]);
+        tailBuffer = ThreadLocal.withInitial(() -> new byte[tailWindowSize]);
     }
 
     /**
@@ -200,30 +222,82 @@ public String getMIMEType(AbstractFile file) {
             mimeType = MimeTypes.OCTET_STREAM;
         }
 
+        if (null == mimeType) {
+            mimeType = detectType(file);
+        }
+
+        /*
+         * Documented side effect: write the result to the AbstractFile object.
+         */
+        file.setMIMEType(mimeType);
+
+        return mimeType;
+    }
+
+    /**
+     * Removes the optional parameter from a MIME type string
+     *
+     * @param mimeType
+     *
+     * @return MIME type without the optional parameter
+     */
+    private String removeOptionalParameter(String mimeType) {
+        int indexOfSemicolon = mimeType.indexOf(';');
+        if (indexOfSemicolon != -1) {
+            return mimeType.substring(0, indexOfSemicolon).trim();
+        } else {
+            return mimeType;
+        }
+    }
+
+    /**
+     * Detects the MIME type of a regular file. The head and tail of the file
+     * are read once, and matched against the user-defined custom file types,
+     * then the custom file types defined by Autopsy. If neither matches, the
+     * head is handed on to Tika along with the rest of the file.
+     *
+     * @param file The file to test.
+     *
+     * @return A MIME type name.
+     */
+    private String detectType(AbstractFile file) {
+        byte[] head = headBuffer.get();
+        int headLength = readWindow(file, head, 0, (int) Math.min(file.getSize(), headWindowSize));
+
+        byte[] tail = tailBuffer.get();
+        int tailLength = (int) Math.min(file.getSize(), tailWindowSize);
+        long tailOffset = file.getSize() - tailLength;
+        if (tailOffset + tailLength <= headLength) {
+            // the tail is already in the head
+            System.arraycopy(head, (int) tailOffset, tail, 0, tailLength);
+        } else {
+            tailLength = readWindow(file, tail, tailOffset, tailLength);
+        }
+
         /*
          * If the file is a regular file, give precedence to user-defined custom
          * file types.
          */
-        if (null == mimeType) {
-            mimeType = detectUserDefinedType(file);
-        }
+        String mimeType = userDefinedMatcher.match(file, head, headLength, tail, tailLength);
 
         /*
          * If the file does not match a user-defined type, give precedence to
          * custom file types defined by Autopsy.
          */
         if (null == mimeType) {
-            mimeType = detectAutopsyDefinedType(file);
+            mimeType = autopsyDefinedMatcher.match(file, head, headLength, tail, tailLength);
         }
 
         /*
          * If the file does not match a user-defined type, send the initial
-         * bytes to Tika.
+         * bytes to Tika. The head is not read again; the rest of the file is
+         * only read if a Tika detector needs it, e.g. for container formats.
          */
         if (null == mimeType) {
-            ReadContentInputStream stream = new ReadContentInputStream(file);
-
-            try (TikaInputStream tikaInputStream = TikaInputStream.get(stream)) {
+            ReadContentInputStream rest = new ReadContentInputStream(file);
+            try (TikaInputStream tikaInputStream = TikaInputStream.get(
+                    new SequenceInputStream(new ByteArrayInputStream(head, 0, headLength), rest))) {
+                rest.seek(headLength);
                 String tikaType = tika.detect(tikaInputStream, file.getName());
 
                 /*
@@ -246,64 +320,50 @@ public String getMIMEType(AbstractFile file) {
                 mimeType = MimeTypes.OCTET_STREAM;
             }
         }
-
-        /*
-         * Documented side effect: write the result to the AbstractFile object.
-         */
-        file.setMIMEType(mimeType);
-
         return mimeType;
     }
 
     /**
-     * Removes the optional parameter from a MIME type string
+     * Reads part of a file into a window buffer with as few reads as
+     * possible.
      *
-     * @param mimeType
+     * @param file   The file.
+     * @param buffer The window buffer.
+     * @param offset The offset in the file to read from.
+     * @param length The number of bytes to read.
      *
-     * @return MIME type without the optional parameter
+     * @return The number of bytes read, fewer than length if there was a read
+     *         error.
      */
-    private String removeOptionalParameter(String mimeType) {
-        int indexOfSemicolon = mimeType.indexOf(';');
-        if (indexOfSemicolon != -1) {
-            return mimeType.substring(0, indexOfSemicolon).trim();
-        } else {
-            return mimeType;
-        }
-    }
-
-    /**
-     * Determines whether or not a file matches a user-defined custom file type.
-     *
-     * @param file The file to test.
-     *
-     * @return The MIME type as a string if a match is found; otherwise null.
-     */
-    private String detectUserDefinedType(AbstractFile file) {
-        String retValue = null;
-        
-        for (FileType fileType : userDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                retValue = fileType.getMimeType();
-                break;
-            }
-        }
-        return retValue;
-    }
-
-    /**
-     * Determines whether or not a file matches a custom file type defined by Autopsy.
-     *
-     * @param file The file to test.
-     *
-     * @return The MIME type as a string if a match is found; otherwise null.
-     */
-    private String detectAutopsyDefinedType(AbstractFile file) {
-        for (FileType fileType : autopsyDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                return fileType.getMimeType();
+    private static int readWindow(AbstractFile file, byte[] buffer, long offset, int length) {
+        int totalRead = 0;
+        try {
+            while (totalRead < length) {
+                int bytesRead;
+                if (totalRead == 0) {
+                    bytesRead = file.read(buffer, offset, length);
+                } else {
+                    // a short read, AbstractFile.read always fills from the start of the buffer
+                    byte[] remainder = new byte[length - totalRead];
+                    bytesRead = file.read(remainder, offset + totalRead, remainder.length);
+                    if (bytesRead > 0) {
+                        System.arraycopy(remainder, 0, buffer, totalRead, bytesRead);
+                    }
+                }
+                if (bytesRead <= 0) {
+                    break;
+                }
+                totalRead += bytesRead;
             }
+        } catch (TskCoreException ex) {
+            /*
+             * This exception is swallowed rather than propagated because files
+             * in images are not always consistent with their file system meta
+             * data making for read errors.
+             */
+            logger.log(Level.WARNING, "Error reading from file with objId = " + file.getId(), ex); //NON-NLS
         }
-        return null;
+        return totalRead;
     }
 
     /*
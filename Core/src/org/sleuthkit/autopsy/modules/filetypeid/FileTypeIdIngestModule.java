@@ -102,7 +102,7 @@ public ProcessResult process(AbstractFile file) {
             long startTime = System.currentTimeMillis();
             String mimeType = fileTypeDetector.getMIMEType(file);
             file.setMIMEType(mimeType);
-            FileType fileType = detectUserDefinedFileType(file);
+            FileType fileType = detectUserDefinedFileType(file, mimeType);
             if (fileType != null && fileType.createInterestingFileHit()) {
                 createInterestingFileHit(file, fileType);
             }
@@ -116,21 +116,25 @@ public ProcessResult process(AbstractFile file) {
 
     /**
      * Determines whether or not a file matches a user-defined custom file type.
+     * Only the file types with the MIME type detected for the file are
+     * checked, since the detector already gives precedence to the first
+     * matching user-defined file type.
      *
-     * @param file The file to test.
+     * @param file     The file to test.
+     * @param mimeType The MIME type detected for the file.
      *
      * @return The file type if a match is found; otherwise null.
      *
      * @throws CustomFileTypesException If there is an issue getting an instance
      *                                  of CustomFileTypesManager.
      */
-    private FileType detectUserDefinedFileType(AbstractFile file) throws CustomFileTypesManager.CustomFileTypesException {
+    private FileType detectUserDefinedFileType(AbstractFile file, String mimeType) throws CustomFileTypesManager.CustomFileTypesException {
         FileType retValue = null;
 
         CustomFileTypesManager customFileTypesManager = CustomFileTypesManager.getInstance();
         List<FileType> fileTypesList = customFileTypesManager.getUserDefinedFileTypes();
         for (FileType fileType : fileTypesList) {
-            if (fileType.matches(file)) {
+            if (fileType.getMimeType().equals(mimeType) && fileType.matches(file)) {
                 retValue = fileType;
                 break;
             }
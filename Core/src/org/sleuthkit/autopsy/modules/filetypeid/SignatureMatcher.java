@@ -0,0 +1,228 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.sleuthkit.autopsy.modules.filetypeid.FileType.Signature;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Matches files against an ordered list of custom file types, using the head
+ * and tail of each file read once, instead of a separate read per signature.
+ *
+ * The signatures are compiled into byte tries, one for each offset from the
+ * start or the end of the file, so the signatures that share an offset and a
+ * prefix are compared together. Signatures that lie too far into the file to
+ * be in the head or tail windows are checked by reading the file, but only
+ * for file types whose other signatures all match.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class SignatureMatcher {
+
+    /**
+     * The largest head or tail window the signatures may need.
+     */
+    static final int MAX_WINDOW_SIZE = 64 * 1024;
+
+    private final List<FileType> fileTypes;
+
+    /**
+     * For each file type, the ids of its signatures that are in the tries.
+     */
+    private final List<int[]> trieSignatureIDs = new ArrayList<>();
+
+    /**
+     * For each file type, its signatures that are outside the windows.
+     */
+    private final List<List<Signature>> farSignatures = new ArrayList<>();
+
+    /**
+     * The tries of the signatures relative to the start of the file, by
+     * offset, and of the signatures relative to the end of the file, by offset
+     * from the last byte.
+     */
+    private final Map<Long, Node> headTries = new HashMap<>();
+    private final Map<Long, Node> tailTries = new HashMap<>();
+
+    private int signatureCount = 0;
+    private int headWindowSize = 0;
+    private int tailWindowSize = 0;
+
+    /**
+     * Compile the signatures of the given file types.
+     *
+     * @param fileTypes The file types, in order of precedence.
+     */
+    SignatureMatcher(List<FileType> fileTypes) {
+        this.fileTypes = new ArrayList<>(fileTypes);
+        for (FileType fileType : this.fileTypes) {
+            List<Integer> ids = new ArrayList<>();
+            List<Signature> far = new ArrayList<>();
+            for (Signature signature : fileType.getSignatures()) {
+                byte[] signatureBytes = signature.getSignatureBytes();
+                long offset = signature.getOffset();
+                if (signatureBytes.length == 0) {
+                    far.add(signature);
+                } else if (signature.isRelativeToStart()) {
+                    if (offset + signatureBytes.length > MAX_WINDOW_SIZE) {
+                        far.add(signature);
+                    } else {
+                        ids.add(addToTrie(headTries, offset, signatureBytes));
+                        headWindowSize = Math.max(headWindowSize, (int) offset + signatureBytes.length);
+                    }
+                } else {
+                    if (offset + 1 > MAX_WINDOW_SIZE) {
+                        far.add(signature);
+                    } else {
+                        ids.add(addToTrie(tailTries, offset, signatureBytes));
+                        tailWindowSize = Math.max(tailWindowSize, (int) offset + 1);
+                    }
+                }
+            }
+            trieSignatureIDs.add(ids.stream().mapToInt(Integer::intValue).toArray());
+            farSignatures.add(far);
+        }
+    }
+
+    private int addToTrie(Map<Long, Node> tries, long offset, byte[] signatureBytes) {
+        Node node = tries.computeIfAbsent(offset, o -> new Node());
+        for (byte signatureByte : signatureBytes) {
+            node = node.getOrAddChild(signatureByte);
+        }
+        int id = signatureCount++;
+        node.signatureIDs.add(id);
+        return id;
+    }
+
+    /**
+     * @return The number of bytes from the start of a file the signatures
+     *         need.
+     */
+    int getHeadWindowSize() {
+        return headWindowSize;
+    }
+
+    /**
+     * @return The number of bytes from the end of a file the signatures need.
+     */
+    int getTailWindowSize() {
+        return tailWindowSize;
+    }
+
+    /**
+     * Find the first file type whose signatures are all in the given file.
+     *
+     * @param file       The file.
+     * @param head       The first bytes of the file.
+     * @param headLength The number of bytes read into head, at least the
+     *                   smaller of the head window size and the file size.
+     * @param tail       The last bytes of the file.
+     * @param tailLength The number of bytes read into tail, at least the
+     *                   smaller of the tail window size and the file size.
+     *
+     * @return The MIME type of the file type, or null if none matches.
+     */
+    String match(AbstractFile file, byte[] head, int headLength, byte[] tail, int tailLength) {
+        if (fileTypes.isEmpty()) {
+            return null;
+        }
+
+        BitSet matched = new BitSet(signatureCount);
+        for (Map.Entry<Long, Node> entry : headTries.entrySet()) {
+            matchTrie(entry.getValue(), head, entry.getKey().intValue(), headLength, matched);
+        }
+        for (Map.Entry<Long, Node> entry : tailTries.entrySet()) {
+            // the signature starts offset bytes before the last byte
+            matchTrie(entry.getValue(), tail, tailLength - 1 - entry.getKey().intValue(), tailLength, matched);
+        }
+
+        for (int i = 0; i < fileTypes.size(); i++) {
+            if (allMatched(trieSignatureIDs.get(i), matched) && farSignaturesMatch(farSignatures.get(i), file)) {
+                return fileTypes.get(i).getMimeType();
+            }
+        }
+        return null;
+    }
+
+    private static void matchTrie(Node root, byte[] window, int start, int length, BitSet matched) {
+        if (start < 0) {
+            return; // the file is too small
+        }
+        Node node = root;
+        for (int position = start; position < length; position++) {
+            node = node.getChild(window[position]);
+            if (node == null) {
+                return;
+            }
+            for (int id : node.signatureIDs) {
+                matched.set(id);
+            }
+        }
+    }
+
+    private static boolean allMatched(int[] ids, BitSet matched) {
+        for (int id : ids) {
+            if (matched.get(id) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean farSignaturesMatch(List<Signature> signatures, AbstractFile file) {
+        for (Signature signature : signatures) {
+            if (signature.containedIn(file) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A node of a signature trie. The path from the root to a node spells
+     * out a byte sequence, and the ids are those of the signatures that are
+     * exactly that sequence.
+     */
+    private static final class Node {
+
+        private Node[] children;
+        private final List<Integer> signatureIDs = new ArrayList<>(1);
+
+        private Node getChild(byte value) {
+            return children == null ? null : children[value & 0xFF];
+        }
+
+        private Node getOrAddChild(byte value) {
+            if (children == null) {
+                children = new Node[256];
+            }
+            Node child = children[value & 0xFF];
+            if (child == null) {
+                child = new Node();
+                children[value & 0xFF] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Calculates the hashes of files in large block reads. Files bigger than one
+ * block are read ahead on a separate I/O thread while the calling thread
+ * digests the blocks already read, and all the requested hash types are
+ * computed in the same pass over the file.
+ *
+ * Read-ahead happens in two lanes: files bigger than the bulk threshold are
+ * read by a dedicated bulk lane, so that a few huge files (e.g. videos) do
+ * not hold up the read-ahead of the many small files hashed by the other
+ * ingest threads.
+ */
+final class FileHasher {
+
+    private static final Logger logger = Logger.getLogger(FileHasher.class.getName());
+
+    /**
+     * The types of hash that can be calculated.
+     */
+    enum HashType {
+        MD5("MD5"), //NON-NLS
+        SHA1("SHA-1"), //NON-NLS
+        SHA256("SHA-256"); //NON-NLS
+
+        private final String algorithm;
+
+        private HashType(String algorithm) {
+            this.algorithm = algorithm;
+        }
+    }
+
+    /**
+     * The size of each read. A multiple of the sector size, so reads stay
+     * aligned in the image.
+     */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * The number of blocks the I/O thread may read ahead of the hashing.
+     */
+    private static final int READ_AHEAD_BLOCKS = 4;
+
+    private static final String CONFIG_NAME = "HashLookup"; //NON-NLS
+    private static final String BULK_THRESHOLD_SETTING = "bulkHashThresholdBytes"; //NON-NLS
+    private static final long DEFAULT_BULK_THRESHOLD = 256L * 1024 * 1024;
+
+    private static FileHasher instance;
+
+    private final long bulkThreshold;
+    private final ExecutorService readAheadExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("hash-read-ahead-%d").setDaemon(true).build()); //NON-NLS
+    private final ExecutorService bulkReadAheadExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("hash-bulk-read-ahead-%d").setDaemon(true).build()); //NON-NLS
+
+    /**
+     * Get the shared file hasher. The bulk threshold is read from the
+     * "bulkHashThresholdBytes" setting of the HashLookup config, if present.
+     *
+     * @return the file hasher
+     */
+    static synchronized FileHasher getDefault() {
+        if (instance == null) {
+            long threshold = DEFAULT_BULK_THRESHOLD;
+            String setting = ModuleSettings.getConfigSetting(CONFIG_NAME, BULK_THRESHOLD_SETTING);
+            if (setting != null && setting.isEmpty() == false) {
+                try {
+                    threshold = Long.parseLong(setting.trim());
+                } catch (NumberFormatException ex) {
+                    logger.log(Level.WARNING, "Invalid bulk hash threshold " + setting + ", using the default.", ex); //NON-NLS
+                }
+            }
+            instance = new FileHasher(threshold);
+        }
+        return instance;
+    }
+
+    /**
+     * @param bulkThreshold files bigger than this many bytes are read ahead
+     *                      in the bulk lane
+     */
+    FileHasher(long bulkThreshold) {
+        this.bulkThreshold = bulkThreshold;
+    }
+
+    /**
+     * Calculate the hashes of a file.
+     *
+     * @param file      the file to hash
+     * @param hashTypes the types of hash to calculate
+     *
+     * @return map from hash type to the lower case hex hash
+     *
+     * @throws IOException if the file could not be read, or the hashing was
+     *                     interrupted
+     */
+    Map<HashType, String> calculateHashes(AbstractFile file, Set<HashType> hashTypes) throws IOException {
+        Map<HashType, MessageDigest> digests = new EnumMap<>(HashType.class);
+        for (HashType hashType : hashTypes) {
+            try {
+                digests.put(hashType, MessageDigest.getInstance(hashType.algorithm));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException("No implementation of " + hashType.algorithm, ex); //NON-NLS
+            }
+        }
+
+        final long size = file.getSize();
+        if (size <= BLOCK_SIZE) {
+            //a single read, no need for another thread
+            byte[] buffer = new byte[(int) Math.max(size, 1)];
+            long offset = 0;
+            while (offset < size) {
+                int read = readBlock(file, buffer, offset, buffer.length - offset);
+                if (read <= 0) {
+                    break;
+                }
+                for (MessageDigest digest : digests.values()) {
+                    digest.update(buffer, (int) offset, read);
+                }
+                offset += read;
+            }
+        } else {
+            ReadAhead readAhead = new ReadAhead(file);
+            ExecutorService lane = size > bulkThreshold ? bulkReadAheadExecutor : readAheadExecutor;
+            Future<?> reader = lane.submit(readAhead);
+            try {
+                Block block;
+                while ((block = readAhead.takeBlock()).length > 0) {
+                    for (MessageDigest digest : digests.values()) {
+                        digest.update(block.data, 0, block.length);
+                    }
+                    readAhead.recycle(block);
+                }
+                if (block.error != null) {
+                    throw block.error;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + file.getName()); //NON-NLS
+            } finally {
+                readAhead.cancel();
+                reader.cancel(true);
+            }
+        }
+
+        Map<HashType, String> hashes = new EnumMap<>(HashType.class);
+        digests.forEach((hashType, digest) -> hashes.put(hashType, toHex(digest.digest())));
+        return hashes;
+    }
+
+    private static int readBlock(AbstractFile file, byte[] buffer, long offset, long length) throws IOException {
+        try {
+            return file.read(buffer, offset, length);
+        } catch (TskCoreException ex) {
+            throw new IOException("Error reading " + file.getName() + " at offset " + offset, ex); //NON-NLS
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A block of file content. A block with a length of zero or less marks
+     * the end of the file, or an error if error is set.
+     */
+    private static final class Block {
+
+        private final byte[] data;
+        private int length;
+        private IOException error;
+
+        private Block(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Reads a file a block at a time into a bounded set of buffers, which the
+     * hashing thread returns once it has digested them.
+     */
+    private static final class ReadAhead implements Runnable {
+
+        private final AbstractFile file;
+        private final BlockingQueue<Block> fullBlocks = new ArrayBlockingQueue<>(READ_AHEAD_BLOCKS + 1);
+        private final BlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(READ_AHEAD_BLOCKS);
+        private volatile boolean cancelled = false;
+
+        private ReadAhead(AbstractFile file) {
+            this.file = file;
+            for (int i = 0; i < READ_AHEAD_BLOCKS; i++) {
+                freeBlocks.add(new Block(new byte[BLOCK_SIZE]));
+            }
+        }
+
+        @Override
+        public void run() {
+            Block end = new Block(new byte[0]);
+            try {
+                long offset = 0;
+                final long size = file.getSize();
+                while (offset < size && cancelled == false) {
+                    Block block = freeBlocks.poll(100, TimeUnit.MILLISECONDS);
+                    if (block == null) {
+                        continue;
+                    }
+                    block.length = readBlock(file, block.data, offset, Math.min(BLOCK_SIZE, size - offset));
+                    if (block.length <= 0) {
+                        break;
+                    }
+                    offset += block.length;
+                    fullBlocks.put(block);
+                }
+            } catch (IOException ex) {
+                end.error = ex;
+            } catch (InterruptedException ex) {
+                //cancelled by the hashing thread
+                return;
+            }
+            fullBlocks.offer(end);
+        }
+
+        private Block takeBlock() throws InterruptedException {
+            return fullBlocks.take();
+        }
+
+        private void recycle(Block block) {
+            freeBlocks.offer(block);
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -22,6 +22,7 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,7 +48,6 @@
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
 import org.sleuthkit.datamodel.HashHitInfo;
-import org.sleuthkit.datamodel.HashUtility;
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
@@ -67,6 +67,7 @@ public class HashDbIngestModule implements FileIngestModule {
     private final SleuthkitCase skCase;
     private final HashDbManager hashDbManager = HashDbManager.getInstance();
     private final HashLookupModuleSettings settings;
+    private final FileHasher fileHasher = FileHasher.getDefault();
     private List<HashDb> knownBadHashSets = new ArrayList<>();
     private List<HashDb> knownHashSets = new ArrayList<>();
     private long jobId;
@@ -186,7 +187,7 @@ public ProcessResult process(AbstractFile file) {
             try {
                 TimingMetric metric = EnterpriseHealthMonitor.getTimingMetric("Disk Reads: Hash calculation");
                 long calcstart = System.currentTimeMillis();
-                md5Hash = HashUtility.calculateMd5Hash(file);
+                md5Hash = fileHasher.calculateHashes(file, EnumSet.of(FileHasher.HashType.MD5)).get(FileHasher.HashType.MD5);
                 if (file.getSize() > 0) {
                     // Surprisingly, the hash calculation does not seem to be correlated that
                     // strongly with file size until the files get large.
@@ -312,12 +313,10 @@ private void postHashSetHitToBlackboard(AbstractFile abstractFile, String md5Has
             badFile.addAttributes(attributes);
 
             try {
-                // index the artifact for keyword search
-                blackboard.indexArtifact(badFile);
+                // queue the artifact for keyword search indexing, without waiting for it
+                blackboard.indexArtifacts(Collections.singletonList(badFile), this::handleIndexingError);
             } catch (Blackboard.BlackboardException ex) {
-                logger.log(Level.SEVERE, "Unable to index blackboard artifact " + badFile.getArtifactID(), ex); //NON-NLS
-                MessageNotifyUtil.Notify.error(
-                        Bundle.HashDbIngestModule_indexError_message(), badFile.getDisplayName());
+                handleIndexingError(badFile, ex);
             }
 
             if (showInboxMessage) {
@@ -364,6 +363,12 @@ private void postHashSetHitToBlackboard(AbstractFile abstractFile, String md5Has
         }
     }
 
+    private void handleIndexingError(BlackboardArtifact artifact, Blackboard.BlackboardException ex) {
+        logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
+        MessageNotifyUtil.Notify.error(
+                Bundle.HashDbIngestModule_indexError_message(), artifact.getDisplayName());
+    }
+
     private static synchronized void postSummary(long jobId,
             List<HashDb> knownBadHashSets, List<HashDb> knownHashSets) {
         IngestJobTotals jobTotals = getTotalsForIngestJobs(jobId);
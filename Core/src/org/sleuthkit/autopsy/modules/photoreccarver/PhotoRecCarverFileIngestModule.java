@@ -18,8 +18,11 @@
  */
 package org.sleuthkit.autopsy.modules.photoreccarver;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.ProcessBuilder.Redirect;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
@@ -34,6 +37,10 @@
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.openide.modules.InstalledFileLocator;
@@ -58,8 +65,10 @@
 import org.sleuthkit.autopsy.ingest.ModuleContentEvent;
 import org.sleuthkit.autopsy.ingest.ProcTerminationCode;
 import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.CarvingResult;
 import org.sleuthkit.datamodel.LayoutFile;
 import org.sleuthkit.datamodel.ReadContentInputStream.ReadContentInputStreamException;
+import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 
 /**
@@ -79,6 +88,32 @@
 final class PhotoRecCarverFileIngestModule implements FileIngestModule {
 
     static final boolean DEFAULT_CONFIG_KEEP_CORRUPTED_FILES = false;
+
+    /**
+     * Off by default: a file that crosses a segment boundary and is bigger
+     * than the overlap is carved differently than by a single PhotoRec run.
+     * Settings serialized before the option existed also read it as off.
+     */
+    static final boolean DEFAULT_CONFIG_CARVE_IN_SEGMENTS = false;
+
+    /**
+     * When carving in segments, unallocated space files bigger than a segment
+     * plus its overlap are carved a segment at a time, by concurrent PhotoRec
+     * processes. Each segment also covers the start of the next one, so that
+     * a file that crosses the boundary is still carved whole (if it is smaller
+     * than the overlap), by the segment it starts in.
+     */
+    private static final long SEGMENT_SIZE = 1024L * 1024 * 1024;
+    private static final long SEGMENT_OVERLAP = 64L * 1024 * 1024;
+    private static final int MAX_CONCURRENT_SEGMENTS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int SEGMENT_COPY_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Shared by all the instances of the module, so that the number of
+     * PhotoRec processes does not grow with the number of ingest threads.
+     */
+    private static final ExecutorService segmentExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_SEGMENTS,
+            new ThreadFactoryBuilder().setNameFormat("photorec-segment-%d").setDaemon(true).build()); //NON-NLS
     
     private static final String PHOTOREC_DIRECTORY = "photorec_exec"; //NON-NLS
     private static final String PHOTOREC_EXECUTABLE = "photorec_win.exe"; //NON-NLS
@@ -101,6 +136,7 @@ final class PhotoRecCarverFileIngestModule implements FileIngestModule {
     private long jobId;
     
     private final boolean keepCorruptedFiles;
+    private final boolean carveInSegments;
 
     private static class IngestJobTotals {
         private final AtomicLong totalItemsRecovered = new AtomicLong(0);
@@ -115,6 +151,7 @@ private static class IngestJobTotals {
      */
     PhotoRecCarverFileIngestModule(PhotoRecCarverIngestJobSettings settings) {
         keepCorruptedFiles = settings.isKeepCorruptedFiles();
+        carveInSegments = settings.isCarveInSegments();
     }
 
     private static synchronized IngestJobTotals getTotalsForIngestJobs(long ingestJobId) {
@@ -201,8 +238,11 @@ public IngestModule.ProcessResult process(AbstractFile file) {
             // Check that we have roughly enough disk space left to complete the operation
             // Some network drives always return -1 for free disk space. 
             // In this case, expect enough space and move on.
+            // When carving in segments, only the segments being carved are on disk.
+            boolean segmented = carveInSegments && file.getSize() > SEGMENT_SIZE + SEGMENT_OVERLAP;
+            long bytesToWrite = segmented ? Math.min(file.getSize(), (SEGMENT_SIZE + SEGMENT_OVERLAP) * MAX_CONCURRENT_SEGMENTS) : file.getSize();
             long freeDiskSpace = IngestServices.getInstance().getFreeDiskSpace();
-            if ((freeDiskSpace != IngestMonitor.DISK_FREE_SPACE_UNKNOWN) && ((file.getSize() * 1.2) > freeDiskSpace)) {
+            if ((freeDiskSpace != IngestMonitor.DISK_FREE_SPACE_UNKNOWN) && ((bytesToWrite * 1.2) > freeDiskSpace)) {
                 logger.log(Level.SEVERE, "PhotoRec error processing {0} with {1} Not enough space on primary disk to save unallocated space.", // NON-NLS
                         new Object[]{file.getName(), PhotoRecCarverIngestModuleFactory.getModuleName()}); // NON-NLS
                 MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "PhotoRecIngestModule.UnableToCarve", file.getName()),
@@ -216,9 +256,13 @@ public IngestModule.ProcessResult process(AbstractFile file) {
                 return IngestModule.ProcessResult.OK;
             }
 
+            WorkingPaths paths = PhotoRecCarverFileIngestModule.pathsByJob.get(this.jobId);
+            if (segmented) {
+                return carveInSegments(file, paths, totals);
+            }
+
             // Write the file to disk.
             long writestart = System.currentTimeMillis();
-            WorkingPaths paths = PhotoRecCarverFileIngestModule.pathsByJob.get(this.jobId);
             tempFilePath = Paths.get(paths.getTempDirPath().toString(), file.getName());
             ContentUtils.writeToFile(file, tempFilePath.toFile(), context::fileIngestIsCancelled);
 
@@ -232,28 +276,10 @@ public IngestModule.ProcessResult process(AbstractFile file) {
             // Create a subdirectory for this file.
             Path outputDirPath = Paths.get(paths.getOutputDirPath().toString(), file.getName());
             Files.createDirectory(outputDirPath);
-            File log = new File(Paths.get(outputDirPath.toString(), LOG_FILE).toString()); //NON-NLS
 
             // Scan the file with Unallocated Carver.
-            ProcessBuilder processAndSettings = new ProcessBuilder(
-                    executableFile.toString(),
-                    "/d", // NON-NLS
-                    outputDirPath.toAbsolutePath().toString() + File.separator + PHOTOREC_RESULTS_BASE,
-                    "/cmd", // NON-NLS
-                    tempFilePath.toFile().toString());
-            if (keepCorruptedFiles) {
-                processAndSettings.command().add("options,keep_corrupted_file,search"); // NON-NLS
-            } else {
-                processAndSettings.command().add("search"); // NON-NLS
-            }
-            
-            // Add environment variable to force PhotoRec to run with the same permissions Autopsy uses
-            processAndSettings.environment().put("__COMPAT_LAYER", "RunAsInvoker"); //NON-NLS
-            processAndSettings.redirectErrorStream(true);
-            processAndSettings.redirectOutput(Redirect.appendTo(log));
-
             FileIngestModuleProcessTerminator terminator = new FileIngestModuleProcessTerminator(this.context, true);
-            int exitValue = ExecUtil.execute(processAndSettings, terminator);
+            int exitValue = runPhotoRec(tempFilePath, outputDirPath, terminator);
 
             if (this.context.fileIngestIsCancelled() == true) {
                 // if it was cancelled by the user, result is OK
@@ -278,25 +304,7 @@ public IngestModule.ProcessResult process(AbstractFile file) {
                 return IngestModule.ProcessResult.ERROR;
             }
 
-            // Move carver log file to avoid placement into Autopsy results. PhotoRec appends ".1" to the folder name.
-            java.io.File oldAuditFile = new java.io.File(Paths.get(outputDirPath.toString(), PHOTOREC_RESULTS_EXTENDED, PHOTOREC_REPORT).toString()); //NON-NLS
-            java.io.File newAuditFile = new java.io.File(Paths.get(outputDirPath.toString(), PHOTOREC_REPORT).toString()); //NON-NLS
-            oldAuditFile.renameTo(newAuditFile);
-
-            if (this.context.fileIngestIsCancelled() == true) {
-                // if it was cancelled by the user, result is OK
-                logger.log(Level.INFO, "PhotoRec cancelled by user"); // NON-NLS
-                MessageNotifyUtil.Notify.info(PhotoRecCarverIngestModuleFactory.getModuleName(), NbBundle.getMessage(PhotoRecCarverFileIngestModule.class, "PhotoRecIngestModule.cancelledByUser"));
-                return IngestModule.ProcessResult.OK;
-            }
-            Path pathToRemove = Paths.get(outputDirPath.toAbsolutePath().toString());
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(pathToRemove)) {
-                for (Path entry : stream) {
-                    if (Files.isDirectory(entry)) {
-                        FileUtil.deleteDir(new File(entry.toString()));
-                    }
-                }
-            }
+            File newAuditFile = collectReport(outputDirPath);
             long writedelta = (System.currentTimeMillis() - writestart);
             totals.totalWritetime.addAndGet(writedelta);
 
@@ -337,6 +345,226 @@ public IngestModule.ProcessResult process(AbstractFile file) {
 
     }
 
+    /**
+     * Carve an unallocated space file in overlapping segments, each written
+     * to its own temp file and scanned by its own PhotoRec process, and add
+     * the files carved from all the segments to the case database at once.
+     *
+     * @param file   The unallocated space file.
+     * @param paths  The working paths of the ingest job.
+     * @param totals The totals of the ingest job.
+     *
+     * @return The result of processing the file.
+     *
+     * @throws IOException If the output directory could not be created.
+     */
+    private IngestModule.ProcessResult carveInSegments(AbstractFile file, WorkingPaths paths, IngestJobTotals totals) throws IOException {
+        long writestart = System.currentTimeMillis();
+        Path outputDirPath = Paths.get(paths.getOutputDirPath().toString(), file.getName());
+        Files.createDirectory(outputDirPath);
+
+        List<Future<List<CarvingResult.CarvedFile>>> segments = new ArrayList<>();
+        for (long segmentStart = 0; segmentStart < file.getSize(); segmentStart += SEGMENT_SIZE) {
+            final long start = segmentStart;
+            final int segmentNumber = segments.size();
+            segments.add(segmentExecutor.submit(() -> carveSegment(file, paths.getTempDirPath(), outputDirPath, segmentNumber, start)));
+        }
+
+        // Each segment only returns the files that start before the next
+        // segment, so the files carved twice in the overlaps are dropped.
+        List<CarvingResult.CarvedFile> carvedFiles = new ArrayList<>();
+        boolean failed = false;
+        for (Future<List<CarvingResult.CarvedFile>> segment : segments) {
+            if (this.context.fileIngestIsCancelled() == true) {
+                break;
+            }
+            try {
+                carvedFiles.addAll(segment.get());
+            } catch (ExecutionException ex) {
+                failed = true;
+                totals.totalItemsWithErrors.incrementAndGet();
+                logger.log(Level.SEVERE, String.format("Error carving a segment of '%s' (id=%d) with the PhotoRec carver.", file.getName(), file.getId()), ex.getCause()); // NON-NLS
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        totals.totalWritetime.addAndGet(System.currentTimeMillis() - writestart);
+
+        if (this.context.fileIngestIsCancelled() == true || Thread.currentThread().isInterrupted()) {
+            // Segments that are running stop themselves once they see the cancellation.
+            segments.forEach(segment -> segment.cancel(false));
+            logger.log(Level.INFO, "PhotoRec cancelled by user"); // NON-NLS
+            MessageNotifyUtil.Notify.info(PhotoRecCarverIngestModuleFactory.getModuleName(), NbBundle.getMessage(PhotoRecCarverFileIngestModule.class, "PhotoRecIngestModule.cancelledByUser"));
+            return IngestModule.ProcessResult.OK;
+        }
+        if (failed) {
+            MessageNotifyUtil.Notify.error(PhotoRecCarverIngestModuleFactory.getModuleName(), NbBundle.getMessage(PhotoRecCarverFileIngestModule.class, "PhotoRecIngestModule.error.msg", file.getName()));
+        }
+
+        // Add the files carved from the segments that did not fail.
+        long calcstart = System.currentTimeMillis();
+        if (!carvedFiles.isEmpty()) {
+            try {
+                List<LayoutFile> carvedItems = Case.getCurrentCaseThrows().getServices().getFileManager().addCarvedFiles(new CarvingResult(file, carvedFiles));
+                totals.totalItemsRecovered.addAndGet(carvedItems.size());
+                context.addFilesToJob(new ArrayList<>(carvedItems));
+                services.fireModuleContentEvent(new ModuleContentEvent(carvedItems.get(0))); // fire an event to update the tree
+            } catch (TskCoreException | NoCurrentCaseException ex) {
+                logger.log(Level.SEVERE, "Error inserting PhotoRec output into the database", ex); //NON-NLS
+                return IngestModule.ProcessResult.ERROR;
+            }
+        }
+        totals.totalParsetime.addAndGet(System.currentTimeMillis() - calcstart);
+        return failed ? IngestModule.ProcessResult.ERROR : IngestModule.ProcessResult.OK;
+    }
+
+    /**
+     * Carve one segment of an unallocated space file. The temp file of the
+     * segment and the carved data are deleted as soon as PhotoRec is done.
+     *
+     * @param file           The unallocated space file.
+     * @param tempDirPath    The directory for the temp file of the segment.
+     * @param outputDirPath  The output directory of the unallocated space
+     *                       file.
+     * @param segmentNumber  The number of the segment.
+     * @param segmentStart   The offset of the segment in the file.
+     *
+     * @return The files carved that start in the segment, before the next
+     *         segment.
+     *
+     * @throws IOException If the segment could not be written, or PhotoRec
+     *                     failed.
+     */
+    private List<CarvingResult.CarvedFile> carveSegment(AbstractFile file, Path tempDirPath, Path outputDirPath, int segmentNumber, long segmentStart) throws IOException {
+        if (this.context.fileIngestIsCancelled() == true) {
+            return new ArrayList<>();
+        }
+        String segmentName = file.getName() + "_" + segmentNumber; //NON-NLS
+        Path tempFilePath = Paths.get(tempDirPath.toString(), segmentName);
+        Path segmentDirPath = Paths.get(outputDirPath.toString(), segmentName);
+        try {
+            long segmentLength = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, file.getSize() - segmentStart);
+            writeSegmentToFile(file, segmentStart, segmentLength, tempFilePath.toFile());
+            if (this.context.fileIngestIsCancelled() == true) {
+                return new ArrayList<>();
+            }
+
+            Files.createDirectory(segmentDirPath);
+            FileIngestModuleProcessTerminator terminator = new FileIngestModuleProcessTerminator(this.context, true);
+            int exitValue = runPhotoRec(tempFilePath, segmentDirPath, terminator);
+            tempFilePath.toFile().delete();
+            if (this.context.fileIngestIsCancelled() == true) {
+                FileUtil.deleteDir(segmentDirPath.toFile());
+                return new ArrayList<>();
+            } else if (terminator.getTerminationCode() == ProcTerminationCode.TIME_OUT) {
+                FileUtil.deleteDir(segmentDirPath.toFile());
+                throw new IOException(NbBundle.getMessage(this.getClass(), "PhotoRecIngestModule.processTerminated") + segmentName);
+            } else if (0 != exitValue) {
+                FileUtil.deleteDir(segmentDirPath.toFile());
+                throw new IOException(NbBundle.getMessage(PhotoRecCarverFileIngestModule.class, "PhotoRecIngestModule.error.exitValue", exitValue, segmentName));
+            }
+
+            File auditFile = collectReport(segmentDirPath);
+            PhotoRecCarverOutputParser parser = new PhotoRecCarverOutputParser(segmentDirPath);
+            return parser.parseCarvedFiles(auditFile, file, context, segmentStart, segmentStart + SEGMENT_SIZE);
+        } finally {
+            if (Files.exists(tempFilePath)) {
+                tempFilePath.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Write part of a file to disk.
+     *
+     * @param file       The file.
+     * @param offset     The offset in the file of the part to write.
+     * @param length     The length of the part to write.
+     * @param outputFile The file to write to.
+     *
+     * @throws IOException If the file could not be read, or the output
+     *                     could not be written.
+     */
+    private void writeSegmentToFile(AbstractFile file, long offset, long length, File outputFile) throws IOException {
+        byte[] buffer = new byte[SEGMENT_COPY_BUFFER_SIZE];
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            long written = 0;
+            while (written < length && this.context.fileIngestIsCancelled() == false) {
+                int read = file.read(buffer, offset + written, Math.min(buffer.length, length - written));
+                if (read <= 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                written += read;
+            }
+        } catch (TskCoreException ex) {
+            throw new IOException(String.format("Error reading file '%s' (id=%d) at offset %d", file.getName(), file.getId(), offset), ex); // NON-NLS
+        }
+    }
+
+    /**
+     * Run PhotoRec on a file.
+     *
+     * @param inputFilePath The file to scan.
+     * @param outputDirPath The directory PhotoRec writes its results and log
+     *                      to.
+     * @param terminator    The terminator of the PhotoRec process.
+     *
+     * @return The exit value of PhotoRec.
+     *
+     * @throws IOException If PhotoRec could not be run.
+     */
+    private int runPhotoRec(Path inputFilePath, Path outputDirPath, FileIngestModuleProcessTerminator terminator) throws IOException {
+        File log = new File(Paths.get(outputDirPath.toString(), LOG_FILE).toString()); //NON-NLS
+        ProcessBuilder processAndSettings = new ProcessBuilder(
+                executableFile.toString(),
+                "/d", // NON-NLS
+                outputDirPath.toAbsolutePath().toString() + File.separator + PHOTOREC_RESULTS_BASE,
+                "/cmd", // NON-NLS
+                inputFilePath.toFile().toString());
+        if (keepCorruptedFiles) {
+            processAndSettings.command().add("options,keep_corrupted_file,search"); // NON-NLS
+        } else {
+            processAndSettings.command().add("search"); // NON-NLS
+        }
+
+        // Add environment variable to force PhotoRec to run with the same permissions Autopsy uses
+        processAndSettings.environment().put("__COMPAT_LAYER", "RunAsInvoker"); //NON-NLS
+        processAndSettings.redirectErrorStream(true);
+        processAndSettings.redirectOutput(Redirect.appendTo(log));
+
+        return ExecUtil.execute(processAndSettings, terminator);
+    }
+
+    /**
+     * Move the PhotoRec report out of the results directory, and delete the
+     * carved files, which are added to the case as ranges of the unallocated
+     * space file instead.
+     *
+     * @param outputDirPath The directory PhotoRec wrote its results to.
+     *
+     * @return The report file.
+     *
+     * @throws IOException If the carved files could not be listed.
+     */
+    private static File collectReport(Path outputDirPath) throws IOException {
+        // Move carver log file to avoid placement into Autopsy results. PhotoRec appends ".1" to the folder name.
+        File oldAuditFile = new File(Paths.get(outputDirPath.toString(), PHOTOREC_RESULTS_EXTENDED, PHOTOREC_REPORT).toString()); //NON-NLS
+        File newAuditFile = new File(Paths.get(outputDirPath.toString(), PHOTOREC_REPORT).toString()); //NON-NLS
+        oldAuditFile.renameTo(newAuditFile);
+
+        Path pathToRemove = Paths.get(outputDirPath.toAbsolutePath().toString());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(pathToRemove)) {
+            for (Path entry : stream) {
+                if (Files.isDirectory(entry)) {
+                    FileUtil.deleteDir(new File(entry.toString()));
+                }
+            }
+        }
+        return newAuditFile;
+    }
+
     private void cleanup(Path outputDirPath, Path tempFilePath) {
         // cleanup the output path
         FileUtil.deleteDir(new File(outputDirPath.toString()));
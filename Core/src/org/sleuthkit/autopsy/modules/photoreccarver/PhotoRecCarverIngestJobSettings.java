@@ -28,21 +28,26 @@ final class PhotoRecCarverIngestJobSettings implements IngestModuleIngestJobSett
     private static final long serialVersionUID = 1L;
     
     private boolean keepCorruptedFiles;
+    private boolean carveInSegments;
     
     /**
      * Instantiate the ingest job settings with default values.
      */
     PhotoRecCarverIngestJobSettings() {
         this.keepCorruptedFiles = PhotoRecCarverFileIngestModule.DEFAULT_CONFIG_KEEP_CORRUPTED_FILES;
+        this.carveInSegments = PhotoRecCarverFileIngestModule.DEFAULT_CONFIG_CARVE_IN_SEGMENTS;
     }
     
     /**
      * Instantiate the ingest job settings.
      *
      * @param keepCorruptedFiles Keep corrupted files.
+     * @param carveInSegments    Carve large unallocated space files in
+     *                           parallel segments.
      */
-    PhotoRecCarverIngestJobSettings(boolean keepCorruptedFiles) {
+    PhotoRecCarverIngestJobSettings(boolean keepCorruptedFiles, boolean carveInSegments) {
         this.keepCorruptedFiles = keepCorruptedFiles;
+        this.carveInSegments = carveInSegments;
     }
 
     @Override
@@ -67,4 +72,22 @@ boolean isKeepCorruptedFiles() {
     void setKeepCorruptedFiles(boolean keepCorruptedFiles) {
         this.keepCorruptedFiles = keepCorruptedFiles;
     }
+    
+    /**
+     * Are large unallocated space files carved in parallel segments?
+     * 
+     * @return True if carving in segments; otherwise false.
+     */
+    boolean isCarveInSegments() {
+        return carveInSegments;
+    }
+    
+    /**
+     * Carve large unallocated space files in parallel segments, or whole.
+     * 
+     * @param carveInSegments Are large files carved in segments?
+     */
+    void setCarveInSegments(boolean carveInSegments) {
+        this.carveInSegments = carveInSegments;
+    }
 }
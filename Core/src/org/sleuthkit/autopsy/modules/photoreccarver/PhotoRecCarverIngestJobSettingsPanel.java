@@ -43,12 +43,14 @@ public PhotoRecCarverIngestJobSettingsPanel(PhotoRecCarverIngestJobSettings sett
      */
     private void customizeComponents(PhotoRecCarverIngestJobSettings settings) {
         keepCorruptedFilesCheckbox.setSelected(settings.isKeepCorruptedFiles());
+        carveInSegmentsCheckbox.setSelected(settings.isCarveInSegments());
     }
 
     @Override
     public IngestModuleIngestJobSettings getSettings() {
         return new PhotoRecCarverIngestJobSettings(
-                keepCorruptedFilesCheckbox.isSelected());
+                keepCorruptedFilesCheckbox.isSelected(),
+                carveInSegmentsCheckbox.isSelected());
     }
 
     /**
@@ -62,12 +64,15 @@ private void initComponents() {
 
         keepCorruptedFilesCheckbox = new javax.swing.JCheckBox();
         detectionSettingsLabel = new javax.swing.JLabel();
+        carveInSegmentsCheckbox = new javax.swing.JCheckBox();
 
         org.openide.awt.Mnemonics.setLocalizedText(keepCorruptedFilesCheckbox, org.openide.util.NbBundle.getMessage(PhotoRecCarverIngestJobSettingsPanel.class, "PhotoRecCarverIngestJobSettingsPanel.keepCorruptedFilesCheckbox.text")); // NOI18N
 
         detectionSettingsLabel.setFont(new java.awt.Font("Tahoma", 1, 11)); // NOI18N
         org.openide.awt.Mnemonics.setLocalizedText(detectionSettingsLabel, org.openide.util.NbBundle.getMessage(PhotoRecCarverIngestJobSettingsPanel.class, "PhotoRecCarverIngestJobSettingsPanel.detectionSettingsLabel.text")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(carveInSegmentsCheckbox, org.openide.util.NbBundle.getMessage(PhotoRecCarverIngestJobSettingsPanel.class, "PhotoRecCarverIngestJobSettingsPanel.carveInSegmentsCheckbox.text")); // NOI18N
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -77,7 +82,9 @@ private void initComponents() {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
                         .addGap(10, 10, 10)
-                        .addComponent(keepCorruptedFilesCheckbox))
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(carveInSegmentsCheckbox)
+                            .addComponent(keepCorruptedFilesCheckbox)))
                     .addComponent(detectionSettingsLabel))
                 .addContainerGap(159, Short.MAX_VALUE))
         );
@@ -88,11 +95,14 @@ private void initComponents() {
                 .addComponent(detectionSettingsLabel)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(keepCorruptedFilesCheckbox)
-                .addContainerGap(145, Short.MAX_VALUE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(carveInSegmentsCheckbox)
+                .addContainerGap(122, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JCheckBox carveInSegmentsCheckbox;
     private javax.swing.JLabel detectionSettingsLabel;
     private javax.swing.JCheckBox keepCorruptedFilesCheckbox;
     // End of variables declaration//GEN-END:variables
@@ -27,6 +27,8 @@
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
@@ -53,6 +55,13 @@ class PhotoRecCarverOutputParser {
     private final Path basePath;
     private static final Logger logger = Logger.getLogger(PhotoRecCarverFileIngestModule.class.getName());
 
+    /**
+     * PhotoRec names a carved file after the sector it starts at, eg
+     * f0001234.jpg or f0001234_name.doc.
+     */
+    private static final Pattern CARVED_FILE_NAME = Pattern.compile("^f(\\d+)(.*)$"); //NON-NLS
+    private static final long PHOTOREC_SECTOR_SIZE = 512;
+
     PhotoRecCarverOutputParser(Path base) {
         basePath = base;
     }
@@ -75,6 +84,39 @@ class PhotoRecCarverOutputParser {
      * @throws IOException
      */
     List<LayoutFile> parse(File xmlInputFile, AbstractFile af, IngestJobContext context) throws FileNotFoundException, IOException {
+        try {
+            List<CarvingResult.CarvedFile> carvedFiles = parseCarvedFiles(xmlInputFile, af, context, 0, Long.MAX_VALUE);
+            if (carvedFiles.isEmpty()) {
+                return new ArrayList<>();
+            }
+            FileManager fileManager = Case.getCurrentCaseThrows().getServices().getFileManager();
+            return fileManager.addCarvedFiles(new CarvingResult(af, carvedFiles));
+        } catch (TskCoreException | NoCurrentCaseException ex) {
+            logger.log(Level.SEVERE, "Error parsing PhotoRec output and inserting it into the database", ex); //NON-NLS
+        }
+
+        List<LayoutFile> empty = Collections.emptyList();
+        return empty;
+    }
+
+    /**
+     * Parses the given report.xml file for one segment of the unallocated
+     * space, without adding the carved files to the TSK database.
+     *
+     * @param xmlInputFile  The XML file we are trying to read and parse
+     * @param af            The AbstractFile representing the unallocated
+     *                      space we are parsing.
+     * @param context       The ingest job context, to check for
+     *                      cancellation.
+     * @param segmentOffset The offset in af of the segment PhotoRec carved.
+     * @param ownedEnd      The offset in af where the part of the segment
+     *                      this segment owns ends. Files that start at or
+     *                      after it overlap the next segment, and are left
+     *                      to that segment.
+     *
+     * @return The carved files.
+     */
+    List<CarvingResult.CarvedFile> parseCarvedFiles(File xmlInputFile, AbstractFile af, IngestJobContext context, long segmentOffset, long ownedEnd) {
         try {
             final Document doc = XMLUtil.loadDoc(PhotoRecCarverOutputParser.class, xmlInputFile.toString());
             if (doc == null) {
@@ -100,7 +142,6 @@ List<LayoutFile> parse(File xmlInputFile, AbstractFile af, IngestJobContext cont
             NodeList fileRanges;
             Element entry;
             Path filePath;
-            FileManager fileManager = Case.getCurrentCaseThrows().getServices().getFileManager();
 
             // create and initialize the list to put into the database
             List<CarvingResult.CarvedFile> carvedFiles = new ArrayList<>();
@@ -122,12 +163,22 @@ List<LayoutFile> parse(File xmlInputFile, AbstractFile af, IngestJobContext cont
                 if (filePath.startsWith(basePath)) {
                     fileName = filePath.getFileName().toString();
                 }
+                if (segmentOffset != 0) {
+                    // the sector in the name is relative to the segment, so
+                    // the same names would repeat in every segment
+                    fileName = toUnallocatedSpaceFileName(fileName, segmentOffset);
+                }
 
                 List<TskFileRange> tskRanges = new ArrayList<>();
                 for (int rangeIndex = 0; rangeIndex < fileRanges.getLength(); ++rangeIndex) {
 
-                    Long img_offset = Long.parseLong(((Element) fileRanges.item(rangeIndex)).getAttribute("img_offset")); //NON-NLS
+                    // PhotoRec offsets are relative to the segment it carved
+                    Long img_offset = segmentOffset + Long.parseLong(((Element) fileRanges.item(rangeIndex)).getAttribute("img_offset")); //NON-NLS
                     Long len = Long.parseLong(((Element) fileRanges.item(rangeIndex)).getAttribute("len")); //NON-NLS
+                    if (rangeIndex == 0 && img_offset >= ownedEnd) {
+                        // The file starts in the overlap with the next segment, which carves it too.
+                        break;
+                    }
 
                     // Verify PhotoRec's output
                     long fileByteStart = af.convertToImgOffset(img_offset);
@@ -156,12 +207,31 @@ List<LayoutFile> parse(File xmlInputFile, AbstractFile af, IngestJobContext cont
                     carvedFiles.add(new CarvingResult.CarvedFile(fileName, fileSize, tskRanges));
                 }
             }
-            return fileManager.addCarvedFiles(new CarvingResult(af, carvedFiles));
-        } catch (NumberFormatException | TskCoreException | NoCurrentCaseException ex) {
-            logger.log(Level.SEVERE, "Error parsing PhotoRec output and inserting it into the database", ex); //NON-NLS
+            return carvedFiles;
+        } catch (NumberFormatException | TskCoreException ex) {
+            logger.log(Level.SEVERE, "Error parsing PhotoRec output", ex); //NON-NLS
         }
+        return new ArrayList<>();
+    }
 
-        List<LayoutFile> empty = Collections.emptyList();
-        return empty;
+    /**
+     * Renames a file carved from a segment to the name PhotoRec would have
+     * given it if it had carved the whole unallocated space file.
+     *
+     * @param fileName      The name PhotoRec gave the file.
+     * @param segmentOffset The offset in the unallocated space file of the
+     *                      segment PhotoRec carved.
+     *
+     * @return The name with the sector counted from the start of the
+     *         unallocated space file, or the given name if it is not in
+     *         PhotoRec's format.
+     */
+    private static String toUnallocatedSpaceFileName(String fileName, long segmentOffset) {
+        Matcher matcher = CARVED_FILE_NAME.matcher(fileName);
+        if (matcher.matches() == false) {
+            return fileName;
+        }
+        long sector = Long.parseLong(matcher.group(1)) + segmentOffset / PHOTOREC_SECTOR_SIZE;
+        return String.format("f%07d%s", sector, matcher.group(2)); //NON-NLS
     }
 }
@@ -0,0 +1,83 @@
+/*
+ *
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.report;
+
+import java.util.Collections;
+import java.util.List;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Reads the artifacts that satisfy a condition from the case database a page
+ * at a time, in artifact id order. Each page starts after the last artifact of
+ * the previous one, rather than at an offset, so reading a page does not get
+ * slower as the report goes on.
+ */
+final class ArtifactPageQuery {
+
+    private final SleuthkitCase skCase;
+    private final String whereClause;
+    private final int pageSize;
+
+    /**
+     * The id of the last artifact of the previous page, or null before the
+     * first page. Artifact ids start at Long.MIN_VALUE, so there is no id to
+     * start the first page after.
+     */
+    private Long lastArtifactID = null;
+    private boolean lastPage = false;
+
+    /**
+     * @param skCase      The case database.
+     * @param whereClause The condition on the artifacts, in terms of the
+     *                    blackboard_artifacts table.
+     * @param pageSize    The largest number of artifacts in a page.
+     */
+    ArtifactPageQuery(SleuthkitCase skCase, String whereClause, int pageSize) {
+        this.skCase = skCase;
+        this.whereClause = whereClause;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Get the next page of artifacts.
+     *
+     * @return The next page of artifacts, or an empty list if there are no
+     *         more.
+     *
+     * @throws TskCoreException If there is an error querying the case
+     *                          database.
+     */
+    @SuppressWarnings("deprecation")
+    List<BlackboardArtifact> nextPage() throws TskCoreException {
+        if (lastPage) {
+            return Collections.emptyList();
+        }
+        List<BlackboardArtifact> page = skCase.getMatchingArtifacts("WHERE (" + whereClause + ")" //NON-NLS
+                + (lastArtifactID == null ? "" : " AND blackboard_artifacts.artifact_id > " + lastArtifactID) //NON-NLS
+                + " ORDER BY blackboard_artifacts.artifact_id LIMIT " + pageSize); //NON-NLS
+        lastPage = page.size() < pageSize;
+        if (page.isEmpty() == false) {
+            lastArtifactID = page.get(page.size() - 1).getArtifactID();
+        }
+        return page;
+    }
+}
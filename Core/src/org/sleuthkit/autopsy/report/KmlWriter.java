@@ -0,0 +1,414 @@
+/*
+ *
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.report;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Writes KML placemarks to disk as they are made, rather than building the
+ * whole document in memory first.
+ *
+ * The placemarks can optionally be split into tiles, one KML file per region
+ * or per month, so that viewers do not have to load every placemark at once.
+ * When the output is tiled, the main KML file links to each of the tiles.
+ */
+final class KmlWriter implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(KmlWriter.class.getName());
+
+    private static final String KML_NAMESPACE = "http://www.opengis.net/kml/2.2"; //NON-NLS
+
+    /**
+     * The most tile files that are written. Placemarks that would go in
+     * further tiles are written to the main file instead, to stay well within
+     * the limit on open files.
+     */
+    private static final int MAX_TILES = 256;
+
+    /**
+     * How the placemarks are split into files.
+     */
+    enum Tiling {
+        /**
+         * All placemarks are in the main file.
+         */
+        NONE,
+        /**
+         * One file per square region of the region tile size.
+         */
+        REGION,
+        /**
+         * One file per month.
+         */
+        TIME
+    }
+
+    /**
+     * A folder of placemarks.
+     */
+    static final class Folder {
+
+        private final String name;
+        private final String iconHref;
+
+        Folder(String name, String iconHref) {
+            this.name = name;
+            this.iconHref = iconHref;
+        }
+    }
+
+    /**
+     * The coordinate-bearing part of a placemark, a Point or LineString.
+     */
+    static final class Geometry {
+
+        private final boolean lineString;
+        private final String coordinates;
+        private final boolean clampToGround;
+        private final double latitude;
+        private final double longitude;
+
+        /**
+         * @param lineString    True for a LineString, false for a Point.
+         * @param coordinates   The KML coordinates.
+         * @param clampToGround True to clamp the geometry to the ground.
+         * @param latitude      The latitude used to pick the region tile.
+         * @param longitude     The longitude used to pick the region tile.
+         */
+        Geometry(boolean lineString, String coordinates, boolean clampToGround, double latitude, double longitude) {
+            this.lineString = lineString;
+            this.coordinates = coordinates;
+            this.clampToGround = clampToGround;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    /**
+     * A placemark.
+     */
+    static final class Placemark {
+
+        private final String name;
+        private final String styleUrl;
+        private final String description;
+        private final Long timestamp;
+        private final String when;
+        private final Geometry geometry;
+        private final String snippet;
+
+        /**
+         * @param name        The name, or null for a placemark without one.
+         * @param styleUrl    The style of the placemark.
+         * @param description The description for the info bubble on the map.
+         * @param timestamp   The time of the placemark in seconds since the
+         *                    epoch, or null.
+         * @param when        The time of the placemark formatted for KML, or
+         *                    null.
+         * @param geometry    The feature to show.
+         * @param snippet     The text to show in the list view, or null.
+         */
+        Placemark(String name, String styleUrl, String description, Long timestamp, String when, Geometry geometry, String snippet) {
+            this.name = name;
+            this.styleUrl = styleUrl;
+            this.description = description;
+            this.timestamp = timestamp;
+            this.when = when;
+            this.geometry = geometry;
+            this.snippet = snippet;
+        }
+    }
+
+    private final Path reportDirectory;
+    private final String mainFileName;
+    private final String documentName;
+    private final String documentSnippet;
+    private final Tiling tiling;
+    private final double regionTileDegrees;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy-MM", Locale.US); //NON-NLS
+
+    private final KmlFile mainFile;
+    private final Map<String, KmlFile> tiles = new TreeMap<>();
+    private Folder currentFolder;
+    private boolean tileLimitLogged = false;
+
+    /**
+     * Start writing a KML report.
+     *
+     * @param reportDirectory   The directory to write the KML files to.
+     * @param mainFileName      The name of the main KML file.
+     * @param documentName      The name of the KML document.
+     * @param documentSnippet   A snippet for the KML document, or null.
+     * @param tiling            How to split the placemarks into files.
+     * @param regionTileDegrees The size of the region tiles, in degrees.
+     *
+     * @throws IOException If the main file could not be started.
+     */
+    KmlWriter(Path reportDirectory, String mainFileName, String documentName, String documentSnippet, Tiling tiling, double regionTileDegrees) throws IOException {
+        this.reportDirectory = reportDirectory;
+        this.mainFileName = mainFileName;
+        this.documentName = documentName;
+        this.documentSnippet = documentSnippet;
+        this.tiling = tiling;
+        this.regionTileDegrees = regionTileDegrees;
+        this.mainFile = new KmlFile(mainFileName, documentName, documentSnippet);
+    }
+
+    /**
+     * Start a new folder. The placemarks written after this go in the folder.
+     * When the output is not tiled, the folder is written even if it stays
+     * empty.
+     *
+     * @param folder The folder.
+     *
+     * @throws IOException If the folder could not be written.
+     */
+    void startFolder(Folder folder) throws IOException {
+        currentFolder = folder;
+        if (tiling == Tiling.NONE) {
+            mainFile.enterFolder(folder);
+        }
+    }
+
+    /**
+     * Write a placemark to the current folder, in the tile it belongs to.
+     *
+     * @param placemark The placemark.
+     *
+     * @throws IOException If the placemark could not be written.
+     */
+    void writePlacemark(Placemark placemark) throws IOException {
+        KmlFile kmlFile = getFileFor(placemark);
+        kmlFile.enterFolder(currentFolder);
+        kmlFile.writePlacemark(placemark);
+    }
+
+    /**
+     * Finish the main KML file and all the tiles. When the output is tiled,
+     * the main file links to each tile.
+     *
+     * @throws IOException If any of the files could not be finished.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException firstException = null;
+        for (KmlFile tile : tiles.values()) {
+            try {
+                tile.close();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to finish KML tile " + tile.fileName, ex); //NON-NLS
+                if (firstException == null) {
+                    firstException = ex;
+                }
+            }
+        }
+        try {
+            if (tiles.isEmpty() == false) {
+                mainFile.writeTileLinks(tiles);
+            }
+            mainFile.close();
+        } catch (IOException ex) {
+            if (firstException == null) {
+                firstException = ex;
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    private KmlFile getFileFor(Placemark placemark) throws IOException {
+        final String tileKey;
+        switch (tiling) {
+            case REGION:
+                double south = Math.floor(placemark.geometry.latitude / regionTileDegrees) * regionTileDegrees;
+                double west = Math.floor(placemark.geometry.longitude / regionTileDegrees) * regionTileDegrees;
+                tileKey = String.format(Locale.US, "%+.2f_%+.2f", south, west); //NON-NLS
+                break;
+            case TIME:
+                tileKey = placemark.timestamp == null
+                        ? "undated" //NON-NLS
+                        : monthFormat.format(new Date(placemark.timestamp * 1000));
+                break;
+            case NONE:
+            default:
+                return mainFile;
+        }
+
+        KmlFile tile = tiles.get(tileKey);
+        if (tile == null) {
+            if (tiles.size() >= MAX_TILES) {
+                if (tileLimitLogged == false) {
+                    logger.log(Level.WARNING, "More than {0} KML tiles, writing the remaining placemarks to the main file.", MAX_TILES); //NON-NLS
+                    tileLimitLogged = true;
+                }
+                return mainFile;
+            }
+            String baseName = mainFileName.replaceFirst("\\.kml$", ""); //NON-NLS
+            tile = new KmlFile(baseName + "_" + tileKey + ".kml", documentName + " " + tileKey, documentSnippet); //NON-NLS
+            tiles.put(tileKey, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * One KML file being written.
+     */
+    private final class KmlFile {
+
+        private final String fileName;
+        private final OutputStream outputStream;
+        private final XMLStreamWriter writer;
+        private Folder openFolder;
+
+        private KmlFile(String fileName, String name, String snippet) throws IOException {
+            this.fileName = fileName;
+            this.outputStream = new BufferedOutputStream(new FileOutputStream(reportDirectory.resolve(fileName).toFile()));
+            try {
+                writer = outputFactory.createXMLStreamWriter(outputStream, "UTF-8"); //NON-NLS
+                writer.writeStartDocument("UTF-8", "1.0"); //NON-NLS
+                writer.writeStartElement("kml"); //NON-NLS
+                writer.writeDefaultNamespace(KML_NAMESPACE);
+                writer.writeNamespace("gx", "http://www.google.com/kml/ext/2.2"); //NON-NLS
+                writer.writeNamespace("kml", KML_NAMESPACE); //NON-NLS
+                writer.writeNamespace("atom", "http://www.w3.org/2005/Atom"); //NON-NLS
+                writer.writeStartElement("Document"); //NON-NLS
+                writeTextElement("name", name); //NON-NLS
+                if (snippet != null) {
+                    writeTextElement("snippet", snippet); //NON-NLS
+                }
+            } catch (XMLStreamException ex) {
+                outputStream.close();
+                throw new IOException("Failed to start KML file " + fileName, ex); //NON-NLS
+            }
+        }
+
+        private void enterFolder(Folder folder) throws IOException {
+            if (folder == openFolder) {
+                return;
+            }
+            try {
+                if (openFolder != null) {
+                    writer.writeEndElement();
+                }
+                openFolder = folder;
+                if (folder != null) {
+                    writer.writeStartElement("Folder"); //NON-NLS
+                    writer.writeStartElement("Icon"); //NON-NLS
+                    writer.writeStartElement("href"); //NON-NLS
+                    writer.writeCData(folder.iconHref);
+                    writer.writeEndElement();
+                    writer.writeEndElement();
+                    writeTextElement("name", folder.name); //NON-NLS
+                }
+            } catch (XMLStreamException ex) {
+                throw new IOException("Failed to write folder to KML file " + fileName, ex); //NON-NLS
+            }
+        }
+
+        private void writePlacemark(Placemark placemark) throws IOException {
+            try {
+                writer.writeStartElement("Placemark"); //NON-NLS
+                if (placemark.name != null) {
+                    writeTextElement("name", placemark.name); //NON-NLS
+                }
+                writeTextElement("styleUrl", placemark.styleUrl); //NON-NLS
+                writeTextElement("description", placemark.description); //NON-NLS
+                if (placemark.when != null) {
+                    writer.writeStartElement("TimeStamp"); //NON-NLS
+                    writeTextElement("when", placemark.when); //NON-NLS
+                    writer.writeEndElement();
+                }
+                writeGeometry(placemark.geometry);
+                if (placemark.snippet != null && !placemark.snippet.isEmpty()) {
+                    writeTextElement("snippet", placemark.snippet); //NON-NLS
+                }
+                writer.writeEndElement();
+            } catch (XMLStreamException ex) {
+                throw new IOException("Failed to write placemark to KML file " + fileName, ex); //NON-NLS
+            }
+        }
+
+        private void writeGeometry(Geometry geometry) throws XMLStreamException {
+            if (geometry.lineString) {
+                writer.writeStartElement("LineString"); //NON-NLS
+                writeTextElement("extrude", "1"); //NON-NLS
+                writeTextElement("tessellate", "1"); //NON-NLS
+                writeTextElement("altitudeMode", "clampToGround"); //NON-NLS
+            } else {
+                writer.writeStartElement("Point"); //NON-NLS
+                if (geometry.clampToGround) {
+                    writeTextElement("altitudeMode", "clampToGround"); //NON-NLS
+                }
+            }
+            writeTextElement("coordinates", geometry.coordinates); //NON-NLS
+            writer.writeEndElement();
+        }
+
+        private void writeTileLinks(Map<String, KmlFile> tiles) throws IOException {
+            try {
+                enterFolder(null);
+                for (KmlFile tile : tiles.values()) {
+                    writer.writeStartElement("NetworkLink"); //NON-NLS
+                    writeTextElement("name", tile.fileName); //NON-NLS
+                    writer.writeStartElement("Link"); //NON-NLS
+                    writeTextElement("href", tile.fileName); //NON-NLS
+                    writer.writeEndElement();
+                    writer.writeEndElement();
+                }
+            } catch (XMLStreamException ex) {
+                throw new IOException("Failed to write tile links to KML file " + fileName, ex); //NON-NLS
+            }
+        }
+
+        private void writeTextElement(String localName, String text) throws XMLStreamException {
+            writer.writeStartElement(localName);
+            writer.writeCharacters(text == null ? "" : text);
+            writer.writeEndElement();
+        }
+
+        private void close() throws IOException {
+            try {
+                enterFolder(null);
+                writer.writeEndDocument();
+                writer.close();
+            } catch (XMLStreamException ex) {
+                throw new IOException("Failed to finish KML file " + fileName, ex); //NON-NLS
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+}
@@ -24,7 +24,8 @@
 import java.util.List;
 import java.util.logging.Level;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
@@ -37,8 +38,22 @@ class ReportExcel implements TableReportModule {
     private static ReportExcel instance;
     private static final int EXCEL_CELL_MAXIMUM_SIZE = 36767; //Specified at:https://poi.apache.org/apidocs/org/apache/poi/ss/SpreadsheetVersion.html
 
-    private Workbook wb;
-    private Sheet sheet;
+    /**
+     * The number of rows kept in memory. Older rows are written to a
+     * compressed temp file, so memory use does not grow with the report.
+     */
+    private static final int ROW_ACCESS_WINDOW_SIZE = 500;
+
+    /**
+     * The number of rows at the top of each sheet that the column widths are
+     * computed from. Must not be more than ROW_ACCESS_WINDOW_SIZE, since only
+     * the rows in memory can be measured.
+     */
+    private static final int COLUMN_WIDTH_SAMPLE_ROWS = 200;
+
+    private SXSSFWorkbook wb;
+    private SXSSFSheet sheet;
+    private boolean columnsSized;
     private CellStyle titleStyle;
     private CellStyle setStyle;
     private CellStyle elementStyle;
@@ -69,8 +84,9 @@ public void startReport(String baseReportDir) {
         // Set the path and save it for when the report is written to disk.
         this.reportPath = baseReportDir + getRelativeFilePath();
  
-        // Make a workbook.
-        wb = new XSSFWorkbook();
+        // Make a workbook that streams its rows to disk.
+        wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+        wb.setCompressTempFiles(true);
 
         // Create some cell styles.
         // TODO: The commented out cell style settings below do not work as desired when
@@ -129,6 +145,8 @@ public void endReport() {
                 } catch (IOException ex) {
                 }
             }
+            // Delete the temp files backing the rows.
+            wb.dispose();
         }
     }
 
@@ -143,9 +161,8 @@ public void endReport() {
     public void startDataType(String name, String description) {
         // Create a worksheet for the data type (assumed to be an artifact type).
         name = escapeForExcel(name);
-        sheet = wb.createSheet(name);
+        createSheet(name);
         sheet.setAutobreaks(true);
-        rowIndex = 0;
 
         // There will be at least two columns, one each for the artifacts count and its label.
         sheetColCount = 2;
@@ -156,9 +173,49 @@ public void startDataType(String name, String description) {
      */
     @Override
     public void endDataType() {
-        // Now that the sheet is complete, size the columns to the content.
-        for (int i = 0; i < sheetColCount; ++i) {
-            sheet.autoSizeColumn(i);
+        // Size the columns if the sheet is shorter than the sample.
+        sizeColumns();
+    }
+
+    /**
+     * Create a new sheet and make it the current sheet.
+     *
+     * @param name name of the sheet
+     */
+    private void createSheet(String name) {
+        sheet = wb.createSheet(name);
+        sheet.trackAllColumnsForAutoSizing();
+        columnsSized = false;
+        rowIndex = 0;
+    }
+
+    /**
+     * Create the next row of the current sheet. Once the sample rows have been
+     * created, the columns are sized to their content, before the rows are
+     * flushed to disk.
+     *
+     * @return the new row
+     */
+    private Row createRow() {
+        if (rowIndex == COLUMN_WIDTH_SAMPLE_ROWS) {
+            sizeColumns();
+        }
+        Row row = sheet.createRow(rowIndex);
+        ++rowIndex;
+        return row;
+    }
+
+    /**
+     * Size the columns of the current sheet to the content of the rows
+     * created so far, if they have not been sized yet.
+     */
+    private void sizeColumns() {
+        if (columnsSized == false) {
+            for (int i = 0; i < sheetColCount; ++i) {
+                sheet.autoSizeColumn(i);
+            }
+            sheet.untrackAllColumnsForAutoSizing();
+            columnsSized = true;
         }
     }
 
@@ -170,10 +227,9 @@ public void endDataType() {
     @Override
     public void startSet(String setName) {
         setName = escapeForExcel(setName);
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         row.setRowStyle(setStyle);
         row.createCell(0).setCellValue(setName);
-        ++rowIndex;
     }
 
     /**
@@ -182,8 +238,7 @@ public void startSet(String setName) {
     @Override
     public void endSet() {
         // Add an empty row as a separator.
-        sheet.createRow(rowIndex);
-        ++rowIndex;
+        createRow();
     }
 
     @Override
@@ -199,10 +254,9 @@ public void addSetIndex(List<String> sets) {
     @Override
     public void addSetElement(String elementName) {
         elementName = escapeForExcel(elementName);
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         row.setRowStyle(elementStyle);
         row.createCell(0).setCellValue(elementName);
-        ++rowIndex;
     }
 
     /**
@@ -213,13 +267,12 @@ public void addSetElement(String elementName) {
     @Override
     public void startTable(List<String> titles) {
         int tableColCount = 0;
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         row.setRowStyle(titleStyle);
         for (int i = 0; i < titles.size(); i++) {
             row.createCell(i).setCellValue(titles.get(i));
             ++tableColCount;
         }
-        ++rowIndex;
 
         // Keep track of the number of columns with data in them for later column auto-sizing.
         if (tableColCount > sheetColCount) {
@@ -230,8 +283,7 @@ public void startTable(List<String> titles) {
     @Override
     public void endTable() {
         // Add an empty row as a separator.
-        sheet.createRow(rowIndex);
-        ++rowIndex;
+        createRow();
     }
 
     /**
@@ -246,7 +298,7 @@ public void endTable() {
     })
 
     public void addRow(List<String> rowData) {
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         for (int i = 0; i < rowData.size(); ++i) {
             Cell excelCell = row.createCell(i);
             try {
@@ -259,7 +311,6 @@ public void addRow(List<String> rowData) {
                 }
             }
         }
-        ++rowIndex;
     }
 
     /**
@@ -310,8 +361,7 @@ private void writeSummaryWorksheet() {
             logger.log(Level.SEVERE, "Exception while getting open case.", ex); //NON-NLS
             return;
         }
-        sheet = wb.createSheet(NbBundle.getMessage(this.getClass(), "ReportExcel.sheetName.text"));
-        rowIndex = 0;
+        createSheet(NbBundle.getMessage(this.getClass(), "ReportExcel.sheetName.text"));
 
         Row row = sheet.createRow(rowIndex);
         row.setRowStyle(setStyle);
@@ -351,7 +401,7 @@ private void writeSummaryWorksheet() {
         row.createCell(1).setCellValue(numImages);
         ++rowIndex;
 
-        sheet.autoSizeColumn(0);
-        sheet.autoSizeColumn(1);
+        sheetColCount = 2;
+        sizeColumns();
     }
 }
@@ -22,6 +22,7 @@
  */
 package org.sleuthkit.autopsy.report;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -38,12 +39,21 @@
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import javax.imageio.ImageIO;
 import org.openide.filesystems.FileUtil;
@@ -79,6 +89,21 @@ class ReportHTML implements TableReportModule {
     private SleuthkitCase skCase;
     static Integer THUMBNAIL_COLUMNS = 5;
 
+    /**
+     * The number of threads that make thumbnails and copy files into the
+     * report, and the number of those tasks that may be waiting for a thread.
+     * When the queue is full the report thread runs the task itself, which
+     * keeps it from getting too far ahead of the workers.
+     */
+    private static final int FILE_WORKER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int FILE_WORKER_QUEUE_SIZE = FILE_WORKER_THREADS * 16;
+
+    /**
+     * The number of thumbnail cells that may be in progress at once, waiting
+     * to be written to the page in order.
+     */
+    private static final int MAX_PENDING_THUMBNAILS = FILE_WORKER_THREADS * 8;
+
     private Map<String, Integer> dataTypes;
     private String path;
     private String thumbsPath;
@@ -87,6 +112,16 @@ class ReportHTML implements TableReportModule {
     private Integer rowCount;       // number of rows (aka artifacts or tags) for the current data type
     private Writer out;
 
+    /**
+     * The threads that make the thumbnails and copy the tagged files. A task
+     * that the pool rejects, because the queue is full or the pool is being
+     * shut down, is run by the thread that submitted it, so no file is left
+     * out of the report. ThreadPoolExecutor.CallerRunsPolicy would silently
+     * discard the task after shutdown.
+     */
+    private ThreadPoolExecutor fileWorkers;
+    private final Set<String> savedContentPaths = ConcurrentHashMap.newKeySet();
+
     private final ReportBranding reportBranding;
 
     // Get the default instance of this report
@@ -122,6 +157,36 @@ private void refresh() throws NoCurrentCaseException {
             }
         }
         out = null;
+
+        shutDownFileWorkers();
+        fileWorkers = new ThreadPoolExecutor(FILE_WORKER_THREADS, FILE_WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(FILE_WORKER_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat("html-report-files-%d").setDaemon(true).build(), //NON-NLS
+                (task, executor) -> task.run());
+        savedContentPaths.clear();
+    }
+
+    /**
+     * Wait for the thumbnails and file copies in progress to be finished, and
+     * stop the worker threads.
+     */
+    private void shutDownFileWorkers() {
+        if (fileWorkers != null) {
+            fileWorkers.shutdown();
+            try {
+                while (fileWorkers.awaitTermination(1, TimeUnit.MINUTES) == false) {
+                    logger.log(Level.INFO, "Waiting for files to be copied into the HTML report."); //NON-NLS
+                }
+            } catch (InterruptedException ex) {
+                logger.log(Level.WARNING, "Interrupted while waiting for files to be copied into the HTML report.", ex); //NON-NLS
+                int notRun = fileWorkers.shutdownNow().size();
+                if (notRun > 0) {
+                    logger.log(Level.WARNING, "{0} thumbnails or file copies were left out of the HTML report.", notRun); //NON-NLS
+                }
+                Thread.currentThread().interrupt();
+            }
+            fileWorkers = null;
+        }
     }
 
     /**
@@ -356,6 +421,7 @@ public void startReport(String baseReportDir) {
      */
     @Override
     public void endReport() {
+        shutDownFileWorkers();
         writeNav();
         if (out != null) {
             try {
@@ -633,15 +699,48 @@ public void addRowWithTaggedContentHyperlink(List<String> row, ContentTag conten
     }
 
     /**
-     * Add the body of the thumbnails table.
+     * Add the body of the thumbnails table. The thumbnails and the copies of
+     * the images are made by the file worker threads, while this thread writes
+     * the finished cells to the page in the order of the given images.
      *
-     * @param images
+     * @param images        The images to add.
+     * @param progressPanel The panel to report progress to, and to check for
+     *                      cancellation.
      */
-    public void addThumbnailRows(Set<Content> images) {
+    public void addThumbnailRows(Set<Content> images, ReportProgressPanel progressPanel) {
         List<String> currentRow = new ArrayList<>();
         int totalCount = 0;
         int pages = 1;
-        for (Content content : images) {
+        int finishedCount = 0;
+        Iterator<Content> imagesIterator = images.iterator();
+        Deque<Future<String>> pendingCells = new ArrayDeque<>();
+        while (imagesIterator.hasNext() || pendingCells.isEmpty() == false) {
+            if (progressPanel.getStatus() == ReportProgressPanel.ReportStatus.CANCELED) {
+                pendingCells.forEach(pendingCell -> pendingCell.cancel(true));
+                break;
+            }
+
+            // Keep the workers busy with the next images.
+            while (imagesIterator.hasNext() && pendingCells.size() < MAX_PENDING_THUMBNAILS) {
+                Content content = imagesIterator.next();
+                if (failsContentCheck(content) == false) {
+                    AbstractFile file = (AbstractFile) content;
+                    pendingCells.add(fileWorkers.submit(() -> makeThumbnailCell(file)));
+                }
+            }
+            if (pendingCells.isEmpty()) {
+                break;
+            }
+
+            String thumbnailCell = getThumbnailCell(pendingCells.remove());
+            finishedCount++;
+            if (finishedCount % 100 == 0) {
+                progressPanel.updateStatusLabel(NbBundle.getMessage(this.getClass(), "ReportHTML.addThumbRows.progress", finishedCount, images.size()));
+            }
+            if (thumbnailCell == null) {
+                continue;
+            }
+
             if (currentRow.size() == THUMBNAIL_COLUMNS) {
                 addRow(currentRow);
                 currentRow.clear();
@@ -665,55 +764,7 @@ public void addThumbnailRows(Set<Content> images) {
                 startTable(emptyHeaders);
             }
 
-            if (failsContentCheck(content)) {
-                continue;
-            }
-
-            AbstractFile file = (AbstractFile) content;
-
-            // save copies of the orginal image and thumbnail image
-            String thumbnailPath = prepareThumbnail(file);
-            if (thumbnailPath == null) {
-                continue;
-            }
-            String contentPath = saveContent(file, "thumbs_fullsize"); //NON-NLS
-            String nameInImage;
-            try {
-                nameInImage = file.getUniquePath();
-            } catch (TskCoreException ex) {
-                nameInImage = file.getName();
-            }
-
-            StringBuilder linkToThumbnail = new StringBuilder();
-            linkToThumbnail.append("<div id='thumbnail_link'>");
-            linkToThumbnail.append("<a href=\""); //NON-NLS
-            linkToThumbnail.append(contentPath);
-            linkToThumbnail.append("\" target=\"_top\">");
-            linkToThumbnail.append("<img src=\"").append(thumbnailPath).append("\" title=\"").append(nameInImage).append("\"/>"); //NON-NLS
-            linkToThumbnail.append("</a><br>"); //NON-NLS
-            linkToThumbnail.append(file.getName()).append("<br>"); //NON-NLS
-
-            Services services = currentCase.getServices();
-            TagsManager tagsManager = services.getTagsManager();
-            try {
-                List<ContentTag> tags = tagsManager.getContentTagsByContent(content);
-                if (tags.size() > 0) {
-                    linkToThumbnail.append(NbBundle.getMessage(this.getClass(), "ReportHTML.thumbLink.tags"));
-                }
-                for (int i = 0; i < tags.size(); i++) {
-                    ContentTag tag = tags.get(i);
-                    String notableString = tag.getName().getKnownStatus() == TskData.FileKnown.BAD ? TagsManager.getNotableTagLabel() : "";
-                    linkToThumbnail.append(tag.getName().getDisplayName() + notableString);
-                    if (i != tags.size() - 1) {
-                        linkToThumbnail.append(", ");
-                    }
-                }
-            } catch (TskCoreException ex) {
-                logger.log(Level.WARNING, "Could not find get tags for file.", ex); //NON-NLS
-            }
-            linkToThumbnail.append("</div>");
-            currentRow.add(linkToThumbnail.toString());
-
+            currentRow.add(thumbnailCell);
             totalCount++;
         }
 
@@ -730,6 +781,79 @@ public void addThumbnailRows(Set<Content> images) {
         rowCount = totalCount;
     }
 
+    /**
+     * Wait for a thumbnail cell made by a file worker.
+     *
+     * @param pendingCell The pending thumbnail cell.
+     *
+     * @return The html for the cell, or null if no thumbnail could be made.
+     */
+    private String getThumbnailCell(Future<String> pendingCell) {
+        try {
+            return pendingCell.get();
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while waiting for a thumbnail.", ex); //NON-NLS
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.log(Level.WARNING, "Failed to make a thumbnail.", ex); //NON-NLS
+        }
+        return null;
+    }
+
+    /**
+     * Make the thumbnail of an image and a copy of the image in the report,
+     * and the html of the thumbnails table cell that links to them. Called on
+     * the file worker threads.
+     *
+     * @param file The image.
+     *
+     * @return The html for the cell, or null if no thumbnail could be made.
+     */
+    private String makeThumbnailCell(AbstractFile file) {
+        // save copies of the orginal image and thumbnail image
+        String thumbnailPath = prepareThumbnail(file);
+        if (thumbnailPath == null) {
+            return null;
+        }
+        String contentPath = saveContent(file, "thumbs_fullsize"); //NON-NLS
+        String nameInImage;
+        try {
+            nameInImage = file.getUniquePath();
+        } catch (TskCoreException ex) {
+            nameInImage = file.getName();
+        }
+
+        StringBuilder linkToThumbnail = new StringBuilder();
+        linkToThumbnail.append("<div id='thumbnail_link'>");
+        linkToThumbnail.append("<a href=\""); //NON-NLS
+        linkToThumbnail.append(contentPath);
+        linkToThumbnail.append("\" target=\"_top\">");
+        linkToThumbnail.append("<img src=\"").append(thumbnailPath).append("\" title=\"").append(nameInImage).append("\"/>"); //NON-NLS
+        linkToThumbnail.append("</a><br>"); //NON-NLS
+        linkToThumbnail.append(file.getName()).append("<br>"); //NON-NLS
+
+        Services services = currentCase.getServices();
+        TagsManager tagsManager = services.getTagsManager();
+        try {
+            List<ContentTag> tags = tagsManager.getContentTagsByContent(file);
+            if (tags.size() > 0) {
+                linkToThumbnail.append(NbBundle.getMessage(this.getClass(), "ReportHTML.thumbLink.tags"));
+            }
+            for (int i = 0; i < tags.size(); i++) {
+                ContentTag tag = tags.get(i);
+                String notableString = tag.getName().getKnownStatus() == TskData.FileKnown.BAD ? TagsManager.getNotableTagLabel() : "";
+                linkToThumbnail.append(tag.getName().getDisplayName() + notableString);
+                if (i != tags.size() - 1) {
+                    linkToThumbnail.append(", ");
+                }
+            }
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Could not find get tags for file.", ex); //NON-NLS
+        }
+        linkToThumbnail.append("</div>");
+        return linkToThumbnail.toString();
+    }
+
     private boolean failsContentCheck(Content c) {
         if (c instanceof AbstractFile == false) {
             return true;
@@ -744,7 +868,9 @@ private boolean failsContentCheck(Content c) {
     }
 
     /**
-     * Save a local copy of the given file in the reports folder.
+     * Save a local copy of the given file in the reports folder. The copy is
+     * made by the file worker threads, and is finished by the time the report
+     * ends.
      *
      * @param file    File to save
      * @param dirName Custom top-level folder to use to store the files in (tag
@@ -782,10 +908,14 @@ public String saveContent(AbstractFile file, String dirName) {
         localFilePath.append(fileName);
 
         // If the local file doesn't already exist, create it now.
-        // The existence check is necessary because it is possible to apply multiple tags with the same tagName to a file.
+        // The check is necessary because it is possible to apply multiple tags with the same tagName to a file.
         File localFile = new File(localFilePath.toString());
-        if (!localFile.exists()) {
-            ExtractFscContentVisitor.extract(file, localFile, null, null);
+        if (savedContentPaths.add(localFile.getPath()) && !localFile.exists()) {
+            if (fileWorkers != null) {
+                fileWorkers.execute(() -> ExtractFscContentVisitor.extract(file, localFile, null, null));
+            } else {
+                ExtractFscContentVisitor.extract(file, localFile, null, null);
+            }
         }
 
         // get the relative path
@@ -1174,7 +1304,9 @@ private void writeSummary() {
 
     private String prepareThumbnail(AbstractFile file) {
         BufferedImage bufferedThumb = ImageUtils.getThumbnail(file, ImageUtils.ICON_SIZE_MEDIUM);
-        File thumbFile = Paths.get(thumbsPath, file.getName() + ".png").toFile();
+        // Include the object id in the name, since the thumbnails are written
+        // concurrently and different files may have the same name.
+        File thumbFile = Paths.get(thumbsPath, file.getName() + "_" + file.getId() + ".png").toFile(); //NON-NLS
         if (bufferedThumb == null) {
             return null;
         }
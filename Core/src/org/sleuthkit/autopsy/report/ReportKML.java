@@ -35,15 +35,13 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.Namespace;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
-import org.jdom2.CDATA;
 import org.openide.filesystems.FileUtil;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.datamodel.ReadContentInputStream.ReadContentInputStreamException;
 
 /**
@@ -59,9 +57,42 @@ class ReportKML implements GeneralReportModule {
     private Case currentCase;
     private SleuthkitCase skCase;
     private final SimpleDateFormat kmlDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
-    private Namespace ns;
     private final String SEP = "<br>";
 
+    /**
+     * The KML output can be split into region or month tiles with the
+     * "tiling" setting of the ReportKML config (NONE, REGION or TIME). The
+     * size of the region tiles in degrees is the "regionTileDegrees" setting.
+     */
+    private static final String CONFIG_NAME = "ReportKML"; //NON-NLS
+    private static final String TILING_SETTING = "tiling"; //NON-NLS
+    private static final String REGION_TILE_DEGREES_SETTING = "regionTileDegrees"; //NON-NLS
+    private static final double DEFAULT_REGION_TILE_DEGREES = 1.0;
+
+    /**
+     * The number of artifacts read from the case database at a time.
+     */
+    private static final int ARTIFACT_PAGE_SIZE = 1000;
+
+    private static final KmlWriter.Folder EXIF_METADATA_FOLDER = new KmlWriter.Folder("EXIF Metadata", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/camera-icon-16.png"); //NON-NLS
+    private static final KmlWriter.Folder BOOKMARKS_FOLDER = new KmlWriter.Folder("GPS Bookmarks", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gpsfav.png"); //NON-NLS
+    private static final KmlWriter.Folder LAST_KNOWN_LOCATION_FOLDER = new KmlWriter.Folder("GPS Last Known Location", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-lastlocation.png"); //NON-NLS
+    private static final KmlWriter.Folder ROUTES_FOLDER = new KmlWriter.Folder("GPS Routes", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
+    private static final KmlWriter.Folder SEARCHES_FOLDER = new KmlWriter.Folder("GPS Searches", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-search.png"); //NON-NLS
+    private static final KmlWriter.Folder TRACKPOINTS_FOLDER = new KmlWriter.Folder("GPS Trackpoints", //NON-NLS
+            "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
+
+    /**
+     * The attributes of the current page of artifacts, by artifact id and then
+     * attribute type id. See ArtifactPager.
+     */
+    private Map<Long, Map<Integer, BlackboardAttribute>> pageAttributes = new HashMap<>();
+
     private enum FeatureColor {
         RED("style.kml#redFeature"),
         GREEN("style.kml#greenFeature"),
@@ -116,73 +147,21 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
 
         progressPanel.updateStatusLabel(NbBundle.getMessage(this.getClass(), "ReportKML.progress.loading"));
 
-        ns = Namespace.getNamespace("", "http://www.opengis.net/kml/2.2"); //NON-NLS
-
-        Element kml = new Element("kml", ns); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("gx", "http://www.google.com/kml/ext/2.2")); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("kml", "http://www.opengis.net/kml/2.2")); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("atom", "http://www.w3.org/2005/Atom")); //NON-NLS
-        Document kmlDocument = new Document(kml);
-
-        Element document = new Element("Document", ns); //NON-NLS
-        kml.addContent(document);
-
-        Element name = new Element("name", ns); //NON-NLS
         ReportBranding rb = new ReportBranding();
-        name.setText(rb.getReportTitle() + " KML"); //NON-NLS
-        document.addContent(name);
-
+        String ingestWarning = null;
         // Check if ingest has finished
         if (IngestManager.getInstance().isIngestRunning()) {
-            Element ingestwarning = new Element("snippet", ns); //NON-NLS
-            ingestwarning.addContent(NbBundle.getMessage(this.getClass(), "ReportBodyFile.ingestWarning.text")); //NON-NLS
-            document.addContent(ingestwarning);
-        }
-
-        // Create folder structure
-        Element gpsExifMetadataFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataExifMetadataFolder = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/camera-icon-16.png"); //NON-NLS
-        Element hrefExifMetadata = new Element("href", ns).addContent(cdataExifMetadataFolder); //NON-NLS
-        gpsExifMetadataFolder.addContent(new Element("Icon", ns).addContent(hrefExifMetadata)); //NON-NLS
-
-        Element gpsBookmarksFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataBookmarks = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gpsfav.png"); //NON-NLS
-        Element hrefBookmarks = new Element("href", ns).addContent(cdataBookmarks); //NON-NLS
-        gpsBookmarksFolder.addContent(new Element("Icon", ns).addContent(hrefBookmarks)); //NON-NLS
-
-        Element gpsLastKnownLocationFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataLastKnownLocation = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-lastlocation.png"); //NON-NLS
-        Element hrefLastKnownLocation = new Element("href", ns).addContent(cdataLastKnownLocation); //NON-NLS
-        gpsLastKnownLocationFolder.addContent(new Element("Icon", ns).addContent(hrefLastKnownLocation)); //NON-NLS
-
-        Element gpsRouteFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataRoute = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
-        Element hrefRoute = new Element("href", ns).addContent(cdataRoute); //NON-NLS
-        gpsRouteFolder.addContent(new Element("Icon", ns).addContent(hrefRoute)); //NON-NLS
-
-        Element gpsSearchesFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataSearches = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-search.png"); //NON-NLS
-        Element hrefSearches = new Element("href", ns).addContent(cdataSearches); //NON-NLS
-        gpsSearchesFolder.addContent(new Element("Icon", ns).addContent(hrefSearches)); //NON-NLS
-
-        Element gpsTrackpointsFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataTrackpoints = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
-        Element hrefTrackpoints = new Element("href", ns).addContent(cdataTrackpoints); //NON-NLS
-        gpsTrackpointsFolder.addContent(new Element("Icon", ns).addContent(hrefTrackpoints)); //NON-NLS
-
-        gpsExifMetadataFolder.addContent(new Element("name", ns).addContent("EXIF Metadata")); //NON-NLS
-        gpsBookmarksFolder.addContent(new Element("name", ns).addContent("GPS Bookmarks")); //NON-NLS
-        gpsLastKnownLocationFolder.addContent(new Element("name", ns).addContent("GPS Last Known Location")); //NON-NLS
-        gpsRouteFolder.addContent(new Element("name", ns).addContent("GPS Routes")); //NON-NLS
-        gpsSearchesFolder.addContent(new Element("name", ns).addContent("GPS Searches")); //NON-NLS
-        gpsTrackpointsFolder.addContent(new Element("name", ns).addContent("GPS Trackpoints")); //NON-NLS
-
-        document.addContent(gpsExifMetadataFolder);
-        document.addContent(gpsBookmarksFolder);
-        document.addContent(gpsLastKnownLocationFolder);
-        document.addContent(gpsRouteFolder);
-        document.addContent(gpsSearchesFolder);
-        document.addContent(gpsTrackpointsFolder);
+            ingestWarning = NbBundle.getMessage(this.getClass(), "ReportBodyFile.ingestWarning.text"); //NON-NLS
+        }
+
+        KmlWriter kmlWriter;
+        try {
+            kmlWriter = new KmlWriter(Paths.get(baseReportDir), REPORT_KML, rb.getReportTitle() + " KML", ingestWarning, getTiling(), getRegionTileDegrees()); //NON-NLS
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not write the KML file.", ex); //NON-NLS
+            progressPanel.complete(ReportProgressPanel.ReportStatus.ERROR);
+            return;
+        }
 
         ReportProgressPanel.ReportStatus result = ReportProgressPanel.ReportStatus.COMPLETE;
 
@@ -202,7 +181,9 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
          * we can successfully pull out of the database.
          */
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF)) {
+            kmlWriter.startFolder(EXIF_METADATA_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 String fileName = "";
                 long fileId = 0;
                 try {
@@ -210,7 +191,7 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                     String desc = getDescriptionFromArtifact(artifact, "EXIF Metadata With Locations"); //NON-NLS
                     Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
                     Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Element point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
+                    KmlWriter.Geometry point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
 
                     if (lat != null && lat != 0.0 && lon != null && lon != 0.0) {
                         AbstractFile abstractFile = artifact.getSleuthkitCase().getAbstractFileById(artifact.getObjectID());
@@ -227,7 +208,7 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                         if (path == null) {
                             path = Paths.get(abstractFile.getName());
                         }
-                        gpsExifMetadataFolder.addContent(makePlacemarkWithPicture(abstractFile.getName(), FeatureColor.RED, desc, timestamp, point, path, formattedCoordinates));
+                        kmlWriter.writePlacemark(makePlacemarkWithPicture(abstractFile.getName(), FeatureColor.RED, desc, timestamp, point, path, formattedCoordinates));
                     }
                 } catch (ReadContentInputStreamException ex) {
                     logger.log(Level.WARNING, String.format("Error reading file '%s' (id=%d).", fileName, fileId), ex);
@@ -236,55 +217,61 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not extract photos with EXIF metadata.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_BOOKMARK)) {
+            kmlWriter.startFolder(BOOKMARKS_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_BOOKMARK);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 try {
                     Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
                     String desc = getDescriptionFromArtifact(artifact, "GPS Bookmark"); //NON-NLS
                     Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
                     Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Element point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
+                    KmlWriter.Geometry point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
                     String bookmarkName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
                     String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                    gpsBookmarksFolder.addContent(makePlacemark(bookmarkName, FeatureColor.BLUE, desc, timestamp, point, formattedCoordinates));
+                    kmlWriter.writePlacemark(makePlacemark(bookmarkName, FeatureColor.BLUE, desc, timestamp, point, formattedCoordinates));
                 } catch (Exception ex) {
                     logger.log(Level.SEVERE, "Could not extract Bookmark information.", ex); //NON-NLS
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not get GPS Bookmarks from database.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_LAST_KNOWN_LOCATION)) {
+            kmlWriter.startFolder(LAST_KNOWN_LOCATION_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_LAST_KNOWN_LOCATION);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 try {
                     Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
                     String desc = getDescriptionFromArtifact(artifact, "GPS Last Known Location"); //NON-NLS
                     Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
                     Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
                     Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                    Element point = makePoint(lat, lon, alt);
+                    KmlWriter.Geometry point = makePoint(lat, lon, alt);
                     String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                    gpsLastKnownLocationFolder.addContent(makePlacemark("Last Known Location", FeatureColor.PURPLE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
+                    kmlWriter.writePlacemark(makePlacemark("Last Known Location", FeatureColor.PURPLE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
                 } catch (Exception ex) {
                     logger.log(Level.SEVERE, "Could not extract Last Known Location information.", ex); //NON-NLS
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not get GPS Last Known Location from database.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_ROUTE)) {
+            kmlWriter.startFolder(ROUTES_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_ROUTE);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 try {
                     Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
                     String desc = getDescriptionFromArtifact(artifact, "GPS Route");
@@ -294,36 +281,38 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                     Double longitudeEnd = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_END);
                     Double altitude = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
 
-                    Element route = makeLineString(latitudeStart, longitudeStart, altitude, latitudeEnd, longitudeEnd, altitude);
-                    Element startingPoint = makePoint(latitudeStart, longitudeStart, altitude);
-                    Element endingPoint = makePoint(latitudeEnd, longitudeEnd, altitude);
+                    KmlWriter.Geometry route = makeLineString(latitudeStart, longitudeStart, altitude, latitudeEnd, longitudeEnd, altitude);
+                    KmlWriter.Geometry startingPoint = makePoint(latitudeStart, longitudeStart, altitude);
+                    KmlWriter.Geometry endingPoint = makePoint(latitudeEnd, longitudeEnd, altitude);
 
                     String formattedCoordinates = String.format("%.2f, %.2f to %.2f, %.2f", latitudeStart, longitudeStart, latitudeEnd, longitudeEnd);
-                    gpsRouteFolder.addContent(makePlacemark("As-the-crow-flies Route", FeatureColor.GREEN, desc, timestamp, route, formattedCoordinates)); //NON-NLS
+                    kmlWriter.writePlacemark(makePlacemark("As-the-crow-flies Route", FeatureColor.GREEN, desc, timestamp, route, formattedCoordinates)); //NON-NLS
 
                     formattedCoordinates = String.format("%.2f, %.2f", latitudeStart, longitudeStart);
-                    gpsRouteFolder.addContent(makePlacemark("Start", FeatureColor.GREEN, desc, timestamp, startingPoint, formattedCoordinates)); //NON-NLS
+                    kmlWriter.writePlacemark(makePlacemark("Start", FeatureColor.GREEN, desc, timestamp, startingPoint, formattedCoordinates)); //NON-NLS
 
                     formattedCoordinates = String.format("%.2f, %.2f", latitudeEnd, longitudeEnd);
-                    gpsRouteFolder.addContent(makePlacemark("End", FeatureColor.GREEN, desc, timestamp, endingPoint, formattedCoordinates)); //NON-NLS
+                    kmlWriter.writePlacemark(makePlacemark("End", FeatureColor.GREEN, desc, timestamp, endingPoint, formattedCoordinates)); //NON-NLS
                 } catch (Exception ex) {
                     logger.log(Level.SEVERE, "Could not extract GPS Route information.", ex); //NON-NLS
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not get GPS Routes from database.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_SEARCH)) {
+            kmlWriter.startFolder(SEARCHES_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_SEARCH);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
                 String desc = getDescriptionFromArtifact(artifact, "GPS Search"); //NON-NLS
                 Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
                 Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
                 Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                Element point = makePoint(lat, lon, alt);
+                KmlWriter.Geometry point = makePoint(lat, lon, alt);
                 String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
                 String searchName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
                 if (searchName == null || searchName.isEmpty()) {
@@ -332,22 +321,24 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                 if (searchName == null || searchName.isEmpty()) {
                     searchName = "GPS Search";
                 }
-                gpsSearchesFolder.addContent(makePlacemark(searchName, FeatureColor.WHITE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
+                kmlWriter.writePlacemark(makePlacemark(searchName, FeatureColor.WHITE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not get GPS Searches from database.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
         try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_TRACKPOINT)) {
+            kmlWriter.startFolder(TRACKPOINTS_FOLDER);
+            ArtifactPager artifacts = new ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_TRACKPOINT);
+            for (BlackboardArtifact artifact = artifacts.next(); artifact != null; artifact = artifacts.next()) {
                 try {
                     Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
                     String desc = getDescriptionFromArtifact(artifact, "GPS Trackpoint"); //NON-NLS
                     Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
                     Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
                     Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                    Element point = makePoint(lat, lon, alt);
+                    KmlWriter.Geometry point = makePoint(lat, lon, alt);
                     String formattedCoordinates = String.format("%.2f, %.2f, %.2f", lat, lon, alt);
                     String trackName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
                     if (trackName == null || trackName.isEmpty()) {
@@ -359,13 +350,13 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                     if (trackName == null || trackName.isEmpty()) {
                         trackName = "GPS Trackpoint";
                     }
-                    gpsTrackpointsFolder.addContent(makePlacemark(trackName, FeatureColor.YELLOW, desc, timestamp, point, formattedCoordinates));
+                    kmlWriter.writePlacemark(makePlacemark(trackName, FeatureColor.YELLOW, desc, timestamp, point, formattedCoordinates));
                 } catch (Exception ex) {
                     logger.log(Level.SEVERE, "Could not extract Trackpoint information.", ex); //NON-NLS
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
+        } catch (TskCoreException | IOException ex) {
             logger.log(Level.SEVERE, "Could not get GPS Trackpoints from database.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
@@ -380,9 +371,8 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
-        try (FileOutputStream writer = new FileOutputStream(kmlFileFullPath)) {
-            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-            outputter.output(kmlDocument, writer);
+        try {
+            kmlWriter.close();
             String prependedStatus = "";
             if (result == ReportProgressPanel.ReportStatus.ERROR) {
                 prependedStatus = "Incomplete ";
@@ -402,6 +392,7 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
+        pageAttributes = new HashMap<>();
         progressPanel.complete(result);
     }
 
@@ -416,7 +407,7 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
     private Double getDouble(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
         Double returnValue = null;
         try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
+            BlackboardAttribute bba = getAttribute(artifact, type);
             if (bba != null) {
                 Double value = bba.getValueDouble();
                 returnValue = value;
@@ -438,7 +429,7 @@ private Double getDouble(BlackboardArtifact artifact, BlackboardAttribute.ATTRIB
     private Long getLong(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
         Long returnValue = null;
         try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
+            BlackboardAttribute bba = getAttribute(artifact, type);
             if (bba != null) {
                 Long value = bba.getValueLong();
                 returnValue = value;
@@ -460,7 +451,7 @@ private Long getLong(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_
     private Integer getInteger(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
         Integer returnValue = null;
         try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
+            BlackboardAttribute bba = getAttribute(artifact, type);
             if (bba != null) {
                 Integer value = bba.getValueInt();
                 returnValue = value;
@@ -482,7 +473,7 @@ private Integer getInteger(BlackboardArtifact artifact, BlackboardAttribute.ATTR
     private String getString(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
         String returnValue = null;
         try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
+            BlackboardAttribute bba = getAttribute(artifact, type);
             if (bba != null) {
                 String value = bba.getValueString();
                 if (value != null && !value.isEmpty()) {
@@ -495,6 +486,25 @@ private String getString(BlackboardArtifact artifact, BlackboardAttribute.ATTRIB
         return returnValue;
     }
 
+    /**
+     * Get an attribute of an artifact, from the attributes of the current page
+     * of artifacts if it is in it.
+     *
+     * @param artifact The artifact to query
+     * @param type     The attribute type we're looking for
+     *
+     * @return The first attribute of the type, or null if there is none
+     *
+     * @throws TskCoreException If there is an error querying the attribute
+     */
+    private BlackboardAttribute getAttribute(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) throws TskCoreException {
+        Map<Integer, BlackboardAttribute> attributes = pageAttributes.get(artifact.getArtifactID());
+        if (attributes == null) {
+            return artifact.getAttribute(new BlackboardAttribute.Type(type));
+        }
+        return attributes.get(type.getTypeID());
+    }
+
     /**
      * This method creates a text description for a map feature using all the
      * geospatial and time data we can for the Artifact. It queries the
@@ -652,9 +662,9 @@ private String getTimeStamp(long timeStamp) {
      * @param longitude point longitude
      * @param altitude  point altitude. Currently ignored.
      *
-     * @return the Point as an Element
+     * @return the Point
      */
-    private Element makePoint(Double latitude, Double longitude, Double altitude) {
+    private KmlWriter.Geometry makePoint(Double latitude, Double longitude, Double altitude) {
         if (latitude == null) {
             latitude = 0.0;
         }
@@ -664,25 +674,15 @@ private Element makePoint(Double latitude, Double longitude, Double altitude) {
         if (altitude == null) {
             altitude = 0.0;
         }
-        Element point = new Element("Point", ns); //NON-NLS
-
+        /*
+         * Though we are including a non-zero altitude, clamp it to the ground
+         * because inaccuracies from the GPS data can cause the terrain to
+         * occlude points when zoomed in otherwise. Show the altitude, but keep
+         * the point clamped to the ground. We may change this later for flying
+         * GPS sensors.
+         */
         // KML uses lon, lat. Deliberately reversed.
-        Element coordinates = new Element("coordinates", ns).addContent(longitude + "," + latitude + "," + altitude); //NON-NLS
-
-        if (altitude != 0) {
-            /*
-             * Though we are including a non-zero altitude, clamp it to the
-             * ground because inaccuracies from the GPS data can cause the
-             * terrain to occlude points when zoomed in otherwise. Show the
-             * altitude, but keep the point clamped to the ground. We may change
-             * this later for flying GPS sensors.
-             */
-            Element altitudeMode = new Element("altitudeMode", ns).addContent("clampToGround"); //NON-NLS
-            point.addContent(altitudeMode);
-        }
-        point.addContent(coordinates);
-
-        return point;
+        return new KmlWriter.Geometry(false, longitude + "," + latitude + "," + altitude, altitude != 0, latitude, longitude); //NON-NLS
     }
 
     /**
@@ -700,9 +700,9 @@ private Element makePoint(Double latitude, Double longitude, Double altitude) {
      * @param stopLongitude  Ending longitude
      * @param stopAltitude   Ending altitude. Currently ignored.
      *
-     * @return the Line as an Element
+     * @return the Line
      */
-    private Element makeLineString(Double startLatitude, Double startLongitude, Double startAltitude, Double stopLatitude, Double stopLongitude, Double stopAltitude) {
+    private KmlWriter.Geometry makeLineString(Double startLatitude, Double startLongitude, Double startAltitude, Double stopLatitude, Double stopLongitude, Double stopAltitude) {
         if (startLatitude == null) {
             startLatitude = 0.0;
         }
@@ -722,15 +722,10 @@ private Element makeLineString(Double startLatitude, Double startLongitude, Doub
             stopAltitude = 0.0;
         }
 
-        Element lineString = new Element("LineString", ns); //NON-NLS
-        lineString.addContent(new Element("extrude", ns).addContent("1")); //NON-NLS
-        lineString.addContent(new Element("tessellate", ns).addContent("1")); //NON-NLS
-        lineString.addContent(new Element("altitudeMode", ns).addContent("clampToGround")); //NON-NLS
         // KML uses lon, lat. Deliberately reversed.
-        lineString.addContent(new Element("coordinates", ns).addContent(
+        return new KmlWriter.Geometry(true,
                 startLongitude + "," + startLatitude + ",0.0,"
-                + stopLongitude + "," + stopLatitude + ",0.0")); //NON-NLS
-        return lineString;
+                + stopLongitude + "," + stopLatitude + ",0.0", true, startLatitude, startLongitude); //NON-NLS
     }
 
     /**
@@ -747,27 +742,17 @@ private Element makeLineString(Double startLatitude, Double startLongitude, Doub
      *
      * @return the entire KML placemark
      */
-    private Element makePlacemark(String name, FeatureColor color, String description, Long timestamp, Element feature, String coordinates) {
-        Element placemark = new Element("Placemark", ns); //NON-NLS
+    private KmlWriter.Placemark makePlacemark(String name, FeatureColor color, String description, Long timestamp, KmlWriter.Geometry feature, String coordinates) {
+        String placemarkName;
         if (name != null && !name.isEmpty()) {
-            placemark.addContent(new Element("name", ns).addContent(name)); //NON-NLS
+            placemarkName = name;
         } else if (timestamp != null) {
-            placemark.addContent(new Element("name", ns).addContent(getTimeStamp(timestamp))); //NON-NLS
+            placemarkName = getTimeStamp(timestamp);
         } else {
-            placemark.addContent(new Element("name", ns).addContent("")); //NON-NLS
-        }
-        placemark.addContent(new Element("styleUrl", ns).addContent(color.getColor())); //NON-NLS
-        placemark.addContent(new Element("description", ns).addContent(description)); //NON-NLS
-        if (timestamp != null) {
-            Element time = new Element("TimeStamp", ns); //NON-NLS
-            time.addContent(new Element("when", ns).addContent(getTimeStamp(timestamp))); //NON-NLS
-            placemark.addContent(time);
+            placemarkName = "";
         }
-        placemark.addContent(feature);
-        if (coordinates != null && !coordinates.isEmpty()) {
-            placemark.addContent(new Element("snippet", ns).addContent(coordinates)); //NON-NLS
-        }
-        return placemark;
+        return new KmlWriter.Placemark(placemarkName, color.getColor(), description, timestamp,
+                timestamp != null ? getTimeStamp(timestamp) : null, feature, coordinates);
     }
 
     /**
@@ -785,33 +770,114 @@ private Element makePlacemark(String name, FeatureColor color, String descriptio
      *
      * @return the entire KML Placemark, including a picture.
      */
-    private Element makePlacemarkWithPicture(String name, FeatureColor color, String description, Long timestamp, Element feature, Path path, String coordinates) {
-        Element placemark = new Element("Placemark", ns); //NON-NLS
-        Element desc = new Element("description", ns); //NON-NLS
+    private KmlWriter.Placemark makePlacemarkWithPicture(String name, FeatureColor color, String description, Long timestamp, KmlWriter.Geometry feature, Path path, String coordinates) {
+        StringBuilder desc = new StringBuilder();
+        String placemarkName = null;
         if (name != null && !name.isEmpty()) {
-            placemark.addContent(new Element("name", ns).addContent(name)); //NON-NLS
+            placemarkName = name;
             String image = "<img src='" + name + "' width='400'/>"; //NON-NLS
-            desc.addContent(image);
+            desc.append(image);
         }
-        placemark.addContent(new Element("styleUrl", ns).addContent(color.getColor())); //NON-NLS
         if (path != null) {
             String pathAsString = path.toString();
             if (pathAsString != null && !pathAsString.isEmpty()) {
-                desc.addContent(description + "<b>Source Path:</b> " + pathAsString);
+                desc.append(description).append("<b>Source Path:</b> ").append(pathAsString);
             }
         }
-        placemark.addContent(desc);
+        return new KmlWriter.Placemark(placemarkName, color.getColor(), desc.toString(), timestamp,
+                timestamp != null ? getTimeStamp(timestamp) : null, feature, coordinates);
+    }
 
-        if (timestamp != null) {
-            Element time = new Element("TimeStamp", ns); //NON-NLS
-            time.addContent(new Element("when", ns).addContent(getTimeStamp(timestamp))); //NON-NLS
-            placemark.addContent(time);
+    /**
+     * Get how the KML output is split into tiles, from the "tiling" setting.
+     *
+     * @return The tiling, NONE if it is not set or not valid.
+     */
+    private KmlWriter.Tiling getTiling() {
+        String setting = ModuleSettings.getConfigSetting(CONFIG_NAME, TILING_SETTING);
+        if (setting != null && setting.isEmpty() == false) {
+            try {
+                return KmlWriter.Tiling.valueOf(setting.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARNING, "Invalid KML tiling " + setting + ", not tiling.", ex); //NON-NLS
+            }
         }
-        placemark.addContent(feature);
-        if (coordinates != null && !coordinates.isEmpty()) {
-            placemark.addContent(new Element("snippet", ns).addContent(coordinates)); //NON-NLS
+        return KmlWriter.Tiling.NONE;
+    }
+
+    /**
+     * Get the size of the region tiles, from the "regionTileDegrees" setting.
+     *
+     * @return The size of the region tiles in degrees.
+     */
+    private double getRegionTileDegrees() {
+        String setting = ModuleSettings.getConfigSetting(CONFIG_NAME, REGION_TILE_DEGREES_SETTING);
+        if (setting != null && setting.isEmpty() == false) {
+            try {
+                double degrees = Double.parseDouble(setting.trim());
+                if (degrees > 0) {
+                    return degrees;
+                }
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Invalid KML region tile size " + setting + ", using the default.", ex); //NON-NLS
+            }
+        }
+        return DEFAULT_REGION_TILE_DEGREES;
+    }
+
+    /**
+     * Reads the artifacts of a type from the case database a page at a time,
+     * in artifact id order, along with the attributes of each page.
+     */
+    private class ArtifactPager {
+
+        private final ArtifactPageQuery pages;
+        private List<BlackboardArtifact> page;
+        private int nextIndex = 0;
+
+        private ArtifactPager(BlackboardArtifact.ARTIFACT_TYPE type) {
+            this.pages = new ArtifactPageQuery(skCase, "blackboard_artifacts.artifact_type_id = " + type.getTypeID(), ARTIFACT_PAGE_SIZE); //NON-NLS
+        }
+
+        /**
+         * Get the next artifact.
+         *
+         * @return The next artifact, or null if there are no more.
+         *
+         * @throws TskCoreException If there is an error querying the case
+         *                          database.
+         */
+        private BlackboardArtifact next() throws TskCoreException {
+            if (page == null || nextIndex == page.size()) {
+                readPage();
+                if (page.isEmpty()) {
+                    return null;
+                }
+            }
+            return page.get(nextIndex++);
+        }
+
+        private void readPage() throws TskCoreException {
+            page = pages.nextPage();
+            nextIndex = 0;
+            pageAttributes = new HashMap<>();
+            if (page.isEmpty()) {
+                return;
+            }
+
+            StringBuilder artifactIDs = new StringBuilder();
+            for (BlackboardArtifact artifact : page) {
+                if (artifactIDs.length() > 0) {
+                    artifactIDs.append(",");
+                }
+                artifactIDs.append(artifact.getArtifactID());
+                pageAttributes.put(artifact.getArtifactID(), new HashMap<>());
+            }
+            for (BlackboardAttribute attribute : skCase.getMatchingAttributes("WHERE artifact_id IN (" + artifactIDs + ")")) { //NON-NLS
+                // Keep the first attribute of each type, like getAttribute
+                pageAttributes.get(attribute.getArtifactID()).putIfAbsent(attribute.getAttributeType().getTypeID(), attribute);
+            }
         }
-        return placemark;
     }
 
     /**
@@ -18,9 +18,7 @@
  */
 package org.sleuthkit.autopsy.report;
 
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimaps;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -37,6 +35,7 @@
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
@@ -53,6 +52,7 @@
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.ContentTag;
 import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TagName;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 
@@ -69,6 +69,18 @@ class TableReportGenerator {
 
     private final List<String> errorList;
 
+    /**
+     * The number of artifacts read from the case database at a time.
+     */
+    private static final int ARTIFACT_PAGE_SIZE = 1000;
+
+    /**
+     * Cached tag name labels and tag names filter clause, see
+     * getTagNameLabels and getArtifactTagNamesFilterClause.
+     */
+    private Map<Long, String> tagNameLabels;
+    private String artifactTagNamesFilterClause;
+
     TableReportGenerator(Map<BlackboardArtifact.Type, Boolean> artifactTypeSelections, Map<String, Boolean> tagNameSelections, ReportProgressPanel progressPanel, TableReportModule tableReport) {
 
         this.progressPanel = progressPanel;
@@ -150,12 +162,6 @@ private void makeBlackboardArtifactTables() {
                 continue;
             }
 
-            List<ArtifactData> artifactList = getFilteredArtifacts(type, tagNamesFilter);
-
-            if (artifactList.isEmpty()) {
-                continue;
-            }
-
             /*
              * TSK_ACCOUNT artifacts get grouped by their TSK_ACCOUNT_TYPE
              * attribute, and then handed off to the standard method for writing
@@ -163,16 +169,7 @@ private void makeBlackboardArtifactTables() {
              */
             if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getTypeID()) {
                 //Group account artifacts by their account type
-                ListMultimap<String, ArtifactData> groupedArtifacts = Multimaps.index(artifactList,
-                        artifactData -> {
-                            try {
-                                return artifactData.getArtifact().getAttribute(new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE)).getValueString();
-                            } catch (TskCoreException ex) {
-                                logger.log(Level.SEVERE, "Unable to get value of TSK_ACCOUNT_TYPE attribute. Defaulting to \"unknown\"", ex);
-                                return "unknown";
-                            }
-                        });
-                for (String accountTypeStr : groupedArtifacts.keySet()) {
+                for (String accountTypeStr : getAccountTypeNames()) {
                     /*
                      * If the report is a ReportHTML, the data type name
                      * eventualy makes it to useDataTypeIcon which expects but
@@ -192,36 +189,47 @@ private void makeBlackboardArtifactTables() {
                     }
 
                     final String compundDataTypeName = BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getDisplayName() + ": " + accountDisplayname;
-                    writeTableForDataType(new ArrayList<>(groupedArtifacts.get(accountTypeStr)), type, compundDataTypeName, comment);
+                    final String accountTypeClause = " AND blackboard_artifacts.artifact_id IN (SELECT acct.artifact_id FROM blackboard_attributes AS acct" //NON-NLS
+                            + " WHERE acct.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE.getTypeID() //NON-NLS
+                            + " AND acct.value_text = '" + accountTypeStr.replace("'", "''") + "')"; //NON-NLS
+                    writeTableForDataType(type, compundDataTypeName, comment, accountTypeClause);
                 }
             } else {
                 //all other artifact types are sent to writeTableForDataType directly
-                writeTableForDataType(artifactList, type, type.getDisplayName(), comment);
+                writeTableForDataType(type, type.getDisplayName(), comment, "");
             }
         }
     }
 
     /**
      *
-     * Write the given list of artifacts to the table for the given type.
+     * Write the artifacts of the given type that pass the tag names filter to
+     * the table for the given type. The artifacts are read from the case
+     * database a page at a time, in artifact id order, and each page is
+     * written before the next is read, so that memory use does not depend on
+     * the number of artifacts.
      *
-     * @param artifactList The List of artifacts to include in the table.
-     * @param type         The Type of artifacts included in the table. All the
-     *                     artifacts in artifactList should be of this type.
-     * @param tableName    The name of the table.
-     * @param comment      A comment to put in the header.
+     * @param type        The Type of artifacts included in the table.
+     * @param tableName   The name of the table.
+     * @param comment     A comment to put in the header.
+     * @param extraClause An additional condition on the artifacts, starting
+     *                    with " AND ", or the empty string.
      */
-    private void writeTableForDataType(List<ArtifactData> artifactList, BlackboardArtifact.Type type, String tableName, String comment) {
+    private void writeTableForDataType(BlackboardArtifact.Type type, String tableName, String comment, String extraClause) {
+        final String whereClause = "blackboard_artifacts.artifact_type_id = " + type.getTypeID() //NON-NLS
+                + getArtifactTagNamesFilterClause() + extraClause;
+
         /*
-         * Make a sorted set of all of the attribute types that are on any of
-         * the given artifacts.
+         * Get the set of all of the attribute types that are on any of the
+         * artifacts, sorted by display name.
          */
-        Set<BlackboardAttribute.Type> attrTypeSet = new TreeSet<>(Comparator.comparing(BlackboardAttribute.Type::getDisplayName));
-        for (ArtifactData data : artifactList) {
-            List<BlackboardAttribute> attributes = data.getAttributes();
-            for (BlackboardAttribute attribute : attributes) {
-                attrTypeSet.add(attribute.getAttributeType());
-            }
+        Set<BlackboardAttribute.Type> attrTypeSet;
+        try {
+            attrTypeSet = getAttributeTypesInUse(whereClause);
+        } catch (TskCoreException | NoCurrentCaseException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBAttribs"));
+            logger.log(Level.SEVERE, "Failed to get Blackboard Attribute types when generating report.", ex); //NON-NLS
+            return;
         }
         /*
          * Get the columns appropriate for the artifact type. This is used to
@@ -234,29 +242,43 @@ private void writeTableForDataType(List<ArtifactData> artifactList, BlackboardAr
         }
         columnHeaderMap.put(type.getTypeID(), columns);
 
-        /*
-         * The artifact list is sorted now, as getting the row data is dependent
-         * on having the columns, which is necessary for sorting.
-         */
-        Collections.sort(artifactList);
-
-        tableReport.startDataType(tableName, comment);
-        tableReport.startTable(Lists.transform(columns, Column::getColumnHeader));
+        ArtifactPageQuery artifactPages;
+        try {
+            artifactPages = new ArtifactPageQuery(Case.getCurrentCaseThrows().getSleuthkitCase(), whereClause, ARTIFACT_PAGE_SIZE);
+        } catch (NoCurrentCaseException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
+            logger.log(Level.SEVERE, "Failed to get Blackboard Artifacts when generating report.", ex); //NON-NLS
+            return;
+        }
+        boolean tableStarted = false;
+        while (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+            List<ArtifactData> artifactPage = getArtifactPage(artifactPages);
+            if (artifactPage.isEmpty()) {
+                break;
+            }
+            // Only start the table once there is an artifact to put in it.
+            if (tableStarted == false) {
+                tableReport.startDataType(tableName, comment);
+                tableReport.startTable(Lists.transform(columns, Column::getColumnHeader));
+                tableStarted = true;
+            }
 
-        for (ArtifactData artifactData : artifactList) {
-            // Get the row data for this artifact, and has the
-            // module add it.
-            List<String> rowData = artifactData.getRow();
-            if (rowData.isEmpty()) {
-                return;
+            for (ArtifactData artifactData : artifactPage) {
+                // Get the row data for this artifact, and has the
+                // module add it.
+                List<String> rowData = artifactData.getRow();
+                if (rowData.isEmpty() == false) {
+                    tableReport.addRow(rowData);
+                }
             }
+        }
 
-            tableReport.addRow(rowData);
+        if (tableStarted) {
+            // Finish up this data type
+            progressPanel.increment();
+            tableReport.endTable();
+            tableReport.endDataType();
         }
-        // Finish up this data type
-        progressPanel.increment();
-        tableReport.endTable();
-        tableReport.endDataType();
     }
 
     /**
@@ -436,7 +458,7 @@ private void makeThumbnailTable() {
             }
             htmlModule.startTable(emptyHeaders);
 
-            htmlModule.addThumbnailRows(images);
+            htmlModule.addThumbnailRows(images, progressPanel);
 
             htmlModule.endTable();
             htmlModule.endDataType();
@@ -839,7 +861,7 @@ List<String> getErrorList() {
      * Container class that holds data about an Artifact to eliminate duplicate
      * calls to the Sleuthkit database.
      */
-    private class ArtifactData implements Comparable<ArtifactData> {
+    private class ArtifactData {
 
         private BlackboardArtifact artifact;
         private List<BlackboardAttribute> attributes;
@@ -885,28 +907,6 @@ public Content getContent() {
             return content;
         }
 
-        /**
-         * Compares ArtifactData objects by the first attribute they have in
-         * common in their List<BlackboardAttribute>. Should only be used on two
-         * artifacts of the same type
-         *
-         * If all attributes are the same, they are assumed duplicates and are
-         * compared by their artifact id. Should only be used with attributes of
-         * the same type.
-         */
-        @Override
-        public int compareTo(ArtifactData otherArtifactData) {
-            List<String> thisRow = getRow();
-            List<String> otherRow = otherArtifactData.getRow();
-            for (int i = 0; i < thisRow.size(); i++) {
-                int compare = thisRow.get(i).compareTo(otherRow.get(i));
-                if (compare != 0) {
-                    return compare;
-                }
-            }
-            return ((Long) this.getArtifactID()).compareTo(otherArtifactData.getArtifactID());
-        }
-
         /**
          * Get the values for each row in the table report.
          *
@@ -1015,41 +1015,166 @@ private List<String> getOrderedRowDataAsStrings() throws TskCoreException {
     }
 
     /**
-     * Get a List of the artifacts and data of the given type that pass the
-     * given Tag Filter.
+     * Get the next page of artifacts that satisfy the given condition, with
+     * their attributes and tags. The attributes and tags of all the artifacts
+     * in the page are read with one query each.
      *
-     * @param type           The artifact type to get
-     * @param tagNamesFilter The tag names that should be included.
+     * @param artifactPages The query for the pages of artifacts.
      *
-     * @return a list of the filtered tags.
+     * @return The next page of artifacts, in artifact id order, or an empty
+     *         list if there are no more.
      */
-    private List<ArtifactData> getFilteredArtifacts(BlackboardArtifact.Type type, HashSet<String> tagNamesFilter) {
+    @SuppressWarnings("deprecation")
+    private List<ArtifactData> getArtifactPage(ArtifactPageQuery artifactPages) {
         List<ArtifactData> artifacts = new ArrayList<>();
         try {
-            for (BlackboardArtifact artifact : Case.getCurrentCaseThrows().getSleuthkitCase().getBlackboardArtifacts(type.getTypeID())) {
-                List<BlackboardArtifactTag> tags = Case.getCurrentCaseThrows().getServices().getTagsManager().getBlackboardArtifactTagsByArtifact(artifact);
-                HashSet<String> uniqueTagNames = new HashSet<>();
-                for (BlackboardArtifactTag tag : tags) {
-                    String notableString = tag.getName().getKnownStatus() == TskData.FileKnown.BAD ? TagsManager.getNotableTagLabel() : "";
-                    uniqueTagNames.add(tag.getName().getDisplayName() + notableString);
-                }
-                if (failsTagFilter(uniqueTagNames, tagNamesFilter)) {
-                    continue;
-                }
-                try {
-                    artifacts.add(new ArtifactData(artifact, Case.getCurrentCaseThrows().getSleuthkitCase().getBlackboardAttributes(artifact), uniqueTagNames));
-                } catch (TskCoreException ex) {
-                    errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBAttribs"));
-                    logger.log(Level.SEVERE, "Failed to get Blackboard Attributes when generating report.", ex); //NON-NLS
+            SleuthkitCase skCase = Case.getCurrentCaseThrows().getSleuthkitCase();
+            List<BlackboardArtifact> artifactPage = artifactPages.nextPage();
+            if (artifactPage.isEmpty()) {
+                return artifacts;
+            }
+            String artifactIDs = artifactPage.stream()
+                    .map(artifact -> Long.toString(artifact.getArtifactID()))
+                    .collect(Collectors.joining(",")); //NON-NLS
+
+            Map<Long, List<BlackboardAttribute>> attributesByArtifact = new HashMap<>();
+            for (BlackboardAttribute attribute : skCase.getMatchingAttributes("WHERE artifact_id IN (" + artifactIDs + ")")) { //NON-NLS
+                attributesByArtifact.computeIfAbsent(attribute.getArtifactID(), id -> new ArrayList<>()).add(attribute);
+            }
+
+            Map<Long, HashSet<String>> tagNamesByArtifact = new HashMap<>();
+            Map<Long, String> tagNameLabels = getTagNameLabels();
+            try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery("SELECT artifact_id, tag_name_id FROM blackboard_artifact_tags WHERE artifact_id IN (" + artifactIDs + ")")) { //NON-NLS
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    String label = tagNameLabels.get(resultSet.getLong("tag_name_id")); //NON-NLS
+                    if (label != null) {
+                        tagNamesByArtifact.computeIfAbsent(resultSet.getLong("artifact_id"), id -> new HashSet<>()).add(label); //NON-NLS
+                    }
                 }
             }
-        } catch (TskCoreException | NoCurrentCaseException ex) {
+
+            for (BlackboardArtifact artifact : artifactPage) {
+                artifacts.add(new ArtifactData(artifact,
+                        attributesByArtifact.getOrDefault(artifact.getArtifactID(), new ArrayList<>()),
+                        tagNamesByArtifact.getOrDefault(artifact.getArtifactID(), new HashSet<>())));
+            }
+        } catch (TskCoreException | SQLException | NoCurrentCaseException ex) {
             errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
             logger.log(Level.SEVERE, "Failed to get Blackboard Artifacts when generating report.", ex); //NON-NLS
         }
         return artifacts;
     }
 
+    /**
+     * Get the types of the attributes of the artifacts that satisfy the given
+     * condition.
+     *
+     * @param whereClause The condition on the artifacts, in terms of the
+     *                    blackboard_artifacts table.
+     *
+     * @return The attribute types, sorted by display name.
+     */
+    @SuppressWarnings("deprecation")
+    private Set<BlackboardAttribute.Type> getAttributeTypesInUse(String whereClause) throws TskCoreException, NoCurrentCaseException {
+        SleuthkitCase skCase = Case.getCurrentCaseThrows().getSleuthkitCase();
+        Map<Integer, BlackboardAttribute.Type> attributeTypes = new HashMap<>();
+        for (BlackboardAttribute.Type attributeType : skCase.getAttributeTypes()) {
+            attributeTypes.put(attributeType.getTypeID(), attributeType);
+        }
+
+        Set<BlackboardAttribute.Type> attrTypeSet = new TreeSet<>(Comparator.comparing(BlackboardAttribute.Type::getDisplayName));
+        String query = "SELECT DISTINCT attribute_type_id FROM blackboard_attributes WHERE artifact_id IN " //NON-NLS
+                + "(SELECT blackboard_artifacts.artifact_id FROM blackboard_artifacts WHERE " + whereClause + ")"; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                BlackboardAttribute.Type attributeType = attributeTypes.get(resultSet.getInt("attribute_type_id")); //NON-NLS
+                if (attributeType != null) {
+                    attrTypeSet.add(attributeType);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new TskCoreException("Error getting attribute types in use", ex); //NON-NLS
+        }
+        return attrTypeSet;
+    }
+
+    /**
+     * Get the account types of the account artifacts that pass the tag names
+     * filter.
+     *
+     * @return The distinct values of the TSK_ACCOUNT_TYPE attributes.
+     */
+    @SuppressWarnings("deprecation")
+    private List<String> getAccountTypeNames() {
+        List<String> accountTypeNames = new ArrayList<>();
+        String query = "SELECT DISTINCT value_text FROM blackboard_attributes" //NON-NLS
+                + " WHERE attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE.getTypeID() //NON-NLS
+                + " AND artifact_id IN (SELECT blackboard_artifacts.artifact_id FROM blackboard_artifacts" //NON-NLS
+                + " WHERE blackboard_artifacts.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getTypeID() //NON-NLS
+                + getArtifactTagNamesFilterClause() + ")"; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = Case.getCurrentCaseThrows().getSleuthkitCase().executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                String accountTypeName = resultSet.getString("value_text"); //NON-NLS
+                if (accountTypeName != null) {
+                    accountTypeNames.add(accountTypeName);
+                }
+            }
+        } catch (TskCoreException | SQLException | NoCurrentCaseException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
+            logger.log(Level.SEVERE, "Failed to get account types when generating report.", ex); //NON-NLS
+        }
+        return accountTypeNames;
+    }
+
+    /**
+     * Get the condition on the blackboard_artifacts table that selects the
+     * artifacts that pass the tag names filter.
+     *
+     * @return The condition, starting with " AND ", or the empty string if
+     *         there is no tag names filter.
+     */
+    private String getArtifactTagNamesFilterClause() {
+        if (tagNamesFilter.isEmpty()) {
+            return "";
+        }
+        if (artifactTagNamesFilterClause == null) {
+            String tagNameIDs = getTagNameLabels().entrySet().stream()
+                    .filter(entry -> tagNamesFilter.contains(entry.getValue()))
+                    .map(entry -> entry.getKey().toString())
+                    .collect(Collectors.joining(",")); //NON-NLS
+            artifactTagNamesFilterClause = tagNameIDs.isEmpty()
+                    ? " AND 1 = 0" //NON-NLS
+                    : " AND blackboard_artifacts.artifact_id IN (SELECT bat.artifact_id FROM blackboard_artifact_tags AS bat WHERE bat.tag_name_id IN (" + tagNameIDs + "))"; //NON-NLS
+        }
+        return artifactTagNamesFilterClause;
+    }
+
+    /**
+     * Get the labels of all the tag names, as they appear in the report and
+     * in the tag names filter: the display name, followed by the notable
+     * label for notable tag names.
+     *
+     * @return Map from tag name id to label.
+     */
+    private Map<Long, String> getTagNameLabels() {
+        if (tagNameLabels == null) {
+            tagNameLabels = new HashMap<>();
+            try {
+                for (TagName tagName : Case.getCurrentCaseThrows().getServices().getTagsManager().getAllTagNames()) {
+                    String notableString = tagName.getKnownStatus() == TskData.FileKnown.BAD ? TagsManager.getNotableTagLabel() : "";
+                    tagNameLabels.put(tagName.getId(), tagName.getDisplayName() + notableString);
+                }
+            } catch (TskCoreException | NoCurrentCaseException ex) {
+                errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifactTags"));
+                logger.log(Level.SEVERE, "Failed to get tag names when generating report.", ex); //NON-NLS
+            }
+        }
+        return tagNameLabels;
+    }
+
     private Boolean failsTagFilter(HashSet<String> tagNames, HashSet<String> tagsNamesFilter) {
         if (null == tagsNamesFilter || tagsNamesFilter.isEmpty()) {
             return false;
@@ -502,6 +502,19 @@ private void rebuildRepo(AbstractFile file, BlackboardArtifact artifact) {
         rebuildRepoHelper(eventsRepository::rebuildRepository, true, file, artifact);
     }
 
+    /**
+     * Add the events for the files and artifacts that are new since the repo
+     * was last populated in the background, and show the timeline when done.
+     *
+     * @param file     The AbstractFile from which to choose an event to show in
+     *                 the List View.
+     * @param artifact The BlackboardArtifact to show in the List View.
+     */
+    @ThreadConfined(type = ThreadConfined.ThreadType.JFX)
+    private void updateRepo(AbstractFile file, BlackboardArtifact artifact) {
+        rebuildRepoHelper(eventsRepository::updateRepository, true, file, artifact);
+    }
+
     /**
      * Drop the tags table and rebuild it in the background, and show the
      * timeline when done.
@@ -604,6 +617,19 @@ private void promptForRebuild(AbstractFile file, BlackboardArtifact artifact) {
 
         //if necessary prompt user with reasons to rebuild
         List<String> rebuildReasons = getRebuildReasons();
+
+        /*
+         * If the schema is current and it is known what the db already
+         * contains, it is only out of date because files and artifacts were
+         * added since, so add them without asking.
+         */
+        if (false == rebuildReasons.isEmpty()
+                && eventsRepository.hasNewColumns()
+                && eventsRepository.canUpdateIncrementally()) {
+            updateRepo(file, artifact);
+            return;
+        }
+
         if (false == rebuildReasons.isEmpty()) {
             if (promptDialogManager.confirmRebuild(rebuildReasons)) {
                 rebuildRepo(file, artifact);
@@ -36,11 +36,14 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -66,7 +69,6 @@
 import static org.sleuthkit.autopsy.timeline.db.SQLHelper.useHashHitTablesHelper;
 import static org.sleuthkit.autopsy.timeline.db.SQLHelper.useTagTablesHelper;
 import org.sleuthkit.autopsy.timeline.filters.RootFilter;
-import org.sleuthkit.autopsy.timeline.filters.TagsFilter;
 import org.sleuthkit.autopsy.timeline.utils.RangeDivisionInfo;
 import org.sleuthkit.autopsy.timeline.zooming.DescriptionLoD;
 import org.sleuthkit.autopsy.timeline.zooming.EventTypeZoomLevel;
@@ -76,6 +78,7 @@
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.Tag;
 import org.sleuthkit.datamodel.TskData;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteJDBCLoader;
 
 /**
@@ -84,6 +87,11 @@
  * This class borrows a lot of ideas and techniques from SleuthkitCase. Creating
  * an abstract base class for SQLite databases, or using a higherlevel
  * persistence api may make sense in the future.
+ *
+ * The database is in WAL mode. All writes go through a single writer
+ * connection, guarded by DBLock. Queries use a small pool of read-only
+ * connections, so they run concurrently with each other and with population,
+ * and see the last committed state of the database.
  */
 public class EventDB {
 
@@ -119,33 +127,96 @@ public static EventDB getEventDB(Case autoCase) {
         }
     }
 
+    /**
+     * The number of plain event rows to collect before executing them as one
+     * batch.
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * The size, in seconds, of the time buckets of the event count rollups.
+     * Counts over larger intervals that are aligned to it, e.g. days, months
+     * and years in time zones with whole-hour offsets, are sums of buckets.
+     */
+    private static final long ROLLUP_BUCKET_SECONDS = 3600;
+
+    /**
+     * Key in db_info that is set when the event count rollups are consistent
+     * with the events table.
+     */
+    private static final String ROLLUPS_VALID_KEY = "event_count_rollups_valid"; //NON-NLS
+
+    private static final String ROLLUP_COLUMNS = "bucket_start, sub_type, base_type, datasource_id, known_state, hash_hit, tagged"; //NON-NLS
+    private static final String ROLLUP_BUCKET_EXPRESSION = "(time / " + ROLLUP_BUCKET_SECONDS + ") * " + ROLLUP_BUCKET_SECONDS; //NON-NLS
+    private static final String ROLLUP_SELECT = "SELECT " + ROLLUP_BUCKET_EXPRESSION + " AS bucket_start, sub_type, base_type, datasource_id, known_state, hash_hit, tagged, count(*) FROM events"; //NON-NLS
+    private static final String ROLLUP_GROUP_BY = " GROUP BY " + ROLLUP_BUCKET_EXPRESSION + ", sub_type, base_type, datasource_id, known_state, hash_hit, tagged"; //NON-NLS
+
+    /**
+     * The maximum number of read-only connections.
+     */
+    private static final int MAX_READ_CONNECTIONS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final String SELECT_EVENT_BY_ID = "SELECT * FROM events WHERE event_id =  ?"; // NON-NLS
+    private static final String SELECT_MAX_TIME = "SELECT Max(time) AS max FROM events"; // NON-NLS
+    private static final String SELECT_MIN_TIME = "SELECT Min(time) AS min FROM events"; // NON-NLS
+    private static final String SELECT_DATASOURCE_IDS = "SELECT DISTINCT datasource_id FROM events WHERE datasource_id != 0"; // NON-NLS
+    private static final String SELECT_HASH_SET_NAMES = "SELECT hash_set_id, hash_set_name FROM hash_sets"; // NON-NLS
+    /*
+     * This SQL query is really just a select count(*), but that has
+     * performance problems on very large tables unless you include a where
+     * clause see http://stackoverflow.com/a/9338276/4004683 for more.
+     */
+    private static final String COUNT_ALL_EVENTS = "SELECT count(event_id) AS count FROM events WHERE event_id IS NOT null"; //NON-NLS
+
+    /**
+     * The writer connection, only used while holding DBLock.
+     */
     private volatile Connection con;
 
     private final String dbPath;
 
-    private PreparedStatement getEventByIDStmt;
-    private PreparedStatement getMaxTimeStmt;
-    private PreparedStatement getMinTimeStmt;
-    private PreparedStatement getDataSourceIDsStmt;
-    private PreparedStatement getHashSetNamesStmt;
+    /*
+     * Pool of read-only connections. Connections are opened on demand, up to
+     * MAX_READ_CONNECTIONS, and returned to idleReadConnections when they are
+     * closed.
+     */
+    private final BlockingQueue<ReadConnection> idleReadConnections = new LinkedBlockingQueue<>();
+    private final List<ReadConnection> readConnections = new ArrayList<>();
+
     private PreparedStatement insertRowStmt;
     private PreparedStatement insertHashSetStmt;
     private PreparedStatement insertHashHitStmt;
     private PreparedStatement insertTagStmt;
     private PreparedStatement deleteTagStmt;
     private PreparedStatement selectHashSetStmt;
-    private PreparedStatement countAllEventsStmt;
     private PreparedStatement dropEventsTableStmt;
     private PreparedStatement dropHashSetHitsTableStmt;
     private PreparedStatement dropHashSetsTableStmt;
     private PreparedStatement dropTagsTableStmt;
     private PreparedStatement dropDBInfoTableStmt;
+    private PreparedStatement dropRollupsTableStmt;
     private PreparedStatement selectNonArtifactEventIDsByObjectIDStmt;
     private PreparedStatement selectEventIDsBYObjectAndArtifactIDStmt;
+    private PreparedStatement insertOrReplaceDBInfoStmt;
+    private PreparedStatement markFileEventsHashHitStmt;
+    private PreparedStatement insertFileHashHitsStmt;
+    private PreparedStatement updateKnownStateStmt;
 
     private final Set<PreparedStatement> preparedStatements = new HashSet<>();
 
-    private final Lock DBLock = new ReentrantReadWriteLock(true).writeLock(); //using exclusive lock for all db ops for now
+    /**
+     * The number of rows added to the insertRowStmt batch but not executed
+     * yet. Only accessed while holding DBLock.
+     */
+    private int pendingInsertRows = 0;
+
+    /**
+     * Whether the event count rollups can be used, or null if it has to be
+     * read from db_info again.
+     */
+    private volatile Boolean rollupsValid = null;
+
+    private final Lock DBLock = new ReentrantReadWriteLock(true).writeLock(); //guards the writer connection, reads use the read connections
 
     private EventDB(Case autoCase) throws SQLException, Exception {
         //should this go into module output (or even cache, we should be able to rebuild it)?
@@ -163,6 +234,7 @@ public void finalize() throws Throwable {
     }
 
     void closeDBCon() {
+        closeReadConnections();
         if (con != null) {
             try {
                 closeStatements();
@@ -175,16 +247,14 @@ void closeDBCon() {
     }
 
     public Interval getSpanningInterval(Collection<Long> eventIDs) {
-        DBLock.lock();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery("SELECT Min(time), Max(time) FROM events WHERE event_id IN (" + StringUtils.join(eventIDs, ", ") + ")");) { // NON-NLS
             while (rs.next()) {
                 return new Interval(rs.getLong("Min(time)") * 1000, (rs.getLong("Max(time)") + 1) * 1000, DateTimeZone.UTC); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing get spanning interval query.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return null;
     }
@@ -205,15 +275,13 @@ void commitTransaction(EventTransaction tr) {
      *         error.
      */
     int countAllEvents() {
-        DBLock.lock();
-        try (ResultSet rs = countAllEventsStmt.executeQuery()) { // NON-NLS
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(COUNT_ALL_EVENTS).executeQuery()) { // NON-NLS
             while (rs.next()) {
                 return rs.getInt("count"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error counting all events", ex); //NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return -1;
     }
@@ -247,8 +315,8 @@ Map<EventType, Long> countEventsByType(ZoomParams params) {
      */
     Map<String, Long> getTagCountsByTagName(Set<Long> eventIDsWithTags) {
         HashMap<String, Long> counts = new HashMap<>();
-        DBLock.lock();
-        try (Statement createStatement = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement createStatement = reader.createStatement();
                 ResultSet rs = createStatement.executeQuery("SELECT tag_name_display_name, COUNT(DISTINCT tag_id) AS count FROM tags" //NON-NLS
                         + " WHERE event_id IN (" + StringUtils.join(eventIDsWithTags, ", ") + ")" //NON-NLS
                         + " GROUP BY tag_name_id" //NON-NLS
@@ -258,8 +326,6 @@ Map<String, Long> getTagCountsByTagName(Set<Long> eventIDsWithTags) {
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get tag counts by tag name.", ex); //NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return counts;
     }
@@ -276,6 +342,8 @@ void reInitializeDB() {
             dropHashSetsTableStmt.executeUpdate();
             dropTagsTableStmt.executeUpdate();
             dropDBInfoTableStmt.executeUpdate();
+            dropRollupsTableStmt.executeUpdate();
+            rollupsValid = null;
             initializeDB();
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "could not drop old tables", ex); // NON-NLS
@@ -304,32 +372,32 @@ Interval getBoundingEventsInterval(Interval timeRange, RootFilter filter) {
         long start = timeRange.getStartMillis() / 1000;
         long end = timeRange.getEndMillis() / 1000;
         final String sqlWhere = SQLHelper.getSQLWhere(filter);
-        DBLock.lock();
-        try (Statement stmt = con.createStatement(); //can't use prepared statement because of complex where clause
+        long start2;
+        long end2;
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement(); //can't use prepared statement because of complex where clause
                 ResultSet rs = stmt.executeQuery(" SELECT (SELECT Max(time) FROM events " + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time <=" + start + " AND " + sqlWhere + ") AS start," //NON-NLS
                         + "(SELECT Min(time)  FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + end + " AND " + sqlWhere + ") AS end")) { // NON-NLS
-            while (rs.next()) {
-
-                long start2 = rs.getLong("start"); // NON-NLS
-                long end2 = rs.getLong("end"); // NON-NLS
-
-                if (end2 == 0) {
-                    end2 = getMaxTime();
-                }
-                return new Interval(start2 * 1000, (end2 + 1) * 1000, TimeLineController.getJodaTimeZone());
+            if (rs.next() == false) {
+                return null;
             }
+            start2 = rs.getLong("start"); // NON-NLS
+            end2 = rs.getLong("end"); // NON-NLS
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MIN time.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
+            return null;
         }
-        return null;
+        //query the max time after releasing the connection, so this never holds two
+        if (end2 == 0) {
+            end2 = getMaxTime();
+        }
+        return new Interval(start2 * 1000, (end2 + 1) * 1000, TimeLineController.getJodaTimeZone());
     }
 
     SingleEvent getEventById(Long eventID) {
         SingleEvent result = null;
-        DBLock.lock();
-        try {
+        try (ReadConnection reader = getReadConnection()) {
+            PreparedStatement getEventByIDStmt = reader.prepareStatement(SELECT_EVENT_BY_ID);
             getEventByIDStmt.clearParameters();
             getEventByIDStmt.setLong(1, eventID);
             try (ResultSet rs = getEventByIDStmt.executeQuery()) {
@@ -340,8 +408,6 @@ SingleEvent getEventById(Long eventID) {
             }
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "exception while querying for event with id = " + eventID, sqlEx); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return result;
     }
@@ -366,10 +432,10 @@ List<Long> getEventIDs(Interval timeRange, RootFilter filter) {
 
         ArrayList<Long> resultIDs = new ArrayList<>();
 
-        DBLock.lock();
         final String query = "SELECT events.event_id AS event_id FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter)
                 + " WHERE time >=  " + startTime + " AND time <" + endTime + " AND " + SQLHelper.getSQLWhere(filter) + " ORDER BY time ASC"; // NON-NLS
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
                 resultIDs.add(rs.getLong("event_id")); //NON-NLS
@@ -377,8 +443,6 @@ List<Long> getEventIDs(Interval timeRange, RootFilter filter) {
 
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "failed to execute query for event ids in range", sqlEx); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
 
         return resultIDs;
@@ -405,12 +469,12 @@ List<CombinedEvent> getCombinedEvents(Interval timeRange, RootFilter filter) {
 
         ArrayList<CombinedEvent> results = new ArrayList<>();
 
-        DBLock.lock();
         final String query = "SELECT full_description, time, file_id, GROUP_CONCAT(events.event_id), GROUP_CONCAT(sub_type)"
                 + " FROM events " + useHashHitTablesHelper(filter) + useTagTablesHelper(filter)
                 + " WHERE time >= " + startTime + " AND time <" + endTime + " AND " + SQLHelper.getSQLWhere(filter)
                 + " GROUP BY time,full_description, file_id ORDER BY time ASC, full_description";
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
 
@@ -426,8 +490,6 @@ List<CombinedEvent> getCombinedEvents(Interval timeRange, RootFilter filter) {
 
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "failed to execute query for combined events", sqlEx); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
 
         return results;
@@ -444,24 +506,22 @@ boolean hasNewColumns() {
 
     Set<Long> getDataSourceIDs() {
         HashSet<Long> hashSet = new HashSet<>();
-        DBLock.lock();
-        try (ResultSet rs = getDataSourceIDsStmt.executeQuery()) {
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(SELECT_DATASOURCE_IDS).executeQuery()) {
             while (rs.next()) {
                 long datasourceID = rs.getLong("datasource_id"); //NON-NLS
                 hashSet.add(datasourceID);
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MAX time.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return hashSet;
     }
 
     Map<Long, String> getHashSetNames() {
         Map<Long, String> hashSets = new HashMap<>();
-        DBLock.lock();
-        try (ResultSet rs = getHashSetNamesStmt.executeQuery();) {
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(SELECT_HASH_SET_NAMES).executeQuery();) {
             while (rs.next()) {
                 long hashSetID = rs.getLong("hash_set_id"); //NON-NLS
                 String hashSetName = rs.getString("hash_set_name"); //NON-NLS
@@ -469,8 +529,6 @@ Map<Long, String> getHashSetNames() {
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get hash sets.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return Collections.unmodifiableMap(hashSets);
     }
@@ -490,15 +548,13 @@ void analyze() {
      * @return maximum time in seconds from unix epoch
      */
     Long getMaxTime() {
-        DBLock.lock();
-        try (ResultSet rs = getMaxTimeStmt.executeQuery()) {
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(SELECT_MAX_TIME).executeQuery()) {
             while (rs.next()) {
                 return rs.getLong("max"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MAX time.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return -1l;
     }
@@ -507,15 +563,13 @@ Long getMaxTime() {
      * @return maximum time in seconds from unix epoch
      */
     Long getMinTime() {
-        DBLock.lock();
-        try (ResultSet rs = getMinTimeStmt.executeQuery()) {
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(SELECT_MIN_TIME).executeQuery()) {
             while (rs.next()) {
                 return rs.getLong("min"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MIN time.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return -1l;
     }
@@ -632,35 +686,44 @@ final synchronized void initializeDB() {
             createIndex("events", Arrays.asList("time")); //NON-NLS
             createIndex("events", Arrays.asList("known_state")); //NON-NLS
 
+            try (Statement stmt = con.createStatement()) {
+                String sql = "CREATE TABLE if not exists event_count_rollups " // NON-NLS
+                        + " (bucket_start INTEGER, " // NON-NLS
+                        + " sub_type INTEGER, " // NON-NLS
+                        + " base_type INTEGER, " // NON-NLS
+                        + " datasource_id INTEGER, " // NON-NLS
+                        + " known_state INTEGER, " // NON-NLS
+                        + " hash_hit INTEGER, " // NON-NLS
+                        + " tagged INTEGER, " // NON-NLS
+                        + " count INTEGER)"; // NON-NLS
+                stmt.execute(sql);
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "problem creating event_count_rollups table", ex); //NON-NLS
+            }
+            createIndex("event_count_rollups", Arrays.asList("bucket_start")); //NON-NLS
+
             try {
                 insertRowStmt = prepareStatement(
                         "INSERT INTO events (datasource_id,file_id ,artifact_id, time, sub_type, base_type, full_description, med_description, short_description, known_state, hash_hit, tagged) " // NON-NLS
                         + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?)"); // NON-NLS
-                getHashSetNamesStmt = prepareStatement("SELECT hash_set_id, hash_set_name FROM hash_sets"); // NON-NLS
-                getDataSourceIDsStmt = prepareStatement("SELECT DISTINCT datasource_id FROM events WHERE datasource_id != 0"); // NON-NLS
-                getMaxTimeStmt = prepareStatement("SELECT Max(time) AS max FROM events"); // NON-NLS
-                getMinTimeStmt = prepareStatement("SELECT Min(time) AS min FROM events"); // NON-NLS
-                getEventByIDStmt = prepareStatement("SELECT * FROM events WHERE event_id =  ?"); // NON-NLS
                 insertHashSetStmt = prepareStatement("INSERT OR IGNORE INTO hash_sets (hash_set_name)  values (?)"); //NON-NLS
                 selectHashSetStmt = prepareStatement("SELECT hash_set_id FROM hash_sets WHERE hash_set_name = ?"); //NON-NLS
                 insertHashHitStmt = prepareStatement("INSERT OR IGNORE INTO hash_set_hits (hash_set_id, event_id) values (?,?)"); //NON-NLS
                 insertTagStmt = prepareStatement("INSERT OR IGNORE INTO tags (tag_id, tag_name_id,tag_name_display_name, event_id) values (?,?,?,?)"); //NON-NLS
                 deleteTagStmt = prepareStatement("DELETE FROM tags WHERE tag_id = ?"); //NON-NLS
 
-                /*
-                 * This SQL query is really just a select count(*), but that has
-                 * performance problems on very large tables unless you include
-                 * a where clause see http://stackoverflow.com/a/9338276/4004683
-                 * for more.
-                 */
-                countAllEventsStmt = prepareStatement("SELECT count(event_id) AS count FROM events WHERE event_id IS NOT null"); //NON-NLS
                 dropEventsTableStmt = prepareStatement("DROP TABLE IF EXISTS events"); //NON-NLS
                 dropHashSetHitsTableStmt = prepareStatement("DROP TABLE IF EXISTS hash_set_hits"); //NON-NLS
                 dropHashSetsTableStmt = prepareStatement("DROP TABLE IF EXISTS hash_sets"); //NON-NLS
                 dropTagsTableStmt = prepareStatement("DROP TABLE IF EXISTS tags"); //NON-NLS
-                dropDBInfoTableStmt = prepareStatement("DROP TABLE IF EXISTS db_ino"); //NON-NLS
+                dropDBInfoTableStmt = prepareStatement("DROP TABLE IF EXISTS db_info"); //NON-NLS
+                dropRollupsTableStmt = prepareStatement("DROP TABLE IF EXISTS event_count_rollups"); //NON-NLS
                 selectNonArtifactEventIDsByObjectIDStmt = prepareStatement("SELECT event_id FROM events WHERE file_id == ? AND artifact_id IS NULL"); //NON-NLS
                 selectEventIDsBYObjectAndArtifactIDStmt = prepareStatement("SELECT event_id FROM events WHERE file_id == ? AND artifact_id = ?"); //NON-NLS
+                insertOrReplaceDBInfoStmt = prepareStatement("INSERT OR REPLACE INTO db_info (key, value) values (?,?)"); //NON-NLS
+                markFileEventsHashHitStmt = prepareStatement("UPDATE events SET hash_hit = 1 WHERE file_id = ?"); //NON-NLS
+                insertFileHashHitsStmt = prepareStatement("INSERT OR IGNORE INTO hash_set_hits (hash_set_id, event_id) SELECT ?, event_id FROM events WHERE file_id = ?"); //NON-NLS
+                updateKnownStateStmt = prepareStatement("UPDATE events SET known_state = ? WHERE file_id = ? AND artifact_id IS NULL AND known_state != ?"); //NON-NLS
             } catch (SQLException sQLException) {
                 LOGGER.log(Level.SEVERE, "failed to prepareStatment", sQLException); // NON-NLS
             }
@@ -679,20 +742,17 @@ final synchronized void initializeDB() {
      *         given artifact.
      */
     List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
-        DBLock.lock();
-
         String query = "SELECT event_id FROM events WHERE artifact_id == " + artifact.getArtifactID();
 
         ArrayList<Long> results = new ArrayList<>();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery(query);) {
             while (rs.next()) {
                 results.add(rs.getLong("event_id"));
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing getEventIDsForArtifact query.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return results;
     }
@@ -713,21 +773,18 @@ List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
      *         given file.
      */
     List<Long> getEventIDsForFile(AbstractFile file, boolean includeDerivedArtifacts) {
-        DBLock.lock();
-
         String query = "SELECT event_id FROM events WHERE file_id == " + file.getId()
                 + (includeDerivedArtifacts ? "" : " AND artifact_id IS NULL");
 
         ArrayList<Long> results = new ArrayList<>();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery(query);) {
             while (rs.next()) {
                 results.add(rs.getLong("event_id"));
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing getEventIDsForFile query.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return results;
     }
@@ -827,6 +884,15 @@ void insertEvent(long time, EventType type, long datasourceID, long objID,
 
         DBLock.lock();
         try {
+            /*
+             * Events without hash hits or tags don't need their generated id,
+             * so they are batched. The others are inserted immediately, after
+             * flushing the batch to keep the insertion order.
+             */
+            final boolean batchable = hashSetNames.isEmpty() && tags.isEmpty();
+            if (batchable == false) {
+                flushInsertBatch();
+            }
 
             //"INSERT INTO events (datasource_id,file_id ,artifact_id, time, sub_type, base_type, full_description, med_description, short_description, known_state, hashHit, tagged) " 
             insertRowStmt.clearParameters();
@@ -855,29 +921,27 @@ void insertEvent(long time, EventType type, long datasourceID, long objID,
             insertRowStmt.setInt(11, hashSetNames.isEmpty() ? 0 : 1);
             insertRowStmt.setInt(12, tags.isEmpty() ? 0 : 1);
 
+            if (batchable) {
+                insertRowStmt.addBatch();
+                pendingInsertRows++;
+                if (pendingInsertRows >= INSERT_BATCH_SIZE) {
+                    flushInsertBatch();
+                }
+                return;
+            }
+
             insertRowStmt.executeUpdate();
 
             try (ResultSet generatedKeys = insertRowStmt.getGeneratedKeys()) {
                 while (generatedKeys.next()) {
                     long eventID = generatedKeys.getLong("last_insert_rowid()"); //NON-NLS
                     for (String name : hashSetNames) {
-
-                        // "insert or ignore into hash_sets (hash_set_name)  values (?)"
-                        insertHashSetStmt.setString(1, name);
-                        insertHashSetStmt.executeUpdate();
-
-                        //TODO: use nested select to get hash_set_id rather than seperate statement/query ?
-                        //"select hash_set_id from hash_sets where hash_set_name = ?"
-                        selectHashSetStmt.setString(1, name);
-                        try (ResultSet rs = selectHashSetStmt.executeQuery()) {
-                            while (rs.next()) {
-                                int hashsetID = rs.getInt("hash_set_id"); //NON-NLS
-                                //"insert or ignore into hash_set_hits (hash_set_id, obj_id) values (?,?)";
-                                insertHashHitStmt.setInt(1, hashsetID);
-                                insertHashHitStmt.setLong(2, eventID);
-                                insertHashHitStmt.executeUpdate();
-                                break;
-                            }
+                        Integer hashsetID = getOrInsertHashSetID(name);
+                        if (hashsetID != null) {
+                            //"insert or ignore into hash_set_hits (hash_set_id, obj_id) values (?,?)";
+                            insertHashHitStmt.setInt(1, hashsetID);
+                            insertHashHitStmt.setLong(2, eventID);
+                            insertHashHitStmt.executeUpdate();
                         }
                     }
                     for (Tag tag : tags) {
@@ -895,6 +959,311 @@ void insertEvent(long time, EventType type, long datasourceID, long objID,
         }
     }
 
+    /**
+     * Get the id of a hash set, adding it if it is not in the db yet.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param name The name of the hash set.
+     *
+     * @return The id of the hash set, or null if it could not be found.
+     *
+     * @throws SQLException if there was a problem executing the queries
+     */
+    private Integer getOrInsertHashSetID(String name) throws SQLException {
+        // "insert or ignore into hash_sets (hash_set_name)  values (?)"
+        insertHashSetStmt.setString(1, name);
+        insertHashSetStmt.executeUpdate();
+
+        //TODO: use nested select to get hash_set_id rather than seperate statement/query ?
+        //"select hash_set_id from hash_sets where hash_set_name = ?"
+        selectHashSetStmt.setString(1, name);
+        try (ResultSet rs = selectHashSetStmt.executeQuery()) {
+            while (rs.next()) {
+                return rs.getInt("hash_set_id"); //NON-NLS
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record a hash set hit on a file that already has events: mark all the
+     * events derived from the file as hash hits and add them to the hash set.
+     *
+     * @param objectID    The obj_id of the file.
+     * @param hashSetName The name of the hash set the file is in.
+     * @param transaction The transaction to use.
+     */
+    void addHashSetHit(long objectID, String hashSetName, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try {
+            flushInsertBatch();
+            Integer hashsetID = getOrInsertHashSetID(hashSetName);
+            if (hashsetID != null) {
+                //"UPDATE events SET hash_hit = 1 WHERE file_id = ?"
+                markFileEventsHashHitStmt.setLong(1, objectID);
+                if (markFileEventsHashHitStmt.executeUpdate() > 0) {
+                    refreshEventCountRollups("file_id = " + objectID); //NON-NLS
+                }
+                //"INSERT OR IGNORE INTO hash_set_hits (hash_set_id, event_id) SELECT ?, event_id FROM events WHERE file_id = ?"
+                insertFileHashHitsStmt.setInt(1, hashsetID);
+                insertFileHashHitsStmt.setLong(2, objectID);
+                insertFileHashHitsStmt.executeUpdate();
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to add hash set hit to events", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Get the files whose MAC time events are already known or notable, so
+     * that an update of the known states can skip them.
+     *
+     * @return The sorted ids of the files.
+     */
+    long[] getFileIDsWithKnownState() {
+        List<Long> fileIDs = new ArrayList<>();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT DISTINCT file_id FROM events WHERE artifact_id IS NULL" //NON-NLS
+                        + " AND known_state != " + TskData.FileKnown.UNKNOWN.getFileKnownValue() + " ORDER BY file_id")) { //NON-NLS
+            while (rs.next()) {
+                fileIDs.add(rs.getLong("file_id")); //NON-NLS
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to get the files with a known state.", ex); // NON-NLS
+        }
+        return fileIDs.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Update the known state of the MAC time events of a file.
+     *
+     * @param objectID    The obj_id of the file.
+     * @param known       The known state of the file.
+     * @param transaction The transaction to use.
+     */
+    void updateKnownState(long objectID, TskData.FileKnown known, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try {
+            flushInsertBatch();
+            //"UPDATE events SET known_state = ? WHERE file_id = ? AND artifact_id IS NULL AND known_state != ?"
+            updateKnownStateStmt.setByte(1, known.getFileKnownValue());
+            updateKnownStateStmt.setLong(2, objectID);
+            updateKnownStateStmt.setByte(3, known.getFileKnownValue());
+            if (updateKnownStateStmt.executeUpdate() > 0) {
+                refreshEventCountRollups("file_id = " + objectID + " AND artifact_id IS NULL"); //NON-NLS
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to update known state of events", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Recompute all of the event count rollups from the events table, and mark
+     * them as valid.
+     *
+     * @param transaction The transaction to use.
+     */
+    void rebuildEventCountRollups(EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try (Statement stmt = con.createStatement()) {
+            flushInsertBatch();
+            stmt.executeUpdate("DELETE FROM event_count_rollups"); //NON-NLS
+            stmt.executeUpdate("INSERT INTO event_count_rollups (" + ROLLUP_COLUMNS + ", count) " + ROLLUP_SELECT + ROLLUP_GROUP_BY); //NON-NLS
+            setDBInfo(ROLLUPS_VALID_KEY, 1, transaction);
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to build event count rollups", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Get the lowest event id above the ones currently in use. Events are
+     * given increasing ids, so the events added after this is called are the
+     * ones with ids at or above it.
+     *
+     * @return The id after the current max, or Long.MIN_VALUE if there are no
+     *         events.
+     */
+    long getMinNewEventID() {
+        DBLock.lock();
+        try (Statement stmt = con.createStatement()) {
+            flushInsertBatch();
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(event_id) AS max_id FROM events")) { //NON-NLS
+                if (rs.next()) {
+                    long maxID = rs.getLong("max_id"); //NON-NLS
+                    if (rs.wasNull() == false) {
+                        return maxID + 1;
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to get the max event id", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Recompute the event count rollups of the buckets that contain events
+     * added since getMinNewEventID returned the given id.
+     *
+     * @param minNewEventID The lowest id of the added events.
+     * @param transaction   The transaction to use.
+     */
+    void updateEventCountRollups(long minNewEventID, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try {
+            flushInsertBatch();
+            refreshEventCountRollups("event_id >= " + minNewEventID); //NON-NLS
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to update event count rollups", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Recompute the event count rollups of the buckets that contain the given
+     * events, after the events were changed.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param eventIDs The ids of the changed events.
+     *
+     * @throws SQLException if there was a problem updating the rollups
+     */
+    private void refreshEventCountRollups(Collection<Long> eventIDs) throws SQLException {
+        if (eventIDs.isEmpty()) {
+            return;
+        }
+        refreshEventCountRollups("event_id IN (" + StringUtils.join(eventIDs, ",") + ")"); //NON-NLS
+    }
+
+    /**
+     * Recompute the event count rollups of the buckets that contain the events
+     * that satisfy a condition, after the events were changed.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param eventsWhere The condition on the changed events, in terms of the
+     *                    events table.
+     *
+     * @throws SQLException if there was a problem updating the rollups
+     */
+    private void refreshEventCountRollups(String eventsWhere) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            List<Long> buckets = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT DISTINCT " + ROLLUP_BUCKET_EXPRESSION + " AS bucket_start FROM events" //NON-NLS
+                    + " WHERE " + eventsWhere)) { //NON-NLS
+                while (rs.next()) {
+                    buckets.add(rs.getLong("bucket_start")); //NON-NLS
+                }
+            }
+            for (long bucket : buckets) {
+                stmt.executeUpdate("DELETE FROM event_count_rollups WHERE bucket_start = " + bucket); //NON-NLS
+                stmt.executeUpdate("INSERT INTO event_count_rollups (" + ROLLUP_COLUMNS + ", count) " + ROLLUP_SELECT //NON-NLS
+                        + " WHERE time >= " + bucket + " AND time < " + (bucket + ROLLUP_BUCKET_SECONDS) + ROLLUP_GROUP_BY); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * @return True if the event count rollups are consistent with the events
+     *         table and can be used to answer count queries.
+     */
+    boolean areRollupsValid() {
+        Boolean valid = rollupsValid;
+        if (valid == null) {
+            valid = Objects.equals(getDBInfo(ROLLUPS_VALID_KEY), 1L);
+            rollupsValid = valid;
+        }
+        return valid;
+    }
+
+    /**
+     * Get a value from the db_info table.
+     *
+     * @param key The key of the value.
+     *
+     * @return The value, or null if there is none or it could not be read.
+     */
+    Long getDBInfo(String key) {
+        try (ReadConnection reader = getReadConnection()) {
+            PreparedStatement selectDBInfoStmt = reader.prepareStatement("SELECT value FROM db_info WHERE key = ?"); //NON-NLS
+            selectDBInfoStmt.setString(1, key);
+            try (ResultSet rs = selectDBInfoStmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("value"); //NON-NLS
+                }
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to read " + key + " from db_info.", ex); // NON-NLS
+        }
+        return null;
+    }
+
+    /**
+     * Set a value in the db_info table.
+     *
+     * @param key         The key of the value.
+     * @param value       The value.
+     * @param transaction The transaction to use.
+     */
+    void setDBInfo(String key, long value, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try {
+            //"INSERT OR REPLACE INTO db_info (key, value) values (?,?)"
+            insertOrReplaceDBInfoStmt.setString(1, key);
+            insertOrReplaceDBInfoStmt.setLong(2, value);
+            insertOrReplaceDBInfoStmt.executeUpdate();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to write " + key + " to db_info.", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Execute the batched event inserts, if there are any.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @throws SQLException if there was a problem executing the batch
+     */
+    private void flushInsertBatch() throws SQLException {
+        if (pendingInsertRows > 0) {
+            pendingInsertRows = 0;
+            insertRowStmt.executeBatch();
+        }
+    }
+
     /**
      * mark any events with the given object and artifact ids as tagged, and
      * record the tag it self.
@@ -914,6 +1283,7 @@ Set<Long> addTag(long objectID, @Nullable Long artifactID, Tag tag, EventTransac
         }
         DBLock.lock();
         try {
+            flushInsertBatch();
             Set<Long> eventIDs = markEventsTagged(objectID, artifactID, true);
             for (Long eventID : eventIDs) {
                 insertTag(tag, eventID);
@@ -967,6 +1337,7 @@ private void insertTag(Tag tag, long eventID) throws SQLException {
     Set<Long> deleteTag(long objectID, @Nullable Long artifactID, long tagID, boolean stillTagged) {
         DBLock.lock();
         try {
+            flushInsertBatch();
             //"DELETE FROM tags WHERE tag_id = ?
             deleteTagStmt.clearParameters();
             deleteTagStmt.setLong(1, tagID);
@@ -1029,6 +1400,7 @@ private Set<Long> markEventsTagged(long objectID, @Nullable Long artifactID, boo
             updateStatement.executeUpdate("UPDATE events SET tagged = " + (tagged ? 1 : 0) //NON-NLS
                     + " WHERE event_id IN (" + StringUtils.join(eventIDs, ",") + ")"); //NON-NLS
         }
+        refreshEventCountRollups(eventIDs);
 
         return eventIDs;
     }
@@ -1060,6 +1432,8 @@ private void configureDB() throws SQLException {
             statement.execute("PRAGMA auto_vacuum = 0"); // NON-NLS
             //allow to query while in transaction - no need read locks
             statement.execute("PRAGMA read_uncommitted = True;"); // NON-NLS
+            //let the read connections query while the writer is populating
+            statement.execute("PRAGMA journal_mode = WAL;"); // NON-NLS
         } finally {
             DBLock.unlock();
         }
@@ -1112,13 +1486,29 @@ private Map<EventType, Long> countEventsByType(Long startTime, Long endTime, Roo
         //do we want the root or subtype column of the databse
         final boolean useSubTypes = (zoomLevel == EventTypeZoomLevel.SUB_TYPE);
 
-        //get some info about the range of dates requested
-        final String queryString = "SELECT count(DISTINCT events.event_id) AS count, " + typeColumnHelper(useSubTypes) //NON-NLS
-                + " FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + startTime + " AND time < " + endTime + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
-                + " GROUP BY " + typeColumnHelper(useSubTypes); // NON-NLS
+        /*
+         * If the range is made of whole rollup buckets and the filter only
+         * restricts what the rollups record, sum the rollups instead of
+         * scanning the events.
+         */
+        final String rollupWhere = SQLHelper.getRollupSQLWhere(filter);
+        final String queryString;
+        if (rollupWhere != null
+                && startTime % ROLLUP_BUCKET_SECONDS == 0
+                && endTime % ROLLUP_BUCKET_SECONDS == 0
+                && areRollupsValid()) {
+            queryString = "SELECT SUM(count) AS count, " + typeColumnHelper(useSubTypes) //NON-NLS
+                    + " FROM event_count_rollups WHERE bucket_start >= " + startTime + " AND bucket_start < " + endTime + " AND " + rollupWhere // NON-NLS
+                    + " GROUP BY " + typeColumnHelper(useSubTypes); // NON-NLS
+        } else {
+            //get some info about the range of dates requested
+            queryString = "SELECT count(DISTINCT events.event_id) AS count, " + typeColumnHelper(useSubTypes) //NON-NLS
+                    + " FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + startTime + " AND time < " + endTime + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
+                    + " GROUP BY " + typeColumnHelper(useSubTypes); // NON-NLS
+        }
 
-        DBLock.lock();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet rs = stmt.executeQuery(queryString);) {
             while (rs.next()) {
                 EventType type = useSubTypes
@@ -1130,8 +1520,6 @@ private Map<EventType, Long> countEventsByType(Long startTime, Long endTime, Roo
 
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Error getting count of events from db.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return typeMap;
     }
@@ -1170,16 +1558,19 @@ List<EventStripe> getEventStripes(ZoomParams params) {
         String timeZone = TimeLineController.getTimeZone().get().equals(TimeZone.getDefault()) ? ", 'localtime'" : "";  // NON-NLS
         String typeColumn = typeColumnHelper(useSubTypes);
 
-        //compose query string, the new-lines are only for nicer formatting if printing the entire query
+        /*
+         * compose query string, the new-lines are only for nicer formatting if
+         * printing the entire query. The rows are individual events in time
+         * order, they are grouped into clusters by (interval, type,
+         * description) as they are read, rather than by the db with
+         * group_concat, which would make large strings of event ids that have
+         * to be parsed again.
+         */
         String query = "SELECT strftime('" + strfTimeFormat + "',time , 'unixepoch'" + timeZone + ") AS interval," // NON-NLS
-                + "\n group_concat(events.event_id) as event_ids," //NON-NLS
-                + "\n group_concat(CASE WHEN hash_hit = 1 THEN events.event_id ELSE NULL END) as hash_hits," //NON-NLS
-                + "\n group_concat(CASE WHEN tagged = 1 THEN events.event_id ELSE NULL END) as taggeds," //NON-NLS
-                + "\n min(time), max(time),  " + typeColumn + ", " + descriptionColumn // NON-NLS
+                + "\n events.event_id, time, hash_hit, tagged, " + typeColumn + ", " + descriptionColumn // NON-NLS
                 + "\n FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) // NON-NLS
                 + "\n WHERE time >= " + start + " AND time < " + end + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
-                + "\n GROUP BY interval, " + typeColumn + " , " + descriptionColumn // NON-NLS
-                + "\n ORDER BY min(time)"; // NON-NLS
+                + "\n ORDER BY time"; // NON-NLS
 
         switch (Version.getBuildType()) {
             case DEVELOPMENT:
@@ -1189,49 +1580,135 @@ List<EventStripe> getEventStripes(ZoomParams params) {
             default:
         }
 
-        // perform query and map results to AggregateEvent objects
-        List<EventCluster> events = new ArrayList<>();
+        /*
+         * perform query and accumulate the rows into clusters, keyed by
+         * (interval, type, description). Since the rows are in time order, the
+         * iteration order of the map is the order of the clusters' start
+         * times.
+         */
+        Map<ClusterKey, ClusterAccumulator> clusters = new LinkedHashMap<>();
 
-        DBLock.lock();
-        try (Statement createStatement = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement createStatement = reader.createStatement();
                 ResultSet rs = createStatement.executeQuery(query)) {
             while (rs.next()) {
-                events.add(eventClusterHelper(rs, useSubTypes, descriptionLOD, filter.getTagsFilter()));
+                EventType type = useSubTypes ? RootEventType.allTypes.get(rs.getInt("sub_type")) : BaseTypes.values()[rs.getInt("base_type")];// NON-NLS
+                ClusterKey key = new ClusterKey(rs.getString("interval"), type, rs.getString(descriptionColumn)); // NON-NLS
+                clusters.computeIfAbsent(key, k -> new ClusterAccumulator())
+                        .add(rs.getLong("event_id"), rs.getLong("time"), rs.getInt("hash_hit") == 1, rs.getInt("tagged") == 1); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get events with query: " + query, ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
 
+        List<EventCluster> events = new ArrayList<>(clusters.size());
+        clusters.forEach((key, accumulator) -> events.add(accumulator.toEventCluster(key, descriptionLOD)));
+
         return mergeClustersToStripes(rangeInfo.getPeriodSize().getPeriod(), events);
     }
 
     /**
-     * map a single row in a ResultSet to an EventCluster
-     *
-     * @param rs             the result set whose current row should be mapped
-     * @param useSubTypes    use the sub_type column if true, else use the
-     *                       base_type column
-     * @param descriptionLOD the description level of detail for this event
-     * @param filter
-     *
-     * @return an AggregateEvent corresponding to the current row in the given
-     *         result set
-     *
-     * @throws SQLException
+     * The (interval, type, description) that the events of a single
+     * EventCluster have in common.
      */
-    private EventCluster eventClusterHelper(ResultSet rs, boolean useSubTypes, DescriptionLoD descriptionLOD, TagsFilter filter) throws SQLException {
-        Interval interval = new Interval(rs.getLong("min(time)") * 1000, rs.getLong("max(time)") * 1000, TimeLineController.getJodaTimeZone());// NON-NLS
-        String eventIDsString = rs.getString("event_ids");// NON-NLS
-        List<Long> eventIDs = SQLHelper.unGroupConcat(eventIDsString, Long::valueOf);
-        String description = rs.getString(SQLHelper.getDescriptionColumn(descriptionLOD));
-        EventType type = useSubTypes ? RootEventType.allTypes.get(rs.getInt("sub_type")) : BaseTypes.values()[rs.getInt("base_type")];// NON-NLS
+    private static final class ClusterKey {
+
+        private final String interval;
+        private final EventType type;
+        private final String description;
+
+        ClusterKey(String interval, EventType type, String description) {
+            this.interval = interval;
+            this.type = type;
+            this.description = description;
+        }
 
-        List<Long> hashHits = SQLHelper.unGroupConcat(rs.getString("hash_hits"), Long::valueOf); //NON-NLS
-        List<Long> tagged = SQLHelper.unGroupConcat(rs.getString("taggeds"), Long::valueOf); //NON-NLS
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 67 * hash + Objects.hashCode(this.interval);
+            hash = 67 * hash + Objects.hashCode(this.type);
+            hash = 67 * hash + Objects.hashCode(this.description);
+            return hash;
+        }
 
-        return new EventCluster(interval, type, eventIDs, hashHits, tagged, description, descriptionLOD);
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final ClusterKey other = (ClusterKey) obj;
+            return Objects.equals(this.interval, other.interval)
+                    && Objects.equals(this.type, other.type)
+                    && Objects.equals(this.description, other.description);
+        }
+    }
+
+    /**
+     * Collects the event ids and time span of one cluster while the rows of
+     * the stripes query are read. The ids are kept in primitive arrays until
+     * the EventCluster is made.
+     */
+    private static final class ClusterAccumulator {
+
+        private final LongList eventIDs = new LongList();
+        private final LongList hashHits = new LongList();
+        private final LongList tagged = new LongList();
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        void add(long eventID, long time, boolean hashHit, boolean isTagged) {
+            eventIDs.add(eventID);
+            if (hashHit) {
+                hashHits.add(eventID);
+            }
+            if (isTagged) {
+                tagged.add(eventID);
+            }
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        EventCluster toEventCluster(ClusterKey key, DescriptionLoD descriptionLOD) {
+            Interval interval = new Interval(minTime * 1000, maxTime * 1000, TimeLineController.getJodaTimeZone());
+            return new EventCluster(interval, key.type, eventIDs.toDistinctList(), hashHits.toDistinctList(), tagged.toDistinctList(), key.description, descriptionLOD);
+        }
+    }
+
+    /**
+     * A growable array of primitive longs.
+     */
+    private static final class LongList {
+
+        private long[] values = new long[8];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * @return the distinct values, in ascending order. The rows of the
+         *         stripes query repeat an event once per matching tag or hash
+         *         set hit.
+         */
+        List<Long> toDistinctList() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            List<Long> distinct = new ArrayList<>(size);
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    distinct.add(sorted[i]);
+                }
+            }
+            return distinct;
+        }
     }
 
     /**
@@ -1302,12 +1779,111 @@ private static String typeColumnHelper(final boolean useSubTypes) {
         return useSubTypes ? "sub_type" : "base_type"; //NON-NLS
     }
 
+    /**
+     * Get a read-only connection from the pool, opening a new one if none are
+     * idle and the pool is not full, else waiting for one to be returned. The
+     * connection is returned to the pool when it is closed.
+     *
+     * @return A read-only connection to the events db.
+     *
+     * @throws SQLException if a connection could not be opened or the wait
+     *                      was interrupted.
+     */
+    private ReadConnection getReadConnection() throws SQLException {
+        ReadConnection reader = idleReadConnections.poll();
+        if (reader != null) {
+            return reader;
+        }
+        synchronized (readConnections) {
+            if (readConnections.size() < MAX_READ_CONNECTIONS) {
+                reader = new ReadConnection();
+                readConnections.add(reader);
+                return reader;
+            }
+        }
+        try {
+            return idleReadConnections.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to events.db", ex); // NON-NLS
+        }
+    }
+
+    private void closeReadConnections() {
+        synchronized (readConnections) {
+            for (ReadConnection reader : readConnections) {
+                reader.dispose();
+            }
+            readConnections.clear();
+            idleReadConnections.clear();
+        }
+    }
+
     private PreparedStatement prepareStatement(String queryString) throws SQLException {
         PreparedStatement prepareStatement = con.prepareStatement(queryString);
         preparedStatements.add(prepareStatement);
         return prepareStatement;
     }
 
+    /**
+     * A pooled read-only connection to the events db, with its own prepared
+     * statements. Closing it returns it to the pool.
+     */
+    private final class ReadConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private boolean disposed = false;
+
+        private ReadConnection() throws SQLException {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath, config.toProperties()); // NON-NLS
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA temp_store = MEMORY"); // NON-NLS
+                statement.execute("PRAGMA cache_size = 50000"); // NON-NLS
+            }
+        }
+
+        private Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        /**
+         * Get a prepared statement for the given query, preparing it the
+         * first time it is requested on this connection.
+         */
+        private PreparedStatement prepareStatement(String queryString) throws SQLException {
+            PreparedStatement statement = statements.get(queryString);
+            if (statement == null) {
+                statement = connection.prepareStatement(queryString);
+                statements.put(queryString, statement);
+            }
+            return statement;
+        }
+
+        @Override
+        public void close() {
+            synchronized (readConnections) {
+                if (disposed == false) {
+                    idleReadConnections.offer(this);
+                }
+            }
+        }
+
+        private void dispose() {
+            disposed = true;
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                connection.close();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "Failed to close read connection to events.db", ex); // NON-NLS
+            }
+        }
+    }
+
     /**
      * inner class that can reference access database connection
      */
@@ -1337,7 +1913,10 @@ private EventTransaction() {
         private void rollback() {
             if (!closed) {
                 try {
+                    pendingInsertRows = 0;
+                    insertRowStmt.clearBatch();
                     con.rollback();
+                    rollupsValid = null;
 
                 } catch (SQLException ex1) {
                     LOGGER.log(Level.SEVERE, "Exception while attempting to rollback!!", ex1); // NON-NLS
@@ -1350,7 +1929,9 @@ private void rollback() {
         private void commit() {
             if (!closed) {
                 try {
+                    flushInsertBatch();
                     con.commit();
+                    rollupsValid = null;
                     // make sure we close before we update, bc they'll need locks
                     close();
 
@@ -21,21 +21,33 @@
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import static java.util.Objects.isNull;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javafx.application.Platform;
@@ -72,8 +84,11 @@
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifactTag;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.ContentTag;
 import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.SleuthkitCase.CaseDbQuery;
 import org.sleuthkit.datamodel.Tag;
 import org.sleuthkit.datamodel.TagName;
 import org.sleuthkit.datamodel.TskCoreException;
@@ -98,6 +113,47 @@ public class EventsRepository {
 
     private final static Logger logger = Logger.getLogger(EventsRepository.class.getName());
 
+    /**
+     * The files that MAC time events are created for.
+     */
+    private static final String POPULATION_FILES_WHERE = "name != '.' AND name != '..'" //NON-NLS
+            + " AND type != " + TskData.TSK_DB_FILES_TYPE_ENUM.SLACK.ordinal(); //NON-NLS
+
+    /**
+     * The number of files or artifacts read from the case db and transformed
+     * into events at a time during population.
+     */
+    private static final int POPULATION_PAGE_SIZE = 5000;
+
+    /**
+     * Keys in the events db info table of the lowest obj_id and artifact_id
+     * that have not been added to the timeline yet. Files and artifacts are
+     * numbered in the order they are added to the case, so everything at or
+     * above these marks is new, whether it comes from a new data source or
+     * from ingest of an existing one.
+     */
+    private static final String MIN_NEW_OBJ_ID_KEY = "min_new_obj_id"; //NON-NLS
+    private static final String MIN_NEW_ARTIFACT_ID_KEY = "min_new_artifact_id"; //NON-NLS
+
+    /**
+     * Key in the events db info table of the number of files below
+     * MIN_NEW_OBJ_ID_KEY that were known or notable when the timeline was last
+     * populated. Ingest only moves files out of the unknown state, so if the
+     * number is the same, no known states need to be updated.
+     */
+    private static final String KNOWN_FILES_COUNT_KEY = "known_files_count"; //NON-NLS
+
+    /**
+     * Keys in the events db info table of the lowest content and artifact tag
+     * ids that have not been added to the timeline yet, and of the number of
+     * tags below them. Tag ids are not reused, so if there are fewer tags
+     * below the marks now, some were deleted and the tags have to be rebuilt.
+     */
+    private static final String MIN_NEW_CONTENT_TAG_ID_KEY = "min_new_content_tag_id"; //NON-NLS
+    private static final String MIN_NEW_ARTIFACT_TAG_ID_KEY = "min_new_artifact_tag_id"; //NON-NLS
+    private static final String CONTENT_TAGS_COUNT_KEY = "content_tags_count"; //NON-NLS
+    private static final String ARTIFACT_TAGS_COUNT_KEY = "artifact_tags_count"; //NON-NLS
+
     private final Executor workerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("eventrepository-worker-%d").build()); //NON-NLS
     private DBPopulationWorker dbWorker;
     private final EventDB eventDB;
@@ -275,6 +331,18 @@ public boolean hasNewColumns() {
         return eventDB.hasNewColumns();
     }
 
+    /**
+     * Is it known which files and artifacts are already in the repo, so that
+     * it can be brought up to date with updateRepository() instead of being
+     * rebuilt?
+     *
+     * @return True if the repo can be updated incrementally.
+     */
+    public boolean canUpdateIncrementally() {
+        return eventDB.getDBInfo(MIN_NEW_OBJ_ID_KEY) != null
+                && eventDB.getDBInfo(MIN_NEW_ARTIFACT_ID_KEY) != null;
+    }
+
     /**
      * get a count of tagnames applied to the given event ids as a map from
      * tagname displayname to count of tag applications
@@ -379,6 +447,24 @@ public CancellationProgressTask<Void> rebuildRepository(Consumer<Worker.State> o
         return rebuildRepository(DBPopulationMode.FULL, onStateChange);
     }
 
+    /**
+     *
+     * add the events of the files and artifacts that were added to the case
+     * since the repo was last populated, and bring the hash hits, known states
+     * and tags of the existing events up to date.
+     *
+     * @param onStateChange called when he background task changes state.
+     *                      Clients can use this to handle failure, or cleanup
+     *                      operations for example.
+     *
+     * @return the task that will update the repo in a background thread. The
+     *         task has already been started.
+     */
+    @ThreadConfined(type = ThreadConfined.ThreadType.JFX)
+    public CancellationProgressTask<Void> updateRepository(Consumer<Worker.State> onStateChange) {
+        return rebuildRepository(DBPopulationMode.INCREMENTAL, onStateChange);
+    }
+
     /**
      *
      * drop and rebuild the tags in the repo.
@@ -420,6 +506,7 @@ private CancellationProgressTask<Void> rebuildRepository(final DBPopulationMode
     private enum DBPopulationMode {
 
         FULL,
+        INCREMENTAL,
         TAGS_ONLY;
     }
 
@@ -511,44 +598,150 @@ void restartProgressHandle(String title, String message, Double workDone, double
         protected Void call() throws Exception {
             EventDB.EventTransaction trans = null;
 
-            if (dbPopulationMode == DBPopulationMode.FULL) {
-                //drop old db, and add back MAC and artifact events
-                logger.log(Level.INFO, "Beginning population of timeline db."); // NON-NLS
+            List<ContentTag> contentTags = tagsManager.getAllContentTags();
+            List<BlackboardArtifactTag> artifactTags = tagsManager.getAllBlackboardArtifactTags();
+
+            /*
+             * The event count rollups are rebuilt from all of the events only
+             * when the events are, or when they are not known to be
+             * consistent with the events, e.g. after a schema upgrade.
+             * Otherwise only the buckets of the new events are recounted, and
+             * the changes to existing events recount their own buckets.
+             */
+            boolean rebuildRollups = dbPopulationMode == DBPopulationMode.FULL || eventDB.areRollupsValid() == false;
+            Long minNewEventID = null;
+            IDRange objIDs = null;
+            IDRange artifactIDs = null;
+
+            if (dbPopulationMode == DBPopulationMode.FULL || dbPopulationMode == DBPopulationMode.INCREMENTAL) {
                 restartProgressHandle(Bundle.progressWindow_msg_gatheringData(), "", -1D, 1, true);
-                //reset database //TODO: can we do more incremental updates? -jm
-                eventDB.reInitializeDB();
-                //grab ids of all files
-                List<Long> fileIDs = skCase.findAllFileIdsWhere("name != '.' AND name != '..'" + 
-                        " AND type != " + TskData.TSK_DB_FILES_TYPE_ENUM.SLACK.ordinal()); //NON-NLS
-                final int numFiles = fileIDs.size();
 
-                trans = eventDB.beginTransaction();
-                insertMACTimeEvents(numFiles, fileIDs, trans);
-                insertArtifactDerivedEvents(trans);
+                /*
+                 * Only files and artifacts that are in the case now are added,
+                 * so that the ones added while this runs are picked up by the
+                 * next update.
+                 */
+                if (dbPopulationMode == DBPopulationMode.FULL) {
+                    //drop old db, and add back MAC and artifact events
+                    logger.log(Level.INFO, "Beginning population of timeline db."); // NON-NLS
+                    objIDs = new IDRange(Long.MIN_VALUE, getMinNewID("SELECT MAX(obj_id) AS max_id FROM tsk_objects")); //NON-NLS
+                    artifactIDs = new IDRange(Long.MIN_VALUE, getMinNewID("SELECT MAX(artifact_id) AS max_id FROM blackboard_artifacts")); //NON-NLS
+                    //reset database
+                    eventDB.reInitializeDB();
+                } else {
+                    logger.log(Level.INFO, "Beginning update of timeline db."); // NON-NLS
+                    Long minNewObjID = eventDB.getDBInfo(MIN_NEW_OBJ_ID_KEY);
+                    Long minNewArtifactID = eventDB.getDBInfo(MIN_NEW_ARTIFACT_ID_KEY);
+                    if (minNewObjID == null || minNewArtifactID == null) {
+                        //it is not known what is in the db, so start over
+                        logger.log(Level.WARNING, "The timeline db can not be updated, rebuilding it."); // NON-NLS
+                        minNewObjID = Long.MIN_VALUE;
+                        minNewArtifactID = Long.MIN_VALUE;
+                        eventDB.reInitializeDB();
+                        rebuildRollups = true;
+                    }
+                    objIDs = new IDRange(minNewObjID, getMinNewID("SELECT MAX(obj_id) AS max_id FROM tsk_objects")); //NON-NLS
+                    artifactIDs = new IDRange(minNewArtifactID, getMinNewID("SELECT MAX(artifact_id) AS max_id FROM blackboard_artifacts")); //NON-NLS
+                }
+                /*
+                 * Counted before the events are added, so that files that
+                 * become known while this runs are rechecked by the next
+                 * update.
+                 */
+                long knownFilesCount = countKnownFiles(objIDs.end);
+
+                /*
+                 * The events are built from pages of files and artifacts on
+                 * several threads, and inserted by this thread, which is the
+                 * only one writing to the events db.
+                 */
+                ExecutorService transformExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                        new ThreadFactoryBuilder().setNameFormat("timeline-population-%d").setDaemon(true).build()); //NON-NLS
+                try {
+                    trans = eventDB.beginTransaction();
+                    if (dbPopulationMode == DBPopulationMode.INCREMENTAL) {
+                        minNewEventID = eventDB.getMinNewEventID();
+                        updateExistingEvents(objIDs, artifactIDs, trans);
+                    }
+                    insertMACTimeEvents(transformExecutor, objIDs, groupTags(contentTags, tag -> tag.getContent().getId()), trans);
+                    insertArtifactDerivedEvents(transformExecutor, artifactIDs, groupTags(artifactTags, tag -> tag.getArtifact().getArtifactID()), trans);
+                } finally {
+                    transformExecutor.shutdownNow();
+                }
+                if (isCancelRequested() == false) {
+                    //record what has been added, so the next update can start from there
+                    eventDB.setDBInfo(MIN_NEW_OBJ_ID_KEY, objIDs.end, trans);
+                    eventDB.setDBInfo(MIN_NEW_ARTIFACT_ID_KEY, artifactIDs.end, trans);
+                    eventDB.setDBInfo(KNOWN_FILES_COUNT_KEY, knownFilesCount, trans);
+                }
             }
 
             //tags
-            if (dbPopulationMode == DBPopulationMode.TAGS_ONLY) {
-                trans = eventDB.beginTransaction();
+            long minNewContentTagID = getMinNewTagID(contentTags);
+            long minNewArtifactTagID = getMinNewTagID(artifactTags);
+            List<ContentTag> contentTagsToInsert = contentTags;
+            List<BlackboardArtifactTag> artifactTagsToInsert = artifactTags;
+            if (dbPopulationMode == DBPopulationMode.INCREMENTAL && objIDs != null && artifactIDs != null
+                    && canUpdateTags(contentTags, MIN_NEW_CONTENT_TAG_ID_KEY, CONTENT_TAGS_COUNT_KEY)
+                    && canUpdateTags(artifactTags, MIN_NEW_ARTIFACT_TAG_ID_KEY, ARTIFACT_TAGS_COUNT_KEY)) {
+                /*
+                 * The new events were inserted with their tags, so only the
+                 * tags added to existing events since the last update are
+                 * inserted.
+                 */
+                final long minOldContentTagID = eventDB.getDBInfo(MIN_NEW_CONTENT_TAG_ID_KEY);
+                final long minOldArtifactTagID = eventDB.getDBInfo(MIN_NEW_ARTIFACT_TAG_ID_KEY);
+                final long minNewObjID = objIDs.start;
+                final long minNewArtifactID = artifactIDs.start;
+                contentTagsToInsert = contentTags.stream()
+                        .filter(tag -> tag.getId() >= minOldContentTagID && tag.getContent().getId() < minNewObjID)
+                        .collect(Collectors.toList());
+                artifactTagsToInsert = artifactTags.stream()
+                        .filter(tag -> tag.getId() >= minOldArtifactTagID && tag.getArtifact().getArtifactID() < minNewArtifactID)
+                        .collect(Collectors.toList());
+            } else if (dbPopulationMode == DBPopulationMode.TAGS_ONLY || dbPopulationMode == DBPopulationMode.INCREMENTAL) {
+                if (trans == null) {
+                    trans = eventDB.beginTransaction();
+                }
                 logger.log(Level.INFO, "dropping old tags"); // NON-NLS
                 eventDB.reInitializeTags();
             }
 
             logger.log(Level.INFO, "updating content tags"); // NON-NLS
-            List<ContentTag> contentTags = tagsManager.getAllContentTags();
-            int currentWorkTotal = contentTags.size();
+            int currentWorkTotal = contentTagsToInsert.size();
             restartProgressHandle(Bundle.progressWindow_msg_refreshingFileTags(), "", 0D, currentWorkTotal, true);
-            insertContentTags(currentWorkTotal, contentTags, trans);
+            insertContentTags(currentWorkTotal, contentTagsToInsert, trans);
 
             logger.log(Level.INFO, "updating artifact tags"); // NON-NLS
-            List<BlackboardArtifactTag> artifactTags = tagsManager.getAllBlackboardArtifactTags();
-            currentWorkTotal = artifactTags.size();
+            currentWorkTotal = artifactTagsToInsert.size();
             restartProgressHandle(Bundle.progressWindow_msg_refreshingResultTags(), "", 0D, currentWorkTotal, true);
-            insertArtifactTags(currentWorkTotal, artifactTags, trans);
+            insertArtifactTags(currentWorkTotal, artifactTagsToInsert, trans);
+
+            if (isCancelRequested() == false) {
+                //record which tags have been added, so the next update can start from there
+                eventDB.setDBInfo(MIN_NEW_CONTENT_TAG_ID_KEY, minNewContentTagID, trans);
+                eventDB.setDBInfo(CONTENT_TAGS_COUNT_KEY, contentTags.size(), trans);
+                eventDB.setDBInfo(MIN_NEW_ARTIFACT_TAG_ID_KEY, minNewArtifactTagID, trans);
+                eventDB.setDBInfo(ARTIFACT_TAGS_COUNT_KEY, artifactTags.size(), trans);
+            }
+
+            if (dbPopulationMode == DBPopulationMode.INCREMENTAL && isCancelRequested()) {
+                //don't keep part of an update, it would be added again by the next one
+                logger.log(Level.INFO, "rolling back cancelled update of timeline db"); // NON-NLS
+                eventDB.rollBackTransaction(trans);
+                progressHandle.finish();
+                cancel();
+                return null;
+            }
 
             logger.log(Level.INFO, "committing db"); // NON-NLS
             Platform.runLater(() -> cancellable.set(false));
             restartProgressHandle(Bundle.progressWindow_msg_commitingDb(), "", -1D, 1, false);
+            if (rebuildRollups) {
+                eventDB.rebuildEventCountRollups(trans);
+            } else if (minNewEventID != null) {
+                eventDB.updateEventCountRollups(minNewEventID, trans);
+            }
             eventDB.commitTransaction(trans);
 
             eventDB.analyze();
@@ -562,6 +755,42 @@ protected Void call() throws Exception {
             return null;
         }
 
+        /**
+         * Check whether the tags in the events db can be updated by adding
+         * the new ones, rather than rebuilt: the tags that were added by the
+         * last population must be known and none of them can have been
+         * deleted since.
+         *
+         * @param tags         All of the tags of one kind in the case.
+         * @param minNewIDKey  The db info key of the lowest id of the tags of
+         *                     that kind that were not added yet.
+         * @param tagsCountKey The db info key of the number of tags of that
+         *                     kind below that id.
+         *
+         * @return True if only the new tags need to be added.
+         */
+        private boolean canUpdateTags(List<? extends Tag> tags, String minNewIDKey, String tagsCountKey) {
+            Long minNewTagID = eventDB.getDBInfo(minNewIDKey);
+            Long tagsCount = eventDB.getDBInfo(tagsCountKey);
+            if (minNewTagID == null || tagsCount == null) {
+                return false;
+            }
+            return tags.stream().filter(tag -> tag.getId() < minNewTagID).count() == tagsCount;
+        }
+
+        /**
+         * Get the lowest tag id above the ones of the given tags.
+         *
+         * @param tags The tags.
+         *
+         * @return The id after the max, or Long.MIN_VALUE if there are no
+         *         tags.
+         */
+        private long getMinNewTagID(List<? extends Tag> tags) {
+            OptionalLong maxTagID = tags.stream().mapToLong(Tag::getId).max();
+            return maxTagID.isPresent() ? maxTagID.getAsLong() + 1 : Long.MIN_VALUE;
+        }
+
         private void insertArtifactTags(int currentWorkTotal, List<BlackboardArtifactTag> artifactTags, EventDB.EventTransaction trans) {
             for (int i = 0; i < currentWorkTotal; i++) {
                 if (isCancelRequested()) {
@@ -584,7 +813,113 @@ private void insertContentTags(int currentWorkTotal, List<ContentTag> contentTag
             }
         }
 
-        private void insertArtifactDerivedEvents(EventDB.EventTransaction trans) {
+        /**
+         * Get the lowest id above the ones currently in use.
+         *
+         * @param maxIDQuery A query for the current max id, as max_id.
+         *
+         * @return The id after the current max, or Long.MIN_VALUE if no ids
+         *         are in use.
+         */
+        private long getMinNewID(String maxIDQuery) throws TskCoreException {
+            try (CaseDbQuery dbQuery = skCase.executeQuery(maxIDQuery)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                if (resultSet.next()) {
+                    long maxID = resultSet.getLong("max_id"); //NON-NLS
+                    if (resultSet.wasNull() == false) {
+                        return maxID + 1;
+                    }
+                }
+                return Long.MIN_VALUE;
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error getting the max id with " + maxIDQuery, ex); //NON-NLS
+            }
+        }
+
+        /**
+         * Apply what ingest learned about files that already have events since
+         * the last population: new hash set hits and changed known states.
+         *
+         * @param objIDs      The files being added by this update.
+         * @param artifactIDs The artifacts being added by this update.
+         * @param trans       The db transaction to use.
+         */
+        @NbBundle.Messages("progressWindow.msg.updatingExistingEvents=Updating existing events")
+        private void updateExistingEvents(IDRange objIDs, IDRange artifactIDs, EventDB.EventTransaction trans) throws TskCoreException {
+            restartProgressHandle(Bundle.progressWindow_msg_updatingExistingEvents(), "", -1D, 1, true);
+
+            //new hash set hits on files that are already in the timeline
+            Set<Long> hashHitFileIDs = new HashSet<>();
+            String hashHitsQuery = "SELECT blackboard_artifacts.obj_id AS obj_id, blackboard_attributes.value_text AS set_name" //NON-NLS
+                    + " FROM blackboard_artifacts JOIN blackboard_attributes ON blackboard_artifacts.artifact_id = blackboard_attributes.artifact_id" //NON-NLS
+                    + " WHERE blackboard_artifacts.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID() //NON-NLS
+                    + " AND blackboard_attributes.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID() //NON-NLS
+                    + " AND blackboard_artifacts.artifact_id >= " + artifactIDs.start //NON-NLS
+                    + " AND blackboard_artifacts.artifact_id < " + artifactIDs.end //NON-NLS
+                    + " AND blackboard_artifacts.obj_id < " + objIDs.start; //NON-NLS
+            try (CaseDbQuery dbQuery = skCase.executeQuery(hashHitsQuery)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next() && isCancelRequested() == false) {
+                    eventDB.addHashSetHit(resultSet.getLong("obj_id"), resultSet.getString("set_name"), trans); //NON-NLS
+                    hashHitFileIDs.add(resultSet.getLong("obj_id")); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading new hash set hits for the timeline", ex); //NON-NLS
+            }
+
+            /*
+             * Known states set by ingest, e.g. by hash lookup. Files that are
+             * still unknown can't have changed since they were added. If the
+             * number of known and notable files is the same as at the last
+             * update, only the files with new hash set hits can have changed.
+             * Otherwise the files whose events already have the state are
+             * skipped, so only the changed ones are updated.
+             */
+            String knownQuery = "SELECT obj_id, known FROM tsk_files" //NON-NLS
+                    + " WHERE obj_id < " + objIDs.start //NON-NLS
+                    + " AND known != " + TskData.FileKnown.UNKNOWN.getFileKnownValue(); //NON-NLS
+            Long lastKnownFilesCount = eventDB.getDBInfo(KNOWN_FILES_COUNT_KEY);
+            final boolean knownFilesChanged = lastKnownFilesCount == null || lastKnownFilesCount != countKnownFiles(objIDs.start);
+            if (knownFilesChanged == false) {
+                if (hashHitFileIDs.isEmpty()) {
+                    return;
+                }
+                knownQuery += " AND obj_id IN (" + StringUtils.join(hashHitFileIDs, ", ") + ")"; //NON-NLS
+            }
+            final long[] fileIDsWithKnownState = knownFilesChanged ? eventDB.getFileIDsWithKnownState() : new long[0];
+            try (CaseDbQuery dbQuery = skCase.executeQuery(knownQuery)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next() && isCancelRequested() == false) {
+                    long objID = resultSet.getLong("obj_id"); //NON-NLS
+                    if (hashHitFileIDs.contains(objID) || Arrays.binarySearch(fileIDsWithKnownState, objID) < 0) {
+                        eventDB.updateKnownState(objID, TskData.FileKnown.valueOf(resultSet.getByte("known")), trans); //NON-NLS
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading known states for the timeline", ex); //NON-NLS
+            }
+        }
+
+        /**
+         * Count the files that are known or notable.
+         *
+         * @param maxObjID The end (exclusive) of the obj_ids to count.
+         *
+         * @return The number of files below maxObjID that are not unknown.
+         */
+        private long countKnownFiles(long maxObjID) throws TskCoreException {
+            String countQuery = "SELECT COUNT(*) AS count FROM tsk_files" //NON-NLS
+                    + " WHERE obj_id < " + maxObjID //NON-NLS
+                    + " AND known != " + TskData.FileKnown.UNKNOWN.getFileKnownValue(); //NON-NLS
+            try (CaseDbQuery dbQuery = skCase.executeQuery(countQuery)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                return resultSet.next() ? resultSet.getLong("count") : 0; //NON-NLS
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error counting known files for the timeline", ex); //NON-NLS
+            }
+        }
+
+        private void insertArtifactDerivedEvents(ExecutorService transformExecutor, IDRange artifactIDs, Map<Long, List<BlackboardArtifactTag>> tagsByArtifactID, EventDB.EventTransaction trans) throws InterruptedException {
             //insert artifact based events
             //TODO: use (not-yet existing api) to grab all artifacts with timestamps, rather than the hardcoded lists in EventType -jm
             for (EventType type : RootEventType.allTypes) {
@@ -593,42 +928,189 @@ private void insertArtifactDerivedEvents(EventDB.EventTransaction trans) {
                 }
                 //skip file_system events, they are already handled above.
                 if (type instanceof ArtifactEventType) {
-                    populateEventType((ArtifactEventType) type, trans);
+                    populateEventType((ArtifactEventType) type, transformExecutor, artifactIDs, tagsByArtifactID, trans);
                 }
             }
         }
 
+        /**
+         * Insert the MAC time events of all the files. The timestamps and the
+         * other columns needed for the events are read from tsk_files in pages
+         * ordered by obj_id, with one more query per page for the hash set
+         * hits, instead of loading each file by id.
+         *
+         * @param transformExecutor The executor to build the events on.
+         * @param objIDs            The obj_ids of the files to add.
+         * @param tagsByContentID   All the content tags, by tagged content id.
+         * @param trans             The db transaction to use.
+         */
         @NbBundle.Messages("progressWindow.msg.populateMacEventsFiles=Populating MAC time events for files")
-        private void insertMACTimeEvents(final int numFiles, List<Long> fileIDs, EventDB.EventTransaction trans) {
+        private void insertMACTimeEvents(ExecutorService transformExecutor, IDRange objIDs, Map<Long, List<ContentTag>> tagsByContentID, EventDB.EventTransaction trans) throws TskCoreException, InterruptedException {
+            final String filesWhere = POPULATION_FILES_WHERE + objIDs.getSQLWhere("obj_id"); //NON-NLS
+            final long numFiles = skCase.countFilesWhere(filesWhere);
             restartProgressHandle(Bundle.progressWindow_msg_populateMacEventsFiles(), "", 0D, numFiles, true);
-            for (int i = 0; i < numFiles; i++) {
-                if (isCancelRequested()) {
+
+            //unique path prefix (data source and volume) by file system id
+            Map<Long, Optional<String>> pathPrefixes = new ConcurrentHashMap<>();
+            long lastObjID = Long.MIN_VALUE;
+            long filesDone = 0;
+            while (isCancelRequested() == false) {
+                List<FileRow> page = getFileRows(filesWhere, lastObjID);
+                if (page.isEmpty()) {
                     break;
                 }
-                long fID = fileIDs.get(i);
+                lastObjID = page.get(page.size() - 1).objID;
+                Map<Long, Set<String>> hashSetNames = getHashSetNames(page.stream().map(row -> row.objID).collect(Collectors.toList()));
+
+                transformAndInsert(page, transformExecutor, row -> {
+                    try {
+                        return getEventsForFile(row, pathPrefixes,
+                                hashSetNames.getOrDefault(row.objID, Collections.emptySet()),
+                                tagsByContentID.getOrDefault(row.objID, Collections.emptyList()));
+                    } catch (TskCoreException ex) {
+                        logger.log(Level.SEVERE, "Failed to insert MAC time events for file : " + row.objID, ex); // NON-NLS
+                        return Collections.emptyList();
+                    }
+                }, trans);
+
+                filesDone += page.size();
+                updateProgress(filesDone, numFiles);
+                updateMessage(page.get(page.size() - 1).name);
+            }
+        }
+
+        /**
+         * Get the next page of files to create MAC time events for.
+         *
+         * @param filesWhere The files to page through.
+         * @param lastObjID  The obj_id of the last file of the previous page.
+         *
+         * @return Up to POPULATION_PAGE_SIZE files, ordered by obj_id.
+         */
+        private List<FileRow> getFileRows(String filesWhere, long lastObjID) throws TskCoreException {
+            String query = "SELECT obj_id, fs_obj_id, data_source_obj_id, name, parent_path, crtime, atime, ctime, mtime, known FROM tsk_files" //NON-NLS
+                    + " WHERE obj_id > " + lastObjID + " AND " + filesWhere //NON-NLS
+                    + " ORDER BY obj_id LIMIT " + POPULATION_PAGE_SIZE; //NON-NLS
+            List<FileRow> rows = new ArrayList<>();
+            try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    long fsObjID = resultSet.getLong("fs_obj_id"); //NON-NLS
+                    rows.add(new FileRow(resultSet.getLong("obj_id"), //NON-NLS
+                            resultSet.wasNull() ? null : fsObjID,
+                            resultSet.getLong("data_source_obj_id"), //NON-NLS
+                            resultSet.getString("name"), //NON-NLS
+                            resultSet.getString("parent_path"), //NON-NLS
+                            resultSet.getLong("crtime"), //NON-NLS
+                            resultSet.getLong("atime"), //NON-NLS
+                            resultSet.getLong("ctime"), //NON-NLS
+                            resultSet.getLong("mtime"), //NON-NLS
+                            TskData.FileKnown.valueOf(resultSet.getByte("known")))); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading files for the timeline", ex); //NON-NLS
+            }
+            return rows;
+        }
+
+        /**
+         * Get the hash set hits of the given files, with a single query.
+         *
+         * @param objIDs The obj_ids of the files.
+         *
+         * @return Map from obj_id to the names of the hash sets the file is
+         *         in. Files without hits are left out.
+         */
+        private Map<Long, Set<String>> getHashSetNames(Collection<Long> objIDs) throws TskCoreException {
+            Map<Long, Set<String>> hashSetNames = new HashMap<>();
+            if (objIDs.isEmpty()) {
+                return hashSetNames;
+            }
+            String query = "SELECT blackboard_artifacts.obj_id AS obj_id, blackboard_attributes.value_text AS set_name" //NON-NLS
+                    + " FROM blackboard_artifacts JOIN blackboard_attributes ON blackboard_artifacts.artifact_id = blackboard_attributes.artifact_id" //NON-NLS
+                    + " WHERE blackboard_artifacts.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID() //NON-NLS
+                    + " AND blackboard_attributes.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID() //NON-NLS
+                    + " AND blackboard_artifacts.obj_id IN (" + StringUtils.join(objIDs, ", ") + ")"; //NON-NLS
+            try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    hashSetNames.computeIfAbsent(resultSet.getLong("obj_id"), objID -> new HashSet<>()) //NON-NLS
+                            .add(resultSet.getString("set_name")); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading hash set hits for the timeline", ex); //NON-NLS
+            }
+            return hashSetNames;
+        }
+
+        /**
+         * Get the data source ids of the given files, with a single query.
+         *
+         * @param objIDs The obj_ids of the files.
+         *
+         * @return Map from obj_id to data source obj_id.
+         */
+        private Map<Long, Long> getDataSourceIDs(Collection<Long> objIDs) throws TskCoreException {
+            Map<Long, Long> dataSourceIDs = new HashMap<>();
+            if (objIDs.isEmpty()) {
+                return dataSourceIDs;
+            }
+            String query = "SELECT obj_id, data_source_obj_id FROM tsk_files WHERE obj_id IN (" + StringUtils.join(objIDs, ", ") + ")"; //NON-NLS
+            try (CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    dataSourceIDs.put(resultSet.getLong("obj_id"), resultSet.getLong("data_source_obj_id")); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading data sources for the timeline", ex); //NON-NLS
+            }
+            return dataSourceIDs;
+        }
+
+        /**
+         * Build the events for a page of items on the transform executor, and
+         * insert them, in order, on this thread.
+         *
+         * @param items             The items to build events for.
+         * @param transformExecutor The executor to build the events on.
+         * @param transformer       Builds the events for one item.
+         * @param trans             The db transaction to use.
+         */
+        private <T> void transformAndInsert(List<T> items, ExecutorService transformExecutor, Function<T, List<PendingEvent>> transformer, EventDB.EventTransaction trans) throws InterruptedException {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            List<Callable<List<PendingEvent>>> tasks = new ArrayList<>();
+            for (List<T> chunk : Lists.partition(items, Math.max(1, (items.size() + threads - 1) / threads))) {
+                tasks.add(() -> {
+                    List<PendingEvent> events = new ArrayList<>();
+                    for (T item : chunk) {
+                        if (isCancelRequested()) {
+                            break;
+                        }
+                        events.addAll(transformer.apply(item));
+                    }
+                    return events;
+                });
+            }
+            for (Future<List<PendingEvent>> future : transformExecutor.invokeAll(tasks)) {
                 try {
-                    AbstractFile f = skCase.getAbstractFileById(fID);
-
-                    if (isNull(f)) {
-                        logger.log(Level.WARNING, "Failed to get data for file : {0}", fID); // NON-NLS
-                    } else {
-                        insertEventsForFile(f, trans);
-                        updateProgress(i, numFiles);
-                        updateMessage(f.getName());
+                    for (PendingEvent event : future.get()) {
+                        eventDB.insertEvent(event.time, event.type, event.datasourceID, event.objID, event.artifactID,
+                                event.fullDescription, event.medDescription, event.shortDescription,
+                                event.known, event.hashSetNames, event.tags, trans);
                     }
-                } catch (TskCoreException tskCoreException) {
-                    logger.log(Level.SEVERE, "Failed to insert MAC time events for file : " + fID, tskCoreException); // NON-NLS
+                } catch (ExecutionException ex) {
+                    logger.log(Level.SEVERE, "Unexpected error building timeline events", ex.getCause()); // NON-NLS
                 }
             }
         }
 
-        private void insertEventsForFile(AbstractFile f, EventDB.EventTransaction trans) throws TskCoreException {
+        private List<PendingEvent> getEventsForFile(FileRow row, Map<Long, Optional<String>> pathPrefixes, Set<String> hashSets, List<ContentTag> tags) throws TskCoreException {
             //gather time stamps into map
             EnumMap<FileSystemTypes, Long> timeMap = new EnumMap<>(FileSystemTypes.class);
-            timeMap.put(FileSystemTypes.FILE_CREATED, f.getCrtime());
-            timeMap.put(FileSystemTypes.FILE_ACCESSED, f.getAtime());
-            timeMap.put(FileSystemTypes.FILE_CHANGED, f.getCtime());
-            timeMap.put(FileSystemTypes.FILE_MODIFIED, f.getMtime());
+            timeMap.put(FileSystemTypes.FILE_CREATED, row.crtime);
+            timeMap.put(FileSystemTypes.FILE_ACCESSED, row.atime);
+            timeMap.put(FileSystemTypes.FILE_CHANGED, row.ctime);
+            timeMap.put(FileSystemTypes.FILE_MODIFIED, row.mtime);
 
             /*
              * if there are no legitimate ( greater than zero ) time stamps (
@@ -636,30 +1118,63 @@ private void insertEventsForFile(AbstractFile f, EventDB.EventTransaction trans)
              * this should result in dropping logical files, since they do not
              * have legitimate time stamps.
              */
-            if (Collections.max(timeMap.values()) > 0) {
-                final String uniquePath = f.getUniquePath();
-                final String parentPath = f.getParentPath();
-                long datasourceID = f.getDataSource().getId();
-                String datasourceName = StringUtils.substringBeforeLast(uniquePath, parentPath);
-
-                String rootFolder = StringUtils.substringBefore(StringUtils.substringAfter(parentPath, "/"), "/");
-                String shortDesc = datasourceName + "/" + StringUtils.defaultString(rootFolder);
-                shortDesc = shortDesc.endsWith("/") ? shortDesc : shortDesc + "/";
-                String medDesc = datasourceName + parentPath;
-
-                final TskData.FileKnown known = f.getKnown();
-                Set<String> hashSets = f.getHashSetNames();
-                List<ContentTag> tags = tagsManager.getContentTagsByContent(f);
-
-                for (Map.Entry<FileSystemTypes, Long> timeEntry : timeMap.entrySet()) {
-                    if (timeEntry.getValue() > 0) {
-                        // if the time is legitimate ( greater than zero ) insert it
-                        eventDB.insertEvent(timeEntry.getValue(), timeEntry.getKey(),
-                                datasourceID, f.getId(), null, uniquePath, medDesc,
-                                shortDesc, known, hashSets, tags, trans);
+            if (Collections.max(timeMap.values()) <= 0) {
+                return Collections.emptyList();
+            }
+            final String uniquePath = getUniquePath(row, pathPrefixes);
+            final String parentPath = row.parentPath;
+            String datasourceName = StringUtils.substringBeforeLast(uniquePath, parentPath);
+
+            String rootFolder = StringUtils.substringBefore(StringUtils.substringAfter(parentPath, "/"), "/");
+            String shortDesc = datasourceName + "/" + StringUtils.defaultString(rootFolder);
+            shortDesc = shortDesc.endsWith("/") ? shortDesc : shortDesc + "/";
+            String medDesc = datasourceName + parentPath;
+
+            List<PendingEvent> events = new ArrayList<>();
+            for (Map.Entry<FileSystemTypes, Long> timeEntry : timeMap.entrySet()) {
+                if (timeEntry.getValue() > 0) {
+                    // if the time is legitimate ( greater than zero ) insert it
+                    events.add(new PendingEvent(timeEntry.getValue(), timeEntry.getKey(),
+                            row.dataSourceObjID, row.objID, null, uniquePath, medDesc,
+                            shortDesc, row.known, hashSets, tags));
+                }
+            }
+            return events;
+        }
+
+        /**
+         * Get the unique path of a file. The unique path of a file in a file
+         * system is the unique path of the file system's parent (image and
+         * volume) followed by the parent path and name of the file, so the
+         * prefix is looked up once per file system. Other files are loaded to
+         * get their unique path.
+         */
+        private String getUniquePath(FileRow row, Map<Long, Optional<String>> pathPrefixes) throws TskCoreException {
+            if (row.fsObjID != null) {
+                Optional<String> prefix = pathPrefixes.computeIfAbsent(row.fsObjID, fsObjID -> {
+                    try {
+                        AbstractFile file = skCase.getAbstractFileById(row.objID);
+                        if (file == null) {
+                            return Optional.empty();
+                        }
+                        String uniquePath = file.getUniquePath();
+                        String candidate = StringUtils.substringBeforeLast(uniquePath, row.parentPath);
+                        //only use the prefix if it rebuilds the path of this file
+                        return uniquePath.equals(candidate + row.parentPath + row.name) ? Optional.of(candidate) : Optional.empty();
+                    } catch (TskCoreException ex) {
+                        logger.log(Level.WARNING, "Failed to get the unique path prefix of file system " + fsObjID, ex); // NON-NLS
+                        return Optional.empty();
                     }
+                });
+                if (prefix.isPresent()) {
+                    return prefix.get() + row.parentPath + row.name;
                 }
             }
+            AbstractFile file = skCase.getAbstractFileById(row.objID);
+            if (file == null) {
+                throw new TskCoreException("Failed to get data for file : " + row.objID); //NON-NLS
+            }
+            return file.getUniquePath();
         }
 
         @Override
@@ -681,46 +1196,169 @@ protected void done() {
         /**
          * populate all the events of one type
          *
-         * @param type the type to populate
-         * @param trans   the db transaction to use
+         * @param type              the type to populate
+         * @param transformExecutor the executor to build the events on
+         * @param artifactIDs       the artifact ids to add
+         * @param tagsByArtifactID  all the artifact tags, by artifact id
+         * @param trans             the db transaction to use
          */
         @NbBundle.Messages({"# {0} - event type ", "progressWindow.populatingXevents=Populating {0} events"})
-        private void populateEventType(final ArtifactEventType type, EventDB.EventTransaction trans) {
+        private void populateEventType(final ArtifactEventType type, ExecutorService transformExecutor, IDRange artifactIDs, Map<Long, List<BlackboardArtifactTag>> tagsByArtifactID, EventDB.EventTransaction trans) throws InterruptedException {
             try {
-                //get all the blackboard artifacts corresponding to the given event sub_type
-                final ArrayList<BlackboardArtifact> blackboardArtifacts = skCase.getBlackboardArtifacts(type.getArtifactTypeID());
+                //get all the blackboard artifacts corresponding to the given event sub_type, that are not in the timeline yet
+                final List<BlackboardArtifact> blackboardArtifacts = skCase.getBlackboardArtifacts(type.getArtifactTypeID()).stream()
+                        .filter(artifact -> artifactIDs.contains(artifact.getArtifactID()))
+                        .collect(Collectors.toList());
                 final int numArtifacts = blackboardArtifacts.size();
                 restartProgressHandle(Bundle.progressWindow_populatingXevents(type.getDisplayName()), "", 0D, numArtifacts, true);
-                for (int i = 0; i < numArtifacts; i++) {
-                    try {
-                        //for each artifact, extract the relevant information for the descriptions
-                        insertEventForArtifact(type, blackboardArtifacts.get(i), trans);
-                        updateProgress(i, numArtifacts);
-                    } catch (TskCoreException ex) {
-                        logger.log(Level.SEVERE, "There was a problem inserting event for artifact: " + blackboardArtifacts.get(i).getArtifactID(), ex); // NON-NLS
+                int artifactsDone = 0;
+                for (List<BlackboardArtifact> page : Lists.partition(blackboardArtifacts, POPULATION_PAGE_SIZE)) {
+                    if (isCancelRequested()) {
+                        break;
                     }
+                    //look up the source files of the whole page at once
+                    Set<Long> objIDs = page.stream().map(BlackboardArtifact::getObjectID).collect(Collectors.toSet());
+                    Map<Long, Long> dataSourceIDs = getDataSourceIDs(objIDs);
+                    Map<Long, Set<String>> hashSetNames = getHashSetNames(objIDs);
+
+                    transformAndInsert(page, transformExecutor, bbart -> {
+                        try {
+                            //for each artifact, extract the relevant information for the descriptions
+                            return getEventForArtifact(type, bbart, dataSourceIDs,
+                                    hashSetNames.getOrDefault(bbart.getObjectID(), Collections.emptySet()),
+                                    tagsByArtifactID.getOrDefault(bbart.getArtifactID(), Collections.emptyList()));
+                        } catch (TskCoreException ex) {
+                            logger.log(Level.SEVERE, "There was a problem inserting event for artifact: " + bbart.getArtifactID(), ex); // NON-NLS
+                            return Collections.emptyList();
+                        }
+                    }, trans);
+
+                    artifactsDone += page.size();
+                    updateProgress(artifactsDone, numArtifacts);
                 }
             } catch (TskCoreException ex) {
                 logger.log(Level.SEVERE, "There was a problem getting events with sub type " + type.toString() + ".", ex); // NON-NLS
             }
         }
 
-        private void insertEventForArtifact(final ArtifactEventType type, BlackboardArtifact bbart, EventDB.EventTransaction trans) throws TskCoreException {
+        private List<PendingEvent> getEventForArtifact(final ArtifactEventType type, BlackboardArtifact bbart, Map<Long, Long> dataSourceIDs, Set<String> hashSets, List<BlackboardArtifactTag> tags) throws TskCoreException {
             ArtifactEventType.AttributeEventDescription eventDescription = ArtifactEventType.buildEventDescription(type, bbart);
 
             // if the time is legitimate ( greater than zero ) insert it into the db
             if (eventDescription != null && eventDescription.getTime() > 0) {
                 long objectID = bbart.getObjectID();
-                AbstractFile f = skCase.getAbstractFileById(objectID);
-                long datasourceID = f.getDataSource().getId();
+                Long datasourceID = dataSourceIDs.get(objectID);
+                if (datasourceID == null) {
+                    //the source is not a file
+                    Content content = skCase.getContentById(objectID);
+                    if (content == null) {
+                        throw new TskCoreException("Failed to get the source of artifact: " + bbart.getArtifactID()); //NON-NLS
+                    }
+                    datasourceID = content.getDataSource().getId();
+                }
                 long artifactID = bbart.getArtifactID();
-                Set<String> hashSets = f.getHashSetNames();
-                List<BlackboardArtifactTag> tags = tagsManager.getBlackboardArtifactTagsByArtifact(bbart);
                 String fullDescription = eventDescription.getFullDescription();
                 String medDescription = eventDescription.getMedDescription();
                 String shortDescription = eventDescription.getShortDescription();
-                eventDB.insertEvent(eventDescription.getTime(), type, datasourceID, objectID, artifactID, fullDescription, medDescription, shortDescription, null, hashSets, tags, trans);
+                return Collections.singletonList(new PendingEvent(eventDescription.getTime(), type, datasourceID, objectID, artifactID, fullDescription, medDescription, shortDescription, null, hashSets, tags));
             }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Group tags by the id of what they are applied to.
+     */
+    private static <T extends Tag> Map<Long, List<T>> groupTags(List<T> tags, Function<T, Long> idMapper) {
+        return tags.stream().collect(Collectors.groupingBy(idMapper));
+    }
+
+    /**
+     * A range of obj_ids or artifact_ids, from start (inclusive) to end
+     * (exclusive).
+     */
+    private static final class IDRange {
+
+        private final long start;
+        private final long end;
+
+        IDRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(long id) {
+            return start <= id && id < end;
+        }
+
+        /**
+         * @return An SQL condition, starting with AND, that restricts the given
+         *         column to this range.
+         */
+        String getSQLWhere(String column) {
+            return " AND " + column + " >= " + start + " AND " + column + " < " + end; //NON-NLS
+        }
+    }
+
+    /**
+     * The columns of a file needed to create its MAC time events.
+     */
+    private static final class FileRow {
+
+        private final long objID;
+        private final Long fsObjID;
+        private final long dataSourceObjID;
+        private final String name;
+        private final String parentPath;
+        private final long crtime;
+        private final long atime;
+        private final long ctime;
+        private final long mtime;
+        private final TskData.FileKnown known;
+
+        FileRow(long objID, Long fsObjID, long dataSourceObjID, String name, String parentPath, long crtime, long atime, long ctime, long mtime, TskData.FileKnown known) {
+            this.objID = objID;
+            this.fsObjID = fsObjID;
+            this.dataSourceObjID = dataSourceObjID;
+            this.name = name;
+            this.parentPath = parentPath;
+            this.crtime = crtime;
+            this.atime = atime;
+            this.ctime = ctime;
+            this.mtime = mtime;
+            this.known = known;
+        }
+    }
+
+    /**
+     * An event that has been built during population but not inserted yet.
+     */
+    private static final class PendingEvent {
+
+        private final long time;
+        private final EventType type;
+        private final long datasourceID;
+        private final long objID;
+        private final Long artifactID;
+        private final String fullDescription;
+        private final String medDescription;
+        private final String shortDescription;
+        private final TskData.FileKnown known;
+        private final Set<String> hashSetNames;
+        private final List<? extends Tag> tags;
+
+        PendingEvent(long time, EventType type, long datasourceID, long objID, Long artifactID, String fullDescription, String medDescription, String shortDescription, TskData.FileKnown known, Set<String> hashSetNames, List<? extends Tag> tags) {
+            this.time = time;
+            this.type = type;
+            this.datasourceID = datasourceID;
+            this.objID = objID;
+            this.artifactID = artifactID;
+            this.fullDescription = fullDescription;
+            this.medDescription = medDescription;
+            this.shortDescription = shortDescription;
+            this.known = known;
+            this.hashSetNames = hashSetNames;
+            this.tags = tags;
         }
     }
 }
@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.timeline.db;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
@@ -126,6 +127,69 @@ static String getSQLWhere(RootFilter filter) {
         return getSQLWhere((Filter) filter);
     }
 
+    /**
+     * get the SQL where clause over the event_count_rollups table that selects
+     * the same events as the given filter, if there is one. The rollups
+     * record the type, data source and known state of the events, and whether
+     * they are hash hits or tagged, but not which hash sets or tags.
+     *
+     * @param filter the filter to generate the SQL where clause for
+     *
+     * @return an SQL where clause (without the "where") over the rollups, or
+     *         null if the filter restricts something the rollups don't record
+     */
+    static String getRollupSQLWhere(RootFilter filter) {
+        List<String> clauses = new ArrayList<>();
+        for (Filter subFilter : filter.getSubFilters()) {
+            if (subFilter.isActive() == false) {
+                continue;
+            }
+            if (subFilter.equals(filter.getKnownFilter())
+                    || subFilter.equals(filter.getDataSourcesFilter())
+                    || subFilter.equals(filter.getTypeFilter())) {
+                clauses.add(getSQLWhere(subFilter));
+            } else if (subFilter.equals(filter.getTagsFilter())) {
+                String flagClause = getRollupFlagClause(filter.getTagsFilter().getSubFilters(), "tagged"); //NON-NLS
+                if (flagClause == null) {
+                    return null;
+                }
+                clauses.add(flagClause);
+            } else if (subFilter.equals(filter.getHashHitsFilter())) {
+                String flagClause = getRollupFlagClause(filter.getHashHitsFilter().getSubFilters(), "hash_hit"); //NON-NLS
+                if (flagClause == null) {
+                    return null;
+                }
+                clauses.add(flagClause);
+            } else if (subFilter.equals(filter.getTextFilter())) {
+                if (StringUtils.isNotBlank(filter.getTextFilter().getText())) {
+                    return null;
+                }
+            } else {
+                //description filters
+                return null;
+            }
+        }
+        return "(" + StringUtils.defaultIfBlank(String.join(" and ", clauses), "1") + ")";
+    }
+
+    /**
+     * A tags or hash hits filter can be answered from the rollups only if it
+     * accepts every tag name or hash set in use, in which case it is
+     * equivalent to the event being tagged or a hash hit at all.
+     *
+     * @return the clause over the flag column, or null if some of the tag
+     *         names or hash sets are not selected
+     */
+    private static String getRollupFlagClause(List<? extends Filter> subFilters, String flagColumn) {
+        if (subFilters.isEmpty()) {
+            //matches the events query, where the join is not restricted
+            return "1";
+        }
+        boolean allSelected = subFilters.stream()
+                .allMatch(subFilter -> subFilter.isSelected() && subFilter.isDisabled() == false);
+        return allSelected ? "(" + flagColumn + " = 1)" : null;
+    }
+
     /**
      * get the SQL where clause corresponding to the given filter
      *
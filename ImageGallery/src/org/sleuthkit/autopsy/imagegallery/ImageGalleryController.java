@@ -23,11 +23,23 @@
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 import javafx.application.Platform;
 import javafx.beans.Observable;
 import javafx.beans.property.ReadOnlyBooleanProperty;
@@ -53,6 +65,7 @@
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.swing.SwingUtilities;
 import org.netbeans.api.progress.ProgressHandle;
 import org.openide.util.Cancellable;
@@ -63,6 +76,7 @@
 import org.sleuthkit.autopsy.casemodule.events.ContentTagDeletedEvent;
 import org.sleuthkit.autopsy.core.RuntimeProperties;
 import org.sleuthkit.autopsy.coreutils.History;
+import org.sleuthkit.autopsy.coreutils.ImageUtils;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.autopsy.coreutils.ThreadConfined;
@@ -72,6 +86,7 @@
 import org.sleuthkit.autopsy.imagegallery.datamodel.DrawableFile;
 import org.sleuthkit.autopsy.imagegallery.datamodel.DrawableTagsManager;
 import org.sleuthkit.autopsy.imagegallery.datamodel.HashSetManager;
+import org.sleuthkit.autopsy.imagegallery.datamodel.PerceptualHash;
 import org.sleuthkit.autopsy.imagegallery.datamodel.grouping.GroupManager;
 import org.sleuthkit.autopsy.imagegallery.datamodel.grouping.GroupViewState;
 import org.sleuthkit.autopsy.imagegallery.gui.NoGroupsDialog;
@@ -130,9 +145,49 @@ public final class ImageGalleryController {
 
     private ListeningExecutorService dbExecutor;
 
+    /**
+     * Executor for computing perceptual hashes, which is separate from the db
+     * executor so that hashing a large case does not hold up the updates from
+     * ingest.
+     */
+    private ListeningExecutorService hashExecutor;
+
+    /**
+     * The largest number of ingested files that are applied to the drawable db
+     * in one transaction.
+     */
+    private static final int FILE_BATCH_SIZE = 500;
+
+    /**
+     * The longest time, in milliseconds, an ingested file waits for more files
+     * to join its batch.
+     */
+    private static final long FILE_BATCH_WINDOW_MS = 2000;
+
+    /**
+     * The ingested files waiting to be updated in the drawable db, by id. A
+     * file is in at most one of pendingUpdates and pendingRemovals, according
+     * to its latest ingest result.
+     */
+    @GuardedBy("this")
+    private Map<Long, AbstractFile> pendingUpdates = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private Set<Long> pendingRemovals = new LinkedHashSet<>();
+    @GuardedBy("this")
+    private ScheduledFuture<?> pendingFlush;
+
+    private final ScheduledExecutorService fileBatchTimer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Image-Gallery-File-Batch-Timer-%d").setDaemon(true).build()); //NON-NLS
+
     private SleuthkitCase sleuthKitCase;
     private DrawableDB db;
 
+    /**
+     * The function used to compute the perceptual hashes of images, for
+     * grouping by visual similarity.
+     */
+    private volatile ToLongFunction<BufferedImage> perceptualHasher = PerceptualHash.DEFAULT_HASHER;
+
     public static synchronized ImageGalleryController getDefault() {
         if (instance == null) {
             instance = new ImageGalleryController();
@@ -176,6 +231,21 @@ synchronized public DrawableDB getDatabase() {
         return db;
     }
 
+    /**
+     * Set the function used to compute the perceptual hashes of images. Only
+     * images hashed after this call use the new function, so it should be set
+     * before a case is opened.
+     *
+     * @param hasher a function from a decoded image to its 64 bit hash
+     */
+    public void setPerceptualHasher(ToLongFunction<BufferedImage> hasher) {
+        this.perceptualHasher = Objects.requireNonNull(hasher);
+    }
+
+    ToLongFunction<BufferedImage> getPerceptualHasher() {
+        return perceptualHasher;
+    }
+
     public void setListeningEnabled(boolean enabled) {
         synchronized (listeningEnabled) {
             listeningEnabled.set(enabled);
@@ -383,6 +453,10 @@ public synchronized void setCase(Case theNewCase) {
             tagsManager.registerListener(categoryManager);
             shutDownDBExecutor();
             dbExecutor = getNewDBExecutor();
+            if (ImageGalleryModule.isDrawableDBStale(theNewCase) == false) {
+                //hash any files that were not hashed when the case was last open
+                queueHashTask(new ComputePerceptualHashes(this, db));
+            }
         }
     }
 
@@ -399,6 +473,7 @@ public synchronized void reset() {
         tagsManager.clearFollowUpTagName();
         tagsManager.unregisterListener(groupManager);
         tagsManager.unregisterListener(categoryManager);
+        clearFileBatch();
         shutDownDBExecutor();
 
         if (toolbar != null) {
@@ -412,6 +487,9 @@ public synchronized void reset() {
     }
 
     synchronized private void shutDownDBExecutor() {
+        if (hashExecutor != null) {
+            hashExecutor.shutdownNow();
+        }
         if (dbExecutor != null) {
             dbExecutor.shutdownNow();
             try {
@@ -420,6 +498,13 @@ synchronized private void shutDownDBExecutor() {
                 LOGGER.log(Level.WARNING, "Image Gallery failed to shutdown DB Task Executor in a timely fashion.", ex);
             }
         }
+        if (hashExecutor != null) {
+            try {
+                hashExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                LOGGER.log(Level.WARNING, "Image Gallery failed to shutdown hash Task Executor in a timely fashion.", ex); //NON-NLS
+            }
+        }
     }
 
     private static ListeningExecutorService getNewDBExecutor() {
@@ -441,6 +526,75 @@ public synchronized void queueDBTask(BackgroundTask bgTask) {
 
     }
 
+    /**
+     * Add a task that computes perceptual hashes to the queue of the hash
+     * executor. These tasks do not count towards the db task queue size, since
+     * they do not block the db updates or regrouping.
+     *
+     * @param bgTask
+     */
+    synchronized void queueHashTask(BackgroundTask bgTask) {
+        if (hashExecutor == null || hashExecutor.isShutdown()) {
+            hashExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Perceptual-Hash-Thread-%d").setDaemon(true).build())); //NON-NLS
+        }
+        hashExecutor.submit(bgTask);
+    }
+
+    /**
+     * Add an ingested file to the batch of files to update in the db. The
+     * batch is queued as one task when it is full, or when it is
+     * FILE_BATCH_WINDOW_MS old.
+     *
+     * @param file   the ingested file
+     * @param remove true if the file should be removed from the db, false if
+     *               it should be updated
+     */
+    private synchronized void queueFileForBatch(AbstractFile file, boolean remove) {
+        if (remove) {
+            pendingUpdates.remove(file.getId());
+            pendingRemovals.add(file.getId());
+        } else {
+            pendingRemovals.remove(file.getId());
+            pendingUpdates.put(file.getId(), file);
+        }
+        if (pendingUpdates.size() + pendingRemovals.size() >= FILE_BATCH_SIZE) {
+            flushFileBatch();
+        } else if (pendingFlush == null) {
+            pendingFlush = fileBatchTimer.schedule(this::flushFileBatch, FILE_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queue the pending batch of ingested files, if any, as one task.
+     */
+    private synchronized void flushFileBatch() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (pendingUpdates.isEmpty() && pendingRemovals.isEmpty()) {
+            return;
+        }
+        if (db != null) {
+            queueDBTask(new UpdateFilesTask(pendingUpdates.values(), pendingRemovals, db));
+        }
+        pendingUpdates = new LinkedHashMap<>();
+        pendingRemovals = new LinkedHashSet<>();
+    }
+
+    /**
+     * Drop the pending batch of ingested files, eg because the case is closing.
+     */
+    private synchronized void clearFileBatch() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        pendingUpdates = new LinkedHashMap<>();
+        pendingRemovals = new LinkedHashSet<>();
+    }
+
     private void incrementQueueSize() {
         Platform.runLater(() -> dbTaskQueueSize.set(dbTaskQueueSize.get() + 1));
     }
@@ -579,76 +733,45 @@ protected synchronized boolean isCancelled() {
     }
 
     /**
-     * Abstract base class for tasks associated with a file in the database
+     * Task that applies a batch of ingest results to the database: updates the
+     * files that should be included and removes the ones that should not, in
+     * one transaction.
      */
-    static abstract class FileTask extends BackgroundTask {
+    static private class UpdateFilesTask extends BackgroundTask {
 
-        private final AbstractFile file;
+        private final Collection<AbstractFile> filesToUpdate;
+        private final Collection<Long> fileIDsToRemove;
         private final DrawableDB taskDB;
 
-        public DrawableDB getTaskDB() {
-            return taskDB;
-        }
-
-        public AbstractFile getFile() {
-            return file;
-        }
-
-        public FileTask(AbstractFile f, DrawableDB taskDB) {
-            super();
-            this.file = f;
+        UpdateFilesTask(Collection<AbstractFile> filesToUpdate, Collection<Long> fileIDsToRemove, DrawableDB taskDB) {
+            this.filesToUpdate = filesToUpdate;
+            this.fileIDsToRemove = fileIDsToRemove;
             this.taskDB = taskDB;
         }
-    }
-
-    /**
-     * task that updates one file in database with results from ingest
-     */
-    static private class UpdateFileTask extends FileTask {
-
-        UpdateFileTask(AbstractFile f, DrawableDB taskDB) {
-            super(f, taskDB);
-        }
 
         /**
-         * Update a file in the database
+         * Update and remove the files in the database
          */
         @Override
         public void run() {
             try {
-                DrawableFile drawableFile = DrawableFile.create(getFile(), true, false);
-                getTaskDB().updateFile(drawableFile);
-            } catch (NullPointerException ex) {
-                // This is one of the places where we get many errors if the case is closed during processing.
-                // We don't want to print out a ton of exceptions if this is the case.
-                if (Case.isCaseOpen()) {
-                    Logger.getLogger(UpdateFileTask.class.getName()).log(Level.SEVERE, "Error in UpdateFile task"); //NON-NLS
+                DrawableDB.DrawableTransaction tr = taskDB.beginTransaction();
+                for (Long fileID : fileIDsToRemove) {
+                    taskDB.removeFile(fileID, tr);
                 }
-            }
-        }
-    }
-
-    /**
-     * task that updates one file in database with results from ingest
-     */
-    static private class RemoveFileTask extends FileTask {
-
-        RemoveFileTask(AbstractFile f, DrawableDB taskDB) {
-            super(f, taskDB);
-        }
-
-        /**
-         * Update a file in the database
-         */
-        @Override
-        public void run() {
-            try {
-                getTaskDB().removeFile(getFile().getId());
+                taskDB.updateFiles(filesToUpdate.stream()
+                        .map(file -> DrawableFile.create(file, true, false))
+                        .collect(Collectors.toList()), tr);
+                //updateFiles does not insert the path, make, model and hash set groups
+                taskDB.insertGroupsForFiles(filesToUpdate.stream()
+                        .map(AbstractFile::getId)
+                        .collect(Collectors.toList()), tr);
+                taskDB.commitTransaction(tr, true);
             } catch (NullPointerException ex) {
                 // This is one of the places where we get many errors if the case is closed during processing.
                 // We don't want to print out a ton of exceptions if this is the case.
                 if (Case.isCaseOpen()) {
-                    Logger.getLogger(RemoveFileTask.class.getName()).log(Level.SEVERE, "Case was closed out from underneath RemoveFile task"); //NON-NLS
+                    Logger.getLogger(UpdateFilesTask.class.getName()).log(Level.SEVERE, "Error in UpdateFiles task"); //NON-NLS
                 }
             }
         }
@@ -678,6 +801,12 @@ abstract static private class BulkTransferTask extends BackgroundTask {
                 //grab files with image or video mime-types even if we don't officially support them
                 + " OR mime_type LIKE 'video/%' OR mime_type LIKE 'image/%' )"; //NON-NLS
 
+        /**
+         * The number of files read from the case db and written to the
+         * drawable db at a time.
+         */
+        static private final int FILE_PAGE_SIZE = 1000;
+
         final ImageGalleryController controller;
         final DrawableDB taskDB;
         final SleuthkitCase tskCase;
@@ -696,9 +825,13 @@ abstract static private class BulkTransferTask extends BackgroundTask {
          */
         abstract void cleanup(boolean success);
 
-        abstract List<AbstractFile> getFiles() throws TskCoreException;
+        /**
+         * @return the where clause that selects the files to transfer from
+         *         tsk_files
+         */
+        abstract String getFileWhereClause() throws TskCoreException;
 
-        abstract void processFile(final AbstractFile f, DrawableDB.DrawableTransaction tr) throws TskCoreException;
+        abstract void processFiles(final List<AbstractFile> files, DrawableDB.DrawableTransaction tr) throws TskCoreException;
 
         @Override
         public void run() {
@@ -707,30 +840,43 @@ public void run() {
             updateMessage(Bundle.CopyAnalyzedFiles_populatingDb_status());
 
             try {
-                //grab all files with supported extension or detected mime types
-                final List<AbstractFile> files = getFiles();
-                progressHandle.switchToDeterminate(files.size());
+                //count all files with supported extension or detected mime types
+                final String whereClause = getFileWhereClause();
+                final long totalFiles = tskCase.countFilesWhere(whereClause);
+                progressHandle.switchToDeterminate((int) totalFiles);
 
                 updateProgress(0.0);
 
                 //do in transaction
                 DrawableDB.DrawableTransaction tr = taskDB.beginTransaction();
                 int workDone = 0;
-                for (final AbstractFile f : files) {
+                long lastObjID = -1;
+                //read the files a page at a time, in obj_id order
+                while (true) {
                     if (isCancelled() || Thread.interrupted()) {
                         LOGGER.log(Level.WARNING, "Task cancelled: not all contents may be transfered to drawable database."); //NON-NLS
                         progressHandle.finish();
                         break;
                     }
+                    final List<AbstractFile> files = tskCase.findAllFilesWhere("obj_id > " + lastObjID + " AND " + whereClause //NON-NLS
+                            + " ORDER BY obj_id LIMIT " + FILE_PAGE_SIZE); //NON-NLS
+                    if (files.isEmpty()) {
+                        break;
+                    }
 
-                    processFile(f, tr);
+                    processFiles(files, tr);
 
-                    workDone++;
-                    progressHandle.progress(f.getName(), workDone);
-                    updateProgress(workDone - 1 / (double) files.size());
-                    updateMessage(f.getName());
+                    final AbstractFile lastFile = files.get(files.size() - 1);
+                    lastObjID = lastFile.getId();
+                    workDone += files.size();
+                    progressHandle.progress(lastFile.getName(), (int) Math.min(workDone, totalFiles));
+                    updateProgress(workDone / (double) Math.max(totalFiles, workDone));
+                    updateMessage(lastFile.getName());
                 }
 
+                //derive the groups of the files stored in the drawable db in one pass
+                taskDB.insertGroupsForAllFiles(tr);
+
                 progressHandle.finish();
                 progressHandle = ProgressHandle.createHandle(Bundle.BulkTask_committingDb_status());
                 updateMessage(Bundle.BulkTask_committingDb_status());
@@ -775,31 +921,38 @@ static private class CopyAnalyzedFiles extends BulkTransferTask {
         @Override
         protected void cleanup(boolean success) {
             controller.setStale(!success);
+            if (success) {
+                controller.queueHashTask(new ComputePerceptualHashes(controller, taskDB));
+            }
         }
 
         @Override
-        List<AbstractFile> getFiles() throws TskCoreException {
-            return tskCase.findAllFilesWhere(DRAWABLE_QUERY);
+        String getFileWhereClause() {
+            return DRAWABLE_QUERY;
         }
 
         @Override
-        void processFile(AbstractFile f, DrawableDB.DrawableTransaction tr) {
-            final boolean known = f.getKnown() == TskData.FileKnown.KNOWN;
-
-            if (known) {
-                taskDB.removeFile(f.getId(), tr);  //remove known files
-            } else {
-
-                try {
-                    if (FileTypeUtils.hasDrawableMIMEType(f)) {  //supported mimetype => analyzed
-                        taskDB.updateFile(DrawableFile.create(f, true, false), tr);
-                    } else { //unsupported mimtype => analyzed but shouldn't include
-                        taskDB.removeFile(f.getId(), tr);
+        void processFiles(List<AbstractFile> files, DrawableDB.DrawableTransaction tr) {
+            List<DrawableFile> filesToUpdate = new ArrayList<>(files.size());
+            for (AbstractFile f : files) {
+                final boolean known = f.getKnown() == TskData.FileKnown.KNOWN;
+
+                if (known) {
+                    taskDB.removeFile(f.getId(), tr);  //remove known files
+                } else {
+
+                    try {
+                        if (FileTypeUtils.hasDrawableMIMEType(f)) {  //supported mimetype => analyzed
+                            filesToUpdate.add(DrawableFile.create(f, true, false));
+                        } else { //unsupported mimtype => analyzed but shouldn't include
+                            taskDB.removeFile(f.getId(), tr);
+                        }
+                    } catch (FileTypeDetector.FileTypeDetectorInitException ex) {
+                        throw new RuntimeException(ex);
                     }
-                } catch (FileTypeDetector.FileTypeDetectorInitException ex) {
-                    throw new RuntimeException(ex);
                 }
             }
+            taskDB.updateFiles(filesToUpdate, tr);
         }
 
         @Override
@@ -838,14 +991,16 @@ protected void cleanup(boolean success) {
         }
 
         @Override
-        void processFile(final AbstractFile f, DrawableDB.DrawableTransaction tr) {
-            taskDB.insertFile(DrawableFile.create(f, false, false), tr);
+        void processFiles(final List<AbstractFile> files, DrawableDB.DrawableTransaction tr) {
+            taskDB.insertFiles(files.stream()
+                    .map(f -> DrawableFile.create(f, false, false))
+                    .collect(Collectors.toList()), tr);
         }
 
         @Override
-        List<AbstractFile> getFiles() throws TskCoreException {
+        String getFileWhereClause() throws TskCoreException {
             long datasourceID = dataSource.getDataSource().getId();
-            return tskCase.findAllFilesWhere("data_source_obj_id = " + datasourceID + " AND " + DRAWABLE_QUERY);
+            return "data_source_obj_id = " + datasourceID + " AND " + DRAWABLE_QUERY; //NON-NLS
         }
 
         @Override
@@ -855,6 +1010,89 @@ ProgressHandle getInitialProgressHandle() {
         }
     }
 
+    /**
+     * Compute the perceptual hashes of the analyzed images that do not have
+     * one yet, so they can be grouped by visual similarity. The hashes are
+     * computed from the thumbnails, which are usually already cached, rather
+     * than from the full images.
+     */
+    @NbBundle.Messages({"ComputePerceptualHashes.progress.name=computing image similarity",
+        "ComputePerceptualHashes.errHashing.errMsg=There was an error computing image similarity."})
+    static private class ComputePerceptualHashes extends BackgroundTask {
+
+        private static final Logger LOGGER = Logger.getLogger(ComputePerceptualHashes.class.getName());
+
+        /**
+         * The number of hashes written to the drawable db at a time.
+         */
+        private static final int HASH_PAGE_SIZE = 500;
+
+        private final ImageGalleryController controller;
+        private final DrawableDB taskDB;
+
+        ComputePerceptualHashes(ImageGalleryController controller, DrawableDB taskDB) {
+            this.controller = controller;
+            this.taskDB = taskDB;
+        }
+
+        @Override
+        public void run() {
+            final List<Long> fileIDs = new ArrayList<>(taskDB.getFileIDsWithoutPerceptualHash());
+            if (fileIDs.isEmpty()) {
+                return;
+            }
+            final ToLongFunction<BufferedImage> hasher = controller.getPerceptualHasher();
+            final ProgressHandle progressHandle = ProgressHandle.createHandle(Bundle.ComputePerceptualHashes_progress_name(), this);
+            progressHandle.start(fileIDs.size());
+            updateMessage(Bundle.ComputePerceptualHashes_progress_name());
+            updateProgress(0.0);
+            try {
+                Map<Long, Long> hashes = new HashMap<>();
+                int workDone = 0;
+                for (Long fileID : fileIDs) {
+                    if (isCancelled() || Thread.interrupted()) {
+                        LOGGER.log(Level.WARNING, "Task cancelled: not all images may have been hashed."); //NON-NLS
+                        break;
+                    }
+                    AbstractFile file = controller.getSleuthKitCase().getAbstractFileById(fileID);
+                    Long hash = null;
+                    if (file != null && taskDB.isVideoFile(file) == false) {
+                        BufferedImage thumbnail = ImageUtils.getThumbnail(file, ImageUtils.ICON_SIZE_MEDIUM);
+                        //don't hash the default icon that is returned when the image can't be read
+                        if (thumbnail != null && thumbnail != ImageUtils.getDefaultThumbnail()) {
+                            hash = hasher.applyAsLong(thumbnail);
+                        }
+                    }
+                    //files that can't be hashed are recorded too, so they are not tried again by every run
+                    hashes.put(fileID, hash);
+                    if (hashes.size() >= HASH_PAGE_SIZE) {
+                        writeHashes(hashes);
+                    }
+                    workDone++;
+                    progressHandle.progress(workDone);
+                    updateProgress(workDone / (double) fileIDs.size());
+                }
+                writeHashes(hashes);
+            } catch (TskCoreException ex) {
+                LOGGER.log(Level.WARNING, "Failed to compute perceptual hashes.", ex); //NON-NLS
+                MessageNotifyUtil.Notify.warn(Bundle.ComputePerceptualHashes_errHashing_errMsg(), ex.getMessage());
+            } finally {
+                progressHandle.finish();
+                updateMessage("");
+                updateProgress(-1.0);
+            }
+        }
+
+        private void writeHashes(Map<Long, Long> hashes) {
+            if (hashes.isEmpty() == false) {
+                DrawableDB.DrawableTransaction tr = taskDB.beginTransaction();
+                taskDB.setPerceptualHashes(hashes, tr);
+                taskDB.commitTransaction(tr, false);
+                hashes.clear();
+            }
+        }
+    }
+
     private class IngestModuleEventListener implements PropertyChangeListener {
 
         @Override
@@ -896,11 +1134,11 @@ public void propertyChange(PropertyChangeEvent evt) {
                                 synchronized (ImageGalleryController.this) {
                                     if (ImageGalleryModule.isDrawableAndNotKnown(file)) {
                                         //this file should be included and we don't already know about it from hash sets (NSRL)
-                                        queueDBTask(new UpdateFileTask(file, db));
+                                        queueFileForBatch(file, false);
                                     } else if (FileTypeUtils.getAllSupportedExtensions().contains(file.getNameExtension())) {
                                         //doing this check results in fewer tasks queued up, and faster completion of db update
                                         //this file would have gotten scooped up in initial grab, but actually we don't need it
-                                        queueDBTask(new RemoveFileTask(file, db));
+                                        queueFileForBatch(file, true);
                                     }
                                 }
                             } catch (TskCoreException | FileTypeDetector.FileTypeDetectorInitException ex) {
@@ -55,7 +55,8 @@
     "DrawableAttribute.intObjID=Internal Object ID",
     "DrawableAttribute.width=Width",
     "DrawableAttribute.height=Height",
-    "DrawableAttribute.mimeType=MIME type"})
+    "DrawableAttribute.mimeType=MIME type",
+    "DrawableAttribute.similarity=Visual Similarity"})
 public class DrawableAttribute<T extends Comparable<T>> {
 
     public final static DrawableAttribute<String> MD5_HASH =
@@ -162,8 +163,19 @@ public Node getGraphicForValue(DhsImageCategory val) {
                     "mime_types.png", //NON-NLS
                     f -> Collections.singleton(f.getMIMEType()));
 
+    /**
+     * Groups of near duplicate images, found by comparing their perceptual
+     * hashes. The value is the id of the group, which is not a property of a
+     * single file, so the DrawableDB and GroupManager look it up.
+     */
+    public final static DrawableAttribute<Long> SIMILARITY =
+            new DrawableAttribute<>(AttributeName.SIMILARITY, Bundle.DrawableAttribute_similarity(),
+                    false,
+                    "page_white_stack.png", //NON-NLS
+                    f -> Collections.emptySet());
+
     final private static List< DrawableAttribute<?>> groupables =
-            Arrays.asList(PATH, HASHSET, CATEGORY, TAGS, MAKE, MODEL, MIME_TYPE);
+            Arrays.asList(PATH, HASHSET, CATEGORY, TAGS, MAKE, MODEL, MIME_TYPE, SIMILARITY);
 
     final private static List<DrawableAttribute<?>> values =
             Arrays.asList(NAME, ANALYZED, CATEGORY, TAGS, PATH, CREATED_TIME,
@@ -244,6 +256,7 @@ public static enum AttributeName {
         WIDTH,
         HEIGHT,
         MD5_HASH,
-        MIME_TYPE;
+        MIME_TYPE,
+        SIMILARITY;
     }
 }
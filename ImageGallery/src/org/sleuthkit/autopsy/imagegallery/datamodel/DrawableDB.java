@@ -28,25 +28,34 @@
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.swing.SortOrder;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.text.WordUtils;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.imagegallery.FileTypeUtils;
@@ -64,6 +73,7 @@
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TagName;
 import org.sleuthkit.datamodel.TskCoreException;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteJDBCLoader;
 
 /**
@@ -85,9 +95,15 @@ public final class DrawableDB {
 
     private static final String HASH_SET_NAME = "hash_set_name"; //NON-NLS
 
-    private final PreparedStatement insertHashSetStmt;
+    private static final int MAX_READ_CONNECTIONS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final String SELECT_GROUP_SEEN = "SELECT seen FROM groups WHERE value = ? AND attribute = ?"; //NON-NLS
+
+    private static final String SELECT_GROUPS_SEEN = "SELECT value, seen FROM groups WHERE attribute = ?"; //NON-NLS
 
-    private final PreparedStatement groupSeenQueryStmt;
+    private static final String SELECT_HASH_SET_NAMES = "SELECT DISTINCT hash_set_name FROM hash_sets"; //NON-NLS
+
+    private final PreparedStatement insertHashSetStmt;
 
     private final PreparedStatement insertGroupStmt;
 
@@ -99,44 +115,48 @@ public final class DrawableDB {
 
     private final PreparedStatement selectHashSetStmt;
 
-    private final PreparedStatement selectHashSetNamesStmt;
-
     private final PreparedStatement insertHashHitStmt;
 
-    private final PreparedStatement updateFileStmt;
-    private final PreparedStatement insertFileStmt;
-
-    private final PreparedStatement pathGroupStmt;
-
-    private final PreparedStatement nameGroupStmt;
+    private final PreparedStatement insertPerceptualHashStmt;
 
-    private final PreparedStatement created_timeGroupStmt;
+    private final PreparedStatement removePerceptualHashStmt;
 
-    private final PreparedStatement modified_timeGroupStmt;
-
-    private final PreparedStatement makeGroupStmt;
-
-    private final PreparedStatement modelGroupStmt;
-
-    private final PreparedStatement analyzedGroupStmt;
-
-    private final PreparedStatement hashSetGroupStmt;
+    private final PreparedStatement updateFileStmt;
+    private final PreparedStatement insertFileStmt;
 
     /**
-     * map from {@link DrawableAttribute} to the {@link PreparedStatement} thet
-     * is used to select groups for that attribute
+     * map from {@link DrawableAttribute} to the query that is used to select
+     * groups for that attribute. The queries are prepared on each read
+     * connection.
      */
-    private final Map<DrawableAttribute<?>, PreparedStatement> groupStatementMap = new HashMap<>();
+    private final Map<DrawableAttribute<?>, String> groupQueryMap = new HashMap<>();
 
     private final GroupManager groupManager;
 
     private final Path dbPath;
 
+    /**
+     * The writer connection, only used while holding the write lock.
+     */
     volatile private Connection con;
 
+    /*
+     * Pool of read-only connections. Connections are opened on demand, up to
+     * MAX_READ_CONNECTIONS, and returned to idleReadConnections when they are
+     * closed. With the db in WAL mode, they read the last committed state
+     * without waiting for the writer. Once the pool is closed, connections are
+     * disposed when they are returned, rather than while they are in use.
+     */
+    private final BlockingQueue<ReadConnection> idleReadConnections = new LinkedBlockingQueue<>();
+    private final List<ReadConnection> readConnections = new ArrayList<>();
+    @GuardedBy("readConnections")
+    private boolean readConnectionsClosed = false;
+
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true); //use fairness policy
 
-    private final Lock DBLock = rwLock.writeLock(); //using exclusing lock for all db ops for now
+    private final Lock DBLock = rwLock.writeLock();
+
+    private final Lock DBReadLock = rwLock.readLock();
 
     static {//make sure sqlite driver is loaded // possibly redundant
         try {
@@ -173,12 +193,14 @@ public void dbWriteUnlock() {
 
     /**
      * Lock to protect against read while it is in a write transaction state.
-     * Supports multiple concurrent readers if there is no writer. MUST always
+     * Supports multiple concurrent readers if there is no writer. Only needed
+     * for reads on the writer connection, queries on the pooled read
+     * connections don't take any lock. MUST always
      * call dbReadUnLock() as early as possible, in the same thread where
      * dbReadLock() was called.
      */
     void dbReadLock() {
-        DBLock.lock();
+        DBReadLock.lock();
     }
 
     /**
@@ -187,7 +209,7 @@ void dbReadLock() {
      * released.
      */
     void dbReadUnlock() {
-        DBLock.unlock();
+        DBReadLock.unlock();
     }
 
     /**
@@ -211,26 +233,26 @@ private DrawableDB(Path dbPath, ImageGalleryController controller) throws SQLExc
 
             removeFileStmt = prepareStatement("DELETE FROM drawable_files WHERE obj_id = ?"); //NON-NLS
 
-            pathGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE path  = ? ", DrawableAttribute.PATH); //NON-NLS
-            nameGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE  name  = ? ", DrawableAttribute.NAME); //NON-NLS
-            created_timeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE created_time  = ? ", DrawableAttribute.CREATED_TIME); //NON-NLS
-            modified_timeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE  modified_time  = ? ", DrawableAttribute.MODIFIED_TIME); //NON-NLS
-            makeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE make  = ? ", DrawableAttribute.MAKE); //NON-NLS
-            modelGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE model  = ? ", DrawableAttribute.MODEL); //NON-NLS
-            analyzedGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE analyzed = ?", DrawableAttribute.ANALYZED); //NON-NLS
-            hashSetGroupStmt = prepareStatement("SELECT drawable_files.obj_id AS obj_id, analyzed FROM drawable_files ,  hash_sets , hash_set_hits  WHERE drawable_files.obj_id = hash_set_hits.obj_id AND hash_sets.hash_set_id = hash_set_hits.hash_set_id AND hash_sets.hash_set_name = ?", DrawableAttribute.HASHSET); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.PATH, "SELECT obj_id , analyzed FROM drawable_files WHERE path  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.NAME, "SELECT obj_id , analyzed FROM drawable_files WHERE  name  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.CREATED_TIME, "SELECT obj_id , analyzed FROM drawable_files WHERE created_time  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MODIFIED_TIME, "SELECT obj_id , analyzed FROM drawable_files WHERE  modified_time  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MAKE, "SELECT obj_id , analyzed FROM drawable_files WHERE make  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MODEL, "SELECT obj_id , analyzed FROM drawable_files WHERE model  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.ANALYZED, "SELECT obj_id , analyzed FROM drawable_files WHERE analyzed = ?"); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.HASHSET, "SELECT drawable_files.obj_id AS obj_id, analyzed FROM drawable_files ,  hash_sets , hash_set_hits  WHERE drawable_files.obj_id = hash_set_hits.obj_id AND hash_sets.hash_set_id = hash_set_hits.hash_set_id AND hash_sets.hash_set_name = ?"); //NON-NLS
 
             updateGroupStmt = prepareStatement("insert or replace into groups (seen, value, attribute) values( ?, ? , ?)"); //NON-NLS
             insertGroupStmt = prepareStatement("insert or ignore into groups (value, attribute) values (?,?)"); //NON-NLS
 
-            groupSeenQueryStmt = prepareStatement("SELECT seen FROM groups WHERE value = ? AND attribute = ?"); //NON-NLS
-
-            selectHashSetNamesStmt = prepareStatement("SELECT DISTINCT hash_set_name FROM hash_sets"); //NON-NLS
             insertHashSetStmt = prepareStatement("INSERT OR IGNORE INTO hash_sets (hash_set_name)  VALUES (?)"); //NON-NLS
             selectHashSetStmt = prepareStatement("SELECT hash_set_id FROM hash_sets WHERE hash_set_name = ?"); //NON-NLS
 
             insertHashHitStmt = prepareStatement("INSERT OR IGNORE INTO hash_set_hits (hash_set_id, obj_id) VALUES (?,?)"); //NON-NLS
 
+            insertPerceptualHashStmt = prepareStatement("INSERT OR REPLACE INTO perceptual_hashes (obj_id, hash) VALUES (?,?)"); //NON-NLS
+            removePerceptualHashStmt = prepareStatement("DELETE FROM perceptual_hashes WHERE obj_id = ?"); //NON-NLS
+
             for (DhsImageCategory cat : DhsImageCategory.values()) {
                 insertGroup(cat.getDisplayName(), DrawableAttribute.CATEGORY);
             }
@@ -259,25 +281,63 @@ private PreparedStatement prepareStatement(String stmtString) throws SQLExceptio
     }
 
     /**
-     * calls {@link DrawableDB#prepareStatement(java.lang.String) ,
-     *  and then add the statement to the groupStatmentMap used to lookup
-     * statements by the attribute/column they group on
-     *
-     * @param stmtString the string representation of the sqlite statement to
-     *                   prepare
-     * @param attr       the {@link DrawableAttribute} this query groups by
+     * Get a read-only connection from the pool, opening a new one if none are
+     * idle and the pool is not full, else waiting for one to be returned. The
+     * connection is returned to the pool when it is closed.
      *
-     * @return the prepared statement
+     * @return A read-only connection to the drawable db.
      *
-     * @throws SQLExceptionif unable to prepare the statement
+     * @throws SQLException if a connection could not be opened, the pool is
+     *                      closed, or the wait was interrupted.
      */
-    private PreparedStatement prepareStatement(String stmtString, DrawableAttribute<?> attr) throws SQLException {
-        PreparedStatement prepareStatement = prepareStatement(stmtString);
-        if (attr != null) {
-            groupStatementMap.put(attr, prepareStatement);
+    private ReadConnection getReadConnection() throws SQLException {
+        ReadConnection reader = idleReadConnections.poll();
+        if (reader != null) {
+            return reader;
         }
+        synchronized (readConnections) {
+            if (readConnectionsClosed) {
+                throw new SQLException("The connections to drawable.db are closed"); //NON-NLS
+            }
+            if (readConnections.size() < MAX_READ_CONNECTIONS) {
+                reader = new ReadConnection();
+                readConnections.add(reader);
+                return reader;
+            }
+        }
+        try {
+            //wake up now and then, in case the pool is closed while waiting
+            while (true) {
+                reader = idleReadConnections.poll(1, TimeUnit.SECONDS);
+                if (reader != null) {
+                    return reader;
+                }
+                synchronized (readConnections) {
+                    if (readConnectionsClosed) {
+                        throw new SQLException("The connections to drawable.db are closed"); //NON-NLS
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to drawable.db", ex); //NON-NLS
+        }
+    }
 
-        return prepareStatement;
+    /**
+     * Close the pool of read connections: the idle connections are disposed
+     * now, and the ones in use when they are returned.
+     */
+    private void closeReadConnections() {
+        synchronized (readConnections) {
+            readConnectionsClosed = true;
+            List<ReadConnection> idle = new ArrayList<>();
+            idleReadConnections.drainTo(idle);
+            for (ReadConnection reader : idle) {
+                reader.dispose();
+                readConnections.remove(reader);
+            }
+        }
     }
 
     /**
@@ -313,8 +373,8 @@ private void setPragmas() throws SQLException {
             //TODO: do we need this?
             statement.execute("PRAGMA foreign_keys = ON"); //NON-NLS
 
-            //TODO: test this
-            statement.execute("PRAGMA journal_mode  = MEMORY"); //NON-NLS
+            //write ahead logging lets the read connections query while a write transaction is open
+            statement.execute("PRAGMA journal_mode  = WAL"); //NON-NLS
 //
             //we don't use this feature, so turn it off for minimal speed up on queries
             //this is deprecated and not recomended
@@ -404,6 +464,32 @@ private boolean initializeDBSchema() {
             return false;
         }
 
+        try (Statement stmt = con.createStatement()) {
+            /*
+             * The hash is null for files that could not be hashed. Older
+             * versions of the table did not allow that, they are dropped since
+             * the hashes can be computed again.
+             */
+            boolean hashRequired = false;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(perceptual_hashes)")) { //NON-NLS
+                while (rs.next()) {
+                    if ("hash".equals(rs.getString("name")) && rs.getInt("notnull") != 0) { //NON-NLS
+                        hashRequired = true;
+                    }
+                }
+            }
+            if (hashRequired) {
+                stmt.execute("DROP TABLE perceptual_hashes"); //NON-NLS
+            }
+            String sql = "CREATE TABLE  if not exists perceptual_hashes " //NON-NLS
+                    + "(obj_id INTEGER PRIMARY KEY REFERENCES drawable_files(obj_id), " //NON-NLS
+                    + " hash INTEGER)"; //NON-NLS
+            stmt.execute(sql);
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "problem creating perceptual_hashes table", ex); //NON-NLS
+            return false;
+        }
+
         try (Statement stmt = con.createStatement()) {
             String sql = "CREATE  INDEX if not exists path_idx ON drawable_files(path)"; //NON-NLS
             stmt.execute(sql);
@@ -452,6 +538,7 @@ public void finalize() throws Throwable {
     }
 
     public void closeDBCon() {
+        closeReadConnections();
         if (con != null) {
             try {
                 closeStatements();
@@ -513,23 +600,20 @@ Set<String> getHashSetsForFile(long fileID) throws TskCoreException {
      */
     public Set<String> getHashSetNames() {
         Set<String> names = new HashSet<>();
-        // "SELECT DISTINCT hash_set_name FROM hash_sets"
-        dbReadLock();
-        try (ResultSet rs = selectHashSetNamesStmt.executeQuery();) {
+        try (ReadConnection reader = getReadConnection();
+                ResultSet rs = reader.prepareStatement(SELECT_HASH_SET_NAMES).executeQuery();) {
             while (rs.next()) {
                 names.add(rs.getString(HASH_SET_NAME));
             }
         } catch (SQLException sQLException) {
             LOGGER.log(Level.WARNING, "failed to get hash set names", sQLException); //NON-NLS
-        } finally {
-            dbReadUnlock();
         }
         return names;
     }
 
     public boolean isGroupSeen(GroupKey<?> groupKey) {
-        dbReadLock();
-        try {
+        try (ReadConnection reader = getReadConnection()) {
+            PreparedStatement groupSeenQueryStmt = reader.prepareStatement(SELECT_GROUP_SEEN);
             groupSeenQueryStmt.clearParameters();
             groupSeenQueryStmt.setString(1, groupKey.getValueDisplayName());
             groupSeenQueryStmt.setString(2, groupKey.getAttribute().attrName.toString());
@@ -541,8 +625,6 @@ public boolean isGroupSeen(GroupKey<?> groupKey) {
         } catch (SQLException ex) {
             String msg = String.format("Failed to get is group seen for group key %s", groupKey.getValueDisplayName()); //NON-NLS
             LOGGER.log(Level.WARNING, msg, ex);
-        } finally {
-            dbReadUnlock();
         }
         return false;
     }
@@ -676,6 +758,277 @@ private void insertOrUpdateFile(DrawableFile f, @Nonnull DrawableTransaction tr,
         }
     }
 
+    public void insertFiles(Collection<DrawableFile> files, DrawableTransaction tr) {
+        insertOrUpdateFiles(files, tr, insertFileStmt);
+    }
+
+    public void updateFiles(Collection<DrawableFile> files, DrawableTransaction tr) {
+        insertOrUpdateFiles(files, tr, updateFileStmt);
+    }
+
+    /**
+     * Bulk version of insertOrUpdateFile, for populating the db from many
+     * files at once. The hash set hits, EXIF make and model, and tag names of
+     * all the given files are read from the case db with one query each,
+     * rather than several queries per file, and the rows are written with
+     * batched statements.
+     *
+     * Groups for the attributes that are stored in this db (path, make, model
+     * and hash set) are NOT inserted, call insertGroupsForAllFiles once all
+     * the files have been added, or insertGroupsForFiles for a single batch.
+     *
+     * @param files The files to insert.
+     * @param tr    a transaction to use, must not be null
+     * @param stmt  the statement that does the actull inserting
+     */
+    private void insertOrUpdateFiles(Collection<DrawableFile> files, @Nonnull DrawableTransaction tr, @Nonnull PreparedStatement stmt) {
+        if (tr.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction");
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        final String objIDs = files.stream()
+                .map(f -> String.valueOf(f.getId()))
+                .collect(Collectors.joining(",", "(", ")")); //NON-NLS
+        final Map<Long, String> makes = new HashMap<>();
+        final Map<Long, String> models = new HashMap<>();
+        final Map<Long, Set<String>> hashSetNames = new HashMap<>();
+        final Set<String> tagNames = new HashSet<>();
+        try {
+            loadExifAttributes(objIDs, makes, models);
+            loadHashSetNames(objIDs, hashSetNames);
+            loadTagNames(objIDs, tagNames);
+        } catch (TskCoreException | SQLException ex) {
+            LOGGER.log(Level.WARNING, "Failed to look up the attributes of a batch of files, adding them one at a time.", ex); //NON-NLS
+            for (DrawableFile f : files) {
+                insertOrUpdateFile(f, tr, stmt);
+            }
+            return;
+        }
+
+        dbWriteLock();
+        try {
+            Map<String, Integer> hashSetIDs = new HashMap<>();
+            for (Set<String> names : hashSetNames.values()) {
+                for (String name : names) {
+                    if (hashSetIDs.containsKey(name) == false) {
+                        hashSetIDs.put(name, getOrInsertHashSetID(name));
+                    }
+                }
+            }
+
+            for (DrawableFile f : files) {
+                // "INSERT OR IGNORE/ INTO drawable_files (path, name, created_time, modified_time, make, model, analyzed)"
+                stmt.setLong(1, f.getId());
+                stmt.setString(2, f.getDrawablePath());
+                stmt.setString(3, f.getName());
+                stmt.setLong(4, f.getCrtime());
+                stmt.setLong(5, f.getMtime());
+                stmt.setString(6, makes.getOrDefault(f.getId(), ""));
+                stmt.setString(7, models.getOrDefault(f.getId(), ""));
+                stmt.setBoolean(8, f.isAnalyzed());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+
+            for (Map.Entry<Long, Set<String>> entry : hashSetNames.entrySet()) {
+                for (String name : entry.getValue()) {
+                    //"insert or ignore into hash_set_hits (hash_set_id, obj_id) values (?,?)";
+                    insertHashHitStmt.setInt(1, hashSetIDs.get(name));
+                    insertHashHitStmt.setLong(2, entry.getKey());
+                    insertHashHitStmt.addBatch();
+                }
+            }
+            insertHashHitStmt.executeBatch();
+
+            //groups for the attributes that are not stored in this db
+            Set<String> mimeTypes = files.stream()
+                    .map(DrawableFile::getMIMEType)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            for (String mimeType : mimeTypes) {
+                insertGroupStmt.setString(1, mimeType);
+                insertGroupStmt.setString(2, DrawableAttribute.MIME_TYPE.attrName.toString());
+                insertGroupStmt.addBatch();
+            }
+            for (String tagName : tagNames) {
+                insertGroupStmt.setString(1, tagName);
+                insertGroupStmt.setString(2, DrawableAttribute.TAGS.attrName.toString());
+                insertGroupStmt.addBatch();
+            }
+            insertGroupStmt.executeBatch();
+
+            for (DrawableFile f : files) {
+                // Update the list of file IDs in memory
+                addImageFileToList(f.getId());
+                tr.addUpdatedFile(f.getId());
+            }
+        } catch (SQLException | NullPointerException ex) {
+            /*
+             * This is one of the places where we get an error if the case is
+             * closed during processing, which doesn't need to be reported here.
+             */
+            if (Case.isCaseOpen()) {
+                LOGGER.log(Level.SEVERE, "failed to insert/update batch of files", ex); //NON-NLS
+            }
+        } finally {
+            dbWriteUnlock();
+        }
+    }
+
+    /**
+     * Get the id of the hash set with the given name, adding it to the
+     * hash_sets table if it is not already there.
+     *
+     * NOTE: must be called with the db write lock held.
+     *
+     * @param name The name of the hash set.
+     *
+     * @return The id of the hash set.
+     *
+     * @throws SQLException
+     */
+    private int getOrInsertHashSetID(String name) throws SQLException {
+        // "insert or ignore into hash_sets (hash_set_name)  values (?)"
+        insertHashSetStmt.setString(1, name);
+        insertHashSetStmt.executeUpdate();
+
+        //"select hash_set_id from hash_sets where hash_set_name = ?"
+        selectHashSetStmt.setString(1, name);
+        try (ResultSet rs = selectHashSetStmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getInt("hash_set_id"); //NON-NLS
+            }
+        }
+        throw new SQLException("Failed to add hash set " + name); //NON-NLS
+    }
+
+    /**
+     * Read the EXIF camera make and model of the given files from the case
+     * db. The values are capitalized the same way as in DrawableFile.
+     *
+     * @param objIDs A parenthesized, comma separated list of file ids.
+     * @param makes  Map to fill with the make of each file that has one.
+     * @param models Map to fill with the model of each file that has one.
+     */
+    private void loadExifAttributes(String objIDs, Map<Long, String> makes, Map<Long, String> models) throws TskCoreException, SQLException {
+        final int makeTypeID = BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MAKE.getTypeID();
+        final String query = "SELECT blackboard_artifacts.obj_id AS obj_id, blackboard_attributes.attribute_type_id AS attribute_type_id, blackboard_attributes.value_text AS value_text " //NON-NLS
+                + " FROM blackboard_artifacts JOIN blackboard_attributes ON blackboard_artifacts.artifact_id = blackboard_attributes.artifact_id " //NON-NLS
+                + " WHERE blackboard_artifacts.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF.getTypeID() //NON-NLS
+                + " AND blackboard_attributes.attribute_type_id IN (" + makeTypeID + ", " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MODEL.getTypeID() + ")" //NON-NLS
+                + " AND blackboard_artifacts.obj_id IN " + objIDs //NON-NLS
+                + " ORDER BY blackboard_artifacts.artifact_id"; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = tskCase.executeQuery(query);
+                ResultSet rs = dbQuery.getResultSet()) {
+            while (rs.next()) {
+                String value = WordUtils.capitalizeFully(StringUtils.defaultString(rs.getString("value_text"))); //NON-NLS
+                //like DrawableFile, use the first value found
+                (rs.getInt("attribute_type_id") == makeTypeID ? makes : models).putIfAbsent(rs.getLong("obj_id"), value); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Read the names of the hash sets that the given files are in from the
+     * case db.
+     *
+     * @param objIDs        A parenthesized, comma separated list of file ids.
+     * @param hashSetNames Map to fill with the hash set names of each file that
+     *                      is in at least one.
+     */
+    private void loadHashSetNames(String objIDs, Map<Long, Set<String>> hashSetNames) throws TskCoreException, SQLException {
+        final String query = "SELECT DISTINCT blackboard_artifacts.obj_id AS obj_id, blackboard_attributes.value_text AS value_text " //NON-NLS
+                + " FROM blackboard_artifacts JOIN blackboard_attributes ON blackboard_artifacts.artifact_id = blackboard_attributes.artifact_id " //NON-NLS
+                + " WHERE blackboard_artifacts.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID() //NON-NLS
+                + " AND blackboard_attributes.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID() //NON-NLS
+                + " AND blackboard_artifacts.obj_id IN " + objIDs; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = tskCase.executeQuery(query);
+                ResultSet rs = dbQuery.getResultSet()) {
+            while (rs.next()) {
+                String name = rs.getString("value_text"); //NON-NLS
+                if (name != null) {
+                    hashSetNames.computeIfAbsent(rs.getLong("obj_id"), id -> new HashSet<>()).add(name); //NON-NLS
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the display names of the tags applied to the given files from the
+     * case db.
+     *
+     * @param objIDs   A parenthesized, comma separated list of file ids.
+     * @param tagNames Set to fill with the tag names.
+     */
+    private void loadTagNames(String objIDs, Set<String> tagNames) throws TskCoreException, SQLException {
+        final String query = "SELECT DISTINCT tag_names.display_name AS display_name " //NON-NLS
+                + " FROM content_tags JOIN tag_names ON content_tags.tag_name_id = tag_names.tag_name_id " //NON-NLS
+                + " WHERE content_tags.obj_id IN " + objIDs; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = tskCase.executeQuery(query);
+                ResultSet rs = dbQuery.getResultSet()) {
+            while (rs.next()) {
+                tagNames.add(rs.getString("display_name")); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Insert the groups for the path, make, model and hash set values of all
+     * the files in the db, with set-based queries. Used after adding files
+     * with insertFiles or updateFiles, which don't insert those groups.
+     *
+     * @param tr a transaction to use, must not be null
+     */
+    public void insertGroupsForAllFiles(DrawableTransaction tr) {
+        insertGroups(null, tr);
+    }
+
+    /**
+     * Insert the groups for the path, make, model and hash set values of the
+     * given files, with set-based queries. Used after updating a batch of
+     * files with updateFiles, so that only the batch is scanned.
+     *
+     * @param fileIDs the ids of the files to insert the groups of
+     * @param tr      a transaction to use, must not be null
+     */
+    public void insertGroupsForFiles(Collection<Long> fileIDs, DrawableTransaction tr) {
+        if (fileIDs.isEmpty() == false) {
+            insertGroups(fileIDs.stream().map(String::valueOf).collect(Collectors.joining(",", "(", ")")), tr); //NON-NLS
+        }
+    }
+
+    /**
+     * @param objIDs the parenthesized, comma separated ids of the files to
+     *               insert the groups of, or null for all the files
+     * @param tr     a transaction to use, must not be null
+     */
+    private void insertGroups(@Nullable String objIDs, DrawableTransaction tr) {
+        if (tr.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction");
+        }
+        dbWriteLock();
+        try (Statement stmt = con.createStatement()) {
+            for (DrawableAttribute<?> attr : Arrays.asList(DrawableAttribute.PATH, DrawableAttribute.MAKE, DrawableAttribute.MODEL)) {
+                stmt.executeUpdate("INSERT OR IGNORE INTO groups (value, attribute) " //NON-NLS
+                        + " SELECT DISTINCT " + attr.attrName + ", '" + attr.attrName + "' FROM drawable_files WHERE " + attr.attrName + " IS NOT NULL" //NON-NLS
+                        + (objIDs == null ? "" : " AND obj_id IN " + objIDs)); //NON-NLS
+            }
+            stmt.executeUpdate("INSERT OR IGNORE INTO groups (value, attribute) " //NON-NLS
+                    + " SELECT DISTINCT hash_set_name, '" + DrawableAttribute.HASHSET.attrName + "' FROM hash_sets " //NON-NLS
+                    + " JOIN hash_set_hits ON hash_sets.hash_set_id = hash_set_hits.hash_set_id" //NON-NLS
+                    + (objIDs == null ? "" : " WHERE hash_set_hits.obj_id IN " + objIDs)); //NON-NLS
+        } catch (SQLException ex) {
+            if (Case.isCaseOpen()) {
+                LOGGER.log(Level.SEVERE, "failed to insert groups", ex); //NON-NLS
+            }
+        } finally {
+            dbWriteUnlock();
+        }
+    }
+
     public DrawableTransaction beginTransaction() {
         return new DrawableTransaction();
     }
@@ -692,8 +1045,8 @@ public Boolean isFileAnalyzed(DrawableFile f) {
     }
 
     public Boolean isFileAnalyzed(long fileId) {
-        dbReadLock();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileId)) { //NON-NLS
             while (analyzedQuery.next()) {
                 return analyzedQuery.getBoolean(ANALYZED);
@@ -701,8 +1054,6 @@ public Boolean isFileAnalyzed(long fileId) {
         } catch (SQLException ex) {
             String msg = String.format("Failed to determine if file %s is finalized", String.valueOf(fileId)); //NON-NLS
             LOGGER.log(Level.WARNING, msg, ex);
-        } finally {
-            dbReadUnlock();
         }
 
         return false;
@@ -710,8 +1061,8 @@ public Boolean isFileAnalyzed(long fileId) {
 
     public Boolean areFilesAnalyzed(Collection<Long> fileIds) {
 
-        dbReadLock();
-        try (Statement stmt = con.createStatement();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
                 //Can't make this a preprared statement because of the IN ( ... )
                 ResultSet analyzedQuery = stmt.executeQuery("SELECT COUNT(analyzed) AS analyzed FROM drawable_files WHERE analyzed = 1 AND obj_id IN (" + StringUtils.join(fileIds, ", ") + ")")) { //NON-NLS
             while (analyzedQuery.next()) {
@@ -719,26 +1070,24 @@ public Boolean areFilesAnalyzed(Collection<Long> fileIds) {
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "problem counting analyzed files: ", ex); //NON-NLS
-        } finally {
-            dbReadUnlock();
         }
 
         return false;
     }
 
     public Boolean isGroupAnalyzed(GroupKey<?> gk) {
-        dbReadLock();
         try {
             Set<Long> fileIDsInGroup = getFileIDsInGroup(gk);
 
-            try {
+            try (ReadConnection reader = getReadConnection()) {
                 // In testing, this method appears to be a lot faster than doing one large select statement
                 for (Long fileID : fileIDsInGroup) {
-                    Statement stmt = con.createStatement();
-                    ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileID); //NON-NLS
-                    while (analyzedQuery.next()) {
-                        if (analyzedQuery.getInt(ANALYZED) == 0) {
-                            return false;
+                    try (Statement stmt = reader.createStatement();
+                            ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileID)) { //NON-NLS
+                        while (analyzedQuery.next()) {
+                            if (analyzedQuery.getInt(ANALYZED) == 0) {
+                                return false;
+                            }
                         }
                     }
                     return true;
@@ -749,8 +1098,6 @@ public Boolean isGroupAnalyzed(GroupKey<?> gk) {
             }
         } catch (TskCoreException tskCoreException) {
             LOGGER.log(Level.WARNING, "problem counting analyzed files: ", tskCoreException); //NON-NLS
-        } finally {
-            dbReadUnlock();
         }
         return false;
     }
@@ -771,9 +1118,10 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
         Statement statement = null;
         ResultSet rs = null;
         Set<Long> ret = new HashSet<>();
-        dbReadLock();
+        ReadConnection reader = null;
         try {
-            statement = con.createStatement();
+            reader = getReadConnection();
+            statement = reader.createStatement();
             rs = statement.executeQuery("SELECT obj_id FROM drawable_files WHERE " + sqlWhereClause); //NON-NLS
             while (rs.next()) {
                 ret.add(rs.getLong(1));
@@ -795,7 +1143,9 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing  findAllFileIdsWhere", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            if (reader != null) {
+                reader.close();
+            }
         }
         return ret;
     }
@@ -814,9 +1164,10 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
     public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
         Statement statement = null;
         ResultSet rs = null;
-        dbReadLock();
+        ReadConnection reader = null;
         try {
-            statement = con.createStatement();
+            reader = getReadConnection();
+            statement = reader.createStatement();
             rs = statement.executeQuery("SELECT COUNT (*) FROM drawable_files WHERE " + sqlWhereClause); //NON-NLS
             return rs.getLong(1);
         } catch (SQLException e) {
@@ -836,7 +1187,9 @@ public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing countFilesWhere", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            if (reader != null) {
+                reader.close();
+            }
         }
     }
 
@@ -851,9 +1204,10 @@ public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
     public long countFiles() throws TskCoreException {
         Statement statement = null;
         ResultSet rs = null;
-        dbReadLock();
+        ReadConnection reader = null;
         try {
-            statement = con.createStatement();
+            reader = getReadConnection();
+            statement = reader.createStatement();
             rs = statement.executeQuery("SELECT COUNT (*) FROM drawable_files"); //NON-NLS
             return rs.getLong(1);
         } catch (SQLException e) {
@@ -873,7 +1227,9 @@ public long countFiles() throws TskCoreException {
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing countFiles", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            if (reader != null) {
+                reader.close();
+            }
         }
     }
 
@@ -899,7 +1255,6 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                 //they should have special handling at a higher level of the stack.
                 throw new UnsupportedOperationException();
             default:
-                dbReadLock();
                 //TODO: convert this to prepared statement 
                 StringBuilder query = new StringBuilder("SELECT " + groupBy.attrName.toString() + ", COUNT(*) FROM drawable_files GROUP BY " + groupBy.attrName.toString()); //NON-NLS
 
@@ -929,7 +1284,8 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                     query.append(sortOrderClause);
                 }
 
-                try (Statement stmt = con.createStatement();
+                try (ReadConnection reader = getReadConnection();
+                        Statement stmt = reader.createStatement();
                         ResultSet valsResults = stmt.executeQuery(query.toString())) {
                     while (valsResults.next()) {
                         /*
@@ -944,8 +1300,6 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                     }
                 } catch (SQLException ex) {
                     LOGGER.log(Level.WARNING, "Unable to get values for attribute", ex); //NON-NLS
-                } finally {
-                    dbReadUnlock();
                 }
         }
 
@@ -1019,12 +1373,13 @@ public Set<Long> getFileIDsInGroup(GroupKey<?> groupKey) throws TskCoreException
                     return groupManager.getFileIDsWithCategory((DhsImageCategory) groupKey.getValue());
                 case TAGS:
                     return groupManager.getFileIDsWithTag((TagName) groupKey.getValue());
+                case SIMILARITY:
+                    return getFileIDsInSimilarityGroup((Long) groupKey.getValue());
             }
         }
         Set<Long> files = new HashSet<>();
-        dbReadLock();
-        try {
-            PreparedStatement statement = getGroupStatment(groupKey.getAttribute());
+        try (ReadConnection reader = getReadConnection()) {
+            PreparedStatement statement = reader.prepareStatement(groupQueryMap.get(groupKey.getAttribute()));
             statement.setObject(1, groupKey.getValue());
 
             try (ResultSet valsResults = statement.executeQuery()) {
@@ -1034,28 +1389,228 @@ public Set<Long> getFileIDsInGroup(GroupKey<?> groupKey) throws TskCoreException
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "failed to get file for group:" + groupKey.getAttribute() + " == " + groupKey.getValue(), ex); //NON-NLS
-        } finally {
-            dbReadUnlock();
         }
 
         return files;
     }
 
-    private void closeStatements() throws SQLException {
-        for (PreparedStatement pStmt : preparedStatements) {
-            pStmt.close();
+    /**
+     * Get the files of every group for the given attribute with a single
+     * query, rather than one query per group. Only supported for attributes
+     * that are stored in this db, see canGroupInBulk.
+     *
+     * @param <A>                 the type of the attribute's values
+     * @param groupBy             the attribute to group by
+     * @param onlyAnalyzedGroups if true, leave out groups that have files
+     *                            that are not analyzed yet
+     *
+     * @return map from group value to the ids of the files in that group,
+     *         ordered by value
+     *
+     * @throws TskCoreException if the groups could not be read
+     */
+    public <A extends Comparable<A>> Map<A, Set<Long>> getFileIDsByGroupValue(DrawableAttribute<A> groupBy, boolean onlyAnalyzedGroups) throws TskCoreException {
+        final String query;
+        if (groupBy == DrawableAttribute.HASHSET) {
+            query = "SELECT hash_sets.hash_set_name AS value, drawable_files.obj_id AS obj_id, analyzed " //NON-NLS
+                    + " FROM drawable_files JOIN hash_set_hits ON drawable_files.obj_id = hash_set_hits.obj_id " //NON-NLS
+                    + " JOIN hash_sets ON hash_sets.hash_set_id = hash_set_hits.hash_set_id " //NON-NLS
+                    + " ORDER BY hash_sets.hash_set_name"; //NON-NLS
+        } else if (canGroupInBulk(groupBy)) {
+            query = "SELECT " + groupBy.attrName + " AS value, obj_id, analyzed FROM drawable_files " //NON-NLS
+                    + " WHERE " + groupBy.attrName + " IS NOT NULL ORDER BY " + groupBy.attrName; //NON-NLS
+        } else {
+            throw new UnsupportedOperationException("Can't group by " + groupBy.attrName + " in bulk"); //NON-NLS
+        }
+
+        Map<A, Set<Long>> groups = new LinkedHashMap<>();
+        Set<A> unanalyzedGroups = new HashSet<>();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
+                ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                //as in findValuesForAttribute, the column holds values of type A
+                @SuppressWarnings("unchecked")
+                A value = (A) rs.getObject("value"); //NON-NLS
+                groups.computeIfAbsent(value, v -> new HashSet<>()).add(rs.getLong(OBJ_ID));
+                if (rs.getBoolean(ANALYZED) == false) {
+                    unanalyzedGroups.add(value);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new TskCoreException("Failed to get the groups for " + groupBy.attrName, ex); //NON-NLS
+        }
+        if (onlyAnalyzedGroups) {
+            groups.keySet().removeAll(unanalyzedGroups);
+        }
+        return groups;
+    }
+
+    /**
+     * @param groupBy an attribute to group by
+     *
+     * @return true if the groups of the given attribute can be read with
+     *         getFileIDsByGroupValue.
+     */
+    public static boolean canGroupInBulk(DrawableAttribute<?> groupBy) {
+        return groupBy == DrawableAttribute.HASHSET
+                || groupBy == DrawableAttribute.PATH
+                || groupBy == DrawableAttribute.NAME
+                || groupBy == DrawableAttribute.MAKE
+                || groupBy == DrawableAttribute.MODEL;
+    }
+
+    /**
+     * Get the seen state of all the groups of the given attribute.
+     *
+     * @param groupBy the attribute whose groups to get
+     *
+     * @return map from group value display name to whether it has been seen
+     */
+    public Map<String, Boolean> getGroupSeenStates(DrawableAttribute<?> groupBy) {
+        Map<String, Boolean> seenStates = new HashMap<>();
+        try (ReadConnection reader = getReadConnection()) {
+            PreparedStatement statement = reader.prepareStatement(SELECT_GROUPS_SEEN);
+            statement.clearParameters();
+            statement.setString(1, groupBy.attrName.toString());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    seenStates.put(rs.getString("value"), rs.getBoolean("seen")); //NON-NLS
+                }
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Failed to get seen groups for " + groupBy.attrName, ex); //NON-NLS
+        }
+        return seenStates;
+    }
+
+    /**
+     * @return the ids of the analyzed image files that don't have a
+     *         perceptual hash yet, and that have not failed to be hashed
+     */
+    public Set<Long> getFileIDsWithoutPerceptualHash() {
+        Set<Long> fileIDs = new HashSet<>();
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT obj_id FROM drawable_files WHERE analyzed = 1 " //NON-NLS
+                        + " AND obj_id NOT IN (SELECT obj_id FROM perceptual_hashes)")) { //NON-NLS
+            while (rs.next()) {
+                fileIDs.add(rs.getLong(OBJ_ID));
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "failed to get files without perceptual hashes", ex); //NON-NLS
+        }
+        return fileIDs;
+    }
+
+    /**
+     * Store the perceptual hashes of the given files, and add them to the
+     * similarity index.
+     *
+     * @param hashes map from file id to the perceptual hash of that file, or
+     *               to null if the file could not be hashed, so that it is not
+     *               tried again
+     * @param tr     a transaction to use, must not be null
+     */
+    public void setPerceptualHashes(Map<Long, Long> hashes, DrawableTransaction tr) {
+        if (tr.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction");
+        }
+        dbWriteLock();
+        try {
+            for (Map.Entry<Long, Long> entry : hashes.entrySet()) {
+                //"INSERT OR REPLACE INTO perceptual_hashes (obj_id, hash) VALUES (?,?)"
+                insertPerceptualHashStmt.setLong(1, entry.getKey());
+                if (entry.getValue() != null) {
+                    insertPerceptualHashStmt.setLong(2, entry.getValue());
+                } else {
+                    insertPerceptualHashStmt.setNull(2, Types.INTEGER);
+                }
+                insertPerceptualHashStmt.addBatch();
+            }
+            insertPerceptualHashStmt.executeBatch();
+            if (similarityIndex != null) {
+                hashes.forEach((fileID, hash) -> {
+                    if (hash != null) {
+                        similarityIndex.add(fileID, hash);
+                    } else {
+                        similarityIndex.remove(fileID);
+                    }
+                });
+            }
+        } catch (SQLException ex) {
+            if (Case.isCaseOpen()) {
+                LOGGER.log(Level.SEVERE, "failed to insert perceptual hashes", ex); //NON-NLS
+            }
+        } finally {
+            dbWriteUnlock();
         }
     }
 
-    private PreparedStatement getGroupStatment(DrawableAttribute<?> groupBy) {
-        return groupStatementMap.get(groupBy);
+    /**
+     * Get the similarity index, loading it from the perceptual_hashes table
+     * the first time it is needed.
+     *
+     * @return the similarity index
+     */
+    private SimilarityIndex getSimilarityIndex() {
+        synchronized (similarityIndexLock) {
+            if (similarityIndex == null) {
+                SimilarityIndex index = new SimilarityIndex(PerceptualHash.NEAR_DUPLICATE_DISTANCE);
+                try (ReadConnection reader = getReadConnection();
+                        Statement stmt = reader.createStatement();
+                        ResultSet rs = stmt.executeQuery("SELECT obj_id, hash FROM perceptual_hashes WHERE hash IS NOT NULL")) { //NON-NLS
+                    while (rs.next()) {
+                        index.add(rs.getLong(OBJ_ID), rs.getLong("hash")); //NON-NLS
+                    }
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.WARNING, "failed to load perceptual hashes", ex); //NON-NLS
+                }
+                similarityIndex = index;
+            }
+            return similarityIndex;
+        }
+    }
+
+    /**
+     * @return the ids of the groups of visually similar files, each of which
+     *         has at least two files
+     */
+    public Set<Long> getSimilarityGroupIDs() {
+        return getSimilarityIndex().getClusterIDs();
+    }
 
+    /**
+     * @param fileID the id of a file
+     *
+     * @return the id of the group of files that are visually similar to the
+     *         given file, or null if there are none.
+     */
+    @Nullable
+    public Long getSimilarityGroupID(long fileID) {
+        return getSimilarityIndex().getClusterID(fileID);
+    }
+
+    /**
+     * @param groupID the id of a group of visually similar files
+     *
+     * @return the ids of the files in the group
+     */
+    public Set<Long> getFileIDsInSimilarityGroup(Long groupID) {
+        return getSimilarityIndex().getCluster(groupID);
+    }
+
+    private void closeStatements() throws SQLException {
+        for (PreparedStatement pStmt : preparedStatements) {
+            pStmt.close();
+        }
     }
 
     public int countAllFiles() {
         int result = -1;
-        dbReadLock();
-        try (ResultSet rs = con.createStatement().executeQuery("SELECT COUNT(*) AS COUNT FROM drawable_files")) { //NON-NLS
+        try (ReadConnection reader = getReadConnection();
+                Statement stmt = reader.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS COUNT FROM drawable_files")) { //NON-NLS
             while (rs.next()) {
 
                 result = rs.getInt("COUNT");
@@ -1063,8 +1618,6 @@ public int countAllFiles() {
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error accessing SQLite database"); //NON-NLS
-        } finally {
-            dbReadUnlock();
         }
         return result;
     }
@@ -1090,6 +1643,11 @@ public boolean removeFile(long id, DrawableTransaction tr) {
             //"delete from drawable_files where (obj_id = " + id + ")"
             removeFileStmt.setLong(1, id);
             removeFileStmt.executeUpdate();
+            removePerceptualHashStmt.setLong(1, id);
+            removePerceptualHashStmt.executeUpdate();
+            if (similarityIndex != null) {
+                similarityIndex.remove(id);
+            }
             tr.addRemovedFile(id);
 
             //TODO: delete from hash_set_hits table also...
@@ -1162,6 +1720,13 @@ private void initializeImageList() {
         }
     }
 
+    private final Object similarityIndexLock = new Object();
+
+    /**
+     * index of the perceptual hashes, loaded when first needed
+     */
+    private volatile SimilarityIndex similarityIndex;
+
     /**
      * For performance reasons, keep the file type in memory
      */
@@ -1256,6 +1821,66 @@ public long getUncategorizedCount(Collection<Long> fileIDs) {
         return -1;
     }
 
+    /**
+     * A pooled read-only connection to the drawable db, with its own prepared
+     * statements. Closing it returns it to the pool.
+     */
+    private final class ReadConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private ReadConnection() throws SQLException {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath.toString(), config.toProperties()); //NON-NLS
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA temp_store = MEMORY"); //NON-NLS
+                statement.execute("PRAGMA cache_size = 50000"); //NON-NLS
+            }
+        }
+
+        private Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        /**
+         * Get a prepared statement for the given query, preparing it the
+         * first time it is requested on this connection.
+         */
+        private PreparedStatement prepareStatement(String queryString) throws SQLException {
+            PreparedStatement statement = statements.get(queryString);
+            if (statement == null) {
+                statement = connection.prepareStatement(queryString);
+                statements.put(queryString, statement);
+            }
+            return statement;
+        }
+
+        @Override
+        public void close() {
+            synchronized (readConnections) {
+                if (readConnectionsClosed) {
+                    dispose();
+                    readConnections.remove(this);
+                } else {
+                    idleReadConnections.offer(this);
+                }
+            }
+        }
+
+        private void dispose() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                connection.close();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.WARNING, "Failed to close read connection to drawable.db", ex); //NON-NLS
+            }
+        }
+    }
+
     /**
      * inner class that can reference access database connection
      */
@@ -0,0 +1,91 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.imagegallery.datamodel;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.function.ToLongFunction;
+
+/**
+ * 64 bit perceptual hashes of images, used to find images that look the same
+ * even though their bytes differ, e.g. because they were resized or
+ * recompressed. Visually similar images have hashes that differ in only a few
+ * bits.
+ */
+public final class PerceptualHash {
+
+    /**
+     * The default hash function, the difference hash.
+     */
+    public static final ToLongFunction<BufferedImage> DEFAULT_HASHER = PerceptualHash::differenceHash;
+
+    /**
+     * The largest number of differing bits between the hashes of two images
+     * that are considered near duplicates.
+     */
+    public static final int NEAR_DUPLICATE_DISTANCE = 6;
+
+    private static final int HASH_WIDTH = 8;
+    private static final int HASH_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Compute the difference hash (dHash) of the given image. The image is
+     * reduced to a 9x8 grayscale image, and each bit of the hash records
+     * whether a pixel is brighter than its right neighbour. It is cheap to
+     * compute and robust to scaling, recompression and small color changes.
+     *
+     * @param image the image to hash, typically an already decoded thumbnail
+     *
+     * @return the 64 bit hash
+     */
+    public static long differenceHash(BufferedImage image) {
+        BufferedImage small = new BufferedImage(HASH_WIDTH + 1, HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = small.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, HASH_WIDTH + 1, HASH_HEIGHT, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Raster raster = small.getRaster();
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH; x++) {
+                hash <<= 1;
+                if (raster.getSample(x, y, 0) > raster.getSample(x + 1, y, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of bits that differ between the two hashes
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.imagegallery.datamodel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * In memory index of the perceptual hashes of files, for finding the files
+ * whose hashes are within a given Hamming distance of a hash. The hashes are
+ * kept in a BK-tree, so a lookup only visits the subtrees whose distance from
+ * their parent could contain a match, instead of comparing against every
+ * hash.
+ *
+ * The index also groups the files into clusters of near duplicates. New files
+ * are joined to the clusters as they are added; the clusters are only
+ * recomputed from scratch after a file in a cluster is removed or rehashed,
+ * since that can split its cluster. A cluster's id is the id of one of its
+ * files, and it is kept when other files join the cluster.
+ */
+final class SimilarityIndex {
+
+    private final int maxDistance;
+
+    @GuardedBy("this")
+    private Node root;
+
+    /**
+     * map from file id to the hash of that file
+     */
+    @GuardedBy("this")
+    private final Map<Long, Long> hashes = new HashMap<>();
+
+    /**
+     * map from cluster id to the ids of the files in that cluster
+     */
+    @GuardedBy("this")
+    private Map<Long, Set<Long>> clusters = new HashMap<>();
+
+    /**
+     * map from file id to the id of the cluster it is in, if any.
+     */
+    @GuardedBy("this")
+    private Map<Long, Long> clusterOfFile = new HashMap<>();
+
+    /**
+     * true if the clusters have to be recomputed, because a file was removed
+     * from one.
+     */
+    @GuardedBy("this")
+    private boolean clustersStale = false;
+
+    /**
+     * @param maxDistance the largest number of differing bits between the
+     *                    hashes of two files in the same cluster.
+     */
+    SimilarityIndex(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Add a file to the index, or update its hash.
+     */
+    synchronized void add(long fileID, long hash) {
+        Long oldHash = hashes.put(fileID, hash);
+        if (oldHash != null) {
+            if (oldHash == hash) {
+                return;
+            }
+            findNode(oldHash).fileIDs.remove(fileID);
+            if (clusterOfFile.containsKey(fileID)) {
+                //the file moved, so it may have left its cluster
+                clustersStale = true;
+            }
+        }
+        if (root == null) {
+            root = new Node(hash);
+            root.fileIDs.add(fileID);
+        } else {
+            Node node = root;
+            while (true) {
+                int distance = PerceptualHash.distance(node.hash, hash);
+                if (distance == 0) {
+                    node.fileIDs.add(fileID);
+                    break;
+                }
+                Node child = node.children.get(distance);
+                if (child == null) {
+                    child = new Node(hash);
+                    child.fileIDs.add(fileID);
+                    node.children.put(distance, child);
+                    break;
+                }
+                node = child;
+            }
+        }
+        if (clustersStale == false) {
+            joinClusters(fileID, hash);
+        }
+    }
+
+    /**
+     * Join a file that is not in a cluster with the files near it, merging
+     * their clusters into the largest one.
+     */
+    @GuardedBy("this")
+    private void joinClusters(long fileID, long hash) {
+        Set<Long> neighbourIDs = findWithin(hash, maxDistance);
+        neighbourIDs.remove(fileID);
+        if (neighbourIDs.isEmpty()) {
+            return;
+        }
+        Long targetID = null;
+        for (Long neighbourID : neighbourIDs) {
+            Long clusterID = clusterOfFile.get(neighbourID);
+            if (clusterID != null
+                    && (targetID == null || clusters.get(clusterID).size() > clusters.get(targetID).size())) {
+                targetID = clusterID;
+            }
+        }
+        if (targetID == null) {
+            targetID = Math.min(fileID, Collections.min(neighbourIDs));
+            clusters.put(targetID, new HashSet<>());
+        }
+        Set<Long> target = clusters.get(targetID);
+        neighbourIDs.add(fileID);
+        for (Long memberID : neighbourIDs) {
+            Long clusterID = clusterOfFile.get(memberID);
+            if (clusterID == null) {
+                target.add(memberID);
+                clusterOfFile.put(memberID, targetID);
+            } else if (clusterID.equals(targetID) == false) {
+                for (Long otherID : clusters.remove(clusterID)) {
+                    target.add(otherID);
+                    clusterOfFile.put(otherID, targetID);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a file from the index. The tree node of its hash is kept, since
+     * it may be needed to reach other nodes.
+     */
+    synchronized void remove(long fileID) {
+        Long hash = hashes.remove(fileID);
+        if (hash != null) {
+            findNode(hash).fileIDs.remove(fileID);
+            if (clusterOfFile.containsKey(fileID)) {
+                clustersStale = true;
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the files whose hashes are within the given distance
+     *         of the given hash
+     */
+    synchronized Set<Long> findWithin(long hash, int distance) {
+        Set<Long> results = new HashSet<>();
+        if (root == null) {
+            return results;
+        }
+        Deque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        while (toVisit.isEmpty() == false) {
+            Node node = toVisit.pop();
+            int nodeDistance = PerceptualHash.distance(node.hash, hash);
+            if (nodeDistance <= distance) {
+                results.addAll(node.fileIDs);
+            }
+            //by the triangle inequality, matches can only be in these subtrees
+            for (int childDistance = Math.max(1, nodeDistance - distance); childDistance <= nodeDistance + distance; childDistance++) {
+                Node child = node.children.get(childDistance);
+                if (child != null) {
+                    toVisit.push(child);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the ids of the clusters of near duplicate files: files are in the
+     * same cluster if there is a chain of files from one to the other where
+     * each hash is within the max distance of the next. Files that are not
+     * near any other file are not in any cluster.
+     *
+     * @return the ids of the clusters, each the id of one of the files in the
+     *         cluster
+     */
+    synchronized Set<Long> getClusterIDs() {
+        if (clustersStale) {
+            computeClusters();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(clusters.keySet()));
+    }
+
+    /**
+     * @param clusterID the id of a cluster
+     *
+     * @return the ids of the files in the cluster, or an empty set if there is
+     *         no cluster with the given id
+     */
+    synchronized Set<Long> getCluster(long clusterID) {
+        if (clustersStale) {
+            computeClusters();
+        }
+        Set<Long> fileIDs = clusters.get(clusterID);
+        return fileIDs == null
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(fileIDs));
+    }
+
+    /**
+     * @return the id of the cluster the given file is in, or null if it is not
+     *         in a cluster
+     */
+    synchronized Long getClusterID(long fileID) {
+        if (clustersStale) {
+            computeClusters();
+        }
+        return clusterOfFile.get(fileID);
+    }
+
+    @GuardedBy("this")
+    private void computeClusters() {
+        //union-find over the file ids, joining each file with its neighbours
+        Map<Long, Long> parents = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : hashes.entrySet()) {
+            long fileID = entry.getKey();
+            for (long neighbourID : findWithin(entry.getValue(), maxDistance)) {
+                if (neighbourID != fileID) {
+                    union(parents, fileID, neighbourID);
+                }
+            }
+        }
+
+        Map<Long, List<Long>> members = new HashMap<>();
+        for (Long fileID : parents.keySet()) {
+            members.computeIfAbsent(find(parents, fileID), id -> new ArrayList<>()).add(fileID);
+        }
+
+        Map<Long, Set<Long>> newClusters = new HashMap<>();
+        Map<Long, Long> newClusterOfFile = new HashMap<>();
+        for (List<Long> fileIDs : members.values()) {
+            //keep the id of the largest old cluster whose id file is still in this one
+            Long clusterID = null;
+            for (Long fileID : fileIDs) {
+                if (fileID.equals(clusterOfFile.get(fileID))
+                        && (clusterID == null || clusters.get(fileID).size() > clusters.get(clusterID).size())) {
+                    clusterID = fileID;
+                }
+            }
+            if (clusterID == null) {
+                clusterID = Collections.min(fileIDs);
+            }
+            newClusters.put(clusterID, new HashSet<>(fileIDs));
+            for (Long fileID : fileIDs) {
+                newClusterOfFile.put(fileID, clusterID);
+            }
+        }
+        clusters = newClusters;
+        clusterOfFile = newClusterOfFile;
+        clustersStale = false;
+    }
+
+    private static long find(Map<Long, Long> parents, long fileID) {
+        long root = fileID;
+        Long parent;
+        while ((parent = parents.get(root)) != null && parent != root) {
+            root = parent;
+        }
+        //compress the path
+        long current = fileID;
+        while (current != root) {
+            long next = parents.get(current);
+            parents.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<Long, Long> parents, long fileID1, long fileID2) {
+        parents.putIfAbsent(fileID1, fileID1);
+        parents.putIfAbsent(fileID2, fileID2);
+        long root1 = find(parents, fileID1);
+        long root2 = find(parents, fileID2);
+        if (root1 != root2) {
+            parents.put(Math.max(root1, root2), Math.min(root1, root2));
+        }
+    }
+
+    @GuardedBy("this")
+    private Node findNode(long hash) {
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                return node;
+            }
+            node = node.children.get(distance);
+        }
+    }
+
+    /**
+     * A node of the BK-tree, holding all the files with one hash. Each child
+     * is keyed by the distance between its hash and this node's hash.
+     */
+    private static final class Node {
+
+        private final long hash;
+        private final Set<Long> fileIDs = new HashSet<>(1);
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        private Node(long hash) {
+            this.hash = hash;
+        }
+    }
+}
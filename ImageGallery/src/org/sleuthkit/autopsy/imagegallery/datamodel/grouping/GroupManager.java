@@ -34,8 +34,12 @@
 import static java.util.Objects.nonNull;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -134,6 +138,11 @@ public class GroupManager {
 
     public void setDB(DrawableDB db) {
         this.db = db;
+        synchronized (this) {
+            if (populateExecutor.isShutdown()) {
+                populateExecutor = getNewPopulateExecutor();
+            }
+        }
         regroup(groupBy, sortBy, sortOrder, Boolean.TRUE);
     }
 
@@ -170,6 +179,13 @@ public GroupManager(ImageGalleryController controller) {
     @SuppressWarnings({"rawtypes", "unchecked"})
     synchronized public Set<GroupKey<?>> getGroupKeysForFile(DrawableFile file) {
         Set<GroupKey<?>> resultSet = new HashSet<>();
+        if (groupBy == DrawableAttribute.SIMILARITY) {
+            Long similarityGroupID = nonNull(db) ? db.getSimilarityGroupID(file.getId()) : null;
+            if (nonNull(similarityGroupID)) {
+                resultSet.add(new GroupKey(groupBy, similarityGroupID));
+            }
+            return resultSet;
+        }
         for (Comparable<?> val : groupBy.getValue(file)) {
             if (groupBy == DrawableAttribute.TAGS) {
                 if (CategoryManager.isNotCategoryTagName((TagName) val)) {
@@ -221,6 +237,8 @@ synchronized public void clear() {
         if (groupByTask != null) {
             groupByTask.cancel(true);
         }
+        //stop populating the groups of the closed case, a new executor is made for the next one
+        populateExecutor.shutdownNow();
         sortBy = GroupSortBy.GROUP_BY_VALUE;
         groupBy = DrawableAttribute.PATH;
         sortOrder = SortOrder.ASCENDING;
@@ -348,6 +366,11 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                         values = new ArrayList<>(names);
                     }
                     break;
+                case SIMILARITY:
+                    if (nonNull(db)) {
+                        values = (List<A>) new ArrayList<>(new TreeSet<>(db.getSimilarityGroupIDs()));
+                    }
+                    break;
                 case MIME_TYPE:
                     if (nonNull(db)) {
                         HashSet<String> types = new HashSet<>();
@@ -396,6 +419,11 @@ public Set<Long> getFileIDsInGroup(GroupKey<?> groupKey) throws TskCoreException
             case MIME_TYPE:
                 fileIDsToReturn = getFileIDsWithMimeType((String) groupKey.getValue());
                 break;
+            case SIMILARITY:
+                if (nonNull(db)) {
+                    fileIDsToReturn = db.getFileIDsInSimilarityGroup((Long) groupKey.getValue());
+                }
+                break;
 //            case HASHSET: //comment out this case to use db functionality for hashsets
 //                return getFileIDsWithHashSetName((String) groupKey.getValue());
             default:
@@ -547,6 +575,20 @@ public synchronized <A extends Comparable<A>> void regroup(final DrawableAttribu
      */
     final ExecutorService regroupExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("ui task -%d").build()); //NON-NLS
 
+    /**
+     * A bounded executor for populating groups in parallel, since each group
+     * runs blocking queries against the drawable and case databases. It is
+     * shut down when the groups are cleared, eg when the case is closed, and
+     * replaced when a new db is set.
+     */
+    private static final int POPULATE_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private volatile ExecutorService populateExecutor = getNewPopulateExecutor();
+
+    private static ExecutorService getNewPopulateExecutor() {
+        return Executors.newFixedThreadPool(POPULATE_THREADS,
+                new BasicThreadFactory.Builder().namingPattern("populate group -%d").daemon(true).build()); //NON-NLS
+    }
+
     public ReadOnlyDoubleProperty regroupProgress() {
         return regroupProgress.getReadOnlyProperty();
     }
@@ -666,33 +708,7 @@ private DrawableGroup popuplateIfAnalyzed(GroupKey<?> groupKey, ReGroupTask<?> t
                 try {
                     Set<Long> fileIDs = getFileIDsInGroup(groupKey);
                     if (Objects.nonNull(fileIDs)) {
-                        DrawableGroup group;
-                        final boolean groupSeen = db.isGroupSeen(groupKey);
-                        synchronized (groupMap) {
-                            if (groupMap.containsKey(groupKey)) {
-                                group = groupMap.get(groupKey);
-
-                                group.setFiles(ObjectUtils.defaultIfNull(fileIDs, Collections.emptySet()));
-                            } else {
-                                group = new DrawableGroup(groupKey, fileIDs, groupSeen);
-                                controller.getCategoryManager().registerListener(group);
-                                group.seenProperty().addListener((o, oldSeen, newSeen) -> 
-                                    Platform.runLater(() -> markGroupSeen(group, newSeen))
-                                );
-                                groupMap.put(groupKey, group);
-                            }
-                        }
-                        Platform.runLater(() -> {
-                            if (analyzedGroups.contains(group) == false) {
-                                analyzedGroups.add(group);
-                                if (Objects.isNull(task)) {
-                                    FXCollections.sort(analyzedGroups, applySortOrder(sortOrder, sortBy));
-                               }
-                            }
-                            markGroupSeen(group, groupSeen);
-                        });
-                        return group;
-
+                        return populateGroup(groupKey, fileIDs, db.isGroupSeen(groupKey), task);
                     }
                 } catch (TskCoreException ex) {
                     LOGGER.log(Level.SEVERE, "failed to get files for group: " + groupKey.getAttribute().attrName.toString() + " = " + groupKey.getValue(), ex); //NON-NLS
@@ -702,6 +718,47 @@ private DrawableGroup popuplateIfAnalyzed(GroupKey<?> groupKey, ReGroupTask<?> t
         return null;
     }
 
+    /**
+     * Create or update the group for the given key with the given files, and
+     * add it to the analyzed groups.
+     *
+     * @param groupKey  the key of the group
+     * @param fileIDs   the ids of the files in the group
+     * @param groupSeen whether the group has been seen
+     * @param task      the ReGroupTask this is part of, or null. If not null,
+     *                  the analyzed groups are sorted by the task when it is
+     *                  done instead of after each group.
+     *
+     * @return the group
+     */
+    private DrawableGroup populateGroup(GroupKey<?> groupKey, Set<Long> fileIDs, boolean groupSeen, ReGroupTask<?> task) {
+        DrawableGroup group;
+        synchronized (groupMap) {
+            if (groupMap.containsKey(groupKey)) {
+                group = groupMap.get(groupKey);
+
+                group.setFiles(ObjectUtils.defaultIfNull(fileIDs, Collections.emptySet()));
+            } else {
+                group = new DrawableGroup(groupKey, fileIDs, groupSeen);
+                controller.getCategoryManager().registerListener(group);
+                group.seenProperty().addListener((o, oldSeen, newSeen) -> 
+                    Platform.runLater(() -> markGroupSeen(group, newSeen))
+                );
+                groupMap.put(groupKey, group);
+            }
+        }
+        Platform.runLater(() -> {
+            if (analyzedGroups.contains(group) == false) {
+                analyzedGroups.add(group);
+                if (Objects.isNull(task)) {
+                    FXCollections.sort(analyzedGroups, applySortOrder(sortOrder, sortBy));
+               }
+            }
+            markGroupSeen(group, groupSeen);
+        });
+        return group;
+    }
+
     public Set<Long> getFileIDsWithMimeType(String mimeType) throws TskCoreException {
 
         HashSet<Long> hashSet = new HashSet<>();
@@ -773,27 +830,86 @@ protected Void call() throws Exception {
                 unSeenGroups.clear();
             });
 
-            // Get the list of group keys
-            final List<AttrType> vals = findValuesForAttribute(groupBy);
+            if (nonNull(db) && DrawableDB.canGroupInBulk(groupBy)) {
+                regroupInBulk();
+            } else {
+                regroupByValue();
+            }
+            if (isCancelled()) {
+                return null;//abort
+            }
+            Platform.runLater(() -> FXCollections.sort(analyzedGroups, applySortOrder(sortOrder, sortBy)));
 
-            groupProgress.start(vals.size());
+            updateProgress(1, 1);
+            return null;
+        }
+
+        /**
+         * Build all the groups from one query for the files of every group
+         * and one for their seen states. For path groups, only the fully
+         * analyzed groups are shown, as in popuplateIfAnalyzed.
+         */
+        private void regroupInBulk() throws TskCoreException {
+            final Map<AttrType, Set<Long>> groups = db.getFileIDsByGroupValue(groupBy, groupBy == DrawableAttribute.PATH);
+            final Map<String, Boolean> seenStates = db.getGroupSeenStates(groupBy);
+
+            groupProgress.start(groups.size());
 
             int p = 0;
-            // For each key value, partially create the group and add it to the list.
-            for (final AttrType val : vals) {
+            for (Map.Entry<AttrType, Set<Long>> entry : groups.entrySet()) {
                 if (isCancelled()) {
-                    return null;//abort
+                    return;//abort
                 }
                 p++;
-                updateMessage(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), val));
-                updateProgress(p, vals.size());
-                groupProgress.progress(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), val), p);
-                popuplateIfAnalyzed(new GroupKey<>(groupBy, val), this);
+                final GroupKey<AttrType> groupKey = new GroupKey<>(groupBy, entry.getKey());
+                updateMessage(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), entry.getKey()));
+                updateProgress(p, groups.size());
+                groupProgress.progress(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), entry.getKey()), p);
+                populateGroup(groupKey, entry.getValue(), seenStates.getOrDefault(groupKey.getValueDisplayName(), false), this);
             }
-            Platform.runLater(() -> FXCollections.sort(analyzedGroups, applySortOrder(sortOrder, sortBy)));
+        }
 
-            updateProgress(1, 1);
-            return null;
+        /**
+         * Build the groups one value at a time, for attributes that are not
+         * stored in the drawable db. The values are populated in parallel on
+         * the populate executor, since each one needs its own queries, and
+         * the progress is reported from this task's thread as they complete.
+         */
+        private void regroupByValue() throws InterruptedException {
+            // Get the list of group keys
+            final List<AttrType> vals = findValuesForAttribute(groupBy);
+
+            groupProgress.start(vals.size());
+
+            // For each key value, partially create the group and add it to the list.
+            CompletionService<AttrType> populated = new ExecutorCompletionService<>(populateExecutor);
+            List<Future<AttrType>> futures = new ArrayList<>(vals.size());
+            for (AttrType val : vals) {
+                futures.add(populated.submit(() -> {
+                    if (isCancelled() == false) {
+                        popuplateIfAnalyzed(new GroupKey<>(groupBy, val), this);
+                    }
+                    return val;
+                }));
+            }
+            try {
+                for (int done = 1; done <= vals.size(); done++) {
+                    if (isCancelled()) {
+                        return;//abort
+                    }
+                    try {
+                        AttrType val = populated.take().get();
+                        updateMessage(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), val));
+                        groupProgress.progress(Bundle.ReGroupTask_progressUpdate(groupBy.attrName.toString(), val), done);
+                    } catch (ExecutionException ex) {
+                        LOGGER.log(Level.SEVERE, "Error populating group", ex.getCause()); //NON-NLS
+                        groupProgress.progress(done);
+                    }
+                    updateProgress(done, vals.size());
+                }
+            } finally {
+                futures.forEach(future -> future.cancel(false));
+            }
         }
 
         @Override
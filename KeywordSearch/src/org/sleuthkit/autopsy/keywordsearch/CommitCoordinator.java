@@ -0,0 +1,147 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Groups the Solr commits requested for indexed content, since each commit
+ * flushes segments and reopens searchers. A commit is issued at most once per
+ * commit interval, or as soon as the number of documents added to the index
+ * since the last commit reaches the commit document count (see
+ * KeywordSearchSettings). Each chunk of text is a document.
+ */
+final class CommitCoordinator {
+
+    private static final Logger logger = Logger.getLogger(CommitCoordinator.class.getName());
+
+    private final Ingester ingester;
+
+    private final ScheduledExecutorService commitExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("solr-group-commit-%d").setDaemon(true).build()); //NON-NLS
+
+    /**
+     * Completed when the next commit is done, or null if no commit has been
+     * requested since the last one.
+     */
+    @GuardedBy("this")
+    private CompletableFuture<Void> nextCommit;
+
+    /**
+     * The number of documents added to the index since the last commit.
+     */
+    @GuardedBy("this")
+    private int pendingDocuments = 0;
+
+    @GuardedBy("this")
+    private ScheduledFuture<?> scheduledCommit;
+
+    CommitCoordinator(Ingester ingester) {
+        this.ingester = ingester;
+    }
+
+    /**
+     * Request a commit of the documents indexed so far.
+     *
+     * @return A future that is completed once the documents have been
+     *         committed and are visible to searches.
+     */
+    synchronized Future<Void> requestCommit() {
+        if (nextCommit == null) {
+            nextCommit = new CompletableFuture<>();
+        }
+        if (pendingDocuments >= KeywordSearchSettings.getCommitDocumentCount()) {
+            scheduleImmediateCommit();
+        } else if (scheduledCommit == null) {
+            scheduledCommit = commitExecutor.schedule(this::commit, KeywordSearchSettings.getCommitIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        return nextCommit;
+    }
+
+    /**
+     * Record that documents were added to the index, so that a requested
+     * commit is done right away once enough of them are waiting.
+     *
+     * @param count The number of documents that were added.
+     */
+    synchronized void documentsAdded(int count) {
+        pendingDocuments += count;
+        if (nextCommit != null && pendingDocuments >= KeywordSearchSettings.getCommitDocumentCount()) {
+            scheduleImmediateCommit();
+        }
+    }
+
+    /**
+     * Replace the commit scheduled at the end of the interval, if any, by one
+     * that is done right away.
+     */
+    @GuardedBy("this")
+    private void scheduleImmediateCommit() {
+        if (scheduledCommit != null) {
+            if (scheduledCommit.getDelay(TimeUnit.NANOSECONDS) <= 0) {
+                //already due
+                return;
+            }
+            scheduledCommit.cancel(false);
+        }
+        scheduledCommit = commitExecutor.schedule(this::commit, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Commit any requested commit now, on the calling thread, eg before the
+     * core is closed.
+     */
+    void commitNow() {
+        synchronized (this) {
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+            }
+        }
+        commit();
+    }
+
+    private void commit() {
+        final CompletableFuture<Void> committed;
+        synchronized (this) {
+            committed = nextCommit;
+            nextCommit = null;
+            pendingDocuments = 0;
+            scheduledCommit = null;
+        }
+        if (committed != null) {
+            try {
+                ingester.commitIndex();
+                committed.complete(null);
+            } catch (NoOpenCoreException | SolrServerException ex) {
+                logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
+                committed.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -19,8 +19,12 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
@@ -58,6 +62,7 @@ class Ingester {
     private static final SolrFieldsVisitor SOLR_FIELDS_VISITOR = new SolrFieldsVisitor();
     private static Ingester instance;
     private static final int SINGLE_READ_CHARS = 512;
+    private final CommitCoordinator commitCoordinator = new CommitCoordinator(this);
 
     private Ingester() {
     }
@@ -215,6 +220,96 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
      */
     private void indexChunk(String chunk, String sourceName, Map<String, String> fields) throws IngesterException {
+        SolrInputDocument updateDoc = createDocument(chunk, sourceName, fields);
+
+        try {
+            //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
+            TimingMetric metric = EnterpriseHealthMonitor.getTimingMetric("Solr: Index chunk");
+            solrServer.addDocument(updateDoc);
+            EnterpriseHealthMonitor.submitTimingMetric(metric);
+            uncommitedIngests = true;
+            commitCoordinator.documentsAdded(1);
+
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            //JMTODO: does this need to be internationalized?
+            throw new IngesterException(
+                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+        }
+    }
+
+    /**
+     * Build the Solr documents for an artifact: one per chunk of its text and
+     * a parent document with its metadata, the same documents that
+     * indexMetaDataOnly and indexText would add one at a time. The parent
+     * document replaces the metadata only document, so that one is not built.
+     *
+     * @param artifact The artifact to build the documents for.
+     *
+     * @return The documents, ready to be added to the index with
+     *         indexDocuments.
+     *
+     * @throws IngesterException if the documents could not be built.
+     */
+    List<SolrInputDocument> getArtifactDocuments(BlackboardArtifact artifact) throws IngesterException {
+        final ArtifactTextExtractor extractor = new ArtifactTextExtractor();
+        final long sourceID = extractor.getID(artifact);
+        final String sourceName = extractor.getName(artifact);
+        final Map<String, String> fields = getContentFields(artifact);
+        final List<SolrInputDocument> documents = new ArrayList<>();
+
+        int numChunks = 0;
+        try (BufferedReader reader = new BufferedReader(extractor.getReader(artifact));) {
+            Chunker chunker = new Chunker(reader);
+            for (Chunk chunk : chunker) {
+                fields.put(Server.Schema.ID.toString(), Server.getChunkIdString(sourceID, numChunks + 1));
+                fields.put(Server.Schema.CHUNK_SIZE.toString(), String.valueOf(chunk.getBaseChunkLength()));
+                documents.add(createDocument(chunk.toString(), sourceName, fields));
+                numChunks++;
+            }
+            if (chunker.hasException()) {
+                extractor.logWarning("Error chunking content from " + sourceID + ": " + sourceName, chunker.getException());
+            }
+        } catch (IngesterException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            extractor.logWarning("Unexpected error, can't read content stream from " + sourceID + ": " + sourceName, ex);//NON-NLS
+        }
+
+        //the parent document, with the number of chunks
+        fields.put(Server.Schema.NUM_CHUNKS.toString(), Integer.toString(numChunks));
+        fields.put(Server.Schema.ID.toString(), Long.toString(sourceID));
+        fields.remove(Server.Schema.CHUNK_SIZE.toString());
+        documents.add(createDocument(null, sourceName, fields));
+        return documents;
+    }
+
+    /**
+     * Add the given documents to the Solr index in one request. commit()
+     * should be called once you're done indexing.
+     *
+     * @param documents The documents to add.
+     *
+     * @throws IngesterException if the documents could not be added.
+     */
+    void indexDocuments(Collection<SolrInputDocument> documents) throws IngesterException {
+        try {
+            TimingMetric metric = EnterpriseHealthMonitor.getTimingMetric("Solr: Index chunks");
+            solrServer.addDocuments(documents);
+            EnterpriseHealthMonitor.submitTimingMetric(metric);
+            uncommitedIngests = true;
+            commitCoordinator.documentsAdded(documents.size());
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            throw new IngesterException(
+                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", documents.size() + " documents"), ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Make a Solr document out of a chunk and its fields.
+     *
+     * @throws IngesterException if the image id of the source is unknown
+     */
+    private SolrInputDocument createDocument(String chunk, String sourceName, Map<String, String> fields) throws IngesterException {
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //JMTODO: actually if the we couldn't get the image id it is set to -1,
             // but does this really mean we don't want to index it?
@@ -234,19 +329,7 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
         //add the content to the SolrInputDocument
         //JMTODO: can we just add it to the field map before passing that in?
         updateDoc.addField(Server.Schema.CONTENT.toString(), chunk);
-
-        try {
-            //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
-            TimingMetric metric = EnterpriseHealthMonitor.getTimingMetric("Solr: Index chunk");
-            solrServer.addDocument(updateDoc);
-            EnterpriseHealthMonitor.submitTimingMetric(metric);
-            uncommitedIngests = true;
-
-        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-            //JMTODO: does this need to be internationalized?
-            throw new IngesterException(
-                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
-        }
+        return updateDoc;
     }
 
     /**
@@ -255,14 +338,42 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
      */
     void commit() {
         try {
-            solrServer.commit();
-            uncommitedIngests = false;
+            commitIndex();
         } catch (NoOpenCoreException | SolrServerException ex) {
             logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
 
         }
     }
 
+    /**
+     * Tells Solr to commit, leaving a failure to the caller.
+     *
+     * @throws NoOpenCoreException if there is no open core.
+     * @throws SolrServerException if the commit failed.
+     */
+    void commitIndex() throws NoOpenCoreException, SolrServerException {
+        solrServer.commit();
+        uncommitedIngests = false;
+    }
+
+    /**
+     * Requests a commit, which is grouped with the other commits requested
+     * within the commit interval rather than done right away.
+     *
+     * @return A future that is completed once the documents indexed so far are
+     *         committed.
+     */
+    Future<Void> requestCommit() {
+        return commitCoordinator.requestCommit();
+    }
+
+    /**
+     * Does any requested commit right away.
+     */
+    void commitRequested() {
+        commitCoordinator.commitNow();
+    }
+
     /**
      * Visitor used to create fields to send to SOLR index.
      */
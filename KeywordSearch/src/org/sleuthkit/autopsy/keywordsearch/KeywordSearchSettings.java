@@ -41,6 +41,10 @@ class KeywordSearchSettings {
     static final boolean DEFAULT_SHOW_SNIPPETS = true;    
     static final String OCR_ENABLED = "ocrEnabled"; //NON-NLS
     static final boolean OCR_ENABLED_DEFAULT = false; // NON-NLS
+    static final String COMMIT_INTERVAL_SECONDS = "commitIntervalSeconds"; //NON-NLS
+    static final int DEFAULT_COMMIT_INTERVAL_SECONDS = 5;
+    static final String COMMIT_DOCUMENT_COUNT = "commitDocumentCount"; //NON-NLS
+    static final int DEFAULT_COMMIT_DOCUMENT_COUNT = 1000;
     private static boolean skipKnown = true;
     private static final Logger logger = Logger.getLogger(KeywordSearchSettings.class.getName());
     private static UpdateFrequency UpdateFreq = UpdateFrequency.DEFAULT;
@@ -164,6 +168,37 @@ static boolean getShowSnippets() {
         }
     }
 
+    /**
+     * Gets the longest time, in seconds, that content indexed through the
+     * keyword search service waits for a commit.
+     *
+     * @return The commit interval in seconds.
+     */
+    static int getCommitIntervalSeconds() {
+        return getIntSetting(COMMIT_INTERVAL_SECONDS, DEFAULT_COMMIT_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Gets the number of documents indexed through the keyword search service
+     * that triggers a commit before the commit interval is over.
+     *
+     * @return The commit document count.
+     */
+    static int getCommitDocumentCount() {
+        return getIntSetting(COMMIT_DOCUMENT_COUNT, DEFAULT_COMMIT_DOCUMENT_COUNT);
+    }
+
+    private static int getIntSetting(String settingName, int defaultValue) {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, settingName)) {
+            try {
+                return Integer.parseInt(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, settingName));
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Invalid value for keyword search setting " + settingName, ex); //NON-NLS
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * gets the currently set scripts to use
      *
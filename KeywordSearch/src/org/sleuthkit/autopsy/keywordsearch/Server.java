@@ -718,6 +718,25 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException, NoO
         }
     }
 
+    /**
+     * Add several documents to the current core in one request.
+     *
+     * @param docs The documents to add.
+     */
+    void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            TimingMetric metric = EnterpriseHealthMonitor.getTimingMetric("Solr: Index chunks");
+            currentCore.addDocuments(docs);
+            EnterpriseHealthMonitor.submitTimingMetric(metric);
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * ** end single-case specific methods ***
      */
@@ -1470,6 +1489,16 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             }
         }
 
+        void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+            try {
+                solrCore.add(docs);
+            } catch (SolrServerException | IOException ex) {
+                logger.log(Level.SEVERE, "Could not add " + docs.size() + " documents to index via update handler", ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDoc.exception.msg", docs.size() + " documents"), ex); //NON-NLS
+            }
+        }
+
         /**
          * get the text from the content field for the given file
          *
@@ -23,9 +23,16 @@
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
@@ -33,6 +40,7 @@
 import org.apache.commons.io.FileUtils;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.SolrInputDocument;
 import org.openide.util.NbBundle;
 import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
@@ -84,6 +92,26 @@ public class SolrSearchService implements KeywordSearchService, AutopsyService {
      */
     @Override
     public void index(Content content) throws TskCoreException {
+        indexAndCommit(content);
+    }
+
+    /**
+     * Indexes the given content for keyword search. The commit of content
+     * other than artifacts is grouped with the other commits requested within
+     * the commit interval, see KeywordSearchSettings.getCommitIntervalSeconds.
+     *
+     * The same restrictions as for index(Content) apply.
+     *
+     * @param content The content to index.
+     *
+     * @return A future that is completed once the content is visible to
+     *         searches. For artifacts it is already completed, since their
+     *         commits are handled by the keyword search ingest module.
+     *
+     * @throws TskCoreException If there is a problem indexing the content.
+     */
+    @Override
+    public Future<Void> indexAndCommit(Content content) throws TskCoreException {
         /*
          * TODO (JIRA-1099): The following code has some issues that need to be
          * resolved. For artifacts, it is assumed that the posting of artifacts
@@ -98,7 +126,7 @@ public void index(Content content) throws TskCoreException {
          * other than an ingest job.
          */
         if (content == null) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         final Ingester ingester = Ingester.getDefault();
         if (content instanceof BlackboardArtifact) {
@@ -109,7 +137,7 @@ public void index(Content content) throws TskCoreException {
                  * negative artifact ids to avoid overlapping with the object
                  * ids of other types of Content.
                  */
-                return;
+                return CompletableFuture.completedFuture(null);
             }
             try {
                 ingester.indexMetaDataOnly(artifact);
@@ -117,6 +145,7 @@ public void index(Content content) throws TskCoreException {
             } catch (Ingester.IngesterException ex) {
                 throw new TskCoreException(ex.getCause().getMessage(), ex);
             }
+            return CompletableFuture.completedFuture(null);
         } else {
             try {
                 ingester.indexText(new TikaTextExtractor(), content, null);
@@ -128,7 +157,7 @@ public void index(Content content) throws TskCoreException {
                     throw new TskCoreException(ex.getCause().getMessage(), ex1);
                 }
             }
-            ingester.commit();
+            return ingester.requestCommit();
         }
     }
 
@@ -406,6 +435,13 @@ public void closeCaseResources(CaseContext context) throws AutopsyServiceExcepti
             logger.log(Level.SEVERE, "Unexpected interrupt while waiting for BlackboardResultWriters to terminate", ex);
         }
 
+        //index the artifacts still queued by the blackboard while the core is open
+        context.getCase().getServices().getBlackboard().indexQueuedArtifactsNow();
+
+        //commit anything indexed since the last commit
+        Ingester.getDefault().commitRequested();
+        Ingester.getDefault().commit();
+
         try {
             KeywordSearch.getServer().closeCore();
         } catch (KeywordSearchModuleException ex) {
@@ -413,6 +449,61 @@ public void closeCaseResources(CaseContext context) throws AutopsyServiceExcepti
         }
     }
 
+    /**
+     * Indexes the given artifacts for keyword search, building the Solr
+     * documents of all of them and adding them in one request. If that request
+     * fails, the artifacts are added one at a time to find the ones that
+     * cannot be indexed.
+     *
+     * The same restrictions as for index(Content) apply.
+     *
+     * @param artifacts The artifacts to index.
+     *
+     * @return The artifacts that could not be indexed, each mapped to the
+     *         reason.
+     */
+    @Override
+    public Map<BlackboardArtifact, TskCoreException> indexArtifacts(Collection<BlackboardArtifact> artifacts) {
+        final Ingester ingester = Ingester.getDefault();
+        final Map<BlackboardArtifact, TskCoreException> failures = new HashMap<>();
+        final Map<BlackboardArtifact, List<SolrInputDocument>> documents = new LinkedHashMap<>();
+        for (BlackboardArtifact artifact : artifacts) {
+            /*
+             * Artifact indexing is only supported for artifacts that use
+             * negative artifact ids, see index(Content).
+             */
+            if (artifact == null || artifact.getArtifactID() > 0) {
+                continue;
+            }
+            try {
+                documents.put(artifact, ingester.getArtifactDocuments(artifact));
+            } catch (Ingester.IngesterException ex) {
+                failures.put(artifact, new TskCoreException(ex.getMessage(), ex));
+            }
+        }
+        if (documents.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            //add the documents of all the artifacts in one request
+            ingester.indexDocuments(documents.values().stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList()));
+        } catch (Ingester.IngesterException ex) {
+            //retry one artifact at a time to find the ones that failed
+            logger.log(Level.WARNING, "Failed to index a batch of " + documents.size() + " artifacts, retrying them one at a time.", ex); //NON-NLS
+            for (Map.Entry<BlackboardArtifact, List<SolrInputDocument>> entry : documents.entrySet()) {
+                try {
+                    ingester.indexDocuments(entry.getValue());
+                } catch (Ingester.IngesterException ex1) {
+                    failures.put(entry.getKey(), new TskCoreException(ex1.getMessage(), ex1));
+                }
+            }
+        }
+        return failures;
+    }
+
     /**
      * Adds an artifact to the keyword search text index as a concantenation of
      * all of its attributes.